@@ -1,6 +1,7 @@
 package com.geometricdrawing;
 
 import com.geometricdrawing.controller.DrawingController;
+import com.geometricdrawing.strategy.RecoveryJournal;
 import javafx.application.Application;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Scene;
@@ -15,6 +16,8 @@ import java.io.IOException;
  */
 
 public class GeometricDrawingApp extends Application {
+    private DrawingController controller;
+
     @Override
     public void start(Stage stage) throws IOException {
         FXMLLoader fxmlLoader = new FXMLLoader(GeometricDrawingApp.class.getResource("DrawingView.fxml"));
@@ -24,7 +27,7 @@ public class GeometricDrawingApp extends Application {
         stage.setTitle("ShapeCraft - Geometric Drawing App");
         scene.getStylesheets().add(getClass().getResource("/style.css").toExternalForm());
 
-        DrawingController controller = fxmlLoader.getController();
+        controller = fxmlLoader.getController();
         controller.setStage(stage);
 
         // setting di un minimo rimpicciolimento dello stage in altezza e larghezza
@@ -34,6 +37,17 @@ public class GeometricDrawingApp extends Application {
 
         stage.setScene(scene);
         stage.show();
+
+        // Dopo show(): un eventuale avviso di ripristino compare sopra la finestra principale
+        controller.startRecoveryJournal(RecoveryJournal.defaultDirectory());
+    }
+
+    @Override
+    public void stop() {
+        // Chiusura regolare: il disegno è stato salvato o scartato dall'utente, il diario non serve più
+        if (controller != null) {
+            controller.closeRecoveryJournal(true);
+        }
     }
 
     public static void main(String[] args) {
@@ -3,6 +3,8 @@ package com.geometricdrawing.command;
 import com.geometricdrawing.model.AbstractShape;
 import com.geometricdrawing.model.DrawingModel;
 
+import java.io.IOException;
+
 /**
  * Autore: Gruppo05
  * Scopo: Command per l'aggiunta di una nuova figura
@@ -28,4 +30,18 @@ public class AddShapeCommand implements Command {
         model.removeShape(shape);
     }
 
-}
\ No newline at end of file
+    @Override
+    public long estimateSize() {
+        return BASE_SIZE + Command.estimateShapeSize(shape); // dopo l'undo la figura resta solo qui, per il redo
+    }
+
+    // Campi salvati nella cronologia su file (CommandSpill)
+    void writeTo(CommandSpill.Output out) throws IOException {
+        out.writeModel(model);
+        out.writeShape(shape);
+    }
+
+    static AddShapeCommand readFrom(CommandSpill.Input in) {
+        return new AddShapeCommand(in.readModel(), in.readShape());
+    }
+}
@@ -3,6 +3,8 @@ package com.geometricdrawing.command;
 import com.geometricdrawing.model.AbstractShape;
 import com.geometricdrawing.model.DrawingModel;
 
+import java.io.IOException;
+
 /**
  * Autore: Gruppo05
  * Scopo: Command per spostare la figura in secondo piano
@@ -18,6 +20,13 @@ public class BringToBackgroundCommand implements Command{
         this.oldZ = shape.getZ();  // per tenere traccia della posizione nella lista di shapes precedente
     }
 
+    // Usato per rileggere il comando dalla cronologia su file
+    private BringToBackgroundCommand(DrawingModel model, AbstractShape shape, int oldZ) {
+        this.model = model;
+        this.shape = shape;
+        this.oldZ = oldZ;
+    }
+
     @Override
     public void execute() {
         if (shape != null) {
@@ -32,4 +41,14 @@ public class BringToBackgroundCommand implements Command{
             model.changeZOrder(shape, oldZ);
         }
     }
+
+    void writeTo(CommandSpill.Output out) throws IOException {
+        out.writeModel(model);
+        out.writeShape(shape);
+        out.writeInt(oldZ);
+    }
+
+    static BringToBackgroundCommand readFrom(CommandSpill.Input in) {
+        return new BringToBackgroundCommand(in.readModel(), in.readShape(), in.readInt());
+    }
 }
@@ -1,33 +1,54 @@
 package com.geometricdrawing.command;
 
-import com.geometricdrawing.decorator.BorderColorDecorator;
+import com.geometricdrawing.model.AbstractShape;
 import com.geometricdrawing.model.DrawingModel;
 import javafx.scene.paint.Color;
 
+import java.io.IOException;
+
 public class ChangeBorderColorCommand implements Command {
-    private final BorderColorDecorator decorator;
+    private final AbstractShape shape;
     private final Color oldColor;
     private final Color newColor;
     private final DrawingModel model;
 
-    public ChangeBorderColorCommand(DrawingModel model, BorderColorDecorator decorator, Color newColor) {
+    public ChangeBorderColorCommand(DrawingModel model, AbstractShape shape, Color newColor) {
+        this.model = model;
+        this.shape = shape;
+        this.oldColor = shape != null ? shape.getBorderColor() : null;
+        this.newColor = newColor;
+    }
+
+    // Usato per rileggere il comando dalla cronologia su file
+    private ChangeBorderColorCommand(DrawingModel model, AbstractShape shape, Color oldColor, Color newColor) {
         this.model = model;
-        this.decorator = decorator;
-        this.oldColor = decorator != null ? decorator.getBorderColor() : null;
+        this.shape = shape;
+        this.oldColor = oldColor;
         this.newColor = newColor;
     }
 
     @Override
     public void execute() {
         if (model != null) {
-            model.setBorderColor(decorator, newColor);
+            model.setBorderColor(shape, newColor);
         }
     }
 
     @Override
     public void undo() {
         if (model != null) {
-            model.setBorderColor(decorator, oldColor);
+            model.setBorderColor(shape, oldColor);
         }
     }
-}
\ No newline at end of file
+
+    void writeTo(CommandSpill.Output out) throws IOException {
+        out.writeModel(model);
+        out.writeShape(shape);
+        out.writeColor(oldColor);
+        out.writeColor(newColor);
+    }
+
+    static ChangeBorderColorCommand readFrom(CommandSpill.Input in) {
+        return new ChangeBorderColorCommand(in.readModel(), in.readShape(), in.readColor(), in.readColor());
+    }
+}
@@ -1,33 +1,54 @@
 package com.geometricdrawing.command;
 
-import com.geometricdrawing.decorator.FillColorDecorator;
+import com.geometricdrawing.model.AbstractShape;
 import com.geometricdrawing.model.DrawingModel;
 import javafx.scene.paint.Color;
 
+import java.io.IOException;
+
 public class ChangeFillColorCommand implements Command {
-    private final FillColorDecorator decorator;
+    private final AbstractShape shape;
     private final Color oldColor;
     private final Color newColor;
     private final DrawingModel model;
 
-    public ChangeFillColorCommand(DrawingModel model, FillColorDecorator decorator, Color newColor) {
+    public ChangeFillColorCommand(DrawingModel model, AbstractShape shape, Color newColor) {
+        this.model = model;
+        this.shape = shape;
+        this.oldColor = shape != null ? shape.getFillColor() : null;
+        this.newColor = newColor;
+    }
+
+    // Usato per rileggere il comando dalla cronologia su file
+    private ChangeFillColorCommand(DrawingModel model, AbstractShape shape, Color oldColor, Color newColor) {
         this.model = model;
-        this.decorator = decorator;
-        this.oldColor = decorator != null ? decorator.getFillColor() : null;
+        this.shape = shape;
+        this.oldColor = oldColor;
         this.newColor = newColor;
     }
 
     @Override
     public void execute() {
         if (model != null) {
-            model.setFillColor(decorator, newColor);
+            model.setFillColor(shape, newColor);
         }
     }
 
     @Override
     public void undo() {
         if (model != null) {
-            model.setFillColor(decorator, oldColor);
+            model.setFillColor(shape, oldColor);
         }
     }
+
+    void writeTo(CommandSpill.Output out) throws IOException {
+        out.writeModel(model);
+        out.writeShape(shape);
+        out.writeColor(oldColor);
+        out.writeColor(newColor);
+    }
+
+    static ChangeFillColorCommand readFrom(CommandSpill.Input in) {
+        return new ChangeFillColorCommand(in.readModel(), in.readShape(), in.readColor(), in.readColor());
+    }
 }
@@ -3,6 +3,8 @@ package com.geometricdrawing.command;
 import com.geometricdrawing.model.DrawingModel;
 import com.geometricdrawing.model.TextShape;
 
+import java.io.IOException;
+
 /**
  * Command per cambiare la grandezza del font di un TextShape.
  */
@@ -10,7 +12,7 @@ public class ChangeFontSizeCommand implements Command {
     private final DrawingModel model;
     private final TextShape shape;
     private final int oldSize;
-    private final int newSize;
+    private int newSize;
 
     public ChangeFontSizeCommand(DrawingModel model, TextShape shape, int newSize) {
         this.model = model;
@@ -19,6 +21,14 @@ public class ChangeFontSizeCommand implements Command {
         this.oldSize = shape.getFontSize();
     }
 
+    // Usato per rileggere il comando dalla cronologia su file
+    private ChangeFontSizeCommand(DrawingModel model, TextShape shape, int oldSize, int newSize) {
+        this.model = model;
+        this.shape = shape;
+        this.oldSize = oldSize;
+        this.newSize = newSize;
+    }
+
     @Override
     public void execute() {
         if (model != null && shape != null) {
@@ -32,4 +42,24 @@ public class ChangeFontSizeCommand implements Command {
             model.setFontSize(shape, oldSize);
         }
     }
-}
\ No newline at end of file
+
+    @Override
+    public boolean mergeWith(Command next) {
+        if (next instanceof ChangeFontSizeCommand other && other.model == model && other.shape == shape) {
+            newSize = other.newSize;
+            return true;
+        }
+        return false;
+    }
+
+    void writeTo(CommandSpill.Output out) throws IOException {
+        out.writeModel(model);
+        out.writeShape(shape);
+        out.writeInt(oldSize);
+        out.writeInt(newSize);
+    }
+
+    static ChangeFontSizeCommand readFrom(CommandSpill.Input in) {
+        return new ChangeFontSizeCommand(in.readModel(), (TextShape) in.readShape(), in.readInt(), in.readInt());
+    }
+}
@@ -3,6 +3,8 @@ package com.geometricdrawing.command;
 import com.geometricdrawing.model.AbstractShape;
 import com.geometricdrawing.model.DrawingModel;
 
+import java.io.IOException;
+
 /**
  * Autore: Gruppo05
  * Scopo: Command per il cambio altezza di una figura
@@ -10,7 +12,7 @@ import com.geometricdrawing.model.DrawingModel;
 public class ChangeHeightCommand implements Command {
     private final DrawingModel model;
     private final AbstractShape shape;
-    private final double newHeight;
+    private double newHeight; // aggiornata quando si accorpano i passi successivi
     private final double oldHeight; //per l'undo
 
     public ChangeHeightCommand(DrawingModel model, AbstractShape shape, double newHeight) {
@@ -41,4 +43,24 @@ public class ChangeHeightCommand implements Command {
             model.setShapeHeight(shape, oldHeight);
         }
     }
-}
\ No newline at end of file
+
+    @Override
+    public boolean mergeWith(Command next) {
+        if (next instanceof ChangeHeightCommand other && other.model == model && other.shape == shape) {
+            newHeight = other.newHeight;
+            return true;
+        }
+        return false;
+    }
+
+    void writeTo(CommandSpill.Output out) throws IOException {
+        out.writeModel(model);
+        out.writeShape(shape);
+        out.writeDouble(newHeight);
+        out.writeDouble(oldHeight);
+    }
+
+    static ChangeHeightCommand readFrom(CommandSpill.Input in) {
+        return new ChangeHeightCommand(in.readModel(), in.readShape(), in.readDouble(), in.readDouble());
+    }
+}
@@ -3,6 +3,8 @@ package com.geometricdrawing.command;
 import com.geometricdrawing.model.DrawingModel;
 import com.geometricdrawing.model.TextShape;
 
+import java.io.IOException;
+
 public class ChangeTextContentCommand implements Command {
     private final DrawingModel model;
     private final TextShape shape;
@@ -16,6 +18,14 @@ public class ChangeTextContentCommand implements Command {
         this.oldText = shape.getText();
     }
 
+    // Usato per rileggere il comando dalla cronologia su file
+    private ChangeTextContentCommand(DrawingModel model, TextShape shape, String oldText, String newText) {
+        this.model = model;
+        this.shape = shape;
+        this.oldText = oldText;
+        this.newText = newText;
+    }
+
     @Override
     public void execute() {
         if (model != null && shape != null) {
@@ -28,4 +38,15 @@ public class ChangeTextContentCommand implements Command {
             model.setText(shape, oldText);
         }
     }
+
+    void writeTo(CommandSpill.Output out) throws IOException {
+        out.writeModel(model);
+        out.writeShape(shape);
+        out.writeString(oldText);
+        out.writeString(newText);
+    }
+
+    static ChangeTextContentCommand readFrom(CommandSpill.Input in) {
+        return new ChangeTextContentCommand(in.readModel(), (TextShape) in.readShape(), in.readString(), in.readString());
+    }
 }
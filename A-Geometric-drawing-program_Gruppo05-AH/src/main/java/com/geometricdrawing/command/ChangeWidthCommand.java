@@ -3,6 +3,8 @@ package com.geometricdrawing.command;
 import com.geometricdrawing.model.AbstractShape;
 import com.geometricdrawing.model.DrawingModel;
 
+import java.io.IOException;
+
 /**
  * Autore: Gruppo05
  * Scopo: Command per il cambio larghezza di una figura
@@ -11,7 +13,7 @@ public class ChangeWidthCommand implements Command {
     private final DrawingModel model;
     private final AbstractShape shape;
     private final double oldWidth;
-    private final double newWidth;
+    private double newWidth; // aggiornata quando si accorpano i passi successivi
 
     // Costruttore per il ridimensionamento
      public ChangeWidthCommand(DrawingModel model, AbstractShape shape, double newWidth) {
@@ -42,4 +44,24 @@ public class ChangeWidthCommand implements Command {
             model.setShapeWidth(shape, oldWidth);
         }
     }
-}
\ No newline at end of file
+
+    @Override
+    public boolean mergeWith(Command next) {
+        if (next instanceof ChangeWidthCommand other && other.model == model && other.shape == shape) {
+            newWidth = other.newWidth;
+            return true;
+        }
+        return false;
+    }
+
+    void writeTo(CommandSpill.Output out) throws IOException {
+        out.writeModel(model);
+        out.writeShape(shape);
+        out.writeDouble(newWidth);
+        out.writeDouble(oldWidth);
+    }
+
+    static ChangeWidthCommand readFrom(CommandSpill.Input in) {
+        return new ChangeWidthCommand(in.readModel(), in.readShape(), in.readDouble(), in.readDouble());
+    }
+}
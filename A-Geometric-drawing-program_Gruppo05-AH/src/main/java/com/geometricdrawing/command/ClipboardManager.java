@@ -2,49 +2,96 @@ package com.geometricdrawing.command;
 
 import com.geometricdrawing.model.AbstractShape;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 /**
  * @Autore: Gruppo05
  * @Scopo: Gestisce una clipboard interna per le operazioni di copia, taglio e incolla delle figure.
+ * La clipboard contiene una selezione ordinata di figure, conservata come istantanea immutabile:
+ * le figure vengono clonate al momento della copia, così le modifiche successive agli originali non la cambiano,
+ * e ogni lettura (incolla compreso) ne restituisce nuove copie, mai le figure dell'istantanea.
+ * Le copie sono copy-on-write (ad esempio i vertici dei poligoni restano condivisi finché non cambiano forma),
+ * quindi copiare e incollare molte figure non duplica la memoria occupata dalla geometria.
  */
 public class ClipboardManager {
-    private AbstractShape clipboardShape;
+    private List<AbstractShape> clipboardShapes;
 
     public ClipboardManager() {
-        this.clipboardShape = null;
+        this.clipboardShapes = List.of();
     }
 
     /**
      * Copia la figura specificata nella clipboard interna.
-     * Preferibilmente, la figura dovrebbe essere clonata per evitare effetti collaterali.
+     * La figura viene clonata per evitare effetti collaterali.
      * @param shape La figura da copiare.
      */
     public void copyToClipboard(AbstractShape shape) {
         if (shape != null) {
-            // Utilizza il metodo deepClone() da AbstractShape
-            this.clipboardShape = shape.deepClone();
+            copyAllToClipboard(List.of(shape));
         } else {
-            this.clipboardShape = null;
+            clearClipboard();
+        }
+    }
+
+    /**
+     * Copia nella clipboard le figure indicate, mantenendone l'ordine.
+     * Ogni figura viene clonata: le modifiche successive agli originali non cambiano il contenuto della clipboard.
+     * @param shapes Le figure da copiare; null o una lista vuota svuotano la clipboard.
+     */
+    public void copyAllToClipboard(List<? extends AbstractShape> shapes) {
+        if (shapes == null || shapes.isEmpty()) {
+            clearClipboard();
+            return;
+        }
+        List<AbstractShape> snapshot = new ArrayList<>(shapes.size());
+        for (AbstractShape shape : shapes) {
+            AbstractShape clone = shape != null ? shape.deepClone() : null;
+            if (clone != null) {
+                snapshot.add(clone);
+            }
         }
+        this.clipboardShapes = Collections.unmodifiableList(snapshot);
     }
 
     /**
-     * Restituisce una copia della figura attualmente nella clipboard.
+     * Restituisce una copia della prima figura nella clipboard.
      * Restituire una copia previene modifiche accidentali alla forma in clipboard
      * se viene incollata e poi modificata, e poi incollata di nuovo.
      * @return Una copia della figura nella clipboard, o null se la clipboard è vuota.
      */
     public AbstractShape getFromClipboard() {
-        if (this.clipboardShape != null) {
-            return this.clipboardShape.deepClone(); // Restituisce sempre un nuovo clone per il paste
+        if (!clipboardShapes.isEmpty()) {
+            return clipboardShapes.get(0).deepClone(); // Restituisce sempre un nuovo clone per il paste
         }
         return null;
     }
 
+    /**
+     * Restituisce una nuova copia di tutte le figure nella clipboard, nello stesso ordine in cui sono state copiate.
+     * @return lista modificabile di copie, vuota se la clipboard è vuota.
+     */
+    public List<AbstractShape> getAllFromClipboard() {
+        List<AbstractShape> copies = new ArrayList<>(clipboardShapes.size());
+        for (AbstractShape shape : clipboardShapes) {
+            copies.add(shape.deepClone());
+        }
+        return copies;
+    }
+
+    /**
+     * @return il numero di figure nella clipboard.
+     */
+    public int getClipboardSize() {
+        return clipboardShapes.size();
+    }
+
     /**
      * Pulisce la clipboard interna.
      */
     public void clearClipboard() {
-        this.clipboardShape = null;
+        this.clipboardShapes = List.of();
     }
 
     /**
@@ -52,6 +99,15 @@ public class ClipboardManager {
      * @return true se la clipboard non è vuota, false altrimenti.
      */
     public boolean hasContent() {
-        return this.clipboardShape != null;
+        return !clipboardShapes.isEmpty();
+    }
+
+    // Istantanea corrente, immutabile: CutShapeCommand la conserva per ripristinarla con l'annullamento senza copiarla
+    List<AbstractShape> getSnapshot() {
+        return clipboardShapes;
+    }
+
+    void restoreSnapshot(List<AbstractShape> snapshot) {
+        this.clipboardShapes = snapshot != null ? snapshot : List.of();
     }
-}
\ No newline at end of file
+}
@@ -1,14 +1,55 @@
 package com.geometricdrawing.command;
 
+import com.geometricdrawing.model.AbstractShape;
+import com.geometricdrawing.model.Polygon;
+import com.geometricdrawing.model.TextShape;
+
 /**
  * Autore: Gruppo05
  * Scopo: funge da interfaccia per i comandi
  */
 
 public interface Command {
+    // memoria stimata di un comando che trattiene solo riferimenti e qualche valore
+    long BASE_SIZE = 64;
 
     void execute();
 
     // metodo per l'annullamento delle operazioni effettuate
     void undo();
+
+    // riesegue un comando annullato: per la maggior parte dei comandi equivale a execute()
+    default void redo() {
+        execute();
+    }
+
+    /**
+     * Prova ad accorpare in questo comando next, eseguito subito dopo sulla stessa figura
+     * (ad esempio i passi successivi di uno spinner). Se ci riesce, l'undo di questo comando
+     * annulla anche l'effetto di next, che non entra nella cronologia.
+     * @return true se next è stato accorpato
+     */
+    default boolean mergeWith(Command next) {
+        return false;
+    }
+
+    /**
+     * @return stima in byte della memoria che il comando trattiene finché resta nella cronologia
+     */
+    default long estimateSize() {
+        return BASE_SIZE;
+    }
+
+    /**
+     * Stima della memoria di una figura che resta raggiungibile solo dalla cronologia (ad esempio una figura eliminata).
+     */
+    static long estimateShapeSize(AbstractShape shape) {
+        long size = 200; // campi, stile e oggetti di supporto
+        if (shape instanceof Polygon polygon) {
+            size += 16L * polygon.getVertexCount();
+        } else if (shape instanceof TextShape text && text.getText() != null) {
+            size += 2L * text.getText().length();
+        }
+        return size;
+    }
 }
@@ -0,0 +1,17 @@
+package com.geometricdrawing.command;
+
+/**
+ * Autore: Gruppo05
+ * Scopo: Riceve da CommandManager l'inizio e la fine di ogni esecuzione o annullamento di un comando,
+ * in modo da poter registrare le modifiche al disegno fatte dal comando (ad esempio su un diario
+ * per il ripristino dopo un arresto imprevisto). Tutti i metodi sono chiamati sul thread dei comandi.
+ */
+public interface CommandJournal {
+
+    // chiamato subito prima di execute() o undo()
+    void commandStarting();
+
+    void commandExecuted();
+
+    void commandUndone();
+}
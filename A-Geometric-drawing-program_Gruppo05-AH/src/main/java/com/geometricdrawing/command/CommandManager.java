@@ -1,38 +1,365 @@
 package com.geometricdrawing.command;
 
 
-import java.util.Stack;
+import com.geometricdrawing.model.DrawingModel;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Autore: Gruppo05
- * Scopo: Gestione dei comandi eseguiti, permette eventualmente l'annullamento degli stessi
+ * Scopo: Gestione dei comandi eseguiti, permette l'annullamento e la ripetizione degli stessi.
+ * La cronologia è un buffer circolare di capacità fissa con un limite di memoria stimata: quando uno dei due
+ * viene superato si scartano i comandi più vecchi. I passi consecutivi dello stesso tipo sulla stessa figura,
+ * eseguiti a breve distanza l'uno dall'altro, vengono accorpati in un solo comando.
+ * Con una CommandSpill i comandi più vecchi, invece di essere scartati, passano su file e vengono riletti
+ * quando l'utente annulla fin lì: la memoria resta limitata mentre gli annullamenti possibili no.
+ * I comandi eseguiti tra beginBatch ed endBatch entrano nella cronologia come un solo CompositeCommand.
  */
 
 public class CommandManager {
-    private final Stack<Command> undoStack = new Stack<>();
+    public static final int DEFAULT_CAPACITY = 1000;
+    public static final long DEFAULT_MEMORY_BUDGET = 16L * 1024 * 1024;
+    // intervallo massimo tra due comandi perché vengano accorpati (ad esempio i click su uno spinner)
+    private static final long MERGE_WINDOW_NANOS = TimeUnit.MILLISECONDS.toNanos(1000);
+
+    private final Command[] history;
+    private final long[] sizes; // memoria stimata di ogni comando, allineata a history
+    private final long memoryBudget;
+    private int first;     // posizione in history del comando più vecchio
+    private int count;     // comandi nella cronologia: i primi undoCount si possono annullare, gli altri ripetere
+    private int undoCount;
+    private long memoryUsed;
+    private boolean mergeAllowed; // false dopo undo, redo e clear: il comando successivo inizia sempre una nuova voce
+    private long lastExecutedAt;
+    private CommandJournal journal; // può essere null: i comandi non vengono registrati
+    private CommandSpill spill;     // può essere null: i comandi fuori dalla finestra vengono scartati
+    private List<Command> batch;    // comandi del gruppo aperto con beginBatch, null se non ce n'è uno
+    private DrawingModel batchModel;
+    private int batchDepth;
+    private long changeCount; // comandi eseguiti, annullati o ripetuti: cambia a ogni modifica del disegno
+
+    public CommandManager() {
+        this(DEFAULT_CAPACITY, DEFAULT_MEMORY_BUDGET);
+    }
+
+    /**
+     * @param capacity     numero massimo di comandi nella cronologia
+     * @param memoryBudget memoria stimata massima, in byte, dei comandi nella cronologia
+     */
+    public CommandManager(int capacity, long memoryBudget) {
+        if (capacity <= 0 || memoryBudget <= 0) {
+            throw new IllegalArgumentException("Capacità e memoria della cronologia devono essere positive.");
+        }
+        this.history = new Command[capacity];
+        this.sizes = new long[capacity];
+        this.memoryBudget = memoryBudget;
+    }
+
+    public void setJournal(CommandJournal journal) {
+        this.journal = journal;
+    }
+
+    public void setSpill(CommandSpill spill) {
+        this.spill = spill;
+    }
 
     public void executeCommand(Command command) {
+        if (batch != null) {
+            command.execute();
+            batch.add(command); // entra nella cronologia alla chiusura del gruppo
+            return;
+        }
+        if (journal != null) {
+            journal.commandStarting();
+        }
         command.execute();
-        undoStack.push(command); // Aggiungi allo stack undo per possibile annullamento
+        changeCount++;
+        discardRedo(); // un nuovo comando rende non più ripetibili quelli annullati
+
+        long now = System.nanoTime();
+        int top = slot(undoCount - 1);
+        if (mergeAllowed && undoCount > 0 && now - lastExecutedAt <= MERGE_WINDOW_NANOS && history[top].mergeWith(command)) {
+            memoryUsed += history[top].estimateSize() - sizes[top];
+            sizes[top] = history[top].estimateSize();
+        } else {
+            push(command);
+        }
+        mergeAllowed = true;
+        lastExecutedAt = now;
+        evictOverBudget();
+
+        if (journal != null) {
+            journal.commandExecuted();
+        }
+    }
+
+    /**
+     * Apre un gruppo di comandi: quelli eseguiti fino a endBatch vengono annullati e ripetuti insieme,
+     * e il modello avvisa i suoi listener una volta sola, alla chiusura. I gruppi annidati confluiscono
+     * in quello più esterno.
+     * @param model il modello su cui agiscono i comandi, può essere null
+     */
+    public void beginBatch(DrawingModel model) {
+        if (batch != null) {
+            batchDepth++;
+            return;
+        }
+        if (journal != null) {
+            journal.commandStarting();
+        }
+        batch = new ArrayList<>();
+        batchModel = model;
+        batchDepth = 1;
+        if (model != null) {
+            model.beginBatch();
+        }
+    }
+
+    public void endBatch() {
+        if (batch == null) {
+            throw new IllegalStateException("endBatch senza un gruppo di comandi aperto.");
+        }
+        if (--batchDepth > 0) {
+            return;
+        }
+        List<Command> commands = batch;
+        DrawingModel model = batchModel;
+        batch = null;
+        batchModel = null;
+        if (model != null) {
+            model.endBatch();
+        }
+        if (!commands.isEmpty()) {
+            changeCount++;
+            discardRedo();
+            push(new CompositeCommand(model, commands));
+            mergeAllowed = false;
+            evictOverBudget();
+        }
+        if (journal != null) {
+            journal.commandExecuted();
+        }
+    }
+
+    /**
+     * Esegue tutti i comandi come un unico gruppo (vedi beginBatch).
+     */
+    public void executeBatch(DrawingModel model, List<? extends Command> commands) {
+        beginBatch(model);
+        try {
+            for (Command command : commands) {
+                executeCommand(command);
+            }
+        } finally {
+            endBatch();
+        }
     }
 
-    public Stack<Command> getCommandStack() {
-        return undoStack;
+    public boolean isInBatch() {
+        return batch != null;
     }
 
     // back all'operazione precedente
     public void undo() {
-        // finchè ci sono operazioni su cui si può richiamare l'undo nello stack
-        if(! undoStack.isEmpty()) {
-            Command cmd = undoStack.pop();
+        checkNoBatch();
+        if (undoCount == 0) {
+            pageIn();
+        }
+        // finchè ci sono operazioni su cui si può richiamare l'undo
+        if (undoCount > 0) {
+            Command cmd = history[slot(undoCount - 1)];
+            if (journal != null) {
+                journal.commandStarting();
+            }
             // richiama l'undo specifica per l'ultimo comando (es: se era aggiungi immagine la rimuove ecc...)
             cmd.undo();
+            changeCount++;
+            undoCount--;
+            mergeAllowed = false;
+            if (journal != null) {
+                journal.commandUndone();
+            }
         }else{
             System.out.println("Stack dei comandi vuoto");
         }
     }
 
+    // riesegue l'ultima operazione annullata
+    public void redo() {
+        checkNoBatch();
+        if (undoCount < count) {
+            Command cmd = history[slot(undoCount)];
+            if (journal != null) {
+                journal.commandStarting();
+            }
+            cmd.redo();
+            changeCount++;
+            undoCount++;
+            mergeAllowed = false;
+            if (journal != null) {
+                journal.commandExecuted();
+            }
+        }
+    }
+
+    /**
+     * @return un contatore che cambia a ogni comando eseguito, annullato o ripetuto: confrontandone due valori
+     * si sa se nel frattempo il disegno è stato modificato (ad esempio durante un'operazione in background)
+     */
+    public long getChangeCount() {
+        return changeCount;
+    }
+
+    public boolean canUndo() {
+        return undoCount > 0 || (spill != null && !spill.isEmpty());
+    }
+
+    public boolean canRedo() {
+        return undoCount < count;
+    }
+
+    /**
+     * @return i comandi in memoria che si possono annullare, dal più vecchio al più recente (copia in sola lettura);
+     * non comprende quelli passati su file
+     */
+    public List<Command> getUndoHistory() {
+        List<Command> commands = new ArrayList<>(undoCount);
+        for (int i = 0; i < undoCount; i++) {
+            commands.add(history[slot(i)]);
+        }
+        return Collections.unmodifiableList(commands);
+    }
+
+    /**
+     * @return la memoria stimata, in byte, trattenuta dai comandi della cronologia
+     */
+    public long getMemoryUsage() {
+        return memoryUsed;
+    }
+
+    /**
+     * @return il numero di comandi passati su file, annullabili dopo quelli in memoria
+     */
+    public int getSpilledCount() {
+        return spill != null ? spill.size() : 0;
+    }
+
     public void clear() {
-        undoStack.clear(); // Pulisce lo stack dei comandi
+        clearSpill();
+        for (int i = 0; i < count; i++) {
+            history[slot(i)] = null;
+        }
+        first = 0;
+        count = 0;
+        undoCount = 0;
+        memoryUsed = 0;
+        mergeAllowed = false;
+    }
+
+    private void clearSpill() {
+        if (spill != null) {
+            try {
+                spill.clear();
+            } catch (IOException e) {
+                System.err.println("Errore durante lo svuotamento della cronologia su file: " + e.getMessage());
+            }
+        }
+    }
+
+    private void checkNoBatch() {
+        if (batch != null) {
+            throw new IllegalStateException("Annullamento e ripetizione non sono possibili con un gruppo di comandi aperto.");
+        }
+    }
+
+    private int slot(int index) {
+        return (first + index) % history.length;
+    }
+
+    private void push(Command command) {
+        if (count == history.length) {
+            evictOldest();
+        }
+        int slot = slot(count);
+        history[slot] = command;
+        sizes[slot] = command.estimateSize();
+        memoryUsed += sizes[slot];
+        count++;
+        undoCount = count;
+    }
+
+    private void discardRedo() {
+        while (count > undoCount) {
+            dropNewest(); // il comando e le figure che trattiene diventano raccoglibili
+        }
+    }
+
+    // Il comando più recente resta sempre, anche se da solo supera il limite
+    private void evictOverBudget() {
+        while (memoryUsed > memoryBudget && count > 1) {
+            evictOldest();
+        }
+    }
+
+    private void evictOldest() {
+        if (spill != null && undoCount > 0) {
+            boolean spilled = false;
+            try {
+                spilled = spill.push(history[first]); // false se il tipo di comando non si può salvare
+            } catch (IOException e) {
+                System.err.println("Errore durante il salvataggio della cronologia su file: " + e.getMessage());
+            }
+            if (!spilled) {
+                // Il comando viene scartato: quelli più vecchi su file andrebbero annullati su uno stato che ne contiene
+                // ancora l'effetto, quindi la cronologia annullabile si ferma qui
+                clearSpill();
+            }
+        }
+        memoryUsed -= sizes[first];
+        history[first] = null;
+        first = (first + 1) % history.length;
+        count--;
+        undoCount--;
+    }
+
+    // Riporta in memoria il comando più recente tra quelli su file, come comando annullabile più vecchio.
+    // Se la cronologia è piena si scarta il comando ripetibile più recente per fargli posto.
+    private void pageIn() {
+        if (spill == null || spill.isEmpty()) {
+            return;
+        }
+        Command command;
+        try {
+            command = spill.pop();
+        } catch (IOException e) {
+            System.err.println("Errore durante la lettura della cronologia su file: " + e.getMessage());
+            return;
+        }
+        if (command == null) {
+            return;
+        }
+        if (count == history.length) {
+            dropNewest();
+        }
+        first = (first - 1 + history.length) % history.length;
+        history[first] = command;
+        sizes[first] = command.estimateSize();
+        memoryUsed += sizes[first];
+        count++;
+        undoCount++;
+        while (memoryUsed > memoryBudget && count > undoCount) {
+            dropNewest();
+        }
+    }
+
+    private void dropNewest() {
+        int slot = slot(count - 1);
+        memoryUsed -= sizes[slot];
+        history[slot] = null;
+        count--;
     }
-}
\ No newline at end of file
+}
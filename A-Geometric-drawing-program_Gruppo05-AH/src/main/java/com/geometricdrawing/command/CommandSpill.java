@@ -0,0 +1,454 @@
+package com.geometricdrawing.command;
+
+import com.geometricdrawing.model.AbstractShape;
+import com.geometricdrawing.model.DrawingModel;
+import com.geometricdrawing.strategy.BinaryDocumentReader;
+import com.geometricdrawing.strategy.BinaryDocumentWriter;
+import javafx.scene.paint.Color;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Autore: Gruppo05
+ * Scopo: Pila su file dei comandi usciti dalla finestra in memoria del CommandManager. Ogni comando
+ * viene scritto in forma binaria insieme alle figure a cui fa riferimento (nel formato di
+ * BinaryDocumentWriter) e riletto, dal più recente, quando l'utente annulla fin lì.
+ * Figure, disegni e appunti sono identificati da un numero: se l'oggetto originale è ancora in memoria
+ * il comando riletto usa quello, altrimenti la figura viene ricreata dai dati salvati e da quel momento
+ * è lei a rappresentare quel numero. La memoria occupata non dipende dal numero di comandi salvati.
+ *
+ * Struttura di un record: [lunghezza documento][documento delle figure][tipo e campi del comando][lunghezza record].
+ * La lunghezza in coda permette di leggere l'ultimo record senza indice e di eliminarlo troncando il file.
+ */
+public class CommandSpill implements AutoCloseable {
+    private static final byte ADD = 1;
+    private static final byte DELETE = 2;
+    private static final byte MOVE = 3;
+    private static final byte CHANGE_WIDTH = 4;
+    private static final byte CHANGE_HEIGHT = 5;
+    private static final byte STRETCH = 6;
+    private static final byte ROTATE = 7;
+    private static final byte MIRROR = 8;
+    private static final byte FILL_COLOR = 9;
+    private static final byte BORDER_COLOR = 10;
+    private static final byte FONT_SIZE = 11;
+    private static final byte TEXT_CONTENT = 12;
+    private static final byte TO_FOREGROUND = 13;
+    private static final byte TO_BACKGROUND = 14;
+    private static final byte COPY = 15;
+    private static final byte CUT = 16;
+    private static final byte PASTE = 17;
+    private static final byte COMPOSITE = 18;
+
+    private static final long NO_OBJECT = 0;
+
+    private final Path file; // null: file temporaneo creato alla prima scrittura
+    private Path openedFile;
+    private FileChannel channel;
+    private long size;
+    private int count;
+
+    // Identità degli oggetti referenziati dai comandi salvati: deboli, per non trattenerli in memoria
+    private final Map<Object, Long> ids = new WeakHashMap<>();
+    private final Map<Long, IdReference> objects = new HashMap<>();
+    private final ReferenceQueue<Object> collected = new ReferenceQueue<>();
+    private long nextId = 1;
+
+    private final ByteArrayOutputStream documentBytes = new ByteArrayOutputStream();
+    private final BinaryDocumentWriter documentWriter = new BinaryDocumentWriter(Channels.newChannel(documentBytes));
+    private final ByteArrayOutputStream fieldBytes = new ByteArrayOutputStream();
+
+    public CommandSpill() {
+        this(null);
+    }
+
+    public CommandSpill(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * Salva il comando in cima alla pila.
+     *
+     * @return false se il tipo di comando non si può salvare: il chiamante lo scarta
+     */
+    public boolean push(Command command) throws IOException {
+        fieldBytes.reset();
+        Output out = new Output(new DataOutputStream(fieldBytes));
+        if (!writeCommand(command, out)) {
+            return false;
+        }
+        documentBytes.reset();
+        documentWriter.write(out.shapes);
+
+        int length = 4 + documentBytes.size() + fieldBytes.size();
+        ByteBuffer record = ByteBuffer.allocate(length + 4);
+        record.putInt(documentBytes.size());
+        record.put(documentBytes.toByteArray());
+        record.put(fieldBytes.toByteArray());
+        record.putInt(length);
+        record.flip();
+
+        FileChannel channel = channel();
+        long position = size;
+        while (record.hasRemaining()) {
+            position += channel.write(record, position);
+        }
+        size = position;
+        count++;
+        purgeCollected();
+        return true;
+    }
+
+    /**
+     * Toglie dalla pila il comando più recente e lo ricostruisce. I comandi che si riferiscono a un disegno
+     * o a degli appunti non più in memoria non si possono più applicare e vengono saltati.
+     *
+     * @return il comando, o null se la pila è vuota
+     */
+    public Command pop() throws IOException {
+        while (count > 0) {
+            ByteBuffer trailer = ByteBuffer.allocate(4);
+            readFully(trailer, size - 4);
+            int length = trailer.getInt(0);
+            long start = size - 4 - length;
+            ByteBuffer record = ByteBuffer.allocate(length);
+            readFully(record, start);
+            channel.truncate(start);
+            size = start;
+            count--;
+
+            int documentLength = record.getInt(0);
+            List<AbstractShape> shapes = new BinaryDocumentReader(record.slice(4, documentLength)).readAll();
+            Input in = new Input(record.slice(4 + documentLength, length - 4 - documentLength), shapes);
+            Command command = readCommand(in);
+            purgeCollected();
+            if (!in.missingReference) {
+                return command;
+            }
+        }
+        return null;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    public void clear() throws IOException {
+        if (channel != null) {
+            channel.truncate(0);
+        }
+        size = 0;
+        count = 0;
+    }
+
+    // Chiude ed elimina il file: i comandi salvati non servono oltre la sessione
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+            Files.deleteIfExists(openedFile);
+        }
+        size = 0;
+        count = 0;
+    }
+
+    private FileChannel channel() throws IOException {
+        if (channel == null) {
+            openedFile = file != null ? file : Files.createTempFile("cronologia", ".spill");
+            openedFile.toFile().deleteOnExit();
+            channel = FileChannel.open(openedFile, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        }
+        return channel;
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new IOException("File della cronologia troncato.");
+            }
+        }
+        buffer.flip();
+    }
+
+    private long idOf(Object object) {
+        Long id = ids.get(object);
+        if (id == null) {
+            id = nextId++;
+            register(id, object);
+        }
+        return id;
+    }
+
+    private Object lookup(long id) {
+        IdReference reference = objects.get(id);
+        return reference != null ? reference.get() : null;
+    }
+
+    private void register(long id, Object object) {
+        ids.put(object, id);
+        objects.put(id, new IdReference(id, object, collected));
+    }
+
+    // Elimina le voci degli oggetti raccolti dal garbage collector
+    private void purgeCollected() {
+        IdReference reference;
+        while ((reference = (IdReference) collected.poll()) != null) {
+            objects.remove(reference.id, reference);
+        }
+    }
+
+    static boolean writeCommand(Command command, Output out) throws IOException {
+        switch (command) {
+            case AddShapeCommand c -> { out.writeByte(ADD); c.writeTo(out); }
+            case DeleteShapeCommand c -> { out.writeByte(DELETE); c.writeTo(out); }
+            case MoveShapeCommand c -> { out.writeByte(MOVE); c.writeTo(out); }
+            case ChangeWidthCommand c -> { out.writeByte(CHANGE_WIDTH); c.writeTo(out); }
+            case ChangeHeightCommand c -> { out.writeByte(CHANGE_HEIGHT); c.writeTo(out); }
+            case StretchShapeCommand c -> { out.writeByte(STRETCH); c.writeTo(out); }
+            case RotateShapeCommand c -> { out.writeByte(ROTATE); c.writeTo(out); }
+            case MirrorShapeCommand c -> { out.writeByte(MIRROR); c.writeTo(out); }
+            case ChangeFillColorCommand c -> { out.writeByte(FILL_COLOR); c.writeTo(out); }
+            case ChangeBorderColorCommand c -> { out.writeByte(BORDER_COLOR); c.writeTo(out); }
+            case ChangeFontSizeCommand c -> { out.writeByte(FONT_SIZE); c.writeTo(out); }
+            case ChangeTextContentCommand c -> { out.writeByte(TEXT_CONTENT); c.writeTo(out); }
+            case BringToForegroundCommand c -> { out.writeByte(TO_FOREGROUND); c.writeTo(out); }
+            case BringToBackgroundCommand c -> { out.writeByte(TO_BACKGROUND); c.writeTo(out); }
+            case CopyShapeCommand c -> { out.writeByte(COPY); c.writeTo(out); }
+            case CutShapeCommand c -> { out.writeByte(CUT); c.writeTo(out); }
+            case PasteShapeCommand c -> { out.writeByte(PASTE); c.writeTo(out); }
+            case CompositeCommand c -> {
+                out.writeByte(COMPOSITE);
+                return c.writeTo(out);
+            }
+            default -> {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static Command readCommand(Input in) throws IOException {
+        byte tag = in.readByte();
+        return switch (tag) {
+            case ADD -> AddShapeCommand.readFrom(in);
+            case DELETE -> DeleteShapeCommand.readFrom(in);
+            case MOVE -> MoveShapeCommand.readFrom(in);
+            case CHANGE_WIDTH -> ChangeWidthCommand.readFrom(in);
+            case CHANGE_HEIGHT -> ChangeHeightCommand.readFrom(in);
+            case STRETCH -> StretchShapeCommand.readFrom(in);
+            case ROTATE -> RotateShapeCommand.readFrom(in);
+            case MIRROR -> MirrorShapeCommand.readFrom(in);
+            case FILL_COLOR -> ChangeFillColorCommand.readFrom(in);
+            case BORDER_COLOR -> ChangeBorderColorCommand.readFrom(in);
+            case FONT_SIZE -> ChangeFontSizeCommand.readFrom(in);
+            case TEXT_CONTENT -> ChangeTextContentCommand.readFrom(in);
+            case TO_FOREGROUND -> BringToForegroundCommand.readFrom(in);
+            case TO_BACKGROUND -> BringToBackgroundCommand.readFrom(in);
+            case COPY -> CopyShapeCommand.readFrom(in);
+            case CUT -> CutShapeCommand.readFrom(in);
+            case PASTE -> PasteShapeCommand.readFrom(in);
+            case COMPOSITE -> CompositeCommand.readFrom(in);
+            default -> throw new IOException("Tipo di comando sconosciuto nella cronologia: " + tag);
+        };
+    }
+
+    private static final class IdReference extends WeakReference<Object> {
+        private final long id;
+
+        IdReference(long id, Object referent, ReferenceQueue<Object> queue) {
+            super(referent, queue);
+            this.id = id;
+        }
+    }
+
+    /**
+     * Campi di un comando da salvare. Le figure vanno nel documento del record, nei campi resta il loro numero.
+     */
+    final class Output {
+        private final DataOutputStream data;
+        private final List<AbstractShape> shapes = new ArrayList<>();
+
+        private Output(DataOutputStream data) {
+            this.data = data;
+        }
+
+        void writeShape(AbstractShape shape) throws IOException {
+            if (shape == null) {
+                data.writeLong(NO_OBJECT);
+                return;
+            }
+            data.writeLong(idOf(shape));
+            data.writeInt(shapes.size());
+            shapes.add(shape);
+        }
+
+        void writeShapes(List<AbstractShape> list) throws IOException {
+            data.writeInt(list == null ? -1 : list.size());
+            if (list != null) {
+                for (AbstractShape shape : list) {
+                    writeShape(shape);
+                }
+            }
+        }
+
+        void writeModel(DrawingModel model) throws IOException {
+            data.writeLong(model == null ? NO_OBJECT : idOf(model));
+        }
+
+        void writeClipboard(ClipboardManager clipboard) throws IOException {
+            data.writeLong(clipboard == null ? NO_OBJECT : idOf(clipboard));
+        }
+
+        void writeColor(Color color) throws IOException {
+            data.writeBoolean(color != null);
+            if (color != null) {
+                data.writeDouble(color.getRed());
+                data.writeDouble(color.getGreen());
+                data.writeDouble(color.getBlue());
+                data.writeDouble(color.getOpacity());
+            }
+        }
+
+        void writeString(String text) throws IOException {
+            if (text == null) {
+                data.writeInt(-1);
+                return;
+            }
+            byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+            data.writeInt(bytes.length);
+            data.write(bytes);
+        }
+
+        void writeDouble(double value) throws IOException {
+            data.writeDouble(value);
+        }
+
+        void writeInt(int value) throws IOException {
+            data.writeInt(value);
+        }
+
+        void writeBoolean(boolean value) throws IOException {
+            data.writeBoolean(value);
+        }
+
+        private void writeByte(byte value) throws IOException {
+            data.writeByte(value);
+        }
+    }
+
+    /**
+     * Lettura dei campi scritti da Output, nello stesso ordine.
+     */
+    final class Input {
+        private final ByteBuffer data;
+        private final List<AbstractShape> shapes;
+        private boolean missingReference; // il disegno o gli appunti del comando non esistono più
+
+        private Input(ByteBuffer data, List<AbstractShape> shapes) {
+            this.data = data;
+            this.shapes = shapes;
+        }
+
+        AbstractShape readShape() {
+            long id = data.getLong();
+            if (id == NO_OBJECT) {
+                return null;
+            }
+            AbstractShape restored = shapes.get(data.getInt());
+            if (lookup(id) instanceof AbstractShape live) {
+                return live;
+            }
+            register(id, restored);
+            return restored;
+        }
+
+        List<AbstractShape> readShapes() {
+            int n = data.getInt();
+            if (n < 0) {
+                return null;
+            }
+            List<AbstractShape> list = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                list.add(readShape());
+            }
+            return Collections.unmodifiableList(list);
+        }
+
+        DrawingModel readModel() {
+            return (DrawingModel) readReference();
+        }
+
+        ClipboardManager readClipboard() {
+            return (ClipboardManager) readReference();
+        }
+
+        private Object readReference() {
+            long id = data.getLong();
+            if (id == NO_OBJECT) {
+                return null;
+            }
+            Object object = lookup(id);
+            if (object == null) {
+                missingReference = true;
+            }
+            return object;
+        }
+
+        Color readColor() {
+            if (data.get() == 0) {
+                return null;
+            }
+            return new Color(data.getDouble(), data.getDouble(), data.getDouble(), data.getDouble());
+        }
+
+        String readString() {
+            int length = data.getInt();
+            if (length < 0) {
+                return null;
+            }
+            byte[] bytes = new byte[length];
+            data.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        double readDouble() {
+            return data.getDouble();
+        }
+
+        int readInt() {
+            return data.getInt();
+        }
+
+        boolean readBoolean() {
+            return data.get() != 0;
+        }
+
+        private byte readByte() {
+            return data.get();
+        }
+    }
+}
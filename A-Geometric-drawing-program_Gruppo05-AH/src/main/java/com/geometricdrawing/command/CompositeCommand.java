@@ -0,0 +1,111 @@
+package com.geometricdrawing.command;
+
+import com.geometricdrawing.model.DrawingModel;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Autore: Gruppo05
+ * Scopo: Gruppo di comandi eseguiti, annullati e ripetuti come un'unica operazione. Durante ogni passo
+ * il modello raccoglie le modifiche in un solo gruppo (beginBatch/endBatch): i listener, e quindi il
+ * ridisegno, vengono avvisati una volta sola qualunque sia il numero di figure coinvolte.
+ */
+public class CompositeCommand implements Command {
+    private final DrawingModel model; // può essere null: i comandi vengono eseguiti senza raggrupparne le notifiche
+    private final List<Command> commands;
+
+    public CompositeCommand(DrawingModel model, List<? extends Command> commands) {
+        if (commands == null) {
+            throw new IllegalArgumentException("La lista dei comandi non può essere null.");
+        }
+        this.model = model;
+        this.commands = new ArrayList<>(commands);
+    }
+
+    @Override
+    public void execute() {
+        beginBatch();
+        try {
+            for (Command command : commands) {
+                command.execute();
+            }
+        } finally {
+            endBatch();
+        }
+    }
+
+    // I comandi vengono annullati in ordine inverso, ognuno sullo stato lasciato da quelli successivi
+    @Override
+    public void undo() {
+        beginBatch();
+        try {
+            for (int i = commands.size() - 1; i >= 0; i--) {
+                commands.get(i).undo();
+            }
+        } finally {
+            endBatch();
+        }
+    }
+
+    @Override
+    public void redo() {
+        beginBatch();
+        try {
+            for (Command command : commands) {
+                command.redo();
+            }
+        } finally {
+            endBatch();
+        }
+    }
+
+    @Override
+    public long estimateSize() {
+        long size = BASE_SIZE;
+        for (Command command : commands) {
+            size += command.estimateSize();
+        }
+        return size;
+    }
+
+    public List<Command> getCommands() {
+        return Collections.unmodifiableList(commands);
+    }
+
+    private void beginBatch() {
+        if (model != null) {
+            model.beginBatch();
+        }
+    }
+
+    private void endBatch() {
+        if (model != null) {
+            model.endBatch();
+        }
+    }
+
+    // Un gruppo si può salvare nella cronologia su file solo se si possono salvare tutti i suoi comandi
+    boolean writeTo(CommandSpill.Output out) throws IOException {
+        out.writeModel(model);
+        out.writeInt(commands.size());
+        for (Command command : commands) {
+            if (!CommandSpill.writeCommand(command, out)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static CompositeCommand readFrom(CommandSpill.Input in) throws IOException {
+        DrawingModel model = in.readModel();
+        int n = in.readInt();
+        List<Command> commands = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            commands.add(CommandSpill.readCommand(in));
+        }
+        return new CompositeCommand(model, commands);
+    }
+}
@@ -2,21 +2,48 @@ package com.geometricdrawing.command;
 
 import com.geometricdrawing.model.AbstractShape;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 
 public class CopyShapeCommand implements Command {
-    private final AbstractShape shapeToCopy;
+    private final List<AbstractShape> shapesToCopy;
     private final ClipboardManager clipboardManager;
+    private List<AbstractShape> clipboardBeforeCopy; // istantanea immutabile, ripristinata così com'è dall'undo
     private boolean operationPerformed = false; // Traccia se execute() ha fatto qualcosa
 
     public CopyShapeCommand(AbstractShape shapeToCopy, ClipboardManager clipboardManager) {
-        this.shapeToCopy = shapeToCopy;
+        this(clipboardManager, shapeToCopy != null ? List.of(shapeToCopy) : List.of());
+    }
+
+    private CopyShapeCommand(ClipboardManager clipboardManager, List<? extends AbstractShape> shapesToCopy) {
+        List<AbstractShape> shapes = new ArrayList<>();
+        if (shapesToCopy != null) {
+            for (AbstractShape shape : shapesToCopy) {
+                if (shape != null) {
+                    shapes.add(shape);
+                }
+            }
+        }
+        this.shapesToCopy = Collections.unmodifiableList(shapes);
         this.clipboardManager = clipboardManager;
     }
 
+    /**
+     * Copia negli appunti più figure insieme (ad esempio una selezione multipla), nell'ordine indicato:
+     * incollate, le figure mantengono le posizioni relative e l'ordine di Z.
+     */
+    public static CopyShapeCommand ofShapes(List<? extends AbstractShape> shapesToCopy, ClipboardManager clipboardManager) {
+        return new CopyShapeCommand(clipboardManager, shapesToCopy);
+    }
+
     @Override
     public void execute() {
-        if (shapeToCopy != null && clipboardManager != null) {
-            clipboardManager.copyToClipboard(shapeToCopy);
+        if (!shapesToCopy.isEmpty() && clipboardManager != null) {
+            this.clipboardBeforeCopy = clipboardManager.getSnapshot();
+            clipboardManager.copyAllToClipboard(shapesToCopy);
             // Reset del contatore delle incollature quando si copia una nuova forma
             PasteShapeCommand.resetPasteCount();
             operationPerformed = true; // L'operazione è stata eseguita
@@ -27,10 +54,25 @@ public class CopyShapeCommand implements Command {
 
     @Override
     public void undo() {
-        // Svuota la clipboard solo se execute() ha effettivamente eseguito un'operazione
+        // Ripristina gli appunti precedenti solo se execute() ha effettivamente eseguito un'operazione
         // e clipboardManager non è nullo.
         if (operationPerformed && clipboardManager != null) {
-            clipboardManager.clearClipboard();
+            clipboardManager.restoreSnapshot(clipboardBeforeCopy);
         }
     }
-}
\ No newline at end of file
+
+    void writeTo(CommandSpill.Output out) throws IOException {
+        out.writeShapes(shapesToCopy);
+        out.writeClipboard(clipboardManager);
+        out.writeShapes(clipboardBeforeCopy);
+        out.writeBoolean(operationPerformed);
+    }
+
+    static CopyShapeCommand readFrom(CommandSpill.Input in) {
+        List<AbstractShape> shapes = in.readShapes();
+        CopyShapeCommand command = new CopyShapeCommand(in.readClipboard(), shapes);
+        command.clipboardBeforeCopy = in.readShapes();
+        command.operationPerformed = in.readBoolean();
+        return command;
+    }
+}
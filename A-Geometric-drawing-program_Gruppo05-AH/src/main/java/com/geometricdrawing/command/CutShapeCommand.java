@@ -3,6 +3,10 @@ package com.geometricdrawing.command;
 import com.geometricdrawing.model.AbstractShape;
 import com.geometricdrawing.model.DrawingModel;
 
+import java.util.List;
+
+import java.io.IOException;
+
 /**
  * @Scopo: Command per l'operazione di "Taglia" di una figura.
  * Copia la figura negli appunti e la rimuove dal modello.
@@ -11,7 +15,7 @@ public class CutShapeCommand implements Command {
     private final DrawingModel model;
     private final AbstractShape shapeToCut;
     private final ClipboardManager clipboardManager;
-    private AbstractShape shapePreviouslyInClipboard;
+    private List<AbstractShape> clipboardBeforeCut; // istantanea immutabile, ripristinata così com'è dall'undo
     private boolean shapeWasRemovedFromModel = false;
 
     public CutShapeCommand(DrawingModel model, AbstractShape shapeToCut, ClipboardManager clipboardManager) {
@@ -26,11 +30,7 @@ public class CutShapeCommand implements Command {
             return;
         }
         // Salvare il contenuto della clipboard per undo
-        if (clipboardManager.hasContent()) {
-            this.shapePreviouslyInClipboard = clipboardManager.getFromClipboard();
-        } else {
-            this.shapePreviouslyInClipboard = null;
-        }
+        this.clipboardBeforeCut = clipboardManager.getSnapshot();
 
         clipboardManager.copyToClipboard(shapeToCut); // Copia la figura nel clipboard
         model.removeShape(shapeToCut);
@@ -42,11 +42,31 @@ public class CutShapeCommand implements Command {
         if (shapeWasRemovedFromModel && model != null && shapeToCut != null && clipboardManager != null) {
             model.addShape(shapeToCut);
 
-            clipboardManager.copyToClipboard(shapePreviouslyInClipboard);
+            clipboardManager.restoreSnapshot(clipboardBeforeCut);
         }
     }
 
+    @Override
+    public long estimateSize() {
+        return BASE_SIZE + Command.estimateShapeSize(shapeToCut);
+    }
+
     public AbstractShape getCutShape() {
         return shapeToCut;
     }
-}
\ No newline at end of file
+
+    void writeTo(CommandSpill.Output out) throws IOException {
+        out.writeModel(model);
+        out.writeShape(shapeToCut);
+        out.writeClipboard(clipboardManager);
+        out.writeShapes(clipboardBeforeCut);
+        out.writeBoolean(shapeWasRemovedFromModel);
+    }
+
+    static CutShapeCommand readFrom(CommandSpill.Input in) {
+        CutShapeCommand command = new CutShapeCommand(in.readModel(), in.readShape(), in.readClipboard());
+        command.clipboardBeforeCut = in.readShapes();
+        command.shapeWasRemovedFromModel = in.readBoolean();
+        return command;
+    }
+}
@@ -3,6 +3,8 @@ package com.geometricdrawing.command;
 import com.geometricdrawing.model.DrawingModel;
 import com.geometricdrawing.model.AbstractShape;
 
+import java.io.IOException;
+
 /**
  * Autore: Gruppo05
  * Scopo: Command di cancellazione di una figura
@@ -28,4 +30,18 @@ public class DeleteShapeCommand implements Command {
         model.addShape(shape);
     }
 
-}
\ No newline at end of file
+    @Override
+    public long estimateSize() {
+        return BASE_SIZE + Command.estimateShapeSize(shape); // la figura eliminata resta solo qui
+    }
+
+    // Campi salvati nella cronologia su file (CommandSpill)
+    void writeTo(CommandSpill.Output out) throws IOException {
+        out.writeModel(model);
+        out.writeShape(shape);
+    }
+
+    static DeleteShapeCommand readFrom(CommandSpill.Input in) {
+        return new DeleteShapeCommand(in.readModel(), in.readShape());
+    }
+}
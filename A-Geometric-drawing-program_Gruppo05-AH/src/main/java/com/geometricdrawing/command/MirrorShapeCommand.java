@@ -3,6 +3,8 @@ package com.geometricdrawing.command;
 import com.geometricdrawing.model.AbstractShape;
 import com.geometricdrawing.model.DrawingModel;
 
+import java.io.IOException;
+
 /**
  * Autore: Gruppo05
  * Scopo: Classe necessaria per il comando di mirroring di una figura.
@@ -28,4 +30,13 @@ public class MirrorShapeCommand implements Command {
         model.mirrorShape(shape, horizontal);
     }
 
+    void writeTo(CommandSpill.Output out) throws IOException {
+        out.writeModel(model);
+        out.writeShape(shape);
+        out.writeBoolean(horizontal);
+    }
+
+    static MirrorShapeCommand readFrom(CommandSpill.Input in) {
+        return new MirrorShapeCommand(in.readModel(), in.readShape(), in.readBoolean());
+    }
 }
@@ -3,6 +3,8 @@ package com.geometricdrawing.command;
 import com.geometricdrawing.model.AbstractShape;
 import com.geometricdrawing.model.DrawingModel;
 
+import java.io.IOException;
+
 /**
  * Autore: Gruppo05
  * Scopo: Command per lo spopstamento di una figura
@@ -24,6 +26,16 @@ public class MoveShapeCommand implements Command {
         this.oldY = shape != null ? shape.getY() : 0.0;
     }
 
+    // Usato per rileggere il comando dalla cronologia su file
+    private MoveShapeCommand(DrawingModel model, AbstractShape shape, double newX, double newY, double oldX, double oldY) {
+        this.model = model;
+        this.shape = shape;
+        this.newX = newX;
+        this.newY = newY;
+        this.oldX = oldX;
+        this.oldY = oldY;
+    }
+
     @Override
     public void execute() {
         // Muove la figura
@@ -42,4 +54,17 @@ public class MoveShapeCommand implements Command {
     public void setOldX(double oldX) {
         this.oldX = oldX;
     }
+
+    void writeTo(CommandSpill.Output out) throws IOException {
+        out.writeModel(model);
+        out.writeShape(shape);
+        out.writeDouble(newX);
+        out.writeDouble(newY);
+        out.writeDouble(oldX);
+        out.writeDouble(oldY);
+    }
+
+    static MoveShapeCommand readFrom(CommandSpill.Input in) {
+        return new MoveShapeCommand(in.readModel(), in.readShape(), in.readDouble(), in.readDouble(), in.readDouble(), in.readDouble());
+    }
 }
@@ -3,12 +3,17 @@ package com.geometricdrawing.command;
 import com.geometricdrawing.model.AbstractShape;
 import com.geometricdrawing.model.DrawingModel;
 
+import java.util.List;
+
+import java.io.IOException;
+
 public class PasteShapeCommand implements Command {
     private static final double DEFAULT_OFFSET = 10.0;
     private static int pasteCount = 0; // Contatore statico per tenere traccia delle incollature
     private final DrawingModel model;
     private final ClipboardManager clipboardManager;
-    private AbstractShape pastedShape;
+    private AbstractShape pastedShape; // prima figura incollata (quella usata per il posizionamento)
+    private List<AbstractShape> pastedShapes = List.of();
     private double targetX; // Usato solo se useAbsoluteCoordinates è true
     private double targetY; // Usato solo se useAbsoluteCoordinates è true
     private final boolean useAbsoluteCoordinates;
@@ -32,21 +37,33 @@ public class PasteShapeCommand implements Command {
     @Override
     public void execute() {
         if (clipboardManager.hasContent()) { //
-            this.pastedShape = clipboardManager.getFromClipboard(); // Già un clone profondo
-            if (this.pastedShape != null) {
-                if (useAbsoluteCoordinates) {
-                    model.moveShapeTo(pastedShape, targetX, targetY);
-                } else {
-                    // Applica offset cumulativo alla posizione originale della forma incollata
-                    pasteCount++;
-                    double offsetX = this.pastedShape.getX() + (DEFAULT_OFFSET * pasteCount);
-                    double offsetY = this.pastedShape.getY() + (DEFAULT_OFFSET * pasteCount);
-                    model.moveShapeTo(this.pastedShape, offsetX, offsetY);
+            // Le copie vengono create solo ora, all'incolla; la selezione copiata mantiene le posizioni relative
+            List<AbstractShape> shapes = clipboardManager.getAllFromClipboard();
+            this.pastedShape = shapes.get(0);
+            double deltaX;
+            double deltaY;
+            if (useAbsoluteCoordinates) {
+                deltaX = targetX - pastedShape.getX();
+                deltaY = targetY - pastedShape.getY();
+            } else {
+                // Applica offset cumulativo alla posizione originale delle forme incollate
+                pasteCount++;
+                deltaX = DEFAULT_OFFSET * pasteCount;
+                deltaY = DEFAULT_OFFSET * pasteCount;
+            }
+            model.beginBatch(); // una sola notifica per tutte le figure incollate
+            try {
+                for (AbstractShape shape : shapes) {
+                    model.moveShapeTo(shape, shape.getX() + deltaX, shape.getY() + deltaY);
+                    model.addShape(shape); //
                 }
-                model.addShape(this.pastedShape); //
+            } finally {
+                model.endBatch();
             }
+            this.pastedShapes = shapes;
         } else {
             this.pastedShape = null;
+            this.pastedShapes = List.of();
         }
     }
 
@@ -59,10 +76,59 @@ public class PasteShapeCommand implements Command {
         return pastedShape;
     }
 
+    public List<AbstractShape> getPastedShapes() {
+        return pastedShapes;
+    }
+
     @Override
     public void undo() {
-        if (pastedShape != null && model != null) {
-            model.removeShape(pastedShape);
+        if (model != null) {
+            model.beginBatch();
+            try {
+                for (int i = pastedShapes.size() - 1; i >= 0; i--) {
+                    model.removeShape(pastedShapes.get(i));
+                }
+            } finally {
+                model.endBatch();
+            }
         }
     }
-}
\ No newline at end of file
+
+    // Le figure tornano nella posizione in cui erano state incollate, senza nuove copie dagli appunti
+    @Override
+    public void redo() {
+        if (model != null) {
+            model.beginBatch();
+            try {
+                for (AbstractShape shape : pastedShapes) {
+                    model.addShape(shape);
+                }
+            } finally {
+                model.endBatch();
+            }
+        }
+    }
+
+    @Override
+    public long estimateSize() {
+        long size = BASE_SIZE;
+        for (AbstractShape shape : pastedShapes) {
+            size += Command.estimateShapeSize(shape);
+        }
+        return size;
+    }
+
+    // Le coordinate di destinazione non servono più: undo e redo usano solo le figure già incollate
+    void writeTo(CommandSpill.Output out) throws IOException {
+        out.writeModel(model);
+        out.writeClipboard(clipboardManager);
+        out.writeShapes(pastedShapes);
+    }
+
+    static PasteShapeCommand readFrom(CommandSpill.Input in) {
+        PasteShapeCommand command = new PasteShapeCommand(in.readModel(), in.readClipboard());
+        command.pastedShapes = in.readShapes();
+        command.pastedShape = command.pastedShapes.isEmpty() ? null : command.pastedShapes.get(0);
+        return command;
+    }
+}
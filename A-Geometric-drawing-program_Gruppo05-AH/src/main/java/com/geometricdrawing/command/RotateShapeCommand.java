@@ -4,13 +4,15 @@ import com.geometricdrawing.command.Command;
 import com.geometricdrawing.model.AbstractShape;
 import com.geometricdrawing.model.DrawingModel;
 
+import java.io.IOException;
+
 /**
  * Autore: Gruppo05
  * Scopo: Classe per il comando di rotazione di una forma
  */
 public class RotateShapeCommand implements Command {
     private final AbstractShape shape;
-    private final double deltaAngle;
+    private double deltaAngle; // somma dei passi di rotazione accorpati
     private final DrawingModel model; // Assuming 'model' is the shape itself for rotation
 
     public RotateShapeCommand(DrawingModel model, AbstractShape shape, double deltaAngle) {
@@ -28,4 +30,23 @@ public class RotateShapeCommand implements Command {
     public void undo() {
         model.rotateShape(shape, -deltaAngle);
     }
+
+    @Override
+    public boolean mergeWith(Command next) {
+        if (next instanceof RotateShapeCommand other && other.model == model && other.shape == shape) {
+            deltaAngle += other.deltaAngle;
+            return true;
+        }
+        return false;
+    }
+
+    void writeTo(CommandSpill.Output out) throws IOException {
+        out.writeModel(model);
+        out.writeShape(shape);
+        out.writeDouble(deltaAngle);
+    }
+
+    static RotateShapeCommand readFrom(CommandSpill.Input in) {
+        return new RotateShapeCommand(in.readModel(), in.readShape(), in.readDouble());
+    }
 }
@@ -3,6 +3,8 @@ package com.geometricdrawing.command;
 import com.geometricdrawing.model.AbstractShape;
 import com.geometricdrawing.model.DrawingModel;
 
+import java.io.IOException;
+
 public class StretchShapeCommand implements Command {
     private final DrawingModel model;
     private final AbstractShape shape;
@@ -45,4 +47,23 @@ public class StretchShapeCommand implements Command {
         model.setShapeWidth(shape, initialWidth);
         model.moveShapeTo(shape, initialX, initialY);
     }
-}
\ No newline at end of file
+
+    void writeTo(CommandSpill.Output out) throws IOException {
+        out.writeModel(model);
+        out.writeShape(shape);
+        out.writeDouble(initialX);
+        out.writeDouble(initialY);
+        out.writeDouble(initialWidth);
+        out.writeDouble(initialHeight);
+        out.writeDouble(finalX);
+        out.writeDouble(finalY);
+        out.writeDouble(finalWidth);
+        out.writeDouble(finalHeight);
+    }
+
+    static StretchShapeCommand readFrom(CommandSpill.Input in) {
+        return new StretchShapeCommand(in.readModel(), in.readShape(),
+                in.readDouble(), in.readDouble(), in.readDouble(), in.readDouble(),
+                in.readDouble(), in.readDouble(), in.readDouble(), in.readDouble());
+    }
+}
@@ -2,8 +2,6 @@ package com.geometricdrawing.controller;
 
 import com.geometricdrawing.GeometricDrawingApp;
 import com.geometricdrawing.command.*;
-import com.geometricdrawing.decorator.BorderColorDecorator;
-import com.geometricdrawing.decorator.FillColorDecorator;
 import com.geometricdrawing.decorator.ShapeDecorator;
 import com.geometricdrawing.factory.*;
 import com.geometricdrawing.model.TextShape;
@@ -11,8 +9,11 @@ import com.geometricdrawing.mousehandler.*;
 import com.geometricdrawing.strategy.*;
 import javafx.animation.PauseTransition;
 import javafx.collections.ListChangeListener;
+import javafx.concurrent.Task;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
+import javafx.geometry.BoundingBox;
+import javafx.geometry.Bounds;
 import javafx.geometry.Insets;
 import javafx.geometry.Point2D;
 import javafx.geometry.Pos;
@@ -22,6 +23,9 @@ import javafx.scene.canvas.Canvas;
 import javafx.scene.control.*;
 import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
+import javafx.scene.image.WritableImage;
+import javafx.scene.SnapshotParameters;
+import javafx.scene.transform.Transform;
 import javafx.scene.input.KeyCode;
 import javafx.scene.input.KeyEvent;
 import javafx.scene.input.KeyCombination;
@@ -29,7 +33,9 @@ import javafx.scene.layout.AnchorPane;
 import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.input.MouseEvent;
 import javafx.scene.input.MouseButton;
+import com.geometricdrawing.model.DirtyRegion;
 import com.geometricdrawing.model.DrawingModel;
+import com.geometricdrawing.model.ShapeSelection;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.VBox;
 import javafx.scene.paint.Color;
@@ -39,7 +45,16 @@ import javafx.stage.Modality;
 import javafx.stage.Stage;
 import javafx.stage.Window;
 import javafx.util.Duration;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileLock;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
 import java.util.function.UnaryOperator;
 import javafx.application.Platform;
 
@@ -99,12 +114,16 @@ public class DrawingController {
     private DrawingModel model;
     private GraphicsContext gc;
     private ShapeFactory currentShapeFactory; // Factory per la creazione della prossima figura
-    private AbstractShape currentShape; // Figura attualmente selezionata
+    private AbstractShape currentShape; // Figura attualmente selezionata (la principale della selezione)
+    private ShapeSelection selection; // Tutte le figure selezionate, creata insieme al modello
     private CommandManager commandManager; // Gestore comandi per undo/redo
     private ClipboardManager clipboardManager; // Gestore appunti per copia/incolla
     private SaveContext saveContext;
     private LoadContext loadContext;
+    private RecoveryJournal recoveryJournal; // diario dei comandi per il ripristino, null se non avviato
+    private FileLock journalLock; // lock della cartella del diario, tenuto finché il diario è in uso
     private ZoomHandler zoomHandler; // Gestore per i livelli di zoom
+    private RenderScheduler renderScheduler; // Accorpa le richieste di ridisegno in un solo ridisegno per frame
     private NewWorkspace newWorkspace;
     private Exit exit;
     private UserGuide userGuide;
@@ -116,6 +135,7 @@ public class DrawingController {
     private double startDragY = RESET_DRAG;
     private double initialDragShapeX_world; // Shape's world X at mouse press
     private double initialDragShapeY_world; // Shape's world Y at mouse press
+    private final Map<AbstractShape, Point2D> initialDragPositions = new LinkedHashMap<>(); // posizioni di partenza per il drag di più figure
     // Coordinate per "Incolla qui" (locali al canvas)
     private double lastCanvasMouseX;
     private double lastCanvasMouseY;
@@ -138,8 +158,57 @@ public class DrawingController {
     private int initialShapeScaleX_resize, initialShapeScaleY_resize;
     private AbstractShape shapeBeingResized; // Figura attualmente in fase di ridimensionamento
 
+    // Stato del ridisegno incrementale (area sporca)
+    private static final double SHAPE_STROKE_MARGIN = 1.0; // spessore del bordo delle figure oltre il loro ingombro (mondo)
+    private static final double DIRTY_MARGIN_PX = HANDLE_RADIUS * 2 + 2; // maniglie, tratteggio e antialiasing (pixel)
+    private boolean fullRepaintRequested = true;
+    private boolean lastFrameHadTempPolygon;
+    private double lastScrollX = Double.NaN, lastScrollY = Double.NaN, lastZoom = Double.NaN;
+    private double lastCanvasWidth = Double.NaN, lastCanvasHeight = Double.NaN;
+    private boolean lastGridVisible;
+    private double lastGridSize;
+    private AbstractShape lastHighlightedShape;
+    private int lastSelectionModCount;
+    private Bounds lastHighlightBounds;
+    private final List<AbstractShape> shapesToRepaint = new ArrayList<>();
+    // Statistiche dell'ultimo ridisegno completo: figure disegnate e figure scartate perché fuori dalla vista
+    private int lastDrawnShapeCount;
+    private int lastCulledShapeCount;
+
+    // Modalità interazione (drag/resize): le figure ferme vengono rasterizzate una sola volta in due livelli
+    private AbstractShape interactionShape; // figura manipolata, null se non c'è un'interazione in corso
+    private WritableImage interactionBelowLayer; // griglia e figure sotto quella manipolata
+    private WritableImage interactionAboveLayer; // figure sopra quella manipolata (null se è in cima)
+    private double interactionScrollX, interactionScrollY, interactionZoom;
+    private double interactionCanvasWidth, interactionCanvasHeight;
+
+    // Selezione ad area: rettangolo trascinato a partire da un punto vuoto del canvas (coordinate del mondo)
+    private Point2D marqueeStart; // null se non c'è una selezione ad area in corso
+    private Point2D marqueeEnd;
+    private boolean marqueeMoved; // il rettangolo è cambiato dall'ultimo frame: la selezione va ricalcolata
+    private final List<AbstractShape> marqueeHits = new ArrayList<>(); // figure selezionate dal rettangolo
+    private WritableImage marqueeLayer; // griglia e figure senza evidenziazione, rasterizzate all'inizio
+    private double marqueeScrollX, marqueeScrollY, marqueeZoom;
+    private double marqueeCanvasWidth, marqueeCanvasHeight;
+
     public void setModel(DrawingModel model) {
+        setModel(model, null);
+    }
+
+    /**
+     * Come setModel(model), indicando il file da cui il modello è stato caricato:
+     * il diario dei comandi riparte da quel file invece di scrivere una copia del disegno.
+     */
+    public void setModel(DrawingModel model, File document) {
         this.model = model;
+        if (selection != null) {
+            selection.dispose();
+        }
+        selection = model != null ? new ShapeSelection(model) : null;
+        if (recoveryJournal != null) {
+            recoveryJournal.reset(model, document);
+        }
+        requestFullRepaint(); // il canvas mostra ancora il modello precedente
         // Listener per ridisegnare il canvas quando le figure nel modello cambiano
         if (this.model != null && this.model.getShapes() != null) {
             this.model.getShapes().addListener((ListChangeListener.Change<? extends AbstractShape> c) -> {
@@ -174,8 +243,13 @@ public class DrawingController {
 
         if (drawingCanvas != null) {
             gc = drawingCanvas.getGraphicsContext2D();
+            renderScheduler = new RenderScheduler(this::paintCanvas);
             if (this.model == null) this.model = new DrawingModel();
-            if (this.commandManager == null) this.commandManager = new CommandManager();
+            if (this.commandManager == null) {
+                this.commandManager = new CommandManager();
+                // I comandi oltre la finestra in memoria passano su un file temporaneo, creato solo se serve
+                this.commandManager.setSpill(new CommandSpill());
+            }
             if (this.clipboardManager == null) this.clipboardManager = new ClipboardManager();
 
             setModel(this.model);
@@ -209,13 +283,8 @@ public class DrawingController {
                     AbstractShape clickedShape = null;
                     Point2D worldClickedPoint = zoomHandler.screenToWorld(event.getX(), event.getY());
 
-                    // Verifica se il click è avvenuto su una figura esistente
-                    for (AbstractShape shape : model.getShapesOrderedByZ()) { // Itera dalle figure più in alto (Z maggiore)
-                        if (shape.containsPoint(worldClickedPoint.getX(), worldClickedPoint.getY(), SELECTION_THRESHOLD)) {
-                            clickedShape = shape;
-                            break;
-                        }
-                    }
+                    // Verifica se il click è avvenuto su una figura esistente (la più in alto, tramite l'indice spaziale)
+                    clickedShape = model.getTopmostShapeAt(worldClickedPoint.getX(), worldClickedPoint.getY(), SELECTION_THRESHOLD);
 
                     if (clickedShape == null) { // Click su area vuota
                         if (clipboardManager.hasContent()) { // Se c'è contenuto negli appunti
@@ -404,8 +473,8 @@ public class DrawingController {
     @FXML
     public void handleRotation(double deltaAngle) {
         if (currentShape != null && rotationSpinner.getValue() != null) {
-            RotateShapeCommand cmd = new RotateShapeCommand(model, currentShape, -deltaAngle);
-            commandManager.executeCommand(cmd);
+            // ogni figura selezionata ruota attorno al proprio centro
+            applyToSelection(shape -> new RotateShapeCommand(model, shape, -deltaAngle));
             redrawCanvas();
         }
     }
@@ -413,8 +482,7 @@ public class DrawingController {
     @FXML
     private void handleMirrorHorizontalShape(ActionEvent event) {
         if (currentShape != null) {
-            MirrorShapeCommand mscmd = new MirrorShapeCommand(model, currentShape, true);
-            commandManager.executeCommand(mscmd);
+            applyToSelection(shape -> new MirrorShapeCommand(model, shape, true));
             redrawCanvas();
         }
     }
@@ -422,8 +490,7 @@ public class DrawingController {
     @FXML
     private void handleMirrorVerticalShape(ActionEvent event) {
         if (currentShape != null) {
-            MirrorShapeCommand mscmd = new MirrorShapeCommand(model, currentShape, false);
-            commandManager.executeCommand(mscmd);
+            applyToSelection(shape -> new MirrorShapeCommand(model, shape, false));
             redrawCanvas();
         }
     }
@@ -519,6 +586,13 @@ public class DrawingController {
             }
             event.consume();
         }
+        // Ripeti con CTRL+Y o CTRL+MAIUSC+Z
+        if (KeyCombination.keyCombination("CTRL+Y").match(event) || KeyCombination.keyCombination("CTRL+SHIFT+Z").match(event)) {
+            if (!isDrawingPolygon) {
+                handleRedo(new ActionEvent());
+            }
+            event.consume();
+        }
         // Incolla con CTRL+V (incolla con offset di default)
         if (KeyCombination.keyCombination("CTRL+V").match(event)) {
             if (clipboardManager.hasContent()) {
@@ -535,7 +609,7 @@ public class DrawingController {
      * @param disableBorderPicker Se il border picker deve essere disabilitato per questa factory.
      */
     private void initializeShapeSelection(ShapeFactory factory, boolean disableFillPicker, boolean disableBorderPicker) {
-        currentShape = null; // Deseleziona figura corrente
+        selectCurrentShape(null); // Deseleziona figura corrente
         currentShapeFactory = factory; // Imposta la factory attiva
 
         updateControlState(null); // Aggiorna stato UI
@@ -580,7 +654,7 @@ public class DrawingController {
         popupStage.initModality(Modality.APPLICATION_MODAL);
         popupStage.setTitle("Numero di vertici");
 
-        Spinner<Integer> spinner = new Spinner<>(3, 12, 1);
+        Spinner<Integer> spinner = new Spinner<>(PolygonFactory.MIN_POINTS, PolygonFactory.MAX_POINTS, 1);
         spinner.setEditable(true);
 
         Button okButton = new Button("OK");
@@ -642,7 +716,7 @@ public class DrawingController {
 
         // Riabilita il pulsante Annulla se ci sono comandi da annullare
         if (undoButton != null) {
-            undoButton.setDisable(!commandManager.getCommandStack().isEmpty());
+            undoButton.setDisable(!commandManager.canUndo());
         }
 
         System.out.println("DEBUG: Controlli riabilitati dopo il disegno del poligono.");
@@ -668,21 +742,21 @@ public class DrawingController {
             return; // Non esegue il comando
         }
 
-        Command cmd = null; // Comando da eseguire
-        if (isWidth) {
-            // Crea comando solo se il valore è effettivamente cambiato (evita comandi doppi per piccole fluttuazioni)
-            if (Math.abs(currentShape.getWidth() - newValue) > 0.001) { // Tolleranza per double
-                cmd = new ChangeWidthCommand(model, currentShape, newValue);
-            }
-        } else { // Modifica altezza
-            if (!(getBaseShape(currentShape) instanceof Line)) { // L'altezza della linea non è modificabile direttamente
-                if (Math.abs(currentShape.getHeight() - newValue) > 0.001) {
-                    cmd = new ChangeHeightCommand(model, currentShape, newValue);
+        // Con più figure selezionate la nuova dimensione vale per tutte
+        boolean changed = applyToSelection(shape -> {
+            if (isWidth) {
+                // Crea comando solo se il valore è effettivamente cambiato (evita comandi doppi per piccole fluttuazioni)
+                if (Math.abs(shape.getWidth() - newValue) > 0.001) { // Tolleranza per double
+                    return new ChangeWidthCommand(model, shape, newValue);
+                }
+            } else if (!(getBaseShape(shape) instanceof Line)) { // L'altezza della linea non è modificabile direttamente
+                if (Math.abs(shape.getHeight() - newValue) > 0.001) {
+                    return new ChangeHeightCommand(model, shape, newValue);
                 }
             }
-        }
-        if (cmd != null) {
-            commandManager.executeCommand(cmd); // Esegue il comando
+            return null;
+        });
+        if (changed) {
             redrawCanvas(); // Ridisegna per mostrare la modifica
         }
     }
@@ -694,26 +768,10 @@ public class DrawingController {
     public void handleChangeBorderColor(Color newColor) {
         if (currentShape == null || newColor == null) return;
 
-        AbstractShape shapeNavigator = currentShape;
-        BorderColorDecorator bcd = null; // Riferimento al decoratore del bordo
-
-        // Cerca il BorderColorDecorator più esterno (o l'unico)
-        while (shapeNavigator instanceof ShapeDecorator) {
-            if (shapeNavigator instanceof BorderColorDecorator) {
-                bcd = (BorderColorDecorator) shapeNavigator;
-                break;
-            }
-            shapeNavigator = ((ShapeDecorator) shapeNavigator).getInnerShape(); // Scende al decoratore interno
-        }
-        // Caso in cui currentShape stesso è il BorderColorDecorator (non ulteriormente wrappato per il bordo)
-        if (bcd == null && currentShape instanceof BorderColorDecorator) {
-            bcd = (BorderColorDecorator) currentShape;
-        }
-
-        // Se trovato e il colore è diverso, crea ed esegue il comando
-        if (bcd != null && !bcd.getBorderColor().equals(newColor)) {
-            ChangeBorderColorCommand cmd = new ChangeBorderColorCommand(model, bcd, newColor);
-            commandManager.executeCommand(cmd);
+        // Il colore è memorizzato nello stile della figura: si cambia solo se è effettivamente diverso
+        boolean changed = applyToSelection(shape -> newColor.equals(shape.getBorderColor())
+                ? null : new ChangeBorderColorCommand(model, shape, newColor));
+        if (changed) {
             redrawCanvas();
         }
     }
@@ -726,25 +784,10 @@ public class DrawingController {
         if (currentShape == null || newColor == null) return;
         if (getBaseShape(currentShape) instanceof Line) return; // Le linee non hanno riempimento
 
-        AbstractShape shapeNavigator = currentShape;
-        FillColorDecorator fcd = null; // Riferimento al decoratore di riempimento
-
-        // Cerca il FillColorDecorator
-        while (shapeNavigator instanceof ShapeDecorator) {
-            if (shapeNavigator instanceof FillColorDecorator) {
-                fcd = (FillColorDecorator) shapeNavigator;
-                break;
-            }
-            shapeNavigator = ((ShapeDecorator) shapeNavigator).getInnerShape();
-        }
-        if (fcd == null && currentShape instanceof FillColorDecorator) {
-            fcd = (FillColorDecorator) currentShape;
-        }
-
-        // Se trovato e il colore è diverso, crea ed esegue il comando
-        if (fcd != null && !fcd.getFillColor().equals(newColor)) {
-            ChangeFillColorCommand cmd = new ChangeFillColorCommand(model, fcd, newColor);
-            commandManager.executeCommand(cmd);
+        // Le linee di una selezione multipla restano senza riempimento
+        boolean changed = applyToSelection(shape -> getBaseShape(shape) instanceof Line || newColor.equals(shape.getFillColor())
+                ? null : new ChangeFillColorCommand(model, shape, newColor));
+        if (changed) {
             redrawCanvas();
         }
     }
@@ -800,12 +843,12 @@ public class DrawingController {
             boolean enableFontSizeSpinner = false;
             boolean enableMirroring = false;
     
-            currentShape = shape;
+            selectCurrentShape(shape);
     
             // Per gestire il comando di annullamento (undo)
             if (commandManager != null) {
                 // Verifico se ci sono comandi nello stack
-                boolean hasUndoableCommands = !commandManager.getCommandStack().isEmpty();
+                boolean hasUndoableCommands = commandManager.canUndo();
                 if (undoButton != null) {
                     undoButton.setDisable(!hasUndoableCommands || isDrawingPolygon);
                 }
@@ -828,28 +871,14 @@ public class DrawingController {
                 if (!(baseShape instanceof Line)) {
                     enableHeight = true;
                     enableFillPicker = true;
-                    AbstractShape fillSearch = shape;
-                    while (fillSearch instanceof ShapeDecorator) {
-                        if (fillSearch instanceof FillColorDecorator) {
-                            if (fillPicker != null) {
-                                fillPicker.setValue(((FillColorDecorator) fillSearch).getFillColor());
-                            }
-                            break;
-                        }
-                        fillSearch = ((ShapeDecorator) fillSearch).getInnerShape();
+                    if (fillPicker != null && shape.getFillColor() != null) {
+                        fillPicker.setValue(shape.getFillColor());
                     }
                 }
     
-                // Cerca BorderColorDecorator nella catena
-                AbstractShape borderSearch = shape;
-                while (borderSearch instanceof ShapeDecorator) {
-                    if (borderSearch instanceof BorderColorDecorator) {
-                        if (borderPicker != null) {
-                            borderPicker.setValue(((BorderColorDecorator) borderSearch).getBorderColor());
-                        }
-                        break;
-                    }
-                    borderSearch = ((ShapeDecorator) borderSearch).getInnerShape();
+                // I colori della figura sono memorizzati nel suo stile
+                if (borderPicker != null && shape.getBorderColor() != null) {
+                    borderPicker.setValue(shape.getBorderColor());
                 }
                 if (baseShape instanceof TextShape) {
                     enableTextField = true;
@@ -973,8 +1002,8 @@ public class DrawingController {
     public void handleDeleteShape(ActionEvent event) {
         if (currentShape != null && model != null && commandManager != null) {
             if(shapeMenu != null) shapeMenu.hide(); // Nasconde menu se aperto
-            DeleteShapeCommand deleteCmd = new DeleteShapeCommand(model, currentShape);
-            commandManager.executeCommand(deleteCmd);
+            // Per Z decrescente: l'annullamento rimette le figure in ordine di Z crescente, ognuna sopra la precedente
+            applyToSelection(getSelectedShapesByZ(true), shape -> new DeleteShapeCommand(model, shape));
             setCurrentShape(null); // Deseleziona la figura
             updateControlState(null); // Aggiorna UI
             updateSpinners(null);
@@ -987,8 +1016,21 @@ public class DrawingController {
         if (currentShape != null && model != null && commandManager != null && clipboardManager != null) {
             if (shapeMenu != null) shapeMenu.hide(); // Nasconde menu se aperto
 
-            CutShapeCommand cutCmd = new CutShapeCommand(model, currentShape, clipboardManager);
-            commandManager.executeCommand(cutCmd);
+            List<AbstractShape> targets = getSelectedShapesByZ(false);
+            if (targets.size() == 1) {
+                commandManager.executeCommand(new CutShapeCommand(model, targets.get(0), clipboardManager));
+            } else {
+                // selezione multipla: copia di tutte le figure e poi cancellazione, in un solo passo di annullamento
+                commandManager.beginBatch(model);
+                try {
+                    commandManager.executeCommand(CopyShapeCommand.ofShapes(targets, clipboardManager));
+                    for (AbstractShape shape : targets.reversed()) { // per Z decrescente, come in handleDeleteShape
+                        commandManager.executeCommand(new DeleteShapeCommand(model, shape));
+                    }
+                } finally {
+                    commandManager.endBatch();
+                }
+            }
             showCutCopyLabel();
 
             setCurrentShape(null);      // Deseleziona la figura
@@ -1003,8 +1045,8 @@ public class DrawingController {
         if (currentShape != null && model != null && commandManager != null) {
             if(shapeMenu != null) shapeMenu.hide(); // Nasconde il menu contestuale se risulta aperto
 
-            BringToForegroundCommand cmd = new BringToForegroundCommand(model, currentShape);
-            commandManager.executeCommand(cmd);
+            // In ordine di Z crescente: le figure portate in cima mantengono l'ordine che avevano tra loro
+            applyToSelection(getSelectedShapesByZ(false), shape -> new BringToForegroundCommand(model, shape));
             updateControlState(currentShape);
             redrawCanvas();
         }
@@ -1015,8 +1057,7 @@ public class DrawingController {
         if (currentShape != null && model != null && commandManager != null) {
             if(shapeMenu != null) shapeMenu.hide(); // Nasconde il menu contestuale se risulta aperto
 
-            BringToBackgroundCommand cmd = new BringToBackgroundCommand(model, currentShape);
-            commandManager.executeCommand(cmd);
+            applyToSelection(getSelectedShapesByZ(true), shape -> new BringToBackgroundCommand(model, shape));
             updateControlState(currentShape);
             redrawCanvas();
         }
@@ -1028,17 +1069,20 @@ public class DrawingController {
             commandManager.clear(); // Svuota lo stack dei comandi
             clipboardManager.clearClipboard();
         }
+        if (recoveryJournal != null) {
+            recoveryJournal.reset(model, null); // la nuova area di lavoro è la nuova base del diario
+        }
         updateScrollBars(); // Aggiorna le scrollbar dopo aver pulito i comandi/modello
     }
 
     /**
-     * Gestisce l'azione di copia della figura selezionata negli appunti.
+     * Gestisce l'azione di copia delle figure selezionate negli appunti.
      */
     @FXML
     public void handleCopyShape(ActionEvent event) {
         if (currentShape != null && commandManager != null && clipboardManager != null) {
-            CopyShapeCommand copyCmd = new CopyShapeCommand(currentShape, clipboardManager);
-            commandManager.executeCommand(copyCmd);
+            // per Z crescente: incollate, le figure mantengono l'ordine che avevano tra loro
+            commandManager.executeCommand(CopyShapeCommand.ofShapes(getSelectedShapesByZ(false), clipboardManager));
             showCutCopyLabel();
             updatePasteControlsState(); // Aggiorna disponibilità Incolla
         }
@@ -1160,6 +1204,23 @@ public class DrawingController {
         }
     }
 
+    /**
+     * Gestisce l'azione di Ripeti (Redo): riesegue l'ultimo comando annullato.
+     */
+    @FXML
+    public void handleRedo(ActionEvent event) {
+        if (model != null && commandManager != null && commandManager.canRedo()) {
+            if(shapeMenu != null) shapeMenu.hide();
+            commandManager.redo();
+
+            setCurrentShape(null);
+            updateControlState(null);
+            updateSpinners(null);
+            redrawCanvas();
+            updateScrollBars();
+        }
+    }
+
     /**
      * Gestisce l'azione di creazione di una nuova area di lavoro quando si clicca sul menu File -> Nuovo
      */
@@ -1175,14 +1236,8 @@ public class DrawingController {
     public AbstractShape selectShapeAt(double worldX, double worldY) {
         if (model == null) return null;
         // SELECTION_THRESHOLD è la tolleranza in unità del mondo.
-        AbstractShape selected = null;
-        // Itera sulle figure in ordine di Z decrescente (da quella più in alto a quella più in basso)
-        for (AbstractShape shape : model.getShapesOrderedByZ()) {
-            if (shape.containsPoint(worldX, worldY, SELECTION_THRESHOLD)) {
-                selected = shape; // Figura trovata
-                break;
-            }
-        }
+        // L'indice spaziale del modello controlla solo le figure vicine al punto e restituisce quella con Z maggiore
+        AbstractShape selected = model.getTopmostShapeAt(worldX, worldY, SELECTION_THRESHOLD);
 
         setCurrentShape(selected); // Imposta la figura corrente nel controller
         updateSpinners(selected);    // Aggiorna gli spinner con le dimensioni della figura
@@ -1255,24 +1310,139 @@ public class DrawingController {
     }
 
     /**
-     * Ridisegna l'intero contenuto del canvas.
-     * Cancella il canvas e ridisegna tutte le figure nel modello.
-     * Applica la trasformazione di zoom.
-     * Evidenzia la figura correntemente selezionata.
+     * Richiede il ridisegno del canvas. Il ridisegno è pianificato dal RenderScheduler e avviene al massimo
+     * una volta per frame: più richieste nello stesso frame (scrollbar, listener di dimensione, handler del mouse,
+     * spinner) producono un solo ridisegno. Prima dell'inizializzazione del pianificatore si disegna subito.
      */
     public void redrawCanvas() {
-        if (gc == null || drawingCanvas == null || model == null || zoomHandler == null || horizontalScrollBar == null || verticalScrollBar == null) {
-            System.err.println("redrawCanvas: Uno o più componenti non sono pronti.");
-            return;
+        if (renderScheduler != null) {
+            renderScheduler.requestRender();
+        } else {
+            paintCanvas();
+        }
+    }
+
+    /**
+     * Esegue subito l'eventuale ridisegno in attesa, ad esempio prima di catturare il canvas in un'immagine.
+     */
+    public void flushRedraw() {
+        if (renderScheduler != null) {
+            renderScheduler.flush();
         }
+    }
 
-        gc.clearRect(0, 0, drawingCanvas.getWidth(), drawingCanvas.getHeight());
+    public RenderScheduler getRenderScheduler() { return renderScheduler; }
 
-        gc.save(); // Salva lo stato iniziale del gc
+    /**
+     * Ridisegna il contenuto del canvas.
+     * Se la vista (scroll, zoom, dimensioni, griglia) è cambiata o è stato richiesto un ridisegno completo,
+     * cancella il canvas e ridisegna tutte le figure del modello; altrimenti ripulisce e ridisegna
+     * soltanto l'area sporca accumulata dal modello dall'ultimo ridisegno.
+     * Evidenzia la figura correntemente selezionata.
+     */
+    private void paintCanvas() {
+        if (gc == null || drawingCanvas == null || model == null || zoomHandler == null || horizontalScrollBar == null || verticalScrollBar == null) {
+            System.err.println("paintCanvas: Uno o più componenti non sono pronti.");
+            return;
+        }
 
         // Ottieni i valori di scroll (coordinate del mondo che dovrebbero essere in alto a sinistra)
         double scrollXWorld = horizontalScrollBar.isVisible() ? horizontalScrollBar.getValue() : 0;
         double scrollYWorld = verticalScrollBar.isVisible() ? verticalScrollBar.getValue() : 0;
+        double zoom = zoomHandler.getZoomFactor();
+        double canvasWidth = drawingCanvas.getWidth();
+        double canvasHeight = drawingCanvas.getHeight();
+        boolean gridVisible = grid != null && grid.isGridVisible();
+        double gridSize = grid != null ? grid.getGridSize() : 0;
+
+        boolean viewChanged = scrollXWorld != lastScrollX || scrollYWorld != lastScrollY || zoom != lastZoom
+                || canvasWidth != lastCanvasWidth || canvasHeight != lastCanvasHeight
+                || gridVisible != lastGridVisible || gridSize != lastGridSize;
+
+        DirtyRegion dirtyRegion = model.getDirtyRegion();
+
+        // Durante un drag/resize si ricompone il frame dai livelli già rasterizzati
+        if (interactionShape != null) {
+            if (interactionBelowLayer == null || scrollXWorld != interactionScrollX || scrollYWorld != interactionScrollY
+                    || zoom != interactionZoom || canvasWidth != interactionCanvasWidth || canvasHeight != interactionCanvasHeight) {
+                buildInteractionLayers(scrollXWorld, scrollYWorld, zoom, canvasWidth, canvasHeight);
+            }
+            if (interactionBelowLayer != null) {
+                composeInteractionFrame(scrollXWorld, scrollYWorld, canvasWidth, canvasHeight);
+                dirtyRegion.clear();
+                return; // alla fine dell'interazione endShapeInteraction richiede un ridisegno completo
+            }
+        }
+
+        // Durante la selezione ad area il disegno è fermo: il frame si compone dall'immagine in cache,
+        // con sopra l'evidenziazione delle figure nel rettangolo
+        if (marqueeStart != null) {
+            if (marqueeLayer == null || scrollXWorld != marqueeScrollX || scrollYWorld != marqueeScrollY
+                    || zoom != marqueeZoom || canvasWidth != marqueeCanvasWidth || canvasHeight != marqueeCanvasHeight) {
+                buildMarqueeLayer(scrollXWorld, scrollYWorld, zoom, canvasWidth, canvasHeight);
+            }
+            if (marqueeLayer != null) {
+                if (marqueeMoved) {
+                    applyMarqueeSelection(); // al più una interrogazione dell'indice per frame
+                }
+                composeMarqueeFrame(scrollXWorld, scrollYWorld, canvasWidth, canvasHeight);
+                dirtyRegion.clear();
+                return; // alla fine della selezione endMarquee richiede un ridisegno completo
+            }
+        }
+
+        // L'evidenziazione non fa parte del modello: se cambia la selezione (o la sua area)
+        // vanno ridisegnate sia la vecchia sia la nuova evidenziazione
+        Bounds highlightBounds = getHighlightBounds();
+        int selectionModCount = selection != null ? selection.getModCount() : 0;
+        if (currentShape != lastHighlightedShape || selectionModCount != lastSelectionModCount
+                || !Objects.equals(highlightBounds, lastHighlightBounds)) {
+            dirtyRegion.add(lastHighlightBounds);
+            dirtyRegion.add(highlightBounds);
+        }
+
+        // Il poligono temporaneo non appartiene al modello: finché è visibile si ridisegna tutto
+        boolean drawingTempPolygon = isDrawingPolygon;
+        if (fullRepaintRequested || viewChanged || drawingTempPolygon || lastFrameHadTempPolygon) {
+            repaintAll(scrollXWorld, scrollYWorld, zoom, canvasWidth, canvasHeight);
+        } else if (!dirtyRegion.isEmpty()) {
+            repaintRegion(dirtyRegion, scrollXWorld, scrollYWorld, zoom, canvasWidth, canvasHeight);
+        }
+
+        dirtyRegion.clear();
+        fullRepaintRequested = false;
+        lastFrameHadTempPolygon = drawingTempPolygon;
+        lastScrollX = scrollXWorld;
+        lastScrollY = scrollYWorld;
+        lastZoom = zoom;
+        lastCanvasWidth = canvasWidth;
+        lastCanvasHeight = canvasHeight;
+        lastGridVisible = gridVisible;
+        lastGridSize = gridSize;
+        lastHighlightedShape = currentShape;
+        lastSelectionModCount = selectionModCount;
+        lastHighlightBounds = highlightBounds;
+    }
+
+    // Area occupata dall'evidenziazione: con più figure selezionate, l'ingombro complessivo tenuto in cache dalla selezione
+    private Bounds getHighlightBounds() {
+        if (currentShape == null) {
+            return null;
+        }
+        return isMultipleSelection() ? selection.getBounds() : currentShape.getWorldBounds();
+    }
+
+    private boolean isHighlighted(AbstractShape shape) {
+        return shape == currentShape || (currentShape != null && selection != null && selection.contains(shape));
+    }
+
+    /**
+     * Cancella l'intero canvas e ridisegna griglia, figure ed evidenziazione.
+     */
+    private void repaintAll(double scrollXWorld, double scrollYWorld, double zoom, double canvasWidth, double canvasHeight) {
+        gc.clearRect(0, 0, canvasWidth, canvasHeight);
+
+        gc.save(); // Salva lo stato iniziale del gc
 
         // Applica prima lo zoom
         zoomHandler.applyZoomTransformation(gc); // gc ora è scalato
@@ -1280,30 +1450,349 @@ public class DrawingController {
         gc.translate(-scrollXWorld, -scrollYWorld); // gc ora è scalato E traslato per lo scroll
 
         // Disegna la griglia: necessita di sapere la porzione visibile del mondo
+        Bounds visibleWorld = zoomHandler.getVisibleWorldBounds(canvasWidth, canvasHeight);
+        if (grid != null && grid.isGridVisible()) {
+            grid.drawGrid(gc, visibleWorld.getMinX(), visibleWorld.getMinY(), visibleWorld.getWidth(), visibleWorld.getHeight());
+        }
+
+        // Solo le figure il cui ingombro ruotato interseca la vista, in ordine di Z
+        List<AbstractShape> visibleShapes = collectShapesToDraw(visibleWorld.getMinX(), visibleWorld.getMinY(),
+                visibleWorld.getMaxX(), visibleWorld.getMaxY(), zoom);
+        drawShapes(visibleShapes);
+        updateCullingStats(visibleShapes.size(), model.getShapes().size());
+        visibleShapes.clear();
+
+        // DOPO tutte le altre figure per farlo apparire sopra
+        drawTempPolygon();
+        gc.restore(); // Ripristina lo stato del gc precedente a save()
+    }
+
+    /**
+     * Ripulisce e ridisegna solo la porzione di canvas corrispondente all'area sporca del modello.
+     * L'area viene allargata per includere bordi, maniglie e antialiasing e arrotondata a pixel interi,
+     * poi il disegno viene ritagliato (clip) su di essa: i pixel ottenuti sono identici a un ridisegno completo.
+     */
+    private void repaintRegion(DirtyRegion dirtyRegion, double scrollXWorld, double scrollYWorld, double zoom,
+                               double canvasWidth, double canvasHeight) {
+        double margin = SHAPE_STROKE_MARGIN + DIRTY_MARGIN_PX / zoom; // in unità del mondo
+
+        // Area sporca in pixel, arrotondata verso l'esterno e limitata al canvas
+        double screenMinX = Math.max(0, Math.floor((dirtyRegion.getMinX() - margin - scrollXWorld) * zoom));
+        double screenMinY = Math.max(0, Math.floor((dirtyRegion.getMinY() - margin - scrollYWorld) * zoom));
+        double screenMaxX = Math.min(canvasWidth, Math.ceil((dirtyRegion.getMaxX() + margin - scrollXWorld) * zoom));
+        double screenMaxY = Math.min(canvasHeight, Math.ceil((dirtyRegion.getMaxY() + margin - scrollYWorld) * zoom));
+        if (screenMaxX <= screenMinX || screenMaxY <= screenMinY) {
+            return; // la modifica è fuori dalla parte visibile
+        }
+        double screenWidth = screenMaxX - screenMinX;
+        double screenHeight = screenMaxY - screenMinY;
+
+        gc.clearRect(screenMinX, screenMinY, screenWidth, screenHeight);
+
+        gc.save();
+        gc.beginPath();
+        gc.rect(screenMinX, screenMinY, screenWidth, screenHeight);
+        gc.clip();
+
+        zoomHandler.applyZoomTransformation(gc);
+        gc.translate(-scrollXWorld, -scrollYWorld);
+
+        // Porzione del mondo corrispondente ai pixel ripuliti
+        double worldMinX = screenMinX / zoom + scrollXWorld;
+        double worldMinY = screenMinY / zoom + scrollYWorld;
+        double worldWidth = screenWidth / zoom;
+        double worldHeight = screenHeight / zoom;
+
         if (grid != null && grid.isGridVisible()) {
-            double viewPortWorldWidth = drawingCanvas.getWidth() / zoomHandler.getZoomFactor();
-            double viewPortWorldHeight = drawingCanvas.getHeight() / zoomHandler.getZoomFactor();
-            grid.drawGrid(gc, scrollXWorld, scrollYWorld, viewPortWorldWidth, viewPortWorldHeight);
+            grid.drawGrid(gc, worldMinX, worldMinY, worldWidth, worldHeight);
         }
 
-        for (AbstractShape shape : model.getShapes()) {
+        // Solo le figure (e le maniglie) che possono lasciare pixel nell'area, in ordine di Z
+        List<AbstractShape> regionShapes = collectShapesToDraw(worldMinX, worldMinY, worldMinX + worldWidth, worldMinY + worldHeight, zoom);
+        drawShapes(regionShapes);
+        regionShapes.clear();
+
+        gc.restore();
+    }
+
+    /**
+     * Raccoglie, in ordine di Z, le figure che possono lasciare pixel nel rettangolo del mondo indicato.
+     * Il rettangolo viene allargato per includere bordi e maniglie di selezione, che sporgono dall'ingombro.
+     * La lista restituita è riutilizzata tra un ridisegno e l'altro: va svuotata dopo l'uso.
+     */
+    private List<AbstractShape> collectShapesToDraw(double worldMinX, double worldMinY, double worldMaxX, double worldMaxY, double zoom) {
+        double margin = SHAPE_STROKE_MARGIN + DIRTY_MARGIN_PX / zoom;
+        shapesToRepaint.clear();
+        model.collectShapesIn(worldMinX - margin, worldMinY - margin, worldMaxX + margin, worldMaxY + margin, shapesToRepaint);
+        return shapesToRepaint;
+    }
+
+    private void updateCullingStats(int drawnCount, int totalCount) {
+        lastDrawnShapeCount = drawnCount;
+        lastCulledShapeCount = Math.max(0, totalCount - drawnCount);
+    }
+
+    /** Numero di figure disegnate nell'ultimo ridisegno completo (diagnostica) */
+    public int getLastDrawnShapeCount() { return lastDrawnShapeCount; }
+
+    /** Numero di figure scartate perché fuori dalla parte visibile nell'ultimo ridisegno completo (diagnostica) */
+    public int getLastCulledShapeCount() { return lastCulledShapeCount; }
+
+    // Disegna le figure nell'ordine dato, evidenziando quelle selezionate
+    private void drawShapes(List<AbstractShape> shapes) {
+        drawShapes(shapes, true);
+    }
+
+    private void drawShapes(List<AbstractShape> shapes, boolean withHighlight) {
+        boolean withHandles = !isMultipleSelection(); // il ridimensionamento con le maniglie è per una figura sola
+        for (AbstractShape shape : shapes) {
             if (shape != null) {
                 shape.draw(gc); // Il metodo draw della forma gestisce la sua posizione e rotazione
                 // rispetto al gc già trasformato (scalato e scrollato)
-                if (shape == currentShape) {
-                    drawHighlightBorder(shape);
+                if (withHighlight && isHighlighted(shape)) {
+                    drawHighlightBorder(shape, withHandles);
                 }
             }
         }
+    }
+
+    /**
+     * Entra nella modalità interazione per la figura indicata (chiamato all'inizio di un drag o di un resize).
+     * Tutte le altre figure vengono rasterizzate una sola volta in due immagini, quelle sotto e quelle sopra
+     * la figura attiva: finché dura l'interazione ogni frame compone le due immagini con la sola figura attiva.
+     */
+    public void beginShapeInteraction(AbstractShape shape) {
+        if (shape == null || shape == interactionShape) {
+            return;
+        }
+        interactionShape = shape;
+        interactionBelowLayer = null; // i livelli vengono creati al primo redrawCanvas
+        interactionAboveLayer = null;
+    }
 
-        // DOPO tutte le altre figure per farlo apparire sopra
-        drawTempPolygon();
-        gc.restore(); // Ripristina lo stato del gc precedente a save()
+    /**
+     * Esce dalla modalità interazione (chiamato al rilascio del mouse) e scarta i livelli in cache.
+     */
+    public void endShapeInteraction() {
+        if (interactionShape == null) {
+            return;
+        }
+        interactionShape = null;
+        interactionBelowLayer = null;
+        interactionAboveLayer = null;
+        requestFullRepaint();
+    }
+
+    public boolean isInteractionActive() {
+        return interactionShape != null;
+    }
+
+    // Rasterizza le figure sotto e sopra quella attiva per la vista corrente
+    private void buildInteractionLayers(double scrollXWorld, double scrollYWorld, double zoom, double canvasWidth, double canvasHeight) {
+        interactionBelowLayer = null;
+        interactionAboveLayer = null;
+
+        List<AbstractShape> shapes = model.getShapes();
+        int activeZ = interactionShape.getZ();
+        if (canvasWidth <= 0 || canvasHeight <= 0 || activeZ < 0 || activeZ >= shapes.size() || shapes.get(activeZ) != interactionShape) {
+            return; // figura non più nel modello: si torna al ridisegno normale
+        }
+
+        // Le figure visibili sono ordinate per Z: quelle prima della figura attiva vanno sotto, le altre sopra
+        Bounds visibleWorld = zoomHandler.getVisibleWorldBounds(canvasWidth, canvasHeight);
+        List<AbstractShape> visibleShapes = collectShapesToDraw(visibleWorld.getMinX(), visibleWorld.getMinY(),
+                visibleWorld.getMaxX(), visibleWorld.getMaxY(), zoom);
+        int split = 0;
+        while (split < visibleShapes.size() && visibleShapes.get(split).getZ() < activeZ) {
+            split++;
+        }
+        int aboveStart = split < visibleShapes.size() && visibleShapes.get(split) == interactionShape ? split + 1 : split;
+        int staticCount = split + (visibleShapes.size() - aboveStart);
+        updateCullingStats(staticCount, shapes.size() - 1);
+
+        interactionBelowLayer = renderLayer(visibleShapes.subList(0, split), true, true, scrollXWorld, scrollYWorld, zoom, canvasWidth, canvasHeight);
+        if (activeZ < shapes.size() - 1) {
+            interactionAboveLayer = renderLayer(visibleShapes.subList(aboveStart, visibleShapes.size()), false, true, scrollXWorld, scrollYWorld, zoom, canvasWidth, canvasHeight);
+        }
+        visibleShapes.clear();
+        interactionScrollX = scrollXWorld;
+        interactionScrollY = scrollYWorld;
+        interactionZoom = zoom;
+        interactionCanvasWidth = canvasWidth;
+        interactionCanvasHeight = canvasHeight;
+    }
+
+    // Disegna le figure sul canvas vuoto e ne cattura un'immagine con sfondo trasparente
+    private WritableImage renderLayer(List<AbstractShape> layerShapes, boolean withGrid, boolean withHighlight, double scrollXWorld, double scrollYWorld,
+                                      double zoom, double canvasWidth, double canvasHeight) {
+        gc.clearRect(0, 0, canvasWidth, canvasHeight);
+        gc.save();
+        zoomHandler.applyZoomTransformation(gc);
+        gc.translate(-scrollXWorld, -scrollYWorld);
+        if (withGrid && grid != null && grid.isGridVisible()) {
+            grid.drawGrid(gc, scrollXWorld, scrollYWorld, canvasWidth / zoom, canvasHeight / zoom);
+        }
+        drawShapes(layerShapes, withHighlight);
+        gc.restore();
+
+        // L'immagine usa la stessa densità di pixel dello schermo, così la composizione non sfoca il disegno
+        double renderScale = getRenderScale();
+        SnapshotParameters params = new SnapshotParameters();
+        params.setFill(Color.TRANSPARENT);
+        params.setTransform(Transform.scale(renderScale, renderScale));
+        return drawingCanvas.snapshot(params, null);
+    }
+
+    // Compone il frame: livello inferiore, figura attiva con evidenziazione, livello superiore
+    private void composeInteractionFrame(double scrollXWorld, double scrollYWorld, double canvasWidth, double canvasHeight) {
+        gc.clearRect(0, 0, canvasWidth, canvasHeight);
+        gc.drawImage(interactionBelowLayer, 0, 0, canvasWidth, canvasHeight);
+
+        gc.save();
+        zoomHandler.applyZoomTransformation(gc);
+        gc.translate(-scrollXWorld, -scrollYWorld);
+        interactionShape.draw(gc);
+        if (isHighlighted(interactionShape)) {
+            drawHighlightBorder(interactionShape, !isMultipleSelection());
+        }
+        gc.restore();
+
+        if (interactionAboveLayer != null) {
+            gc.drawImage(interactionAboveLayer, 0, 0, canvasWidth, canvasHeight);
+        }
+    }
+
+    /**
+     * Inizia una selezione ad area dal punto indicato (coordinate del mondo), chiamato alla pressione del mouse
+     * su una parte vuota del canvas. In qualunque direzione si trascini vengono selezionate tutte le figure
+     * che intersecano il rettangolo, comprese quelle interamente contenute.
+     */
+    public void beginMarquee(double worldX, double worldY) {
+        marqueeStart = new Point2D(worldX, worldY);
+        marqueeEnd = marqueeStart;
+        marqueeMoved = false;
+        marqueeHits.clear();
+        marqueeLayer = null; // creato al primo redrawCanvas
+    }
+
+    /**
+     * Aggiorna l'angolo opposto del rettangolo durante il trascinamento. La selezione viene ricalcolata
+     * al ridisegno successivo, quindi una volta per frame anche se gli eventi del mouse sono più frequenti.
+     */
+    public void updateMarquee(double worldX, double worldY) {
+        if (marqueeStart == null) {
+            return;
+        }
+        marqueeEnd = new Point2D(worldX, worldY);
+        marqueeMoved = true;
+        redrawCanvas();
+    }
+
+    /**
+     * Conclude la selezione ad area (rilascio del mouse): la figura corrente diventa la principale della selezione.
+     */
+    public void endMarquee() {
+        if (marqueeStart == null) {
+            return;
+        }
+        if (marqueeMoved) {
+            applyMarqueeSelection();
+        }
+        marqueeStart = null;
+        marqueeEnd = null;
+        marqueeHits.clear();
+        marqueeLayer = null;
+        setCurrentShape(selection != null ? selection.getPrimary() : null);
+        requestFullRepaint();
+    }
+
+    public boolean isMarqueeActive() {
+        return marqueeStart != null;
+    }
+
+    /**
+     * @return il rettangolo della selezione ad area in coordinate del mondo, oppure null se non è in corso
+     */
+    public Bounds getMarqueeBounds() {
+        if (marqueeStart == null) {
+            return null;
+        }
+        return new BoundingBox(Math.min(marqueeStart.getX(), marqueeEnd.getX()), Math.min(marqueeStart.getY(), marqueeEnd.getY()),
+                Math.abs(marqueeEnd.getX() - marqueeStart.getX()), Math.abs(marqueeEnd.getY() - marqueeStart.getY()));
+    }
+
+    // Interroga l'indice spaziale del modello con il rettangolo e sostituisce la selezione con il risultato
+    private void applyMarqueeSelection() {
+        marqueeMoved = false;
+        if (selection == null) {
+            return;
+        }
+        Bounds area = getMarqueeBounds();
+        marqueeHits.clear();
+        model.collectShapesInArea(area.getMinX(), area.getMinY(), area.getMaxX(), area.getMaxY(), false, marqueeHits);
+        if (selection.replaceWith(marqueeHits)) {
+            currentShape = selection.getPrimary(); // la selezione contiene già la principale
+        }
+    }
+
+    // Rasterizza griglia e figure visibili senza evidenziazione: l'evidenziazione cambia a ogni frame
+    private void buildMarqueeLayer(double scrollXWorld, double scrollYWorld, double zoom, double canvasWidth, double canvasHeight) {
+        marqueeLayer = null;
+        if (canvasWidth <= 0 || canvasHeight <= 0) {
+            return;
+        }
+        Bounds visibleWorld = zoomHandler.getVisibleWorldBounds(canvasWidth, canvasHeight);
+        List<AbstractShape> visibleShapes = collectShapesToDraw(visibleWorld.getMinX(), visibleWorld.getMinY(),
+                visibleWorld.getMaxX(), visibleWorld.getMaxY(), zoom);
+        updateCullingStats(visibleShapes.size(), model.getShapes().size());
+        marqueeLayer = renderLayer(visibleShapes, true, false, scrollXWorld, scrollYWorld, zoom, canvasWidth, canvasHeight);
+        visibleShapes.clear();
+        marqueeScrollX = scrollXWorld;
+        marqueeScrollY = scrollYWorld;
+        marqueeZoom = zoom;
+        marqueeCanvasWidth = canvasWidth;
+        marqueeCanvasHeight = canvasHeight;
+    }
+
+    // Compone il frame: disegno in cache, evidenziazione delle figure selezionate e rettangolo di selezione
+    private void composeMarqueeFrame(double scrollXWorld, double scrollYWorld, double canvasWidth, double canvasHeight) {
+        gc.clearRect(0, 0, canvasWidth, canvasHeight);
+        gc.drawImage(marqueeLayer, 0, 0, canvasWidth, canvasHeight);
+
+        gc.save();
+        zoomHandler.applyZoomTransformation(gc);
+        gc.translate(-scrollXWorld, -scrollYWorld);
+        boolean withHandles = marqueeHits.size() == 1;
+        for (AbstractShape shape : marqueeHits) {
+            drawHighlightBorder(shape, withHandles);
+        }
+
+        Bounds area = getMarqueeBounds();
+        double zoomFactor = zoomHandler.getZoomFactor();
+        gc.setFill(Color.rgb(135, 206, 235, 0.15));
+        gc.fillRect(area.getMinX(), area.getMinY(), area.getWidth(), area.getHeight());
+        gc.setStroke(Color.STEELBLUE);
+        gc.setLineWidth(1.0 / zoomFactor);
+        gc.setLineDashes(new double[] {4.0 / zoomFactor});
+        gc.strokeRect(area.getMinX(), area.getMinY(), area.getWidth(), area.getHeight());
+        gc.restore();
+    }
+
+    private double getRenderScale() {
+        Window window = getWindow();
+        return window != null ? window.getRenderScaleX() : 1.0;
+    }
+
+    /**
+     * Forza un ridisegno completo al prossimo redrawCanvas (ad esempio dopo la sostituzione del modello).
+     */
+    public void requestFullRepaint() {
+        fullRepaintRequested = true;
     }
 
 
-    // Disegna il bordo di evidenziazione e le maniglie per la figura selezionata
-    private void drawHighlightBorder(AbstractShape shape) {
+    // Disegna il bordo di evidenziazione e, se richiesto, le maniglie per la figura selezionata
+    private void drawHighlightBorder(AbstractShape shape, boolean withHandles) {
         AbstractShape baseShape = getBaseShape(shape); // Ottiene la forma base (non decorata)
 
         gc.save();
@@ -1325,22 +1814,26 @@ public class DrawingController {
             // Le maniglie sono alle estremità. In questo sistema centrato, l'inizio è (relX, relY), la fine è (relX + w, relY + h)
             gc.strokeLine(relX, relY, relX + w, relY + h); // Disegna la linea rispetto al suo centro
 
-            drawResizeHandle(relX, relY, HandleType.LINE_START);
-            drawResizeHandle(relX + w, relY + h, HandleType.LINE_END);
+            if (withHandles) {
+                drawResizeHandle(relX, relY, HandleType.LINE_START);
+                drawResizeHandle(relX + w, relY + h, HandleType.LINE_END);
+            }
         } else {
             gc.strokeRect(relX, relY, w, h); // Disegna il rettangolo di selezione rispetto al centro
 
-            // Maniglie agli angoli
-            drawResizeHandle(relX, relY, HandleType.TOP_LEFT);
-            drawResizeHandle(relX + w, relY, HandleType.TOP_RIGHT);
-            drawResizeHandle(relX, relY + h, HandleType.BOTTOM_LEFT);
-            drawResizeHandle(relX + w, relY + h, HandleType.BOTTOM_RIGHT);
-
-            // Maniglie sui lati
-            drawResizeHandle(relX + w / 2, relY, HandleType.TOP_CENTER);
-            drawResizeHandle(relX + w / 2, relY + h, HandleType.BOTTOM_CENTER);
-            drawResizeHandle(relX, relY + h / 2, HandleType.LEFT_CENTER);
-            drawResizeHandle(relX + w, relY + h / 2, HandleType.RIGHT_CENTER);
+            if (withHandles) {
+                // Maniglie agli angoli
+                drawResizeHandle(relX, relY, HandleType.TOP_LEFT);
+                drawResizeHandle(relX + w, relY, HandleType.TOP_RIGHT);
+                drawResizeHandle(relX, relY + h, HandleType.BOTTOM_LEFT);
+                drawResizeHandle(relX + w, relY + h, HandleType.BOTTOM_RIGHT);
+
+                // Maniglie sui lati
+                drawResizeHandle(relX + w / 2, relY, HandleType.TOP_CENTER);
+                drawResizeHandle(relX + w / 2, relY + h, HandleType.BOTTOM_CENTER);
+                drawResizeHandle(relX, relY + h / 2, HandleType.LEFT_CENTER);
+                drawResizeHandle(relX + w, relY + h / 2, HandleType.RIGHT_CENTER);
+            }
         }
         gc.restore();
     }
@@ -1371,6 +1864,7 @@ public class DrawingController {
      */
     public HandleType getHandleAtScreenPoint(AbstractShape selectedShape, double screenX, double screenY) {
         if (selectedShape == null || zoomHandler == null) return null;
+        if (isMultipleSelection()) return null; // con più figure selezionate le maniglie non sono disegnate
 
         AbstractShape baseShape = getBaseShape(selectedShape);
         Point2D[] handleLocalCenters = getHandleLocalCenters(baseShape); // Centri delle maniglie relativi al centro della figura, non ruotata né scalata
@@ -1578,21 +2072,13 @@ public class DrawingController {
         double contentMaxX = viewPortWorldWidth; // Default se non ci sono forme
         double contentMaxY = viewPortWorldHeight; // Default se non ci sono forme
 
-        if (model != null && !model.getShapes().isEmpty()) {
-            contentMinX = model.getShapes().stream()
-                    .mapToDouble(AbstractShape::getX)
-                    .min().orElse(0);
-            contentMinY = model.getShapes().stream()
-                    .mapToDouble(AbstractShape::getY)
-                    .min().orElse(0);
-            contentMaxX = model.getShapes().stream()
-                    .mapToDouble(s -> s.getX() + s.getWidth())
-                    .max().orElse(viewPortWorldWidth);
-            contentMaxY = model.getShapes().stream()
-                    .mapToDouble(s -> s.getY() + s.getHeight())
-                    .max().orElse(viewPortWorldHeight);
-        } else {
-            System.out.println("  Modello vuoto.");
+        // Ingombro complessivo mantenuto dal modello: nessuna scansione delle figure
+        Bounds contentBounds = model.getContentBounds();
+        if (contentBounds != null) {
+            contentMinX = contentBounds.getMinX();
+            contentMinY = contentBounds.getMinY();
+            contentMaxX = contentBounds.getMaxX();
+            contentMaxY = contentBounds.getMaxY();
         }
 
         // Assicura che l'area scrollabile si estenda almeno per coprire la viewport corrente partendo da (0,0)
@@ -1650,6 +2136,18 @@ public class DrawingController {
     }
 
     // --- Gestori per i bottoni del menu File e Zoom ---
+    @FXML public void handleSave(ActionEvent event) {
+        if (saveContext != null) {
+            saveContext.setStrategy(new BinarySaveStrategy());
+            saveContext.execute();
+        }
+    }
+    @FXML public void handleLoad(ActionEvent event) {
+        if (loadContext != null) {
+            loadContext.setStrategy(new MappedLoadStrategy(true));
+            loadContext.execute();
+        }
+    }
     @FXML public void handleSaveSerialized(ActionEvent event) {
         if (saveContext != null) {
             saveContext.setStrategy(new SerializedSaveStrategy() {
@@ -1730,9 +2228,10 @@ public class DrawingController {
                 commandManager.executeCommand(cmd);
 
                 // Calcola e applica le nuove dimensioni del rettangolo
+                // passando dal modello l'indice spaziale resta allineato alle nuove dimensioni
                 Point2D naturalSize = textShape.getNaturalTextBlockDimensions(Double.MAX_VALUE);
-                textShape.setWidth(naturalSize.getX());
-                textShape.setHeight(naturalSize.getY());
+                model.setShapeWidth(currentShape, naturalSize.getX());
+                model.setShapeHeight(currentShape, naturalSize.getY());
 
                 redrawCanvas();
             }
@@ -1801,6 +2300,101 @@ public class DrawingController {
     // --- Metodi Getter e Setter usati principalmente dai gestori eventi o per test ---
     public Window getWindow() { return (drawingCanvas != null && drawingCanvas.getScene() != null) ? drawingCanvas.getScene().getWindow() : null; }
 
+    /**
+     * Mostra, senza bloccare l'interfaccia, l'avanzamento di un'operazione in background con la possibilità di annullarla.
+     */
+    public void showTaskProgress(Task<?> task, String title) {
+        showTaskProgress(task, title, false);
+    }
+
+    /**
+     * Come showTaskProgress(task, title); con modal l'interfaccia resta bloccata finché l'operazione non termina.
+     */
+    public void showTaskProgress(Task<?> task, String title, boolean modal) {
+        new TaskProgressDialog(task, title, getWindow(), modal).show();
+    }
+
+    /**
+     * Avvia il diario dei comandi nella cartella indicata. Se la sessione precedente si è chiusa in modo
+     * imprevisto, nella cartella è rimasto il suo diario: il disegno viene prima ricostruito da quello.
+     * Un diario che non è possibile ripristinare viene messo da parte, non sostituito. Se la cartella è già
+     * usata da un'altra istanza dell'applicazione, questa usa una cartella propria e non ripristina niente.
+     */
+    public void startRecoveryJournal(Path directory) {
+        if (recoveryJournal != null || commandManager == null) {
+            return;
+        }
+        try {
+            journalLock = RecoveryJournal.tryLock(directory);
+            if (journalLock == null) {
+                directory = RecoveryJournal.instanceDirectory(directory);
+                journalLock = RecoveryJournal.tryLock(directory);
+                if (journalLock == null) {
+                    System.err.println("Diario dei comandi non disponibile: la cartella " + directory + " è già in uso.");
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Diario dei comandi non disponibile: " + e.getMessage());
+            return;
+        }
+        try {
+            DrawingModel recovered = new DrawingModel();
+            if (RecoveryJournal.recover(directory, recovered) && !recovered.isEmpty()) {
+                setModel(recovered);
+                redrawCanvas();
+                showAlertDialog(Alert.AlertType.INFORMATION, "Disegno Ripristinato",
+                        "L'applicazione non era stata chiusa correttamente: è stato ripristinato il disegno non salvato.");
+            }
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Impossibile ripristinare il disegno dal diario dei comandi: " + e.getMessage());
+            try {
+                Path archive = RecoveryJournal.archiveFailed(directory);
+                showAlertDialog(Alert.AlertType.WARNING, "Ripristino Non Riuscito", "Impossibile ripristinare il disegno non salvato:\n"
+                        + e.getMessage() + "\n\nIl diario è stato conservato in:\n" + archive);
+            } catch (IOException archiveError) {
+                // Il nuovo diario sostituirebbe quello non ripristinato: meglio lavorare senza diario
+                System.err.println("Impossibile conservare il diario non ripristinato: " + archiveError.getMessage());
+                showAlertDialog(Alert.AlertType.WARNING, "Ripristino Non Riuscito", "Impossibile ripristinare il disegno non salvato:\n"
+                        + e.getMessage() + "\n\nIl diario è rimasto in " + directory + " e in questa sessione non verrà aggiornato.");
+                releaseJournalLock();
+                return;
+            }
+        }
+        try {
+            recoveryJournal = RecoveryJournal.start(directory, model);
+            commandManager.setJournal(recoveryJournal);
+        } catch (IOException e) {
+            System.err.println("Diario dei comandi non disponibile: " + e.getMessage());
+            releaseJournalLock();
+        }
+    }
+
+    /**
+     * Chiude il diario dei comandi; con discard ne elimina i file (chiusura regolare dell'applicazione).
+     */
+    public void closeRecoveryJournal(boolean discard) {
+        if (recoveryJournal != null) {
+            commandManager.setJournal(null);
+            recoveryJournal.close(discard);
+            recoveryJournal = null;
+        }
+        releaseJournalLock();
+    }
+
+    private void releaseJournalLock() {
+        if (journalLock != null) {
+            try {
+                journalLock.channel().close(); // rilascia anche il lock
+            } catch (IOException e) {
+                System.err.println("Impossibile rilasciare il lock del diario dei comandi: " + e.getMessage());
+            }
+            journalLock = null;
+        }
+    }
+
+    public RecoveryJournal getRecoveryJournal() { return recoveryJournal; }
+
     public void showAlertDialog(Alert.AlertType alertType, String title, String content) {
         Alert alert = new Alert(alertType);
         alert.setTitle(title);
@@ -1814,7 +2408,7 @@ public class DrawingController {
 
     /** Imposta la figura corrente e gestisce la factory e il cursore. */
     public void setCurrentShape(AbstractShape shape) {
-        this.currentShape = shape;
+        selectCurrentShape(shape);
         // Se una figura viene selezionata (o deselezionata), e non si è in fase di creazione,
         // la factory attiva per creare nuove figure va resettata.
         if (shape != null) { // Se si seleziona una figura esistente
@@ -1825,6 +2419,108 @@ public class DrawingController {
         // sarà chiamato da chi invoca setCurrentShape (es. selectShapeAt, handleDeleteShape).
     }
 
+    // La figura corrente è sempre la principale della selezione: se fa già parte di una selezione multipla
+    // questa resta com'è, altrimenti la selezione si riduce alla sola figura (null la svuota)
+    private void selectCurrentShape(AbstractShape shape) {
+        currentShape = shape;
+        if (selection == null) {
+            return;
+        }
+        if (shape != null && selection.contains(shape)) {
+            selection.setPrimary(shape);
+        } else {
+            selection.select(shape);
+        }
+    }
+
+    /**
+     * Aggiunge la figura alla selezione, o la toglie se era già selezionata (clic con Maiusc).
+     * La figura corrente diventa la principale della selezione risultante.
+     */
+    public void toggleShapeSelection(AbstractShape shape) {
+        if (shape == null || selection == null) {
+            return;
+        }
+        if (currentShape != null && !selection.contains(currentShape)) {
+            selection.select(currentShape); // figura corrente impostata senza passare dalla selezione
+        }
+        selection.toggle(shape);
+        setCurrentShape(selection.getPrimary());
+    }
+
+    public ShapeSelection getSelection() { return selection; }
+
+    /**
+     * @return le figure su cui agiscono i comandi: l'intera selezione se contiene la figura corrente,
+     * altrimenti la sola figura corrente (lista vuota se non c'è)
+     */
+    public List<AbstractShape> getSelectedShapes() {
+        if (currentShape == null) {
+            return List.of();
+        }
+        if (selection != null && selection.size() > 1 && selection.contains(currentShape)) {
+            return selection.getShapes();
+        }
+        return List.of(currentShape);
+    }
+
+    public boolean isMultipleSelection() {
+        return getSelectedShapes().size() > 1;
+    }
+
+    private List<AbstractShape> getSelectedShapesByZ(boolean descending) {
+        List<AbstractShape> shapes = new ArrayList<>(getSelectedShapes());
+        shapes.sort((a, b) -> descending ? Integer.compare(b.getZ(), a.getZ()) : Integer.compare(a.getZ(), b.getZ()));
+        return shapes;
+    }
+
+    private boolean applyToSelection(Function<AbstractShape, Command> commandFactory) {
+        return applyToSelection(getSelectedShapes(), commandFactory);
+    }
+
+    /**
+     * Esegue un comando per ognuna delle figure indicate, in un solo passaggio sul modello e con un solo
+     * passo di annullamento. Ogni comando viene creato subito prima di essere eseguito, quindi legge lo stato
+     * lasciato dai precedenti (ad esempio lo Z); la factory restituisce null per le figure da lasciare invariate.
+     * @return true se è stato eseguito almeno un comando
+     */
+    private boolean applyToSelection(List<AbstractShape> targets, Function<AbstractShape, Command> commandFactory) {
+        if (targets.size() == 1) {
+            // una sola figura: comando singolo, così le modifiche ripetute dagli spinner restano accorpabili
+            Command command = commandFactory.apply(targets.get(0));
+            if (command != null) {
+                commandManager.executeCommand(command);
+            }
+            return command != null;
+        }
+        boolean executed = false;
+        commandManager.beginBatch(model);
+        try {
+            for (AbstractShape shape : targets) {
+                Command command = commandFactory.apply(shape);
+                if (command != null) {
+                    commandManager.executeCommand(command);
+                    executed = true;
+                }
+            }
+        } finally {
+            commandManager.endBatch();
+        }
+        return executed;
+    }
+
+    /**
+     * Memorizza la posizione di partenza di tutte le figure selezionate, all'inizio di un trascinamento.
+     */
+    public void storeInitialDragPositions() {
+        initialDragPositions.clear();
+        for (AbstractShape shape : getSelectedShapes()) {
+            initialDragPositions.put(shape, new Point2D(shape.getX(), shape.getY()));
+        }
+    }
+
+    public Map<AbstractShape, Point2D> getInitialDragPositions() { return initialDragPositions; }
+
     public void resetDrag() { startDragX = RESET_DRAG; startDragY = RESET_DRAG; } // Resetta stato trascinamento
     public boolean isDragging() { return startDragX != RESET_DRAG && startDragY != RESET_DRAG; } // Verifica se in trascinamento
 
@@ -35,11 +35,10 @@ public class Exit {
                 // Usiamo lo strategy per il salvataggio serializzato.
                 if (saveContext != null) {
                     saveContext.setStrategy(new SerializedSaveStrategy());
-                    boolean prova = saveContext.execute();
-                    if(prova) {
-                        Platform.exit();
-                        return true;
-                    }else return false;
+                    // Il salvataggio avviene in background: si chiude quando è terminato con successo,
+                    // intanto la finestra resta aperta (un errore o un annullamento non fanno uscire)
+                    saveContext.execute(Platform::exit);
+                    return false;
                 }
             }else if (result.get() == buttonTypeDontSave) {
                 Platform.exit();
@@ -41,6 +41,10 @@ public class Grid {
         return gridVisible;
     }
 
+    public double getGridSize() {
+        return currentGridSize;
+    }
+
     /**
      * @param gc Il GraphicsContext su cui disegnare.
      * @param visibleWorldX La coordinata X dell'angolo in alto a sinistra dell'area attualmente visibile sullo schermo.
@@ -15,7 +15,7 @@ public class NewWorkspace {
     }
 
     public void handleNewWorkspace() {
-        if (controller.getModel() != null && !controller.getModel().getShapes().isEmpty()) { // Aggiunto controllo per model != null
+        if (controller.getModel() != null && !controller.getModel().isEmpty()) { // Aggiunto controllo per model != null
             showConfirmationDialog();
         } else {
             createNewWorkspace();
@@ -39,10 +39,9 @@ public class NewWorkspace {
                 SaveContext saveContext =  controller.getSaveContext();
                 if (saveContext != null) {
                     saveContext.setStrategy(new SerializedSaveStrategy());
-                    if (saveContext.execute()) { // Procedi solo se il salvataggio ha avuto successo
-                        createNewWorkspace();
-                    }
-                    // Se il salvataggio fallisce o viene annullato, non creare una nuova area.
+                    // La nuova area viene creata solo al termine di un salvataggio riuscito:
+                    // se il salvataggio fallisce o viene annullato, non creare una nuova area.
+                    saveContext.execute(this::createNewWorkspace);
                 } else {
                     createNewWorkspace(); // Fallback o gestisci errore se foc è critico
                 }
@@ -0,0 +1,84 @@
+package com.geometricdrawing.controller;
+
+import javafx.animation.AnimationTimer;
+
+/**
+ * Autore: Gruppo05
+ * Scopo: Pianificatore del ridisegno agganciato al pulse di JavaFX.
+ * Le richieste di ridisegno segnano il canvas come sporco; il disegno vero e proprio avviene
+ * al massimo una volta per frame, così più richieste nello stesso frame costano un solo ridisegno.
+ */
+public class RenderScheduler {
+    private final Runnable renderAction;
+    private final AnimationTimer timer;
+
+    private boolean renderPending = false;
+    private boolean timerRunning = false;
+
+    // Contatori diagnostici
+    private long requestCount = 0;
+    private long collapsedRequestCount = 0;
+    private long frameCount = 0;
+
+    public RenderScheduler(Runnable renderAction) {
+        if (renderAction == null) {
+            throw new IllegalArgumentException("L'azione di ridisegno non può essere null.");
+        }
+        this.renderAction = renderAction;
+        this.timer = new AnimationTimer() {
+            @Override
+            public void handle(long now) {
+                onPulse();
+            }
+        };
+    }
+
+    /**
+     * Richiede un ridisegno al prossimo frame. Se un ridisegno è già in attesa la richiesta
+     * viene assorbita da quello e conteggiata come ridondante.
+     */
+    public void requestRender() {
+        requestCount++;
+        if (renderPending) {
+            collapsedRequestCount++;
+            return;
+        }
+        renderPending = true;
+        if (!timerRunning) {
+            timerRunning = true;
+            timer.start();
+        }
+    }
+
+    /**
+     * Esegue subito l'eventuale ridisegno in attesa (ad esempio prima di catturare il canvas in un'immagine).
+     */
+    public void flush() {
+        if (renderPending) {
+            onPulse();
+        }
+    }
+
+    // Chiamato a ogni pulse: disegna se serve, altrimenti ferma il timer finché non arriva una nuova richiesta
+    void onPulse() {
+        if (!renderPending) {
+            timer.stop();
+            timerRunning = false;
+            return;
+        }
+        renderPending = false;
+        frameCount++;
+        renderAction.run();
+    }
+
+    public boolean isRenderPending() { return renderPending; }
+
+    /** Numero totale di richieste di ridisegno ricevute */
+    public long getRequestCount() { return requestCount; }
+
+    /** Numero di richieste ridondanti assorbite da un ridisegno già in attesa nello stesso frame */
+    public long getCollapsedRequestCount() { return collapsedRequestCount; }
+
+    /** Numero di ridisegni effettivamente eseguiti */
+    public long getFrameCount() { return frameCount; }
+}
@@ -0,0 +1,61 @@
+package com.geometricdrawing.controller;
+
+import javafx.concurrent.Task;
+import javafx.concurrent.Worker;
+import javafx.scene.control.Alert;
+import javafx.scene.control.ButtonType;
+import javafx.scene.control.Label;
+import javafx.scene.control.ProgressBar;
+import javafx.scene.layout.VBox;
+import javafx.stage.Modality;
+import javafx.stage.Window;
+
+/**
+ * Autore: Gruppo05
+ * Scopo: Finestra che mostra l'avanzamento di un'operazione in background (salvataggio,
+ * caricamento) e permette di annullarla. Non blocca il thread JavaFX: si chiude da sola
+ * quando l'operazione termina, in qualunque modo. Di norma non è modale, così si può continuare a lavorare.
+ */
+public class TaskProgressDialog {
+    private final Alert alert;
+
+    public TaskProgressDialog(Task<?> task, String title, Window owner) {
+        this(task, title, owner, false);
+    }
+
+    /**
+     * @param modal true per bloccare l'interfaccia finché l'operazione non termina: serve quando al termine
+     *              il disegno viene chiuso o sostituito, e le modifiche fatte nel frattempo andrebbero perse
+     */
+    public TaskProgressDialog(Task<?> task, String title, Window owner, boolean modal) {
+        ProgressBar progressBar = new ProgressBar();
+        progressBar.setPrefWidth(300);
+        progressBar.progressProperty().bind(task.progressProperty()); // -1 finché il lavoro totale non è noto
+        Label message = new Label();
+        message.textProperty().bind(task.messageProperty());
+
+        alert = new Alert(Alert.AlertType.NONE, null, ButtonType.CANCEL);
+        alert.setTitle(title);
+        alert.setHeaderText(title);
+        alert.getDialogPane().setContent(new VBox(8, message, progressBar));
+        alert.initModality(modal ? Modality.APPLICATION_MODAL : Modality.NONE);
+        if (owner != null) {
+            alert.initOwner(owner);
+        }
+        // Il pulsante Annulla (o la chiusura della finestra) interrompe l'operazione ancora in corso
+        alert.resultProperty().addListener((obs, oldResult, result) -> {
+            if (result == ButtonType.CANCEL && task.isRunning()) {
+                task.cancel();
+            }
+        });
+        task.stateProperty().addListener((obs, oldState, state) -> {
+            if (state == Worker.State.SUCCEEDED || state == Worker.State.FAILED || state == Worker.State.CANCELLED) {
+                alert.close();
+            }
+        });
+    }
+
+    public void show() {
+        alert.show();
+    }
+}
@@ -1,5 +1,7 @@
 package com.geometricdrawing.controller;
 
+import javafx.geometry.BoundingBox;
+import javafx.geometry.Bounds;
 import javafx.geometry.Point2D;
 import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.control.ScrollBar;
@@ -109,6 +111,18 @@ public class ZoomHandler {
         return new Point2D(screenX, screenY);
     }
 
+    /**
+     * Calcola il rettangolo del mondo attualmente visibile nel canvas, a partire dallo scroll e dallo zoom correnti.
+     * @param canvasWidth larghezza del canvas in pixel
+     * @param canvasHeight altezza del canvas in pixel
+     * @return la porzione visibile del mondo (coordinate del mondo)
+     */
+    public Bounds getVisibleWorldBounds(double canvasWidth, double canvasHeight) {
+        Point2D topLeft = screenToWorld(0, 0);
+        return new BoundingBox(topLeft.getX(), topLeft.getY(),
+                Math.max(0, canvasWidth) / currentZoomFactor, Math.max(0, canvasHeight) / currentZoomFactor);
+    }
+
     /**
      * Applica la trasformazione di scala al GraphicsContext fornito.
      * Questo metodo dovrebbe essere chiamato prima di disegnare le forme sul canvas.
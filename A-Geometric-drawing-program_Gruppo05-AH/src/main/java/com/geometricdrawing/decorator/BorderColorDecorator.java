@@ -11,6 +11,8 @@ import java.io.*;
  * per consentire l'esportazione e importazione.
  */
 public class BorderColorDecorator extends ShapeDecorator {
+    @Serial
+    private static final long serialVersionUID = 401598953197106072L;
     private transient Color borderColor;
     private double red, green, blue, alpha;   // i campi serializzati saranno RGBA
 
@@ -19,6 +21,21 @@ public class BorderColorDecorator extends ShapeDecorator {
         setBorderColorAndUpdateRGBA(borderColor);
     }
 
+    // La copia ottiene lo stesso colore che avrebbe dopo un giro di serializzazione
+    protected BorderColorDecorator(BorderColorDecorator source) {
+        super(source);
+        this.red = source.red;
+        this.green = source.green;
+        this.blue = source.blue;
+        this.alpha = source.alpha;
+        restoreColor();
+    }
+
+    @Override
+    protected BorderColorDecorator copy() {
+        return new BorderColorDecorator(this);
+    }
+
     private void setBorderColorAndUpdateRGBA(Color color) {
         this.borderColor = color;
         if (this.borderColor != null) {
@@ -40,10 +57,12 @@ public class BorderColorDecorator extends ShapeDecorator {
      * Assicura che anche i campi RGBA per la serializzazione siano aggiornati.
      * @param newBorderColor Il nuovo colore del bordo.
      */
+    @Override
     public void setBorderColor(Color newBorderColor) {
         setBorderColorAndUpdateRGBA(newBorderColor);
     }
 
+    @Override
     public Color getBorderColor() {
         return this.borderColor;
     }
@@ -63,7 +82,11 @@ public class BorderColorDecorator extends ShapeDecorator {
     @Serial
     private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
         in.defaultReadObject();
-        // Ricostruisce il colore transient tenendo conto del fatto di un possibile colore nullo
+        restoreColor();
+    }
+
+    // Ricostruisce il colore transient dai componenti RGBA tenendo conto del fatto di un possibile colore nullo
+    private void restoreColor() {
         if (red == 0 && green == 0 && blue == 0 && alpha == 0 && this.borderColor == null) {
             this.borderColor = Color.BLACK;
         } else {
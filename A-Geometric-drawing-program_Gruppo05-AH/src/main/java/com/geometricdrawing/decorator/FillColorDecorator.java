@@ -11,6 +11,8 @@ import java.io.*;
  * per consentire l'esportazione e importazione.
  */
 public class FillColorDecorator extends ShapeDecorator {
+    @Serial
+    private static final long serialVersionUID = -8408493686510044415L;
     private transient Color fillColor;
     private double red, green, blue, alpha;   // i campi serializzati saranno RGBA
 
@@ -20,6 +22,21 @@ public class FillColorDecorator extends ShapeDecorator {
         setFillColorAndUpdateRGBA(fillColor);
     }
 
+    // La copia ottiene lo stesso colore che avrebbe dopo un giro di serializzazione
+    protected FillColorDecorator(FillColorDecorator source) {
+        super(source);
+        this.red = source.red;
+        this.green = source.green;
+        this.blue = source.blue;
+        this.alpha = source.alpha;
+        restoreColor();
+    }
+
+    @Override
+    protected FillColorDecorator copy() {
+        return new FillColorDecorator(this);
+    }
+
     private void setFillColorAndUpdateRGBA(Color color) {
         this.fillColor = color;
         if (this.fillColor != null) {
@@ -41,10 +58,12 @@ public class FillColorDecorator extends ShapeDecorator {
      * Assicura che anche i campi RGBA per la serializzazione siano aggiornati.
      * @param newFillColor Il nuovo colore di riempimento.
      */
+    @Override
     public void setFillColor(Color newFillColor) {
         setFillColorAndUpdateRGBA(newFillColor);
     }
 
+    @Override
     public Color getFillColor() {
         return this.fillColor;
     }
@@ -64,11 +83,15 @@ public class FillColorDecorator extends ShapeDecorator {
     @Serial
     private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
         in.defaultReadObject(); // Deserializza red, green, blue, alpha
-        // Ricostruisce il colore transient tenendo conto del fatto di un possibile colore nullo
+        restoreColor();
+    }
+
+    // Ricostruisce il colore transient dai componenti RGBA tenendo conto del fatto di un possibile colore nullo
+    private void restoreColor() {
         if (red == 0 && green == 0 && blue == 0 && alpha == 0 && this.fillColor == null) {
             this.fillColor = new Color(0,0,0,0); // Colore di default
         } else {
             this.fillColor = new Color(red, green, blue, alpha);
         }
     }
-}
\ No newline at end of file
+}
@@ -1,19 +1,30 @@
 package com.geometricdrawing.decorator;
 
 import com.geometricdrawing.model.AbstractShape;
+import com.geometricdrawing.model.ShapeStyle;
 import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.paint.Color;
+import java.io.Serial;
 
 /**
  * Autore: Gruppo05
  * Scopo: Classe astratta per i decoratori delle forme
  */
 public abstract class ShapeDecorator extends AbstractShape {
+    @Serial
+    private static final long serialVersionUID = 7136720340068733379L;
     protected final AbstractShape decoratedShape;
 
     public ShapeDecorator(AbstractShape shape) {
         this.decoratedShape = shape;
     }
 
+    // Copia il decoratore insieme a una copia profonda della figura che avvolge
+    protected ShapeDecorator(ShapeDecorator source) {
+        super(source);
+        this.decoratedShape = source.decoratedShape != null ? source.decoratedShape.deepClone() : null;
+    }
+
     public AbstractShape getInnerShape() {
         return decoratedShape;
     }
@@ -70,4 +81,45 @@ public abstract class ShapeDecorator extends AbstractShape {
     @Override public void setScaleY(int scaleY)    { decoratedShape.setScaleY(scaleY); }
     @Override public void setScaleX(int scaleX)    { decoratedShape.setScaleX(scaleX); }
 
+    @Override public Color getFillColor()          { return decoratedShape.getFillColor(); }
+    @Override public Color getBorderColor()        { return decoratedShape.getBorderColor(); }
+    @Override public void setFillColor(Color color)   { decoratedShape.setFillColor(color); }
+    @Override public void setBorderColor(Color color) { decoratedShape.setBorderColor(color); }
+
+    /**
+     * Sostituisce una catena di decoratori (come quelle salvate dalle versioni precedenti) con la figura base,
+     * riportando i colori nel suo ShapeStyle. Lungo la catena vince il decoratore più interno, perché
+     * imposta il colore per ultimo prima del disegno; un colore già presente nello stile della base ha la precedenza.
+     * @param shape figura eventualmente decorata
+     * @return la figura base con lo stile equivalente, oppure la figura stessa se non è decorata
+     */
+    public static AbstractShape flatten(AbstractShape shape) {
+        if (!(shape instanceof ShapeDecorator)) {
+            return shape;
+        }
+        Color fill = null;
+        Color border = null;
+        AbstractShape current = shape;
+        while (current instanceof ShapeDecorator decorator) {
+            if (decorator instanceof FillColorDecorator fillDecorator) {
+                fill = fillDecorator.getFillColor();
+            } else if (decorator instanceof BorderColorDecorator borderDecorator) {
+                border = borderDecorator.getBorderColor();
+            }
+            current = decorator.getInnerShape();
+        }
+        if (current == null) {
+            return null;
+        }
+        ShapeStyle baseStyle = current.getStyle();
+        if (baseStyle != null) {
+            if (baseStyle.getFillColor() != null) fill = baseStyle.getFillColor();
+            if (baseStyle.getBorderColor() != null) border = baseStyle.getBorderColor();
+        }
+        if (fill != null || border != null) {
+            current.setStyle(new ShapeStyle(fill, border));
+        }
+        return current;
+    }
+
 }
@@ -4,10 +4,13 @@ import com.geometricdrawing.model.AbstractShape;
 import com.geometricdrawing.model.Polygon;
 
 public class PolygonFactory extends ShapeFactory {
+    public static final int MIN_POINTS = 3;
+    public static final int MAX_POINTS = 100_000; // i poligoni grandi (contorni importati) sono gestiti da Polygon
+
     private int maxPoints;
 
     public PolygonFactory(int maxPoints) {
-        this.maxPoints = Math.min(12, Math.max(3, maxPoints)); // Limita tra 3 e 12
+        this.maxPoints = Math.min(MAX_POINTS, Math.max(MIN_POINTS, maxPoints)); // Limita tra MIN_POINTS e MAX_POINTS
     }
 
     public int getMaxPoints() {
@@ -1,10 +1,17 @@
 package com.geometricdrawing.model;
 
+import javafx.geometry.BoundingBox;
+import javafx.geometry.Bounds;
 import javafx.geometry.Point2D;
 import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.paint.Color;
 import java.io.*;
 
 public abstract class AbstractShape implements Serializable{
+    // Fissato al valore calcolato sulla versione precedente della classe, per continuare a leggere i file già salvati
+    @Serial
+    private static final long serialVersionUID = -5655048056677038367L;
+
     protected double x; // Posizione x sul Canvas (angolo in alto a sx, o startX per linea)
     protected double y; // Posizione y sul Canvas (angolo in alto a sx, o startY per linea)
     protected int z;    // Livello di profondità della figura
@@ -22,6 +29,23 @@ public abstract class AbstractShape implements Serializable{
     protected double width;
     protected double height;
 
+    // Colori di riempimento e contorno; null se la figura usa i colori correnti del GraphicsContext
+    protected ShapeStyle style;
+
+    /*
+      Trasformazione in cache (non serializzata), nella forma mondo = centro + M * locale e locale = M^-1 * (mondo - centro),
+      dove M applica rotazione e specchiatura. Viene ricalcolata solo quando cambiano posizione, dimensioni,
+      rotazione o specchiatura: i valori usati sono confrontati a ogni accesso, così la cache resta corretta
+      anche quando una sottoclasse modifica direttamente i campi protetti.
+    */
+    private transient boolean transformValid;
+    private transient double keyX, keyY, keyWidth, keyHeight, keyAngle;
+    private transient int keyScaleX, keyScaleY;
+    private transient double centerX, centerY;
+    private transient double cos, sin;
+    private transient double fwdXX, fwdXY, fwdYX, fwdYY; // M
+    private transient double invXX, invXY, invYX, invYY; // M^-1
+
     public AbstractShape(double x, double y, double width, double height) {
         this.x = x;
         this.y = y;
@@ -32,6 +56,23 @@ public abstract class AbstractShape implements Serializable{
     // Costruttore di default
     protected AbstractShape() {}
 
+    /**
+     * Costruttore di copia usato da deepClone: copia posizione, livello, dimensioni, rotazione, specchiatura e stile.
+     * Lo stile è immutabile e viene condiviso; la trasformazione in cache si ricalcola al primo utilizzo.
+     * @param source figura da copiare
+     */
+    protected AbstractShape(AbstractShape source) {
+        this.x = source.x;
+        this.y = source.y;
+        this.z = source.z;
+        this.scaleX = source.scaleX;
+        this.scaleY = source.scaleY;
+        this.rotationAngle = source.rotationAngle;
+        this.width = source.width;
+        this.height = source.height;
+        this.style = source.style;
+    }
+
     public void draw(GraphicsContext gc) {
         if (gc == null) {
             drawShape(null);
@@ -40,6 +81,10 @@ public abstract class AbstractShape implements Serializable{
         }
         gc.save();
 
+        if (style != null) {
+            style.applyTo(gc); // i colori vengono ripristinati dal restore insieme alla trasformazione
+        }
+
         double centerX = x + width / 2;
         double centerY = y + height / 2;
 
@@ -64,10 +109,9 @@ public abstract class AbstractShape implements Serializable{
      * @return true se il punto è all'interno della figura, false altrimenti
      */
     public boolean containsPoint(double x, double y, double threshold) {
-        // Prima applica la trasformazione inversa completa al punto
-        Point2D transformedPoint = inverseTransformPoint(x, y);
-        double transformedX = transformedPoint.getX();
-        double transformedY = transformedPoint.getY();
+        // Prima applica la trasformazione inversa completa al punto (matrice in cache, nessuna allocazione)
+        double transformedX = inverseTransformX(x, y);
+        double transformedY = inverseTransformY(x, y);
 
         return isPointWithinBounds(transformedX, transformedY, threshold);
     }
@@ -81,25 +125,88 @@ public abstract class AbstractShape implements Serializable{
      * @return un Point2D che rappresenta le coordinate del punto trasformato rispetto al centro della figura originale
      */
     public Point2D inverseTransformPoint(double x, double y) {
-        double centerX = this.x + this.width / 2;
-        double centerY = this.y + this.height / 2;
+        return new Point2D(inverseTransformX(x, y), inverseTransformY(x, y));
+    }
 
-        // Trasla il punto rispetto al centro della figura
-        double localX = x - centerX;
-        double localY = y - centerY;
+    /**
+     * Coordinata x locale (rispetto al centro, senza rotazione e mirroring) del punto del mondo (x, y).
+     * Variante senza allocazioni di inverseTransformPoint.
+     */
+    public double inverseTransformX(double x, double y) {
+        ensureTransform();
+        return (x - centerX) * invXX + (y - centerY) * invXY;
+    }
 
-        double unscaledX = localX / scaleX;
-        double unscaledY = localY / scaleY;
+    /**
+     * Coordinata y locale (rispetto al centro, senza rotazione e mirroring) del punto del mondo (x, y).
+     * Variante senza allocazioni di inverseTransformPoint.
+     */
+    public double inverseTransformY(double x, double y) {
+        ensureTransform();
+        return (x - centerX) * invYX + (y - centerY) * invYY;
+    }
 
-        // Then apply inverse rotation
-        double angleRad = Math.toRadians(-rotationAngle);
-        double cos = Math.cos(angleRad);
-        double sin = Math.sin(angleRad);
+    /**
+     * Trasformazione diretta: riporta un punto locale (rispetto al centro della figura) nel sistema del mondo,
+     * applicando specchiatura e rotazione come fa draw.
+     */
+    public Point2D transformPoint(double localX, double localY) {
+        return new Point2D(transformX(localX, localY), transformY(localX, localY));
+    }
 
-        double unrotatedX = unscaledX * cos - unscaledY * sin;
-        double unrotatedY = unscaledX * sin + unscaledY * cos;
+    public double transformX(double localX, double localY) {
+        ensureTransform();
+        return centerX + localX * fwdXX + localY * fwdXY;
+    }
 
-        return new Point2D(unrotatedX, unrotatedY);
+    public double transformY(double localX, double localY) {
+        ensureTransform();
+        return centerY + localX * fwdYX + localY * fwdYY;
+    }
+
+    // Ricalcola le matrici solo se posizione, dimensioni, rotazione o specchiatura sono cambiate.
+    // Come in draw si usano i campi della figura stessa.
+    private void ensureTransform() {
+        double curX = this.x;
+        double curY = this.y;
+        double curWidth = this.width;
+        double curHeight = this.height;
+        double curAngle = this.rotationAngle;
+        int curScaleX = this.scaleX;
+        int curScaleY = this.scaleY;
+        if (transformValid && curX == keyX && curY == keyY && curWidth == keyWidth && curHeight == keyHeight
+                && curAngle == keyAngle && curScaleX == keyScaleX && curScaleY == keyScaleY) {
+            return;
+        }
+
+        // La trigonometria serve solo se è cambiato l'angolo
+        if (!transformValid || curAngle != keyAngle) {
+            double angleRad = Math.toRadians(curAngle);
+            cos = Math.cos(angleRad);
+            sin = Math.sin(angleRad);
+        }
+        centerX = curX + curWidth / 2;
+        centerY = curY + curHeight / 2;
+
+        // M = scala(scaleX, scaleY) * rotazione(angolo), lo stesso ordine usato da draw
+        fwdXX = curScaleX * cos;
+        fwdXY = -curScaleX * sin;
+        fwdYX = curScaleY * sin;
+        fwdYY = curScaleY * cos;
+        // M^-1 = rotazione(-angolo) * scala(1/scaleX, 1/scaleY)
+        invXX = cos / curScaleX;
+        invXY = sin / curScaleY;
+        invYX = -sin / curScaleX;
+        invYY = cos / curScaleY;
+
+        keyX = curX;
+        keyY = curY;
+        keyWidth = curWidth;
+        keyHeight = curHeight;
+        keyAngle = curAngle;
+        keyScaleX = curScaleX;
+        keyScaleY = curScaleY;
+        transformValid = true;
     }
 
 
@@ -117,6 +224,30 @@ public abstract class AbstractShape implements Serializable{
     }
 
 
+    /**
+     * Restituisce il rettangolo allineato agli assi che racchiude la figura nel sistema di riferimento del mondo,
+     * tenendo conto della rotazione. La specchiatura non cambia l'ingombro perché avviene rispetto al centro.
+     * Viene usato dall'indice spaziale del modello.
+     */
+    public Bounds getWorldBounds() {
+        double width = getWidth();
+        double height = getHeight();
+        double centerX = getX() + width / 2;
+        double centerY = getY() + height / 2;
+        double halfWidth = Math.abs(width) / 2;
+        double halfHeight = Math.abs(height) / 2;
+
+        double angleRad = Math.toRadians(getRotationAngle());
+        double cos = Math.abs(Math.cos(angleRad));
+        double sin = Math.abs(Math.sin(angleRad));
+
+        // semi-estensioni del rettangolo ruotato lungo gli assi del mondo
+        double extentX = halfWidth * cos + halfHeight * sin;
+        double extentY = halfWidth * sin + halfHeight * cos;
+
+        return new BoundingBox(centerX - extentX, centerY - extentY, 2 * extentX, 2 * extentY);
+    }
+
     public double getX() {
         return x;
     }
@@ -214,8 +345,50 @@ public abstract class AbstractShape implements Serializable{
         }
     }
 
+    public ShapeStyle getStyle() {
+        return style;
+    }
+
+    public void setStyle(ShapeStyle style) {
+        this.style = style;
+    }
+
+    public Color getFillColor() {
+        return style != null ? style.getFillColor() : null;
+    }
+
+    public void setFillColor(Color fillColor) {
+        this.style = style != null ? style.withFillColor(fillColor) : new ShapeStyle(fillColor, null);
+    }
+
+    public Color getBorderColor() {
+        return style != null ? style.getBorderColor() : null;
+    }
+
+    public void setBorderColor(Color borderColor) {
+        this.style = style != null ? style.withBorderColor(borderColor) : new ShapeStyle(null, borderColor);
+    }
+
+    /**
+     * Crea una copia profonda della figura tramite il costruttore di copia della classe concreta.
+     * Ogni figura e ogni decoratore lo ridefiniscono; restituire null fa ricadere deepClone sulla serializzazione.
+     */
+    protected AbstractShape copy() {
+        return null;
+    }
+
     //Utilizzato per copiare la figura nella clipboard
     public AbstractShape deepClone() {
+        AbstractShape copy = copy();
+        // Una sottoclasse che non ridefinisce copy() erediterebbe quello del padre perdendo il proprio tipo
+        if (copy != null && copy.getClass() == getClass()) {
+            return copy;
+        }
+        return serializationClone();
+    }
+
+    // Copia tramite serializzazione, usata per le sottoclassi che non forniscono un costruttore di copia
+    protected AbstractShape serializationClone() {
         try {
             ByteArrayOutputStream baos = new ByteArrayOutputStream();
             ObjectOutputStream oos = new ObjectOutputStream(baos);
@@ -0,0 +1,53 @@
+package com.geometricdrawing.model;
+
+import javafx.geometry.Bounds;
+
+/**
+ * Autore: Gruppo05
+ * Scopo: Accumula, in coordinate del mondo, l'unione delle aree toccate dalle modifiche alle figure
+ * dall'ultimo ridisegno. Il renderer la usa per ripulire e ridisegnare solo quella porzione del canvas.
+ */
+public class DirtyRegion {
+    private double minX, minY, maxX, maxY;
+    private boolean empty = true;
+
+    /**
+     * Aggiunge all'area sporca il rettangolo indicato (coordinate del mondo).
+     */
+    public void add(double minX, double minY, double maxX, double maxY) {
+        if (!Double.isFinite(minX) || !Double.isFinite(minY) || !Double.isFinite(maxX) || !Double.isFinite(maxY)) {
+            return;
+        }
+        if (empty) {
+            this.minX = minX;
+            this.minY = minY;
+            this.maxX = maxX;
+            this.maxY = maxY;
+            empty = false;
+        } else {
+            this.minX = Math.min(this.minX, minX);
+            this.minY = Math.min(this.minY, minY);
+            this.maxX = Math.max(this.maxX, maxX);
+            this.maxY = Math.max(this.maxY, maxY);
+        }
+    }
+
+    public void add(Bounds bounds) {
+        if (bounds != null) {
+            add(bounds.getMinX(), bounds.getMinY(), bounds.getMaxX(), bounds.getMaxY());
+        }
+    }
+
+    public boolean isEmpty() {
+        return empty;
+    }
+
+    public void clear() {
+        empty = true;
+    }
+
+    public double getMinX() { return minX; }
+    public double getMinY() { return minY; }
+    public double getMaxX() { return maxX; }
+    public double getMaxY() { return maxY; }
+}
@@ -1,25 +1,65 @@
 package com.geometricdrawing.model;
 
-import com.geometricdrawing.decorator.BorderColorDecorator;
-import com.geometricdrawing.decorator.FillColorDecorator;
 import com.geometricdrawing.decorator.ShapeDecorator;
-import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
+import javafx.geometry.BoundingBox;
+import javafx.geometry.Bounds;
 import javafx.scene.paint.Color;
 
 import java.io.*;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.*;
+import java.util.function.Consumer;
 
 /**
  * @Autore: Gruppo05
  * @Scopo: Modello dell'applicazione, contiene le figure e gestisce le operazioni fondamentali ssu di esse.
  */
-public class DrawingModel {
-    private transient ObservableList<AbstractShape> shapes;
+public final class DrawingModel {
+    private transient ShapeList shapes;
+    private final SpatialIndex spatialIndex = new SpatialIndex(); // indice per l'hit-testing
+    private final List<AbstractShape> shapesByZ; // vista inversa (Z decrescente) sempre allineata alla lista
+    private final DirtyRegion dirtyRegion = new DirtyRegion(); // area del mondo da ridisegnare
+
+    // Disegno aperto in modo differito: figure del file non ancora caricate e, per quelle caricate,
+    // il numero del record da cui provengono (serve a inserire le successive nella posizione giusta)
+    private LazyShapeSource lazySource;
+    private final TreeMap<Integer, AbstractShape> lazyShapesByRecord = new TreeMap<>();
+    private final Map<AbstractShape, Integer> lazyRecordsByShape = new IdentityHashMap<>();
+
+    // Avvisati quando una figura del modello cambia senza cambiare posizione nella lista (geometria, colori, testo)
+    private final List<Consumer<AbstractShape>> shapeChangeListeners = new ArrayList<>();
+    // Avvisati subito prima di modificare una figura tramite i metodi del modello, anche durante un gruppo
+    private final List<Consumer<AbstractShape>> shapeChangingListeners = new ArrayList<>();
+
+    // Gruppo di modifiche in corso (beginBatch/endBatch): le figure modificate vengono notificate alla fine
+    private int batchDepth;
+    private final Set<AbstractShape> pendingShapeChanges = new LinkedHashSet<>();
 
     public DrawingModel() {
-        this.shapes = FXCollections.observableArrayList();
+        // l'indice segue ogni inserimento/rimozione nella lista, anche quelli fatti direttamente su getShapes()
+        this.shapes = new ShapeList(this);
+        this.shapesByZ = Collections.unmodifiableList(this.shapes.reversed());
+    }
+
+    // Richiamati da ShapeList durante la modifica, prima che i listener della lista vengano avvisati
+    void shapeAdded(AbstractShape shape) {
+        spatialIndex.insert(shape);
+        dirtyRegion.add(spatialIndex.getBounds(shape));
+    }
+
+    void shapeRemoved(AbstractShape shape) {
+        dirtyRegion.add(spatialIndex.getBounds(shape));
+        spatialIndex.remove(shape);
+    }
+
+    /**
+     * L'ordine della lista coincide con l'ordine di disegno: lo Z di ogni figura è il suo indice.
+     * Dopo una modifica basta rinumerare le figure a partire dalla prima posizione toccata.
+     */
+    void renumberZFrom(int fromIndex) {
+        for (int i = fromIndex; i < shapes.size(); i++) {
+            shapes.get(i).setZ(i);
+        }
     }
 
     public void addShape(AbstractShape shape) {
@@ -34,7 +74,13 @@ public class DrawingModel {
      */
     public void removeShape(AbstractShape shape) {
         if (shape != null) {
-            this.shapes.remove(shape);
+            int z = shape.getZ();
+            // lo Z è l'indice della figura: se corrisponde evito la ricerca lineare nella lista
+            if (z >= 0 && z < shapes.size() && shapes.get(z) == shape) {
+                this.shapes.remove(z);
+            } else {
+                this.shapes.remove(shape);
+            }
         }
     }
 
@@ -44,7 +90,9 @@ public class DrawingModel {
      */
     public void setShapeWidth(AbstractShape shape, double width) {
         if (shape != null) {
+            fireShapeChanging(shape);
             shape.setWidth(width);
+            shapeGeometryChanged(shape);
         }
     }
 
@@ -54,7 +102,9 @@ public class DrawingModel {
      */
     public void setShapeHeight(AbstractShape shape, double newHeight) {
         if (shape != null) {
+            fireShapeChanging(shape);
             shape.setHeight(newHeight);
+            shapeGeometryChanged(shape);
         }
     }
 
@@ -66,29 +116,35 @@ public class DrawingModel {
      */
     public void moveShapeTo(AbstractShape shape, double newX, double newY) {
         if (shape != null) {
+            fireShapeChanging(shape);
             shape.moveTo(newX, newY);
+            shapeGeometryChanged(shape);
         }
     }
 
     /**
      * Metodo per cambiare il colore di contorno della figura
-     * @param decorator
+     * @param shape figura (o decoratore di una figura caricata da un vecchio file)
      * @param color
      */
-    public void setBorderColor(BorderColorDecorator decorator, Color color) {
-        if (decorator != null) {
-            decorator.setBorderColor(color);
+    public void setBorderColor(AbstractShape shape, Color color) {
+        if (shape != null) {
+            fireShapeChanging(shape);
+            shape.setBorderColor(color);
+            markDirty(shape);
         }
     }
 
     /**
      * Metodo per cambiare il colore di riempimento della figura
-     * @param decorator
+     * @param shape figura (o decoratore di una figura caricata da un vecchio file)
      * @param color
      */
-    public void setFillColor(FillColorDecorator decorator, Color color) {
-        if (decorator != null) {
-            decorator.setFillColor(color);
+    public void setFillColor(AbstractShape shape, Color color) {
+        if (shape != null) {
+            fireShapeChanging(shape);
+            shape.setFillColor(color);
+            markDirty(shape);
         }
     }
 
@@ -103,30 +159,26 @@ public class DrawingModel {
             throw new IndexOutOfBoundsException("Invalid Z index: " + newZ);
         }
 
-        // se la figura è presente nella lista
-        if (shape != null && shapes.contains(shape)) {
-            int actualZ = shape.getZ();
+        if (shape == null) {
+            return;
+        }
+        int actualZ = shape.getZ();
 
-            // Solo se gli indici - di partenza e nuovo - per la figura sono diversi eseguo l'operazione
-            if(newZ != actualZ) {
-                // scorro tutte le figure
-                for (AbstractShape s : shapes) {
-                    // PER PORTARE IN PRIMO PIANO
-                    // se la figura ha uno Z maggiore del nuovo Z, lo decremento
-                    if (s.getZ() >= newZ && s.getZ() < actualZ) {
-                        s.setZ(s.getZ() + 1);
-                    }
-                    // PER PORTARE IN SECONDO PIANO
-                    // se la figura ha uno Z minore del nuovo Z, lo incremento
-                    else if (s.getZ() <= newZ && s.getZ() > actualZ) {
-                        s.setZ(s.getZ() - 1);
-                    }
-                }
-                // rimuovo la figura e la reinserisco nella posizione corretta
-                removeShape(shape);
+        // lo Z coincide con l'indice nella lista: così verifico la presenza della figura senza scorrere la lista
+        if (actualZ < 0 || actualZ >= shapes.size() || shapes.get(actualZ) != shape) {
+            return;
+        }
+
+        // Solo se gli indici - di partenza e nuovo - per la figura sono diversi eseguo l'operazione
+        if(newZ != actualZ) {
+            // rimuovo la figura e la reinserisco nella posizione corretta:
+            // la lista rinumera lo Z delle figure comprese tra le due posizioni; i listener ricevono un solo evento
+            beginBatch();
+            try {
+                shapes.remove(actualZ);
                 shapes.add(newZ, shape);
-                // ne definisco lo Z-index come il parametro passato
-                shape.setZ(newZ);
+            } finally {
+                endBatch();
             }
         }
     }
@@ -138,6 +190,7 @@ public class DrawingModel {
      */
     public void rotateShape(AbstractShape shape, double deltaAngle) {
         if (shape != null) {
+            fireShapeChanging(shape);
             double scaleX = shape.getScaleX();
             double scaleY = shape.getScaleY();
 
@@ -146,17 +199,20 @@ public class DrawingModel {
                 deltaAngle = -deltaAngle;
             }
             shape.rotateBy(deltaAngle);
+            shapeGeometryChanged(shape);
         }
     }
 
 
     public void mirrorShape(AbstractShape shape, boolean horizontal) {
         if (shape != null) {
+            fireShapeChanging(shape);
             if (horizontal) {
                 shape.setScaleX(-shape.getScaleX()); // Inverte sull'asse orizzontale
             } else {
                 shape.setScaleY(-shape.getScaleY()); // Inverte sull'asse verticale
             }
+            shapeGeometryChanged(shape);
         }
     }
 
@@ -164,28 +220,391 @@ public class DrawingModel {
         return this.shapes;
     }
 
+    /**
+     * Sostituisce tutte le figure del modello con quelle indicate, in un'unica modifica della lista.
+     * L'ordine della lista diventa l'ordine di Z, come dopo un caricamento da file.
+     */
+    public void replaceShapes(List<? extends AbstractShape> newShapes) {
+        releaseLazySource();
+        this.shapes.setAll(newShapes);
+    }
+
     /**
      * Metodo che ripulisce tutta la lista di figure presenti nell'area di disegno
      */
     public void clear() {
+        releaseLazySource();
         this.shapes.clear();
     }
 
     /**
-     * Metodo che restituisce le figure in ordine decrescente di z
+     * Collega al modello una sorgente di figure caricate su richiesta. Le figure della sorgente vengono
+     * inserite sotto quelle già presenti nel modello, nell'ordine dei record, man mano che servono:
+     * quando vengono interrogate le aree che le contengono (collectShapesIn) o quando serve l'intero disegno.
+     */
+    public void setLazySource(LazyShapeSource source) {
+        setLazySource(source, Map.of());
+    }
+
+    /**
+     * Come setLazySource(source), per una sorgente di cui alcune figure sono già state consegnate
+     * (ad esempio un disegno ricostruito dal diario dei comandi): le figure ancora in attesa vengono
+     * inserite rispetto a quelle indicate, come se fossero state caricate da questo modello.
+     * @param deliveredShapes figure già consegnate, per numero di record
+     */
+    public void setLazySource(LazyShapeSource source, Map<Integer, AbstractShape> deliveredShapes) {
+        releaseLazySource();
+        if (source != null && source.getPendingCount() > 0) {
+            this.lazySource = source;
+            for (Map.Entry<Integer, AbstractShape> delivered : deliveredShapes.entrySet()) {
+                lazyShapesByRecord.put(delivered.getKey(), delivered.getValue());
+                lazyRecordsByShape.put(delivered.getValue(), delivered.getKey());
+            }
+        }
+    }
+
+    /**
+     * @return true se una parte del disegno non è ancora stata caricata nella lista delle figure
+     */
+    public boolean hasPendingShapes() {
+        return lazySource != null;
+    }
+
+    /**
+     * Carica tutte le figure ancora in attesa: va chiamato prima delle operazioni che riguardano
+     * l'intero disegno, come il salvataggio.
+     */
+    public void materializeAllShapes() {
+        if (lazySource != null) {
+            LazyShapeSource source = lazySource;
+            insertLazyShapes(sink -> source.materializeAll(sink));
+            releaseLazySource();
+        }
+    }
+
+    /**
+     * @return true se il disegno non contiene figure, comprese quelle non ancora caricate
+     */
+    public boolean isEmpty() {
+        return shapes.isEmpty() && lazySource == null;
+    }
+
+    /**
+     * @return il numero del record della sorgente differita da cui proviene la figura, oppure -1 se la figura
+     * non proviene dalla sorgente o se la sorgente è già stata esaurita
+     */
+    public int getLazyRecord(AbstractShape shape) {
+        Integer record = lazyRecordsByShape.get(shape);
+        return record != null ? record : -1;
+    }
+
+    private void releaseLazySource() {
+        lazySource = null;
+        lazyShapesByRecord.clear();
+        lazyRecordsByShape.clear();
+    }
+
+    private void materializeLazyShapesIn(double minX, double minY, double maxX, double maxY) {
+        if (lazySource == null) {
+            return;
+        }
+        LazyShapeSource source = lazySource;
+        insertLazyShapes(sink -> source.materializeIn(minX, minY, maxX, maxY, sink));
+        if (source.getPendingCount() == 0) {
+            releaseLazySource();
+        }
+    }
+
+    /**
+     * Inserisce le figure consegnate dalla sorgente rispettando l'ordine dei record: ogni figura va sotto
+     * la prima figura presente nel modello che proviene da un record successivo, oppure sopra l'ultima
+     * che proviene da un record precedente (le figure create dall'utente restano così in cima).
+     * Le figure consecutive con la stessa posizione vengono inserite con un'unica modifica della lista.
+     * Il record di ogni figura è già noto quando i listener della lista vengono avvisati (vedi getLazyRecord).
+     */
+    private void insertLazyShapes(Consumer<LazyShapeSource.ShapeSink> producer) {
+        List<Integer> records = new ArrayList<>();
+        List<AbstractShape> delivered = new ArrayList<>();
+        producer.accept((record, shape) -> {
+            records.add(record);
+            delivered.add(shape);
+        });
+        beginBatch(); // un solo evento anche se le figure finiscono in punti diversi della lista
+        try {
+            insertDeliveredShapes(records, delivered);
+        } finally {
+            endBatch();
+        }
+    }
+
+    private void insertDeliveredShapes(List<Integer> records, List<AbstractShape> delivered) {
+        int i = 0;
+        while (i < delivered.size()) {
+            AbstractShape next = nextPresentLazyShape(records.get(i));
+            int end = i + 1;
+            while (end < delivered.size() && nextPresentLazyShape(records.get(end)) == next) {
+                end++;
+            }
+            int position;
+            if (next != null) {
+                position = next.getZ();
+            } else {
+                AbstractShape previous = previousPresentLazyShape(records.get(i));
+                position = previous != null ? previous.getZ() + 1 : 0;
+            }
+            shapes.addAll(position, delivered.subList(i, end));
+            for (int k = i; k < end; k++) {
+                lazyShapesByRecord.put(records.get(k), delivered.get(k));
+                lazyRecordsByShape.put(delivered.get(k), records.get(k));
+            }
+            i = end;
+        }
+    }
+
+    // Le figure caricate possono essere state eliminate dall'utente: si salta chi non è più nella lista
+    private AbstractShape nextPresentLazyShape(int record) {
+        for (AbstractShape shape : lazyShapesByRecord.tailMap(record, false).values()) {
+            if (isInModel(shape)) {
+                return shape;
+            }
+        }
+        return null;
+    }
+
+    private AbstractShape previousPresentLazyShape(int record) {
+        for (AbstractShape shape : lazyShapesByRecord.headMap(record, false).descendingMap().values()) {
+            if (isInModel(shape)) {
+                return shape;
+            }
+        }
+        return null;
+    }
+
+    private boolean isInModel(AbstractShape shape) {
+        int z = shape.getZ();
+        return z >= 0 && z < shapes.size() && shapes.get(z) == shape;
+    }
+
+    /**
+     * @return true se la figura è nella lista del modello; lo Z ne è l'indice, quindi la verifica non scorre la lista
+     */
+    public boolean contains(AbstractShape shape) {
+        return shape != null && isInModel(shape);
+    }
+
+    /**
+     * Restituisce la figura più in alto che contiene il punto (x, y) del mondo, interrogando
+     * l'indice spaziale: vengono controllate solo le figure vicine al punto.
+     * @param threshold tolleranza di selezione in unità del mondo
+     * @return la figura con Z maggiore che contiene il punto, oppure null
+     */
+    public AbstractShape getTopmostShapeAt(double x, double y, double threshold) {
+        return spatialIndex.findTopmostAt(x, y, threshold);
+    }
+
+    /**
+     * Aggiorna l'indice spaziale dopo una modifica geometrica e segna come da ridisegnare
+     * sia l'area occupata prima dalla figura sia quella occupata adesso.
+     */
+    private void shapeGeometryChanged(AbstractShape shape) {
+        dirtyRegion.add(spatialIndex.getBounds(shape));
+        spatialIndex.update(shape);
+        dirtyRegion.add(spatialIndex.getBounds(shape));
+        fireShapeChanged(shape);
+    }
+
+    /**
+     * Segna come da ridisegnare l'area di una figura che ha cambiato solo aspetto (colori, testo).
+     */
+    private void markDirty(AbstractShape shape) {
+        if (shape != null) {
+            dirtyRegion.add(shape.getWorldBounds());
+            fireShapeChanged(shape);
+        }
+    }
+
+    /**
+     * Registra un listener avvisato dopo ogni modifica a una figura fatta tramite i metodi del modello.
+     * Inserimenti, rimozioni e cambi di Z si osservano invece sulla lista restituita da getShapes().
+     */
+    public void addShapeChangeListener(Consumer<AbstractShape> listener) {
+        if (listener != null) {
+            shapeChangeListeners.add(listener);
+        }
+    }
+
+    public void removeShapeChangeListener(Consumer<AbstractShape> listener) {
+        shapeChangeListeners.remove(listener);
+    }
+
+    /**
+     * Registra un listener avvisato subito prima di ogni modifica a una figura fatta tramite i metodi del modello,
+     * per chi deve conservarne lo stato precedente. Questi avvisi non vengono raggruppati da beginBatch.
+     */
+    public void addShapeChangingListener(Consumer<AbstractShape> listener) {
+        if (listener != null) {
+            shapeChangingListeners.add(listener);
+        }
+    }
+
+    public void removeShapeChangingListener(Consumer<AbstractShape> listener) {
+        shapeChangingListeners.remove(listener);
+    }
+
+    private void fireShapeChanging(AbstractShape shape) {
+        for (Consumer<AbstractShape> listener : shapeChangingListeners) {
+            listener.accept(shape);
+        }
+    }
+
+    /**
+     * Apre un gruppo di modifiche: fino alla chiamata corrispondente di endBatch i listener della lista
+     * e quelli delle figure non vengono avvisati. Indice spaziale, Z e area da ridisegnare restano
+     * aggiornati a ogni passo. I gruppi si possono annidare: conta la chiusura del più esterno.
+     */
+    public void beginBatch() {
+        if (batchDepth++ == 0) {
+            shapes.beginBatch();
+        }
+    }
+
+    /**
+     * Chiude il gruppo aperto da beginBatch. Alla chiusura del più esterno la lista emette un solo evento
+     * con tutte le modifiche e ogni figura modificata viene notificata una volta.
+     */
+    public void endBatch() {
+        if (batchDepth == 0) {
+            throw new IllegalStateException("endBatch senza un gruppo di modifiche aperto.");
+        }
+        if (--batchDepth > 0) {
+            return;
+        }
+        shapes.endBatch();
+        if (!pendingShapeChanges.isEmpty()) {
+            List<AbstractShape> changed = new ArrayList<>(pendingShapeChanges);
+            pendingShapeChanges.clear();
+            for (AbstractShape shape : changed) {
+                fireShapeChanged(shape);
+            }
+        }
+    }
+
+    public boolean isInBatch() {
+        return batchDepth > 0;
+    }
+
+    private void fireShapeChanged(AbstractShape shape) {
+        if (batchDepth > 0) {
+            pendingShapeChanges.add(shape); // AbstractShape non ridefinisce equals: conta l'identità
+            return;
+        }
+        for (Consumer<AbstractShape> listener : shapeChangeListeners) {
+            listener.accept(shape);
+        }
+    }
+
+    /**
+     * Restituisce l'area del mondo toccata dalle modifiche successive all'ultimo ridisegno.
+     * Il renderer la svuota dopo aver ridisegnato.
+     */
+    public DirtyRegion getDirtyRegion() {
+        return dirtyRegion;
+    }
+
+    /**
+     * Riempie out con le figure il cui ingombro interseca l'area indicata (coordinate del mondo),
+     * ordinate per Z crescente cioè nell'ordine in cui vanno disegnate.
+     * Se il disegno è stato aperto in modo differito, prima carica nel modello le figure dell'area.
+     */
+    public void collectShapesIn(double minX, double minY, double maxX, double maxY, List<AbstractShape> out) {
+        materializeLazyShapesIn(minX, minY, maxX, maxY); // le figure non ancora caricate dell'area entrano nel modello
+        int start = out.size();
+        spatialIndex.query(minX, minY, maxX, maxY, out);
+        out.subList(start, out.size()).sort(Comparator.comparingInt(AbstractShape::getZ));
+    }
+
+    /**
+     * Come collectShapesIn, ma senza ordinare il risultato per Z: serve a chi usa le figure come insieme
+     * (ad esempio la selezione ad area), per cui l'ordinamento sarebbe solo un costo.
+     * @param fullyContained true per le sole figure il cui ingombro è interamente dentro l'area,
+     *                       false per tutte quelle che la intersecano
+     */
+    public void collectShapesInArea(double minX, double minY, double maxX, double maxY, boolean fullyContained, List<AbstractShape> out) {
+        materializeLazyShapesIn(minX, minY, maxX, maxY);
+        if (fullyContained) {
+            spatialIndex.queryInside(minX, minY, maxX, maxY, out);
+        } else {
+            spatialIndex.query(minX, minY, maxX, maxY, out);
+        }
+    }
+
+    /**
+     * Restituisce il rettangolo (coordinate del mondo) che racchiude gli ingombri ruotati di tutte le figure.
+     * È mantenuto dall'indice spaziale a ogni modifica, senza scorrere le figure; comprende anche
+     * le figure non ancora caricate di un disegno aperto in modo differito.
+     * @return i bounds del contenuto, oppure null se il modello è vuoto
      */
-    public ObservableList<AbstractShape> getShapesOrderedByZ() {
-        return FXCollections.observableArrayList(
-                shapes.stream()
-                        .sorted((s1, s2) -> Integer.compare(((AbstractShape) s2).getZ(), ((AbstractShape) s1).getZ()))
-                        .toList()
-        );
+    public Bounds getContentBounds() {
+        Bounds loaded = spatialIndex.getContentBounds();
+        Bounds pending = lazySource != null ? lazySource.getBounds() : null;
+        if (pending == null) {
+            return loaded;
+        }
+        if (loaded == null) {
+            return pending;
+        }
+        double minX = Math.min(loaded.getMinX(), pending.getMinX());
+        double minY = Math.min(loaded.getMinY(), pending.getMinY());
+        return new BoundingBox(minX, minY, Math.max(loaded.getMaxX(), pending.getMaxX()) - minX,
+                Math.max(loaded.getMaxY(), pending.getMaxY()) - minY);
+    }
+
+    /**
+     * Metodo che restituisce le figure in ordine decrescente di z.
+     * È una vista in sola lettura sulla lista del modello percorsa al contrario: non viene ordinata
+     * né copiata a ogni chiamata e riflette subito inserimenti, rimozioni e cambi di Z.
+     */
+    public List<AbstractShape> getShapesOrderedByZ() {
+        return shapesByZ;
+    }
+
+    /**
+     * Restituisce una copia di tutte le figure del disegno, nell'ordine di Z, da usare fuori dal thread
+     * dell'interfaccia (ad esempio per un salvataggio in background) mentre il modello continua a cambiare.
+     * Le copie condividono i dati immutabili con gli originali, quindi la copia è veloce anche per disegni grandi.
+     */
+    public List<AbstractShape> snapshotShapes() {
+        materializeAllShapes();
+        List<AbstractShape> snapshot = new ArrayList<>(shapes.size());
+        for (AbstractShape shape : shapes) {
+            snapshot.add(shape.deepClone());
+        }
+        return snapshot;
+    }
+
+    /**
+     * Come snapshotShapes(), senza caricare le figure ancora in attesa nella sorgente differita: qui vengono copiate
+     * solo le figure già presenti, quelle in attesa vengono lette da DrawingSnapshot.getShapes() nel thread che la chiama.
+     * Il modello non cambia: le figure in attesa restano tali.
+     */
+    public DrawingSnapshot snapshot() {
+        List<AbstractShape> loaded = new ArrayList<>(shapes.size());
+        int[] records = new int[lazySource != null ? shapes.size() : 0];
+        for (int i = 0; i < shapes.size(); i++) {
+            AbstractShape shape = shapes.get(i);
+            loaded.add(shape.deepClone());
+            if (lazySource != null) {
+                records[i] = getLazyRecord(shape);
+            }
+        }
+        return new DrawingSnapshot(loaded, records, lazySource != null ? lazySource.pendingShapes() : null);
     }
 
     /**
      * @param file  per il salvataggio di figure su un file
      */
     public void saveToFile(File file) throws IOException {
+        materializeAllShapes();
         try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(file))) {
             // Convert ObservableList to ArrayList for serialization
             oos.writeObject(new ArrayList<>(shapes));
@@ -199,21 +618,34 @@ public class DrawingModel {
     public void loadFromFile(File file) throws IOException, ClassNotFoundException {
         try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(file))) {
             List<AbstractShape> loadedShapes = (List<AbstractShape>) ois.readObject();
-            shapes.clear();
-            if (loadedShapes != null) {
-                shapes.addAll(loadedShapes);
+            if (loadedShapes == null) {
+                shapes.clear();
+            } else {
+                // I file delle versioni precedenti contengono catene di decoratori: si convertono in figure con stile
+                List<AbstractShape> flattened = new ArrayList<>(loadedShapes.size());
+                for (AbstractShape shape : loadedShapes) {
+                    AbstractShape base = ShapeDecorator.flatten(shape);
+                    if (base != null) {
+                        flattened.add(base);
+                    }
+                }
+                replaceShapes(flattened);
             }
         }
         if (this.shapes == null) {
-            this.shapes = FXCollections.observableArrayList();
+            this.shapes = new ShapeList(this);
         }
     }
     public void setText(TextShape text, String newText) {
         if(text != null) {
+            fireShapeChanging(text);
             text.setText(newText);
+            markDirty(text);
         }
     }
     public void setFontSize(TextShape text, int size) {
+        fireShapeChanging(text);
         text.setFontSize(size);
+        markDirty(text);
     }
 }
\ No newline at end of file
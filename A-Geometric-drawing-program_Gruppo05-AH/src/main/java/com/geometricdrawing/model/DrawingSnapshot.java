@@ -0,0 +1,98 @@
+package com.geometricdrawing.model;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Autore: Gruppo05
+ * Scopo: Copia del disegno presa sul thread JavaFX e completata in un altro thread (vedi DrawingModel.snapshot).
+ * Contiene le copie delle figure già caricate; quelle ancora in attesa nella sorgente differita vengono lette
+ * solo da getShapes(), così il salvataggio di un disegno aperto in modo differito non decodifica il file
+ * sul thread dell'interfaccia.
+ */
+public final class DrawingSnapshot {
+    private final List<AbstractShape> loaded;
+    private final LazyShapeSource.PendingShapes pending; // null se non ci sono figure in attesa
+    private final int[] presentRecords; // record delle figure caricate dalla sorgente, in ordine crescente
+    private final int[] presentIndexes; // posizione in loaded di ciascuna di quelle figure
+
+    /**
+     * @param loaded        copie delle figure del modello, nell'ordine di Z
+     * @param loadedRecords per ogni figura di loaded il record della sorgente da cui proviene, oppure -1
+     * @param pending       figure ancora in attesa nella sorgente, null se non ce ne sono
+     */
+    DrawingSnapshot(List<AbstractShape> loaded, int[] loadedRecords, LazyShapeSource.PendingShapes pending) {
+        this.loaded = Collections.unmodifiableList(loaded);
+        this.pending = pending;
+        long[] present = new long[loaded.size()];
+        int count = 0;
+        for (int i = 0; pending != null && i < loadedRecords.length; i++) {
+            if (loadedRecords[i] >= 0) {
+                present[count++] = (long) loadedRecords[i] << 32 | i;
+            }
+        }
+        Arrays.sort(present, 0, count);
+        presentRecords = new int[count];
+        presentIndexes = new int[count];
+        for (int i = 0; i < count; i++) {
+            presentRecords[i] = (int) (present[i] >>> 32);
+            presentIndexes[i] = (int) present[i];
+        }
+    }
+
+    /**
+     * Restituisce tutte le figure nell'ordine di Z, come le avrebbe il modello dopo aver caricato quelle in attesa:
+     * ogni figura in attesa va sotto la prima figura caricata che proviene da un record successivo, oppure sopra
+     * l'ultima che proviene da un record precedente (vedi DrawingModel.insertDeliveredShapes).
+     * Si può chiamare da qualunque thread; le figure in attesa vengono lette a ogni chiamata.
+     */
+    public List<AbstractShape> getShapes() throws IOException {
+        if (pending == null) {
+            return loaded;
+        }
+        List<AbstractShape> delivered = new ArrayList<>();
+        long[][] keys = {new long[64]};
+        pending.read((record, shape) -> {
+            int i = delivered.size();
+            if (i == keys[0].length) {
+                keys[0] = Arrays.copyOf(keys[0], i * 2);
+            }
+            keys[0][i] = placementOf(record) << 32 | i; // a parità di posizione resta l'ordine dei record
+            delivered.add(shape);
+        });
+        long[] order = keys[0];
+        Arrays.sort(order, 0, delivered.size());
+
+        List<AbstractShape> shapes = new ArrayList<>(loaded.size() + delivered.size());
+        int next = 0;
+        for (int k = 0; k < delivered.size(); k++) {
+            int slot = (int) (order[k] >>> 33);
+            while (next < slot) {
+                shapes.add(loaded.get(next++));
+            }
+            shapes.add(delivered.get((int) order[k]));
+        }
+        while (next < loaded.size()) {
+            shapes.add(loaded.get(next++));
+        }
+        return shapes;
+    }
+
+    // Due volte la posizione in loaded prima della quale va la figura del record, più uno se va sotto la figura
+    // successiva: nella stessa posizione, come nell'inserimento del modello, le figure messe sopra la precedente
+    // stanno sotto quelle messe sotto la successiva
+    private long placementOf(int record) {
+        int index = Arrays.binarySearch(presentRecords, record);
+        int nextPresent = index >= 0 ? index + 1 : -index - 1;
+        if (nextPresent < presentRecords.length) {
+            return 2L * presentIndexes[nextPresent] + 1;
+        }
+        if (presentRecords.length > 0) {
+            return 2L * (presentIndexes[presentRecords.length - 1] + 1);
+        }
+        return 0;
+    }
+}
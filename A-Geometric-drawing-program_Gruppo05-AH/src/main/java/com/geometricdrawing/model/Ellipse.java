@@ -2,14 +2,26 @@ package com.geometricdrawing.model;
 
 import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.paint.Color;
+import java.io.Serial;
 
 
 public class Ellipse extends AbstractShape {
+    @Serial
+    private static final long serialVersionUID = -3282580684708666530L;
 
     public Ellipse(double x, double y, double width, double height) {
         super(x, y, width, height); // x,y sono angolo sup-sx del bbox, width/height sono i diametri
     }
 
+    protected Ellipse(Ellipse source) {
+        super(source);
+    }
+
+    @Override
+    protected Ellipse copy() {
+        return new Ellipse(this);
+    }
+
     // il metodo procede alla creazione dell'ellisse con i colori di riempimento e bordo settati
     @Override
     public void drawShape(GraphicsContext gc) {
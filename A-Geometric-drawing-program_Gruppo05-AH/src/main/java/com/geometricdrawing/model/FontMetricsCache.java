@@ -0,0 +1,145 @@
+package com.geometricdrawing.model;
+
+import javafx.scene.text.Font;
+import javafx.scene.text.Text;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Autore: Gruppo05
+ * Scopo: Cache condivisa, e limitata, dei font e delle loro misure usata da tutto il rendering del testo.
+ * Per ogni coppia (famiglia, dimensione) conserva l'istanza di Font, l'altezza di riga, l'ascendente,
+ * la larghezza dello spazio e quella delle parole già misurate: ridisegnare il testo non crea più
+ * font né nodi Text, e il word wrapping misura ogni parola distinta una sola volta.
+ */
+public final class FontMetricsCache {
+    // Numero massimo di font ricordati, oltre si scartano quelli usati meno di recente
+    static final int MAX_FONTS = 64;
+    // Numero massimo di parole ricordate per ciascun font
+    static final int MAX_WORDS_PER_FONT = 4096;
+
+    private static final Map<String, Metrics> METRICS_BY_FONT = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Metrics> eldest) {
+            return size() > MAX_FONTS;
+        }
+    };
+
+    private FontMetricsCache() {}
+
+    /**
+     * Restituisce il font e le misure condivise per la famiglia e la dimensione indicate,
+     * creandoli al primo utilizzo.
+     */
+    public static synchronized Metrics get(String fontFamily, double fontSize) {
+        if (fontFamily == null) {
+            throw new IllegalArgumentException("La famiglia del font non può essere null.");
+        }
+        String key = fontFamily + "|" + fontSize;
+        Metrics metrics = METRICS_BY_FONT.get(key);
+        if (metrics == null) {
+            metrics = createMetrics(new Font(fontFamily, fontSize));
+            METRICS_BY_FONT.put(key, metrics);
+        }
+        return metrics;
+    }
+
+    /**
+     * Restituisce le misure condivise del font indicato (stessa cache di get(famiglia, dimensione)).
+     */
+    public static Metrics get(Font font) {
+        if (font == null) {
+            throw new IllegalArgumentException("Il font non può essere null.");
+        }
+        return get(font.getFamily(), font.getSize());
+    }
+
+    // Misura altezza di riga e ascendente con un nodo Text, poi lo riusa per le larghezze
+    private static Metrics createMetrics(Font font) {
+        Text measure = new Text("Mg"); // Stringa di esempio per misurare l'altezza di una riga
+        measure.setFont(font);
+        double lineHeight = measure.getLayoutBounds().getHeight();
+        double ascent = measure.getBaselineOffset();
+        return new Metrics(font, s -> {
+            measure.setText(s);
+            return measure.getLayoutBounds().getWidth();
+        }, lineHeight, ascent);
+    }
+
+    /**
+     * Misure di un singolo font: altezza di riga, ascendente, larghezza dello spazio
+     * e larghezze delle parole (cache LRU limitata).
+     */
+    public static final class Metrics {
+        private final Font font;
+        private final ToDoubleFunction<String> measurer;
+        private final double lineHeight;
+        private final double ascent;
+        private final double spaceWidth;
+        private final Map<String, Double> wordWidths = new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Double> eldest) {
+                return size() > MAX_WORDS_PER_FONT;
+            }
+        };
+        private long measureCount; // misure effettivamente eseguite (diagnostica)
+
+        Metrics(Font font, ToDoubleFunction<String> measurer, double lineHeight, double ascent) {
+            this.font = font;
+            this.measurer = measurer;
+            this.lineHeight = lineHeight;
+            this.ascent = ascent;
+            // Lo spazio si ricava per differenza: misurato da solo alcuni motori di testo lo considerano largo zero
+            double spaced = measure("x x") - 2 * measure("x");
+            this.spaceWidth = spaced > 0 ? spaced : measure(" ");
+        }
+
+        /**
+         * Larghezza naturale della parola nel font, misurata una sola volta e poi letta dalla cache.
+         */
+        public double wordWidth(String word) {
+            Double width = wordWidths.get(word);
+            if (width == null) {
+                width = measure(word);
+                wordWidths.put(word, width);
+            }
+            return width;
+        }
+
+        /**
+         * Larghezza naturale di un testo qualsiasi (ad esempio una riga intera), senza memorizzarla.
+         */
+        public double textWidth(String text) {
+            return measure(text);
+        }
+
+        public Font getFont() {
+            return font;
+        }
+
+        /** Altezza di una riga di testo non scalata */
+        public double getLineHeight() {
+            return lineHeight;
+        }
+
+        /** Distanza tra il bordo superiore della riga e la linea di base */
+        public double getAscent() {
+            return ascent;
+        }
+
+        public double getSpaceWidth() {
+            return spaceWidth;
+        }
+
+        long getMeasureCount() {
+            return measureCount;
+        }
+
+        private double measure(String s) {
+            measureCount++;
+            return measurer.applyAsDouble(s);
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.geometricdrawing.model;
+
+import javafx.geometry.Bounds;
+
+import java.io.IOException;
+
+/**
+ * Autore: Gruppo05
+ * Scopo: Sorgente di figure non ancora caricate nel modello, ad esempio un disegno molto grande aperto
+ * in modo differito. Il modello chiede alla sorgente le figure che intersecano l'area che gli serve
+ * (la parte visibile, una selezione) e le inserisce nella lista nella posizione che avevano nel file.
+ * Ogni figura viene consegnata una sola volta.
+ */
+public interface LazyShapeSource {
+
+    /**
+     * Riceve le figure caricate, in ordine crescente di record (cioè di Z nel file).
+     */
+    @FunctionalInterface
+    interface ShapeSink {
+        void accept(int record, AbstractShape shape);
+    }
+
+    /**
+     * Carica le figure non ancora consegnate il cui ingombro interseca l'area indicata (coordinate del mondo).
+     */
+    void materializeIn(double minX, double minY, double maxX, double maxY, ShapeSink sink);
+
+    /**
+     * Carica tutte le figure non ancora consegnate. Dopo la chiamata la sorgente non ha più figure in attesa.
+     */
+    void materializeAll(ShapeSink sink);
+
+    /**
+     * Figure ancora in attesa in un dato momento, da leggere anche in un altro thread (vedi pendingShapes).
+     */
+    @FunctionalInterface
+    interface PendingShapes {
+        /**
+         * Legge le figure e le passa a sink in ordine crescente di record.
+         */
+        void read(ShapeSink sink) throws IOException;
+    }
+
+    /**
+     * Prepara la lettura delle figure non ancora consegnate, senza consegnarle: la sorgente resta com'è e la
+     * lettura può avvenire in un altro thread, mentre il modello continua a caricare figure.
+     */
+    PendingShapes pendingShapes();
+
+    /**
+     * @return il numero di figure non ancora consegnate
+     */
+    int getPendingCount();
+
+    /**
+     * @return il rettangolo che racchiude tutte le figure della sorgente, oppure null se è vuota
+     */
+    Bounds getBounds();
+}
@@ -2,14 +2,26 @@ package com.geometricdrawing.model;
 
 import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.paint.Color;
+import java.io.Serial;
 
 public class Line extends AbstractShape {
+    @Serial
+    private static final long serialVersionUID = 1760398698606528232L;
 
     public Line(double startX, double startY, double endX, double endY) {
         // x,y di AbstractShape saranno startX, startY
         super(startX, startY, endX - startX, endY - startY);
     }
 
+    protected Line(Line source) {
+        super(source);
+    }
+
+    @Override
+    protected Line copy() {
+        return new Line(this);
+    }
+
     @Override
     public void drawShape(GraphicsContext gc) {
         // Calcola il centro della linea
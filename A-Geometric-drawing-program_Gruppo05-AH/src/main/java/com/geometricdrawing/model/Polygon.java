@@ -1,60 +1,192 @@
 package com.geometricdrawing.model;
 
 import javafx.scene.canvas.GraphicsContext;
-import javafx.scene.paint.Color;
 import javafx.geometry.Point2D;
 
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
-import java.util.ArrayList;
+import java.io.Serial;
+import java.util.AbstractList;
+import java.util.Arrays;
 import java.util.List;
 
 public class Polygon extends AbstractShape {
-    private transient List<Point2D> vertices;
+    @Serial
+    private static final long serialVersionUID = -7888006004006351941L;
+
+    // Vertici memorizzati in due array primitivi paralleli (16 byte per vertice), relativi a un'origine comune:
+    // il vertice i nel mondo è (originX + xs[i], originY + ys[i]), così una traslazione non tocca gli array
+    private transient double[] xs;
+    private transient double[] ys;
+    private transient int vertexCount;
+    private transient double originX, originY;
+    // true se xs e ys sono condivisi con una copia creata da deepClone: vanno duplicati prima di modificarli sul posto
+    private transient boolean verticesShared;
+
+    // Buffer riutilizzati da drawShape con i vertici relativi al centro del bounding box.
+    // Restano validi finché i vertici non cambiano forma: uno spostamento non li tocca.
+    private transient double[] drawXs;
+    private transient double[] drawYs;
+    private transient boolean drawBuffersValid;
+    private transient double drawCenterX, drawCenterY; // centro con cui sono stati calcolati i buffer
+
+    // Sotto questo numero di vertici il ray-casting lineare è già abbastanza veloce
+    private static final int EDGE_GRID_MIN_VERTICES = 64;
+    // Griglia dei lati per fasce orizzontali, costruita al primo hit-test e scartata quando i vertici cambiano
+    private transient EdgeGrid edgeGrid;
 
     public Polygon(double x, double y) {
         super(x, y, 0.0, 0.0); // inizializza con larghezza e altezza 0
-        this.vertices = new ArrayList<>();
-        this.vertices.add(new Point2D(x, y)); // Primo punto
+        this.xs = new double[4];
+        this.ys = new double[4];
+        this.xs[0] = x; // Primo punto
+        this.ys[0] = y;
+        this.vertexCount = 1;
+    }
+
+    // Copia in copy-on-write: gli array dei vertici (e la griglia dei lati, immutabile) restano condivisi
+    // finché una delle due figure non cambia forma; spostare la copia modifica solo la sua origine
+    protected Polygon(Polygon source) {
+        super(source);
+        this.xs = source.xs;
+        this.ys = source.ys;
+        this.vertexCount = source.vertexCount;
+        this.originX = source.originX;
+        this.originY = source.originY;
+        this.edgeGrid = source.edgeGrid;
+        this.verticesShared = true;
+        source.verticesShared = true;
+    }
+
+    @Override
+    protected Polygon copy() {
+        return new Polygon(this);
     }
 
     public void addVertex(double x, double y) {
-        vertices.add(new Point2D(x, y));
-        updateBounds();
+        ensureCapacity(vertexCount + 1);
+        xs[vertexCount] = x - originX;
+        ys[vertexCount] = y - originY;
+        vertexCount++;
+        extendBounds(vertexCount - 1);
+    }
+
+    /**
+     * Aggiunge in coda un blocco di vertici con una sola chiamata (ad esempio un contorno importato).
+     * Gli array vengono ingranditi una sola volta e il bounding box viene esteso solo con i nuovi punti.
+     * @param newXs coordinate x dei vertici da aggiungere
+     * @param newYs coordinate y dei vertici da aggiungere
+     * @param count numero di vertici da leggere dagli array
+     */
+    public void addVertices(double[] newXs, double[] newYs, int count) {
+        if (newXs == null || newYs == null || count < 0 || count > newXs.length || count > newYs.length) {
+            throw new IllegalArgumentException("Vertici non validi: gli array devono contenere almeno " + count + " coordinate.");
+        }
+        if (count == 0) return;
+        int start = vertexCount;
+        ensureCapacity(vertexCount + count);
+        for (int i = 0; i < count; i++) {
+            xs[start + i] = newXs[i] - originX;
+            ys[start + i] = newYs[i] - originY;
+        }
+        vertexCount += count;
+        extendBounds(start);
     }
 
     public void removeVertex(int index) {
-        if (index >= 0 && index < vertices.size()) {
-            vertices.remove(index);
-            updateBounds();
+        if (index >= 0 && index < vertexCount) {
+            ensureOwnVertices();
+            int tail = vertexCount - index - 1;
+            System.arraycopy(xs, index + 1, xs, index, tail);
+            System.arraycopy(ys, index + 1, ys, index, tail);
+            vertexCount--;
+            updateBounds(); // lo spostamento degli array è già lineare, la nuova scansione non cambia il costo
         }
     }
 
-    private void updateBounds() {
-        if (vertices.isEmpty()) return;
+    private void ensureCapacity(int required) {
+        if (required > xs.length) {
+            int newCapacity = Math.max(required, xs.length + (xs.length >> 1) + 1);
+            xs = Arrays.copyOf(xs, newCapacity);
+            ys = Arrays.copyOf(ys, newCapacity);
+            verticesShared = false; // gli array ingranditi sono già una copia privata
+        } else {
+            ensureOwnVertices();
+        }
+    }
 
-        double minX = Double.MAX_VALUE;
-        double minY = Double.MAX_VALUE;
-        double maxX = Double.MIN_VALUE;
-        double maxY = Double.MIN_VALUE;
+    // Prima di una modifica sul posto: se gli array sono condivisi con un'altra figura se ne crea una copia privata
+    private void ensureOwnVertices() {
+        if (verticesShared) {
+            xs = xs.clone();
+            ys = ys.clone();
+            verticesShared = false;
+        }
+    }
+
+    /**
+     * Indica se questo poligono e quello indicato condividono ancora gli stessi array dei vertici (copy-on-write).
+     */
+    public boolean sharesVerticesWith(Polygon other) {
+        return other != null && xs == other.xs;
+    }
 
-        for (Point2D p : vertices) {
-            minX = Math.min(minX, p.getX());
-            minY = Math.min(minY, p.getY());
-            maxX = Math.max(maxX, p.getX());
-            maxY = Math.max(maxY, p.getY());
+    // I vertici hanno cambiato forma: i buffer di disegno e la griglia dei lati vanno ricalcolati
+    private void verticesChanged() {
+        drawBuffersValid = false;
+        edgeGrid = null;
+    }
+
+    // Estende il bounding box con i vertici a partire da fromIndex, senza riscorrere quelli già presenti
+    private void extendBounds(int fromIndex) {
+        verticesChanged();
+        if (fromIndex == 0) {
+            updateBounds();
+            return;
+        }
+        // Il confronto avviene nelle coordinate degli array, relative all'origine
+        double minX = this.x - originX;
+        double minY = this.y - originY;
+        double maxX = minX + this.width;
+        double maxY = minY + this.height;
+        for (int i = fromIndex; i < vertexCount; i++) {
+            minX = Math.min(minX, xs[i]);
+            minY = Math.min(minY, ys[i]);
+            maxX = Math.max(maxX, xs[i]);
+            maxY = Math.max(maxY, ys[i]);
+        }
+        this.x = originX + minX;
+        this.y = originY + minY;
+        this.width = maxX - minX;
+        this.height = maxY - minY;
+    }
+
+    private void updateBounds() {
+        verticesChanged();
+        if (vertexCount == 0) return;
+
+        double minX = Double.POSITIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY;
+        double maxY = Double.NEGATIVE_INFINITY;
+
+        for (int i = 0; i < vertexCount; i++) {
+            minX = Math.min(minX, xs[i]);
+            minY = Math.min(minY, ys[i]);
+            maxX = Math.max(maxX, xs[i]);
+            maxY = Math.max(maxY, ys[i]);
         }
 
-        this.x = minX;
-        this.y = minY;
+        this.x = originX + minX;
+        this.y = originY + minY;
         this.width = maxX - minX;
         this.height = maxY - minY;
     }
 
     @Override
     public void drawShape(GraphicsContext gc) {
-        if (vertices.size() < 3) {
+        if (vertexCount < 3) {
             return; // il poligono deve avere almeno 3 punti
         }
 
@@ -62,28 +194,33 @@ public class Polygon extends AbstractShape {
         double centerX = this.x + this.width / 2;
         double centerY = this.y + this.height / 2;
 
-
-        double[] xVertices = new double[vertices.size()];
-        double[] yVertices = new double[vertices.size()];
-
-        // Converti le coordinate assolute dei vertici in coordinate relative al centro
-        for (int i = 0; i < vertices.size(); i++) {
-            xVertices[i] = vertices.get(i).getX() - centerX;
-            yVertices[i] = vertices.get(i).getY() - centerY;
+        // Le coordinate relative al centro vengono ricalcolate solo se i vertici o il centro sono cambiati
+        if (!drawBuffersValid || centerX != drawCenterX || centerY != drawCenterY) {
+            if (drawXs == null || drawXs.length < vertexCount) {
+                drawXs = new double[vertexCount];
+                drawYs = new double[vertexCount];
+            }
+            double relativeCenterX = centerX - originX;
+            double relativeCenterY = centerY - originY;
+            for (int i = 0; i < vertexCount; i++) {
+                drawXs[i] = xs[i] - relativeCenterX;
+                drawYs[i] = ys[i] - relativeCenterY;
+            }
+            drawCenterX = centerX;
+            drawCenterY = centerY;
+            drawBuffersValid = true;
         }
 
-
-        gc.fillPolygon(xVertices, yVertices, vertices.size());
-        gc.strokePolygon(xVertices, yVertices, vertices.size());
+        gc.fillPolygon(drawXs, drawYs, vertexCount);
+        gc.strokePolygon(drawXs, drawYs, vertexCount);
     }
 
     @Override
     public boolean containsPoint(double x, double y, double threshold) {
         // Applica la trasformazione inversa completa al punto per riportarlo
         // al sistema di coordinate originale del poligono (prima di qualsiasi trasformazione)
-        Point2D transformedPoint = inverseTransformPoint(x, y);
-        double transformedX = transformedPoint.getX();
-        double transformedY = transformedPoint.getY();
+        double transformedX = inverseTransformX(x, y);
+        double transformedY = inverseTransformY(x, y);
 
         // Ora verifica se il punto trasformato è dentro il poligono originale
         // usando le coordinate originali dei vertici
@@ -96,34 +233,42 @@ public class Polygon extends AbstractShape {
      * Le coordinate del punto devono essere nel sistema di riferimento locale del poligono.
      */
     private boolean isPointInPolygon(double x, double y) {
-        if (vertices.size() < 3) {
+        if (vertexCount < 3) {
             return false;
         }
 
-        // Calcola il centro del bounding box per convertire i vertici in coordinate locali
+        // Invece di convertire ogni vertice in coordinate locali, si riporta il punto nelle coordinate degli array
         double centerX = this.x + this.width / 2;
         double centerY = this.y + this.height / 2;
+        double px = x + centerX - originX;
+        double py = y + centerY - originY;
+
+        if (vertexCount >= EDGE_GRID_MIN_VERTICES) {
+            if (edgeGrid == null) {
+                edgeGrid = new EdgeGrid(xs, ys, vertexCount);
+            }
+            return edgeGrid.contains(xs, ys, vertexCount, px, py);
+        }
 
         boolean inside = false;
-        int j = vertices.size() - 1; // indice del punto precedente
+        int j = vertexCount - 1; // indice del punto precedente
 
         // Esamina ogni coppia di vertici consecutivi del poligono e verifica se una linea
         // orizzontale che passa per il punto (x,y) interseca il lato del poligono.
         // Ad ogni intersezione valida, lo stato "dentro/fuori" viene invertito.
-        for (int i = 0; i < vertices.size(); i++) {
-            // Converti i vertici in coordinate locali relative al centro
-            double xi = vertices.get(i).getX() - centerX;
-            double yi = vertices.get(i).getY() - centerY;
-            double xj = vertices.get(j).getX() - centerX;
-            double yj = vertices.get(j).getY() - centerY;
+        for (int i = 0; i < vertexCount; i++) {
+            double xi = xs[i];
+            double yi = ys[i];
+            double xj = xs[j];
+            double yj = ys[j];
 
-            boolean intersects = (yi > y) != (yj > y); // il segmento attraversa la riga orizzontale a y
+            boolean intersects = (yi > py) != (yj > py); // il segmento attraversa la riga orizzontale a y
 
             if (intersects) {
                 // calcola la coordinata x del punto di intersezione tra il lato e la riga orizzontale
-                double xIntersection = (xj - xi) * (y - yi) / (yj - yi) + xi;
+                double xIntersection = (xj - xi) * (py - yi) / (yj - yi) + xi;
 
-                if (x < xIntersection) {
+                if (px < xIntersection) {
                     inside = !inside;
                 }
             }
@@ -136,8 +281,112 @@ public class Polygon extends AbstractShape {
         return inside;
     }
 
+    /**
+     * Griglia dei lati per fasce orizzontali: ogni lato è registrato nelle fasce di Y che attraversa.
+     * Una semiretta orizzontale può intersecare solo i lati della fascia che contiene il punto,
+     * quindi il ray-casting non scorre più tutti i vertici. Le fasce sono memorizzate in forma compatta
+     * (inizio di ogni fascia + indici dei lati), nelle coordinate degli array relative all'origine: una traslazione
+     * non la modifica e, essendo immutabile, può essere condivisa tra un poligono e le sue copie.
+     */
+    private static final class EdgeGrid {
+        // Un lato compare in tutte le fasce che attraversa: su un poligono a zig-zag quasi ogni lato le attraversa
+        // tutte, quindi il numero di fasce viene ridotto finché la griglia non supera questo multiplo dei lati
+        private static final int MAX_ENTRIES_PER_EDGE = 8;
+
+        private final double minY;
+        private final double bandHeight;
+        private final int bandCount;
+        private final int[] bandStart; // i lati della fascia b sono edges[bandStart[b] .. bandStart[b + 1])
+        private final int[] edges;     // indice i del lato che va dal vertice i-1 al vertice i
+
+        private EdgeGrid(double[] xs, double[] ys, int n) {
+            double lo = Double.POSITIVE_INFINITY;
+            double hi = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < n; i++) {
+                lo = Math.min(lo, ys[i]);
+                hi = Math.max(hi, ys[i]);
+            }
+            this.minY = lo;
+            double span = hi - lo;
+            int bands = Math.max(1, Math.min(n / 4, 1 << 16));
+            long maxEntries = (long) MAX_ENTRIES_PER_EDGE * n;
+            while (bands > 1 && countEntries(ys, n, lo, span > 0 ? span / bands : 1.0, bands) > maxEntries) {
+                bands /= 2;
+            }
+            this.bandCount = bands;
+            this.bandHeight = span > 0 ? span / bandCount : 1.0;
+
+            // Prima passata: quanti lati per fascia; seconda passata: riempimento
+            bandStart = new int[bandCount + 1];
+            for (int i = 0, j = n - 1; i < n; j = i++) {
+                int first = band(Math.min(ys[i], ys[j]));
+                int last = band(Math.max(ys[i], ys[j]));
+                for (int b = first; b <= last; b++) {
+                    bandStart[b + 1]++;
+                }
+            }
+            for (int b = 0; b < bandCount; b++) {
+                bandStart[b + 1] += bandStart[b];
+            }
+            edges = new int[bandStart[bandCount]];
+            int[] fill = Arrays.copyOf(bandStart, bandCount);
+            for (int i = 0, j = n - 1; i < n; j = i++) {
+                int first = band(Math.min(ys[i], ys[j]));
+                int last = band(Math.max(ys[i], ys[j]));
+                for (int b = first; b <= last; b++) {
+                    edges[fill[b]++] = i;
+                }
+            }
+        }
+
+        private int band(double y) {
+            return band(y, minY, bandHeight, bandCount);
+        }
+
+        private static int band(double y, double minY, double bandHeight, int bandCount) {
+            int b = (int) ((y - minY) / bandHeight);
+            return Math.max(0, Math.min(bandCount - 1, b));
+        }
+
+        // Numero di voci che avrebbe la griglia con le fasce indicate (in long: può superare Integer.MAX_VALUE)
+        private static long countEntries(double[] ys, int n, double minY, double bandHeight, int bandCount) {
+            long total = 0;
+            for (int i = 0, j = n - 1; i < n; j = i++) {
+                int first = band(Math.min(ys[i], ys[j]), minY, bandHeight, bandCount);
+                int last = band(Math.max(ys[i], ys[j]), minY, bandHeight, bandCount);
+                total += last - first + 1;
+            }
+            return total;
+        }
+
+        // Stesso test del ray-casting lineare, limitato ai lati della fascia del punto
+        private boolean contains(double[] xs, double[] ys, int n, double px, double py) {
+            if (py < minY || py > minY + bandHeight * bandCount) {
+                return false;
+            }
+            boolean inside = false;
+            int b = band(py);
+            for (int k = bandStart[b], end = bandStart[b + 1]; k < end; k++) {
+                int i = edges[k];
+                int j = i == 0 ? n - 1 : i - 1;
+                double xi = xs[i];
+                double yi = ys[i];
+                double xj = xs[j];
+                double yj = ys[j];
+                if ((yi > py) != (yj > py)) {
+                    double xIntersection = (xj - xi) * (py - yi) / (yj - yi) + xi;
+                    if (px < xIntersection) {
+                        inside = !inside;
+                    }
+                }
+            }
+            return inside;
+        }
+    }
+
     public void clearVertices() {
-        vertices.clear();
+        vertexCount = 0;
+        verticesChanged();
         setX(0);
         setY(0);
         setWidth(0);
@@ -146,16 +395,19 @@ public class Polygon extends AbstractShape {
 
     @Override
     public void moveBy(double deltaX, double deltaY) {
-        for (int i = 0; i < vertices.size(); i++) {
-            Point2D vertex = vertices.get(i);
-            vertices.set(i, new Point2D(vertex.getX() + deltaX, vertex.getY() + deltaY));
-        }
-        updateBounds();
+        // Traslazione in tempo costante: si sposta solo l'origine, gli array (anche se condivisi) restano invariati
+        originX += deltaX;
+        originY += deltaY;
+        this.x += deltaX;
+        this.y += deltaY;
+        // Vertici e centro si spostano insieme, quindi le coordinate relative al centro restano valide
+        drawCenterX += deltaX;
+        drawCenterY += deltaY;
     }
 
     @Override
     public void setWidth(double newWidth) {
-        if (vertices.isEmpty() || this.width <= 0) {
+        if (vertexCount == 0 || this.width <= 0) {
             this.width = newWidth;
             return;
         }
@@ -167,7 +419,7 @@ public class Polygon extends AbstractShape {
 
     @Override
     public void setHeight(double newHeight) {
-        if (vertices.isEmpty() || this.height <= 0) {
+        if (vertexCount == 0 || this.height <= 0) {
             this.height = newHeight;
             return;
         }
@@ -183,51 +435,90 @@ public class Polygon extends AbstractShape {
      * @param scaleY Fattore di scala per l'asse Y
      */
     private void resizeVertices(double scaleX, double scaleY) {
-        if (vertices.isEmpty()) {
+        if (vertexCount == 0) {
             return;
         }
 
-        // il punto di riferimento è l'angolo superiore sinistro del bounding box
-        double refX = this.x;
-        double refY = this.y;
+        // il punto di riferimento è l'angolo superiore sinistro del bounding box (nelle coordinate degli array)
+        double refX = this.x - originX;
+        double refY = this.y - originY;
 
-        ArrayList<Point2D> newVertices = new ArrayList<>();
-        for (Point2D vertex : vertices) {
-            // Posizione relativa rispetto al punto di riferimento
-            double relativeX = vertex.getX() - refX;
-            double relativeY = vertex.getY() - refY;
+        // Scala sul posto la posizione di ogni vertice relativa al punto di riferimento
+        ensureOwnVertices();
+        for (int i = 0; i < vertexCount; i++) {
+            xs[i] = refX + (xs[i] - refX) * scaleX;
+            ys[i] = refY + (ys[i] - refY) * scaleY;
+        }
 
-            double newX = refX + (relativeX * scaleX);
-            double newY = refY + (relativeY * scaleY);
+        updateBounds();
+    }
 
-            newVertices.add(new Point2D(newX, newY));
-        }
+    public int getVertexCount() {
+        return vertexCount;
+    }
 
-        // Imposta i nuovi vertici
-        vertices = newVertices;
+    public double getVertexX(int index) {
+        checkVertexIndex(index);
+        return originX + xs[index];
+    }
 
-        updateBounds();
+    public double getVertexY(int index) {
+        checkVertexIndex(index);
+        return originY + ys[index];
     }
 
+    private void checkVertexIndex(int index) {
+        if (index < 0 || index >= vertexCount) {
+            throw new IndexOutOfBoundsException("Indice del vertice non valido: " + index + " (vertici: " + vertexCount + ")");
+        }
+    }
+
+    /**
+     * Restituisce i vertici come vista in sola lettura: i Point2D vengono creati solo quando letti.
+     * Per scorrere molti vertici senza allocazioni usare getVertexCount, getVertexX e getVertexY.
+     */
     public List<Point2D> getVertices() {
-        return vertices;
+        return new AbstractList<>() {
+            @Override
+            public Point2D get(int index) {
+                checkVertexIndex(index);
+                return new Point2D(originX + xs[index], originY + ys[index]);
+            }
+
+            @Override
+            public int size() {
+                return vertexCount;
+            }
+        };
     }
 
     public void setVertices(List<Point2D> vertices) {
-        this.vertices = vertices;
+        int size = vertices.size();
+        // Gli array hanno esattamente la dimensione necessaria
+        xs = new double[size];
+        ys = new double[size];
+        verticesShared = false;
+        originX = 0;
+        originY = 0;
+        for (int i = 0; i < size; i++) {
+            Point2D point = vertices.get(i);
+            xs[i] = point.getX();
+            ys[i] = point.getY();
+        }
+        vertexCount = size;
         updateBounds();
     }
 
-    /* Metodi per la serializzazione necessari perché Point2D non è Serializable */
+    /* Metodi per la serializzazione: le coordinate vengono scritte direttamente dagli array,
+       nello stesso formato usato quando i vertici erano Point2D (che non è Serializable) */
 
     private void writeObject(ObjectOutputStream out) throws IOException {
         out.defaultWriteObject();
 
-        // vertices come coordinate double che sono serializzabili
-        out.writeInt(vertices.size());
-        for (Point2D point : vertices) {
-            out.writeDouble(point.getX());
-            out.writeDouble(point.getY());
+        out.writeInt(vertexCount);
+        for (int i = 0; i < vertexCount; i++) {
+            out.writeDouble(originX + xs[i]);
+            out.writeDouble(originY + ys[i]);
         }
     }
 
@@ -235,12 +526,16 @@ public class Polygon extends AbstractShape {
         in.defaultReadObject();
 
         int size = in.readInt();
-        vertices = new ArrayList<>(size);
+        if (size < 0) {
+            throw new IOException("Numero di vertici non valido: " + size);
+        }
+        xs = new double[size];
+        ys = new double[size];
         for (int i = 0; i < size; i++) {
-            double x = in.readDouble();
-            double y = in.readDouble();
-            vertices.add(new Point2D(x, y));
+            xs[i] = in.readDouble();
+            ys[i] = in.readDouble();
         }
+        vertexCount = size;
     }
 
-}
\ No newline at end of file
+}
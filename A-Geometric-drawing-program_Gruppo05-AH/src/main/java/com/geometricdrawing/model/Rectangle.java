@@ -2,13 +2,25 @@ package com.geometricdrawing.model;
 
 import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.paint.Color;
+import java.io.Serial;
 
 public class Rectangle extends AbstractShape {
+    @Serial
+    private static final long serialVersionUID = 5357338333511895841L;
 
     public Rectangle(double x, double y, double width, double height) {
         super(x, y, width, height);
     }
 
+    protected Rectangle(Rectangle source) {
+        super(source);
+    }
+
+    @Override
+    protected Rectangle copy() {
+        return new Rectangle(this);
+    }
+
     // il metodo procede alla creazione del rettangolo con i colori di riempimento e bordo settati
     @Override
     public void drawShape(GraphicsContext gc) {
@@ -0,0 +1,134 @@
+package com.geometricdrawing.model;
+
+import javafx.collections.ModifiableObservableListBase;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Autore: Gruppo05
+ * Scopo: Lista osservabile delle figure di un DrawingModel. Indice spaziale, area da ridisegnare e Z
+ * vengono aggiornati dal modello subito, a ogni modifica; i listener della lista invece ricevono un solo
+ * evento per tutte le modifiche fatte tra beginBatch ed endBatch.
+ * Le operazioni su intervalli (addAll, clear, setAll) toccano la lista e rinumerano lo Z una volta sola.
+ */
+final class ShapeList extends ModifiableObservableListBase<AbstractShape> {
+    private final ArrayList<AbstractShape> elements = new ArrayList<>();
+    private final DrawingModel owner;
+
+    ShapeList(DrawingModel owner) {
+        this.owner = owner;
+    }
+
+    // Le modifiche fino a endBatch confluiscono in un unico evento; le coppie si possono annidare
+    void beginBatch() {
+        beginChange();
+    }
+
+    void endBatch() {
+        endChange();
+    }
+
+    @Override
+    public AbstractShape get(int index) {
+        return elements.get(index);
+    }
+
+    @Override
+    public int size() {
+        return elements.size();
+    }
+
+    @Override
+    protected void doAdd(int index, AbstractShape shape) {
+        elements.add(index, shape);
+        owner.shapeAdded(shape);
+        owner.renumberZFrom(index);
+    }
+
+    @Override
+    protected AbstractShape doSet(int index, AbstractShape shape) {
+        AbstractShape old = elements.set(index, shape);
+        owner.shapeRemoved(old);
+        owner.shapeAdded(shape);
+        shape.setZ(index);
+        return old;
+    }
+
+    @Override
+    protected AbstractShape doRemove(int index) {
+        AbstractShape old = elements.remove(index);
+        owner.shapeRemoved(old);
+        owner.renumberZFrom(index);
+        return old;
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends AbstractShape> shapes) {
+        return addAll(size(), shapes);
+    }
+
+    @Override
+    public boolean addAll(int index, Collection<? extends AbstractShape> shapes) {
+        if (index < 0 || index > size()) {
+            throw new IndexOutOfBoundsException("Indice: " + index + ", dimensione: " + size());
+        }
+        if (shapes.isEmpty()) {
+            return false;
+        }
+        beginChange();
+        try {
+            elements.addAll(index, shapes);
+            int end = index + shapes.size();
+            for (int i = index; i < end; i++) {
+                owner.shapeAdded(elements.get(i));
+            }
+            owner.renumberZFrom(index);
+            nextAdd(index, end);
+            modCount++;
+        } finally {
+            endChange();
+        }
+        return true;
+    }
+
+    @Override
+    protected void removeRange(int fromIndex, int toIndex) {
+        if (fromIndex == toIndex) {
+            return;
+        }
+        beginChange();
+        try {
+            List<AbstractShape> range = elements.subList(fromIndex, toIndex);
+            List<AbstractShape> removed = new ArrayList<>(range);
+            range.clear();
+            for (AbstractShape shape : removed) {
+                owner.shapeRemoved(shape);
+            }
+            owner.renumberZFrom(fromIndex);
+            nextRemove(fromIndex, removed);
+            modCount++;
+        } finally {
+            endChange();
+        }
+    }
+
+    @Override
+    public void clear() {
+        removeRange(0, size());
+    }
+
+    @Override
+    public boolean setAll(Collection<? extends AbstractShape> shapes) {
+        List<AbstractShape> copy = new ArrayList<>(shapes); // shapes potrebbe essere una vista di questa lista
+        beginChange();
+        try {
+            clear();
+            addAll(copy);
+        } finally {
+            endChange();
+        }
+        return true;
+    }
+}
@@ -0,0 +1,265 @@
+package com.geometricdrawing.model;
+
+import javafx.collections.ListChangeListener;
+import javafx.geometry.BoundingBox;
+import javafx.geometry.Bounds;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Autore: Gruppo05
+ * Scopo: Figure selezionate di un DrawingModel, nell'ordine in cui sono state selezionate.
+ * Una di esse è la principale: quella mostrata dai controlli e che ha le maniglie di ridimensionamento.
+ * L'ingombro complessivo è calcolato quando serve e resta in cache finché una figura selezionata non cambia;
+ * le figure tolte dal modello escono anche dalla selezione.
+ */
+public class ShapeSelection {
+    private final DrawingModel model;
+    private final LinkedHashSet<AbstractShape> shapes = new LinkedHashSet<>(); // AbstractShape non ridefinisce equals
+    private AbstractShape primary;
+    private Bounds bounds;
+    private boolean boundsValid;
+    private int modCount; // cambia a ogni modifica dell'insieme, per chi deve ridisegnare l'evidenziazione
+
+    private final ListChangeListener<AbstractShape> listListener = this::onShapesChanged;
+    private final Consumer<AbstractShape> shapeListener = this::onShapeChanged;
+
+    public ShapeSelection(DrawingModel model) {
+        if (model == null) {
+            throw new IllegalArgumentException("Il modello della selezione non può essere null.");
+        }
+        this.model = model;
+        model.getShapes().addListener(listListener);
+        model.addShapeChangeListener(shapeListener);
+    }
+
+    /**
+     * Scollega la selezione dal modello, ad esempio quando il controller passa a un altro disegno.
+     */
+    public void dispose() {
+        model.getShapes().removeListener(listListener);
+        model.removeShapeChangeListener(shapeListener);
+        shapes.clear();
+        primary = null;
+    }
+
+    public DrawingModel getModel() {
+        return model;
+    }
+
+    /**
+     * Sostituisce la selezione con la sola figura indicata (null svuota la selezione).
+     */
+    public void select(AbstractShape shape) {
+        if (shape != null && shapes.size() == 1 && primary == shape) {
+            return;
+        }
+        shapes.clear();
+        primary = null;
+        if (shape != null) {
+            shapes.add(shape);
+            primary = shape;
+        }
+        changed();
+    }
+
+    /**
+     * Aggiunge la figura alla selezione e la rende la principale.
+     */
+    public void add(AbstractShape shape) {
+        if (shape == null) {
+            return;
+        }
+        shapes.add(shape);
+        primary = shape;
+        changed();
+    }
+
+    /**
+     * Aggiunge tutte le figure; se la selezione era vuota la principale diventa l'ultima aggiunta.
+     */
+    public void addAll(Collection<? extends AbstractShape> newShapes) {
+        boolean modified = false;
+        AbstractShape last = null;
+        for (AbstractShape shape : newShapes) {
+            if (shape != null) {
+                modified |= shapes.add(shape);
+                last = shape;
+            }
+        }
+        if (primary == null) {
+            primary = last;
+        }
+        if (modified) {
+            changed();
+        }
+    }
+
+    /**
+     * Sostituisce la selezione con le figure indicate (selezione ad area, ricalcolata a ogni frame).
+     * Se le figure sono le stesse già selezionate la selezione non cambia, e con essa i bounds in cache.
+     * La principale resta la stessa se è ancora selezionata, altrimenti diventa la prima delle nuove figure.
+     * @return true se la selezione è cambiata
+     */
+    public boolean replaceWith(Collection<? extends AbstractShape> newShapes) {
+        LinkedHashSet<AbstractShape> replacement = new LinkedHashSet<>(newShapes);
+        replacement.remove(null);
+        if (replacement.size() == shapes.size() && shapes.containsAll(replacement)) {
+            return false;
+        }
+        shapes.retainAll(replacement); // le figure già selezionate mantengono il loro ordine
+        shapes.addAll(replacement);
+        if (!shapes.contains(primary)) {
+            primary = shapes.isEmpty() ? null : shapes.getFirst();
+        }
+        changed();
+        return true;
+    }
+
+    /**
+     * Toglie la figura dalla selezione; se era la principale, lo diventa l'ultima selezionata tra le rimaste.
+     */
+    public boolean remove(AbstractShape shape) {
+        if (!shapes.remove(shape)) {
+            return false;
+        }
+        if (shape == primary) {
+            primary = shapes.isEmpty() ? null : shapes.getLast();
+        }
+        changed();
+        return true;
+    }
+
+    /**
+     * Aggiunge la figura se non è selezionata, altrimenti la toglie (selezione con Maiusc).
+     */
+    public void toggle(AbstractShape shape) {
+        if (shape == null) {
+            return;
+        }
+        if (!remove(shape)) {
+            add(shape);
+        }
+    }
+
+    public void clear() {
+        if (shapes.isEmpty()) {
+            return;
+        }
+        shapes.clear();
+        primary = null;
+        changed();
+    }
+
+    public boolean contains(AbstractShape shape) {
+        return shapes.contains(shape);
+    }
+
+    public int size() {
+        return shapes.size();
+    }
+
+    public boolean isEmpty() {
+        return shapes.isEmpty();
+    }
+
+    public AbstractShape getPrimary() {
+        return primary;
+    }
+
+    /**
+     * Rende principale una figura già selezionata.
+     */
+    public void setPrimary(AbstractShape shape) {
+        if (!shapes.contains(shape)) {
+            throw new IllegalArgumentException("La figura principale deve far parte della selezione.");
+        }
+        primary = shape;
+    }
+
+    /**
+     * @return copia delle figure selezionate, nell'ordine di selezione
+     */
+    public List<AbstractShape> getShapes() {
+        return new ArrayList<>(shapes);
+    }
+
+    /**
+     * @return copia delle figure selezionate ordinate per Z crescente
+     */
+    public List<AbstractShape> getShapesByZ() {
+        List<AbstractShape> sorted = new ArrayList<>(shapes);
+        sorted.sort(Comparator.comparingInt(AbstractShape::getZ));
+        return sorted;
+    }
+
+    /**
+     * Restituisce il rettangolo (coordinate del mondo) che racchiude gli ingombri ruotati delle figure selezionate.
+     * Durante un gruppo di modifiche del modello (beginBatch/endBatch) viene aggiornato alla chiusura del gruppo.
+     * @return i bounds della selezione, oppure null se è vuota
+     */
+    public Bounds getBounds() {
+        if (!boundsValid) {
+            bounds = computeBounds();
+            boundsValid = true;
+        }
+        return bounds;
+    }
+
+    public int getModCount() {
+        return modCount;
+    }
+
+    private Bounds computeBounds() {
+        double minX = Double.POSITIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY;
+        double maxY = Double.NEGATIVE_INFINITY;
+        for (AbstractShape shape : shapes) {
+            Bounds b = shape.getWorldBounds();
+            minX = Math.min(minX, b.getMinX());
+            minY = Math.min(minY, b.getMinY());
+            maxX = Math.max(maxX, b.getMaxX());
+            maxY = Math.max(maxY, b.getMaxY());
+        }
+        return shapes.isEmpty() ? null : new BoundingBox(minX, minY, maxX - minX, maxY - minY);
+    }
+
+    private void changed() {
+        boundsValid = false;
+        modCount++;
+    }
+
+    // Una figura spostata in un'altra posizione della lista (cambio di Z) risulta rimossa e aggiunta nello stesso evento
+    private void onShapesChanged(ListChangeListener.Change<? extends AbstractShape> change) {
+        if (shapes.isEmpty()) {
+            return;
+        }
+        boolean removedAny = false;
+        while (change.next()) {
+            for (AbstractShape removed : change.getRemoved()) {
+                if (shapes.contains(removed) && !model.contains(removed)) {
+                    shapes.remove(removed);
+                    removedAny = true;
+                }
+            }
+        }
+        if (removedAny) {
+            if (!shapes.contains(primary)) {
+                primary = shapes.isEmpty() ? null : shapes.getLast();
+            }
+            changed();
+        }
+    }
+
+    private void onShapeChanged(AbstractShape shape) {
+        if (shapes.contains(shape)) {
+            boundsValid = false;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.geometricdrawing.model;
+
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.paint.Color;
+
+import java.io.*;
+import java.util.Objects;
+
+/**
+ * Autore: Gruppo05
+ * Scopo: Stile grafico di una figura (colore di riempimento e di contorno), memorizzato direttamente
+ * sulla figura al posto della catena di FillColorDecorator e BorderColorDecorator.
+ * È immutabile: ogni modifica produce una nuova istanza, quindi più figure possono condividerla
+ * (ad esempio dopo una copia). Qui andranno aggiunti anche gli altri attributi di stile, come lo spessore del contorno.
+ */
+public final class ShapeStyle implements Serializable {
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    // Color non è Serializable: i colori vengono scritti come componenti RGBA in writeObject
+    private transient Color fillColor;   // null se la figura non ha riempimento
+    private transient Color borderColor; // null se la figura non ha un colore di contorno
+
+    public ShapeStyle(Color fillColor, Color borderColor) {
+        this.fillColor = fillColor;
+        this.borderColor = borderColor;
+    }
+
+    public Color getFillColor() {
+        return fillColor;
+    }
+
+    public Color getBorderColor() {
+        return borderColor;
+    }
+
+    /**
+     * @return uno stile uguale a questo ma con il colore di riempimento indicato
+     */
+    public ShapeStyle withFillColor(Color newFillColor) {
+        return new ShapeStyle(newFillColor, borderColor);
+    }
+
+    /**
+     * @return uno stile uguale a questo ma con il colore di contorno indicato
+     */
+    public ShapeStyle withBorderColor(Color newBorderColor) {
+        return new ShapeStyle(fillColor, newBorderColor);
+    }
+
+    /**
+     * Imposta sul GraphicsContext i colori definiti; quelli assenti lasciano invariato il contesto.
+     */
+    public void applyTo(GraphicsContext gc) {
+        if (fillColor != null) {
+            gc.setFill(fillColor);
+        }
+        if (borderColor != null) {
+            gc.setStroke(borderColor);
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof ShapeStyle other)) return false;
+        return Objects.equals(fillColor, other.fillColor) && Objects.equals(borderColor, other.borderColor);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(fillColor, borderColor);
+    }
+
+    @Serial
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        writeColor(out, fillColor);
+        writeColor(out, borderColor);
+    }
+
+    @Serial
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        fillColor = readColor(in);
+        borderColor = readColor(in);
+    }
+
+    // Ogni colore è preceduto da un flag di presenza, così un colore assente resta distinto dal trasparente
+    private static void writeColor(ObjectOutputStream out, Color color) throws IOException {
+        out.writeBoolean(color != null);
+        if (color != null) {
+            out.writeDouble(color.getRed());
+            out.writeDouble(color.getGreen());
+            out.writeDouble(color.getBlue());
+            out.writeDouble(color.getOpacity());
+        }
+    }
+
+    private static Color readColor(ObjectInputStream in) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+        return new Color(in.readDouble(), in.readDouble(), in.readDouble(), in.readDouble());
+    }
+}
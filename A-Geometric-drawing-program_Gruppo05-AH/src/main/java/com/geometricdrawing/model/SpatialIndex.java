@@ -0,0 +1,330 @@
+package com.geometricdrawing.model;
+
+import javafx.geometry.BoundingBox;
+import javafx.geometry.Bounds;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Autore: Gruppo05
+ * Scopo: Indice spaziale a griglia uniforme per le figure del modello.
+ * Ogni figura è registrata nelle celle coperte dal suo rettangolo di ingombro (già ruotato),
+ * così l'hit-testing interroga soltanto le figure vicine al punto e non l'intero disegno.
+ * Le figure troppo grandi per essere distribuite sulle celle finiscono in una lista separata.
+ * L'indice mantiene anche, in modo incrementale, il rettangolo che racchiude tutte le figure.
+ */
+public class SpatialIndex {
+    public static final double DEFAULT_CELL_SIZE = 128.0;
+    // Oltre questo numero di celle conviene controllare la figura a ogni interrogazione
+    private static final int MAX_CELLS_PER_SHAPE = 1024;
+
+    private final double cellSize;
+    private final Map<Long, List<Entry>> cells = new HashMap<>();
+    private final Map<AbstractShape, Entry> entries = new IdentityHashMap<>();
+    private final List<Entry> oversized = new ArrayList<>();
+    private int queryStamp; // marca delle interrogazioni, evita di restituire due volte la stessa figura
+
+    // Multinsiemi ordinati (valore -> occorrenze) dei lati degli ingombri: gli estremi del contenuto sono in O(log n)
+    private final NavigableMap<Double, Integer> minXs = new TreeMap<>();
+    private final NavigableMap<Double, Integer> minYs = new TreeMap<>();
+    private final NavigableMap<Double, Integer> maxXs = new TreeMap<>();
+    private final NavigableMap<Double, Integer> maxYs = new TreeMap<>();
+
+    /**
+     * Voce dell'indice: ricorda il rettangolo di ingombro e le celle occupate da una figura,
+     * in modo da poterla rimuovere senza ricalcolare la geometria (che potrebbe essere già cambiata).
+     */
+    private static final class Entry {
+        private final AbstractShape shape;
+        private double minX, minY, maxX, maxY;
+        private int minCol, minRow, maxCol, maxRow;
+        private boolean isOversized;
+        private int stamp;
+
+        private Entry(AbstractShape shape) {
+            this.shape = shape;
+        }
+
+        private boolean intersects(double minX, double minY, double maxX, double maxY) {
+            return this.maxX >= minX && this.minX <= maxX && this.maxY >= minY && this.minY <= maxY;
+        }
+
+        private boolean isInside(double minX, double minY, double maxX, double maxY) {
+            return this.minX >= minX && this.maxX <= maxX && this.minY >= minY && this.maxY <= maxY;
+        }
+
+        private boolean matches(double minX, double minY, double maxX, double maxY, boolean inside) {
+            return inside ? isInside(minX, minY, maxX, maxY) : intersects(minX, minY, maxX, maxY);
+        }
+
+        private boolean contains(double x, double y, double threshold) {
+            return x >= minX - threshold && x <= maxX + threshold
+                    && y >= minY - threshold && y <= maxY + threshold;
+        }
+    }
+
+    public SpatialIndex() {
+        this(DEFAULT_CELL_SIZE);
+    }
+
+    public SpatialIndex(double cellSize) {
+        if (cellSize <= 0) {
+            throw new IllegalArgumentException("La dimensione della cella deve essere positiva: " + cellSize);
+        }
+        this.cellSize = cellSize;
+    }
+
+    /**
+     * Registra una figura nell'indice. Se la figura è già presente la sua posizione viene aggiornata.
+     */
+    public void insert(AbstractShape shape) {
+        if (shape == null) return;
+        Entry entry = entries.get(shape);
+        if (entry != null) {
+            unlink(entry);
+        } else {
+            entry = new Entry(shape);
+            entries.put(shape, entry);
+        }
+        link(entry);
+    }
+
+    /**
+     * Rimuove una figura dall'indice (nessun effetto se non è presente).
+     */
+    public void remove(AbstractShape shape) {
+        if (shape == null) return;
+        Entry entry = entries.remove(shape);
+        if (entry != null) {
+            unlink(entry);
+        }
+    }
+
+    /**
+     * Aggiorna la posizione di una figura già indicizzata dopo uno spostamento,
+     * un ridimensionamento, una rotazione o una specchiatura.
+     * Le figure non ancora presenti nel modello vengono ignorate.
+     */
+    public void update(AbstractShape shape) {
+        if (shape == null) return;
+        Entry entry = entries.get(shape);
+        if (entry != null) {
+            unlink(entry);
+            link(entry);
+        }
+    }
+
+    public boolean contains(AbstractShape shape) {
+        return shape != null && entries.containsKey(shape);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public void clear() {
+        cells.clear();
+        entries.clear();
+        oversized.clear();
+        minXs.clear();
+        minYs.clear();
+        maxXs.clear();
+        maxYs.clear();
+    }
+
+    /**
+     * Restituisce il rettangolo che racchiude gli ingombri di tutte le figure indicizzate.
+     * Il valore è mantenuto a ogni inserimento, rimozione o aggiornamento, quindi il costo è O(log n).
+     * @return i bounds del contenuto, oppure null se l'indice è vuoto
+     */
+    public Bounds getContentBounds() {
+        if (entries.isEmpty()) return null;
+        double minX = minXs.firstKey();
+        double minY = minYs.firstKey();
+        return new BoundingBox(minX, minY, maxXs.lastKey() - minX, maxYs.lastKey() - minY);
+    }
+
+    /**
+     * Restituisce la figura più in alto (Z maggiore) che contiene il punto (x, y) del mondo.
+     * Vengono controllate soltanto le figure registrate nelle celle vicine al punto.
+     * @param threshold tolleranza, in unità del mondo, usata anche da containsPoint
+     * @return la figura trovata, oppure null se nel punto non c'è nessuna figura
+     */
+    public AbstractShape findTopmostAt(double x, double y, double threshold) {
+        AbstractShape best = null;
+        int bestZ = Integer.MIN_VALUE;
+
+        int minCol = toCell(x - threshold);
+        int maxCol = toCell(x + threshold);
+        int minRow = toCell(y - threshold);
+        int maxRow = toCell(y + threshold);
+
+        for (int col = minCol; col <= maxCol; col++) {
+            for (int row = minRow; row <= maxRow; row++) {
+                List<Entry> bucket = cells.get(key(col, row));
+                if (bucket == null) continue;
+                for (int i = 0, n = bucket.size(); i < n; i++) {
+                    Entry entry = bucket.get(i);
+                    int z = entry.shape.getZ();
+                    // Prima il confronto sullo Z e sul rettangolo di ingombro, poi il test esatto (più costoso)
+                    if (z > bestZ && entry.contains(x, y, threshold) && entry.shape.containsPoint(x, y, threshold)) {
+                        best = entry.shape;
+                        bestZ = z;
+                    }
+                }
+            }
+        }
+
+        for (int i = 0, n = oversized.size(); i < n; i++) {
+            Entry entry = oversized.get(i);
+            int z = entry.shape.getZ();
+            if (z > bestZ && entry.contains(x, y, threshold) && entry.shape.containsPoint(x, y, threshold)) {
+                best = entry.shape;
+                bestZ = z;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Restituisce il rettangolo di ingombro con cui la figura è registrata nell'indice,
+     * cioè quello calcolato all'ultimo inserimento o aggiornamento.
+     * @return i bounds indicizzati, oppure null se la figura non è presente
+     */
+    public Bounds getBounds(AbstractShape shape) {
+        Entry entry = shape == null ? null : entries.get(shape);
+        if (entry == null) return null;
+        return new BoundingBox(entry.minX, entry.minY, entry.maxX - entry.minX, entry.maxY - entry.minY);
+    }
+
+    /**
+     * Aggiunge a out, senza duplicati e in ordine non specificato, tutte le figure il cui
+     * rettangolo di ingombro interseca l'area indicata (coordinate del mondo).
+     */
+    public void query(double minX, double minY, double maxX, double maxY, List<AbstractShape> out) {
+        query(minX, minY, maxX, maxY, false, out);
+    }
+
+    /**
+     * Come query, ma aggiunge a out solo le figure il cui rettangolo di ingombro è interamente dentro l'area.
+     */
+    public void queryInside(double minX, double minY, double maxX, double maxY, List<AbstractShape> out) {
+        query(minX, minY, maxX, maxY, true, out);
+    }
+
+    // Una figura interamente dentro l'area occupa solo celle dell'area: le celle da visitare sono le stesse
+    private void query(double minX, double minY, double maxX, double maxY, boolean inside, List<AbstractShape> out) {
+        int stamp = ++queryStamp;
+
+        int minCol = toCell(minX);
+        int maxCol = toCell(maxX);
+        int minRow = toCell(minY);
+        int maxRow = toCell(maxY);
+
+        // Se l'area copre più celle di quante ne siano occupate conviene scorrere direttamente le voci
+        long areaCells = (long) (maxCol - minCol + 1) * (maxRow - minRow + 1);
+        if (areaCells > cells.size()) {
+            for (Entry entry : entries.values()) {
+                if (entry.matches(minX, minY, maxX, maxY, inside)) {
+                    out.add(entry.shape);
+                }
+            }
+            return;
+        }
+
+        for (int col = minCol; col <= maxCol; col++) {
+            for (int row = minRow; row <= maxRow; row++) {
+                List<Entry> bucket = cells.get(key(col, row));
+                if (bucket == null) continue;
+                for (int i = 0, n = bucket.size(); i < n; i++) {
+                    Entry entry = bucket.get(i);
+                    if (entry.stamp != stamp && entry.matches(minX, minY, maxX, maxY, inside)) {
+                        entry.stamp = stamp;
+                        out.add(entry.shape);
+                    }
+                }
+            }
+        }
+        for (int i = 0, n = oversized.size(); i < n; i++) {
+            Entry entry = oversized.get(i);
+            if (entry.matches(minX, minY, maxX, maxY, inside)) {
+                out.add(entry.shape);
+            }
+        }
+    }
+
+    // Calcola l'ingombro attuale della figura e la registra nelle celle corrispondenti
+    private void link(Entry entry) {
+        Bounds bounds = entry.shape.getWorldBounds();
+        entry.minX = bounds.getMinX();
+        entry.minY = bounds.getMinY();
+        entry.maxX = bounds.getMaxX();
+        entry.maxY = bounds.getMaxY();
+        entry.minCol = toCell(entry.minX);
+        entry.maxCol = toCell(entry.maxX);
+        entry.minRow = toCell(entry.minY);
+        entry.maxRow = toCell(entry.maxY);
+        increment(minXs, entry.minX);
+        increment(minYs, entry.minY);
+        increment(maxXs, entry.maxX);
+        increment(maxYs, entry.maxY);
+
+        long cellCount = (long) (entry.maxCol - entry.minCol + 1) * (entry.maxRow - entry.minRow + 1);
+        entry.isOversized = cellCount > MAX_CELLS_PER_SHAPE;
+        if (entry.isOversized) {
+            oversized.add(entry);
+            return;
+        }
+        for (int col = entry.minCol; col <= entry.maxCol; col++) {
+            for (int row = entry.minRow; row <= entry.maxRow; row++) {
+                cells.computeIfAbsent(key(col, row), k -> new ArrayList<>(4)).add(entry);
+            }
+        }
+    }
+
+    // Rimuove la figura dalle celle in cui era stata registrata l'ultima volta
+    private void unlink(Entry entry) {
+        decrement(minXs, entry.minX);
+        decrement(minYs, entry.minY);
+        decrement(maxXs, entry.maxX);
+        decrement(maxYs, entry.maxY);
+        if (entry.isOversized) {
+            oversized.remove(entry);
+            return;
+        }
+        for (int col = entry.minCol; col <= entry.maxCol; col++) {
+            for (int row = entry.minRow; row <= entry.maxRow; row++) {
+                long key = key(col, row);
+                List<Entry> bucket = cells.get(key);
+                if (bucket != null) {
+                    bucket.remove(entry);
+                    if (bucket.isEmpty()) {
+                        cells.remove(key);
+                    }
+                }
+            }
+        }
+    }
+
+    private static void increment(NavigableMap<Double, Integer> multiset, double value) {
+        multiset.merge(value, 1, Integer::sum);
+    }
+
+    private static void decrement(NavigableMap<Double, Integer> multiset, double value) {
+        multiset.computeIfPresent(value, (k, count) -> count > 1 ? count - 1 : null);
+    }
+
+    private int toCell(double coordinate) {
+        return (int) Math.floor(coordinate / cellSize);
+    }
+
+    private static long key(int col, int row) {
+        return ((long) col << 32) | (row & 0xffffffffL);
+    }
+}
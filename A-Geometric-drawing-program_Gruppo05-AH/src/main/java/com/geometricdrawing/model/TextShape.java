@@ -4,16 +4,30 @@ import javafx.geometry.Point2D;
 import javafx.geometry.VPos;
 import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.text.Font;
-import javafx.scene.text.Text;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Objects;
+import java.io.Serial;
 
 public class TextShape extends AbstractShape {
+    @Serial
+    private static final long serialVersionUID = 3318944098096819416L;
     private String text;
     private int fontSize;
     private final String fontFamily;
 
+    // Cache del layout usato per disegnare: non viene serializzata e si ricostruisce al primo disegno
+    private transient TextLayout layoutCache;
+
+    // Ultimo risultato di getNaturalTextBlockDimensions e la chiave con cui è stato calcolato
+    private transient Point2D naturalSizeCache;
+    private transient String naturalSizeText;
+    private transient String naturalSizeFontFamily;
+    private transient int naturalSizeFontSize;
+    private transient double naturalSizeWrapWidth;
+
     public TextShape(double x, double y, double width, double height, String text, int fontSize) {
         super(x, y, width, height);
         this.text = (text == null) ? "" : text;
@@ -21,13 +35,33 @@ public class TextShape extends AbstractShape {
         this.fontFamily = "System";
     }
 
+    // Layout e dimensioni naturali sono immutabili: la copia li condivide e non deve rimisurare il testo
+    protected TextShape(TextShape source) {
+        super(source);
+        this.text = source.text;
+        this.fontSize = source.fontSize;
+        this.fontFamily = source.fontFamily;
+        this.layoutCache = source.layoutCache;
+        this.naturalSizeCache = source.naturalSizeCache;
+        this.naturalSizeText = source.naturalSizeText;
+        this.naturalSizeFontFamily = source.naturalSizeFontFamily;
+        this.naturalSizeFontSize = source.naturalSizeFontSize;
+        this.naturalSizeWrapWidth = source.naturalSizeWrapWidth;
+    }
+
+    @Override
+    protected TextShape copy() {
+        return new TextShape(this);
+    }
+
     @Override
     public void drawShape(GraphicsContext gc) {
         // Salva lo stato iniziale del GraphicsContext.
         gc.save();
 
-        Font font = new Font(fontFamily, fontSize);
-        gc.setFont(font);
+        // Righe wrappate, altezza di riga e fattori di scala arrivano dalla cache: a ogni frame non si misura nulla
+        TextLayout layout = getLayout();
+        gc.setFont(layout.font);
         gc.setTextBaseline(VPos.TOP); // Allinea il testo al margine superiore per i calcoli di y
 
         // Definisce l'area di clipping. Qualsiasi cosa disegnata fuori da questo rettangolo
@@ -41,45 +75,10 @@ public class TextShape extends AbstractShape {
             return;
         }
 
-        // Misura l'altezza di una riga di testo standard (non scalata)
-        Text tempMeasure = new Text("Mg"); // Stringa di esempio per misurare
-        tempMeasure.setFont(font);
-        double lineHeightOriginal = tempMeasure.getLayoutBounds().getHeight();
-
-        // Esegue il word wrapping del testo per adattarlo alla larghezza del bounding box (this.width).
-        // Questo determina quali parole vanno su quali righe.
-        List<String> lines = wrapText(this.text, font, this.width);
-
-        // Calcola la larghezza naturale massima tra tutte le righe wrappate.
-        double maxNaturalLineWidth = 0;
-        if (!lines.isEmpty()) {
-            for (String lineContent : lines) {
-                if (lineContent != null && !lineContent.isEmpty()) {
-                    tempMeasure.setText(lineContent);
-                    maxNaturalLineWidth = Math.max(maxNaturalLineWidth, tempMeasure.getLayoutBounds().getWidth());
-                }
-            }
-        }
-
-        // Calcola il fattore di scala X uniforme per l'intero blocco di testo.
-        // Serve perché il testo renderizzato (considerando la sua riga più lunga) riempia orizzontalmente this.width.
-        double textContentScaleX = 1.0;
-        if (this.width > 1e-6 && maxNaturalLineWidth > 1e-6) {
-            textContentScaleX = this.width / maxNaturalLineWidth;
-        }
-
-        // Calcola l'altezza naturale totale del blocco di testo (numero di righe * altezza riga originale).
-        double naturalTextBlockHeight = 0;
-        if (!lines.isEmpty()) {
-            naturalTextBlockHeight = lines.size() * lineHeightOriginal;
-        }
-
-        // Calcola il fattore di scala Y uniforme per l'intero blocco di testo.
-        // Serve perché il testo renderizzato riempia verticalmente this.height.
-        double textContentScaleY = 1.0;
-        if (this.height > 1e-6 && naturalTextBlockHeight > 1e-6) {
-            textContentScaleY = this.height / naturalTextBlockHeight;
-        }
+        List<String> lines = layout.lines;
+        double lineHeightOriginal = layout.lineHeight;
+        double textContentScaleX = layout.scaleX;
+        double textContentScaleY = layout.scaleY;
 
         // Salva lo stato del GC prima di applicare lo scaling specifico del contenuto testuale.
         gc.save();
@@ -127,52 +126,154 @@ public class TextShape extends AbstractShape {
         gc.restore(); // Ripristina GC (salvato all'inizio del metodo, prima del clip)
     }
 
-    // Il metodo wrapText (word wrapping) rimane come precedentemente fornito e corretto.
-    private List<String> wrapText(String inputText, Font font, double maxWidth) {
+    /**
+     * Restituisce il layout per il testo, il font e le dimensioni attuali, ricalcolandolo solo se uno di questi
+     * è cambiato. Il confronto sulla chiave copre anche le modifiche fatte senza passare dai setter (es. setEndX).
+     */
+    private TextLayout getLayout() {
+        TextLayout layout = layoutCache;
+        if (layout == null || !layout.matches(text, fontFamily, fontSize, width, height)) {
+            layout = new TextLayout(text, fontFamily, fontSize, width, height);
+            layoutCache = layout;
+        }
+        return layout;
+    }
+
+    // Righe wrappate sulla larghezza corrente (usato dai test per verificare il riuso della cache)
+    List<String> getWrappedLines() {
+        return getLayout().lines;
+    }
+
+    /**
+     * Layout del blocco di testo per una combinazione di (testo, font, dimensione del font, larghezza, altezza):
+     * righe wrappate, altezza di una riga, larghezza della riga più lunga e fattori di scala che
+     * fanno riempire al testo il rettangolo della figura. È immutabile; se la chiave cambia se ne crea uno nuovo.
+     */
+    private static final class TextLayout {
+        private final String text;
+        private final String fontFamily;
+        private final int fontSize;
+        private final double width;
+        private final double height;
+
+        private final Font font;
+        private final List<String> lines;
+        private final double lineHeight;
+        private final double maxLineWidth;
+        private final double scaleX;
+        private final double scaleY;
+
+        private TextLayout(String text, String fontFamily, int fontSize, double width, double height) {
+            this.text = text;
+            this.fontFamily = fontFamily;
+            this.fontSize = fontSize;
+            this.width = width;
+            this.height = height;
+            // Font e misure condivisi da tutte le figure con la stessa famiglia e dimensione
+            FontMetricsCache.Metrics metrics = FontMetricsCache.get(fontFamily, fontSize);
+            this.font = metrics.getFont();
+
+            if (text == null || text.trim().isEmpty()) {
+                this.lines = List.of();
+                this.lineHeight = 0;
+                this.maxLineWidth = 0;
+                this.scaleX = 1.0;
+                this.scaleY = 1.0;
+                return;
+            }
+
+            // Altezza di una riga di testo standard (non scalata)
+            this.lineHeight = metrics.getLineHeight();
+
+            // Esegue il word wrapping del testo per adattarlo alla larghezza del bounding box.
+            // Questo determina quali parole vanno su quali righe e la larghezza naturale della più lunga.
+            WrappedText wrapped = wrapText(text, metrics, width);
+            this.lines = Collections.unmodifiableList(wrapped.lines);
+            this.maxLineWidth = wrapped.maxLineWidth;
+
+            // Fattore di scala X uniforme per l'intero blocco di testo: la riga più lunga riempie la larghezza.
+            double sx = 1.0;
+            if (width > 1e-6 && maxLineWidth > 1e-6) {
+                sx = width / maxLineWidth;
+            }
+            this.scaleX = sx;
+
+            // Fattore di scala Y uniforme: l'altezza naturale (righe * altezza riga) riempie l'altezza.
+            double naturalTextBlockHeight = lines.size() * lineHeight;
+            double sy = 1.0;
+            if (height > 1e-6 && naturalTextBlockHeight > 1e-6) {
+                sy = height / naturalTextBlockHeight;
+            }
+            this.scaleY = sy;
+        }
+
+        private boolean matches(String text, String fontFamily, int fontSize, double width, double height) {
+            return this.fontSize == fontSize && this.width == width && this.height == height
+                    && Objects.equals(this.fontFamily, fontFamily) && Objects.equals(this.text, text);
+        }
+    }
+
+    /**
+     * Word wrapping in tempo lineare: ogni parola distinta viene misurata una sola volta tramite la cache
+     * condivisa del font e la larghezza di una riga si ottiene sommando le larghezze di parole e spazi,
+     * invece di rimisurare la riga intera a ogni parola aggiunta.
+     * Una parola più larga di maxWidth occupa da sola una riga.
+     */
+    static WrappedText wrapText(String inputText, FontMetricsCache.Metrics metrics, double maxWidth) {
         List<String> lines = new ArrayList<>();
         if (inputText == null || inputText.trim().isEmpty() || maxWidth <= 1e-6) {
-            return lines;
-        }
-        String trimmedText = inputText.trim();
-        String[] words = trimmedText.split("\\s+");
-        if (words.length == 0 || (words.length == 1 && words[0].isEmpty())) {
-            return lines;
+            return new WrappedText(lines, 0);
         }
+        String[] words = inputText.trim().split("\\s+");
+        double spaceWidth = metrics.getSpaceWidth();
+        double maxLineWidth = 0;
+
         StringBuilder currentLine = new StringBuilder();
-        Text tempTextMeasure = new Text();
-        tempTextMeasure.setFont(font);
+        double currentLineWidth = 0;
         for (String word : words) {
             if (word.isEmpty()) {
                 continue;
             }
-            tempTextMeasure.setText(word);
-            double wordWidth = tempTextMeasure.getLayoutBounds().getWidth();
-            if (currentLine.length() == 0) {
-                if (wordWidth <= maxWidth) {
-                    currentLine.append(word);
-                } else {
-                    lines.add(word);
-                }
-            } else {
-                tempTextMeasure.setText(currentLine.toString() + " " + word);
-                double testLineWidth = tempTextMeasure.getLayoutBounds().getWidth();
+            double wordWidth = metrics.wordWidth(word);
+            if (currentLine.length() > 0) {
+                double testLineWidth = currentLineWidth + spaceWidth + wordWidth;
                 if (testLineWidth <= maxWidth) {
-                    currentLine.append(" ").append(word);
-                } else {
-                    lines.add(currentLine.toString());
-                    currentLine = new StringBuilder();
-                    if (wordWidth <= maxWidth) {
-                        currentLine.append(word);
-                    } else {
-                        lines.add(word);
-                    }
+                    currentLine.append(' ').append(word);
+                    currentLineWidth = testLineWidth;
+                    continue;
                 }
+                // La parola non ci sta: chiude la riga corrente e ne inizia una nuova
+                lines.add(currentLine.toString());
+                maxLineWidth = Math.max(maxLineWidth, currentLineWidth);
+                currentLine.setLength(0);
+                currentLineWidth = 0;
+            }
+            if (wordWidth <= maxWidth) {
+                currentLine.append(word);
+                currentLineWidth = wordWidth;
+            } else {
+                lines.add(word);
+                maxLineWidth = Math.max(maxLineWidth, wordWidth);
             }
         }
         if (currentLine.length() > 0) {
             lines.add(currentLine.toString());
+            maxLineWidth = Math.max(maxLineWidth, currentLineWidth);
+        }
+        return new WrappedText(lines, maxLineWidth);
+    }
+
+    /**
+     * Risultato del word wrapping: le righe e la larghezza naturale della più lunga.
+     */
+    static final class WrappedText {
+        final List<String> lines;
+        final double maxLineWidth;
+
+        WrappedText(List<String> lines, double maxLineWidth) {
+            this.lines = lines;
+            this.maxLineWidth = maxLineWidth;
         }
-        return lines;
     }
 
     /**
@@ -187,11 +288,17 @@ public class TextShape extends AbstractShape {
             return new Point2D(absoluteMinDimension, absoluteMinDimension);
         }
 
-        Font font = new Font(this.fontFamily, this.fontSize);
+        // Usa una larghezza di wrapping sicura (almeno 1.0) per evitare problemi con wrapText
+        double safeWrapWidth = Math.max(1.0, proposedWidthForWrapping);
 
-        Text tempTextMeasure = new Text("Mg"); // Usato per misurare l'altezza di una riga
-        tempTextMeasure.setFont(font);
-        double lineHeightOriginal = tempTextMeasure.getLayoutBounds().getHeight();
+        // Le dimensioni naturali dipendono solo da testo, font e larghezza di wrapping: si riusa l'ultimo risultato
+        if (naturalSizeCache != null && naturalSizeWrapWidth == safeWrapWidth && naturalSizeFontSize == this.fontSize
+                && this.fontFamily.equals(naturalSizeFontFamily) && this.text.equals(naturalSizeText)) {
+            return naturalSizeCache;
+        }
+
+        FontMetricsCache.Metrics metrics = FontMetricsCache.get(this.fontFamily, this.fontSize);
+        double lineHeightOriginal = metrics.getLineHeight();
 
         // Fallback per l'altezza della riga se il calcolo dà zero o valori troppo piccoli
         if (lineHeightOriginal < 1e-6) {
@@ -201,23 +308,16 @@ public class TextShape extends AbstractShape {
             lineHeightOriginal = absoluteMinDimension;
         }
 
-        // Usa una larghezza di wrapping sicura (almeno 1.0) per evitare problemi con wrapText
-        double safeWrapWidth = Math.max(1.0, proposedWidthForWrapping);
-        List<String> lines = this.wrapText(this.text, font, safeWrapWidth); // Chiama il metodo wrapText esistente
+        WrappedText wrapped = wrapText(this.text, metrics, safeWrapWidth);
+        List<String> lines = wrapped.lines;
 
         double maxNaturalLineWidth = 0;
         if (!lines.isEmpty()) {
-            for (String lineContent : lines) {
-                if (lineContent != null && !lineContent.isEmpty()) {
-                    tempTextMeasure.setText(lineContent);
-                    maxNaturalLineWidth = Math.max(maxNaturalLineWidth, tempTextMeasure.getLayoutBounds().getWidth());
-                }
-            }
+            maxNaturalLineWidth = wrapped.maxLineWidth;
         } else if (this.text != null && !this.text.trim().isEmpty()) {
             // Se wrapText restituisce una lista vuota (es. safeWrapWidth era troppo piccolo o testo solo spazi)
             // Misura il testo originale come una singola riga.
-            tempTextMeasure.setText(this.text);
-            maxNaturalLineWidth = tempTextMeasure.getLayoutBounds().getWidth();
+            maxNaturalLineWidth = metrics.textWidth(this.text);
             if (maxNaturalLineWidth > 0 && lineHeightOriginal > 0) {
                 lines.add(this.text); // Consideralo come una linea per il calcolo dell'altezza
             }
@@ -225,8 +325,7 @@ public class TextShape extends AbstractShape {
 
         // Assicura una larghezza minima se quella calcolata è troppo piccola ma c'è testo
         if (maxNaturalLineWidth < 1.0 && this.text != null && !this.text.isEmpty()){
-            tempTextMeasure.setText("W"); // Carattere di riferimento
-            maxNaturalLineWidth = Math.max(maxNaturalLineWidth, tempTextMeasure.getLayoutBounds().getWidth());
+            maxNaturalLineWidth = Math.max(maxNaturalLineWidth, metrics.wordWidth("W")); // Carattere di riferimento
             if (maxNaturalLineWidth < 1.0) maxNaturalLineWidth = absoluteMinDimension; // Fallback assoluto
         }
 
@@ -237,18 +336,25 @@ public class TextShape extends AbstractShape {
         if (naturalTextBlockHeight < 1.0) naturalTextBlockHeight = absoluteMinDimension; // Fallback assoluto
 
 
-        return new Point2D(Math.max(absoluteMinDimension, maxNaturalLineWidth), Math.max(absoluteMinDimension, naturalTextBlockHeight));
+        naturalSizeCache = new Point2D(Math.max(absoluteMinDimension, maxNaturalLineWidth), Math.max(absoluteMinDimension, naturalTextBlockHeight));
+        naturalSizeText = this.text;
+        naturalSizeFontFamily = this.fontFamily;
+        naturalSizeFontSize = this.fontSize;
+        naturalSizeWrapWidth = safeWrapWidth;
+        return naturalSizeCache;
     }
 
     // Getter e Setter standard
     public void setText(String text) {
         this.text = (text == null) ? "" : text;
+        invalidateLayout();
     }
     public String getText() {
         return text;
     }
     public void setFontSize(int fontSize) {
         this.fontSize = fontSize;
+        invalidateLayout();
     }
     public int getFontSize() {
         return fontSize;
@@ -256,4 +362,21 @@ public class TextShape extends AbstractShape {
     public String getFontFamily() {
         return fontFamily;
     }
+
+    @Override
+    public void setWidth(double width) {
+        super.setWidth(width);
+        invalidateLayout();
+    }
+
+    @Override
+    public void setHeight(double height) {
+        super.setHeight(height);
+        invalidateLayout();
+    }
+
+    // Scarta il layout in cache: verrà ricalcolato al prossimo disegno
+    private void invalidateLayout() {
+        layoutCache = null;
+    }
 }
\ No newline at end of file
@@ -3,8 +3,6 @@ package com.geometricdrawing.mousehandler;
 import com.geometricdrawing.controller.DrawingController;
 import com.geometricdrawing.command.AddShapeCommand;
 import com.geometricdrawing.command.Command;
-import com.geometricdrawing.decorator.BorderColorDecorator;
-import com.geometricdrawing.decorator.FillColorDecorator;
 import com.geometricdrawing.factory.PolygonFactory;
 import com.geometricdrawing.factory.ShapeFactory;
 import com.geometricdrawing.factory.TextFactory;
@@ -12,6 +10,7 @@ import com.geometricdrawing.model.AbstractShape;
 import com.geometricdrawing.model.Line;
 import com.geometricdrawing.controller.ZoomHandler;
 import com.geometricdrawing.model.Polygon;
+import com.geometricdrawing.model.ShapeStyle;
 import com.geometricdrawing.model.TextShape;
 import javafx.geometry.Point2D;
 import javafx.scene.Cursor;
@@ -20,8 +19,6 @@ import javafx.scene.input.MouseButton;
 import javafx.scene.input.MouseEvent;
 import javafx.scene.paint.Color;
 
-import java.util.ArrayList;
-
 public class MouseClickedHandler extends AbstractMouseHandler {
     private double worldX; // Coordinate del mondo
     private double worldY;
@@ -60,6 +57,9 @@ public class MouseClickedHandler extends AbstractMouseHandler {
             handlePolygonCreation();
         } else if (currentShapeFactory != null) {
             handleRegularShapeCreation();
+        } else if (event.isShiftDown() || !event.isStillSincePress()) {
+            // la selezione è già stata aggiornata alla pressione (Maiusc) o dal trascinamento (ad esempio ad area)
+            currentShape = controller.getCurrentShape();
         } else {
             currentShape = controller.selectShapeAt(this.worldX, this.worldY);
         }
@@ -116,7 +116,7 @@ public class MouseClickedHandler extends AbstractMouseHandler {
             textShape.setHeight(naturalSize.getY());
         }
 
-        AbstractShape styledShape = applyDecorations(newShape);
+        AbstractShape styledShape = applyStyle(newShape);
         currentShape = styledShape;
 
         Command addCmd = new AddShapeCommand(controller.getModel(), styledShape);
@@ -139,9 +139,9 @@ public class MouseClickedHandler extends AbstractMouseHandler {
             // Se si è raggiunto il numero di punti richiesto per il poligono
             if (controller.getTempPolygonPoints().size() == polygonFactory.getMaxPoints()) {
                 AbstractShape polygon = currentShapeFactory.createShape(worldX, worldY);
-                ((Polygon) polygon).setVertices(new ArrayList<>(controller.getTempPolygonPoints()));
+                ((Polygon) polygon).setVertices(controller.getTempPolygonPoints()); // i vertici vengono copiati
 
-                currentShape = applyDecorations(polygon);
+                currentShape = applyStyle(polygon);
 
                 Command cmd = new AddShapeCommand(controller.getModel(), currentShape);
                 controller.getCommandManager().executeCommand(cmd);
@@ -160,25 +160,21 @@ public class MouseClickedHandler extends AbstractMouseHandler {
         }
     }
 
-    private AbstractShape applyDecorations(AbstractShape shape) {
-        AbstractShape styledShape = shape;
-
-        if (styledShape instanceof TextShape) {
-            if (fill != null) {
-                styledShape = new FillColorDecorator(styledShape, fill);
-            }
-        } else if (styledShape instanceof Line) {
-            if (border != null) {
-                styledShape = new BorderColorDecorator(styledShape, border);
-            }
-        } else {
-            if (fill != null) {
-                styledShape = new FillColorDecorator(styledShape, fill);
-            }
-            if (border != null) {
-                styledShape = new BorderColorDecorator(styledShape, border);
-            }
+    /**
+     * Assegna alla figura appena creata i colori scelti, memorizzandoli nel suo ShapeStyle:
+     * i testi hanno solo il riempimento, le linee solo il contorno.
+     */
+    private AbstractShape applyStyle(AbstractShape shape) {
+        Color shapeFill = fill;
+        Color shapeBorder = border;
+        if (shape instanceof TextShape) {
+            shapeBorder = null;
+        } else if (shape instanceof Line) {
+            shapeFill = null;
+        }
+        if (shapeFill != null || shapeBorder != null) {
+            shape.setStyle(new ShapeStyle(shapeFill, shapeBorder));
         }
-        return styledShape;
+        return shape;
     }
 }
\ No newline at end of file
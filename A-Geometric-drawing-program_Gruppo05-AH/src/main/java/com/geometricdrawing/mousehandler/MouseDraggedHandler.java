@@ -4,6 +4,7 @@ import com.geometricdrawing.controller.DrawingController;
 import com.geometricdrawing.controller.HandleType;
 import com.geometricdrawing.controller.ZoomHandler;
 import com.geometricdrawing.model.AbstractShape;
+import com.geometricdrawing.model.DrawingModel;
 import com.geometricdrawing.model.Line;
 import javafx.geometry.Point2D;
 import javafx.scene.Cursor;
@@ -11,6 +12,8 @@ import javafx.scene.canvas.Canvas;
 import javafx.scene.input.MouseButton;
 import javafx.scene.input.MouseEvent;
 
+import java.util.Map;
+
 public class MouseDraggedHandler extends AbstractMouseHandler {
 
     public MouseDraggedHandler(Canvas canvas, DrawingController controller) {
@@ -23,7 +26,7 @@ public class MouseDraggedHandler extends AbstractMouseHandler {
 
         if (controller.getActiveResizeHandle() != null && controller.getShapeBeingResized() != null) {
             canvas.setCursor(controller.getCursorForHandle(controller.getActiveResizeHandle(), controller.getShapeBeingResized()));
-        } else if (currentShape != null && event.getButton() == MouseButton.PRIMARY) {
+        } else if (currentShape != null && event.getButton() == MouseButton.PRIMARY && !controller.isMarqueeActive()) {
             canvas.setCursor(Cursor.CLOSED_HAND);
         }
     }
@@ -34,11 +37,25 @@ public class MouseDraggedHandler extends AbstractMouseHandler {
         AbstractShape shapeToUpdate = controller.getShapeBeingResized();
         AbstractShape shapeToDragEntirely = controller.getCurrentShape();
 
+        if (controller.isMarqueeActive()) {
+            ZoomHandler zoomHandler = controller.getZoomHandler();
+            Point2D worldMouseCoords = zoomHandler != null
+                    ? zoomHandler.screenToWorld(event.getX(), event.getY()) : new Point2D(event.getX(), event.getY());
+            controller.updateMarquee(worldMouseCoords.getX(), worldMouseCoords.getY());
+            return;
+        }
         if (activeHandle != null && shapeToUpdate != null) {
+            // le altre figure restano ferme: vengono rasterizzate una volta sola per tutto il resize
+            controller.beginShapeInteraction(shapeToUpdate);
             handleShapeResize(event, activeHandle, shapeToUpdate);
             return;
         }
-        if (shapeToDragEntirely != null && event.getButton() == MouseButton.PRIMARY) {
+        // Si trascina solo se la pressione è avvenuta su una figura selezionata (non, ad esempio, dopo averla tolta con Maiusc)
+        if (shapeToDragEntirely != null && event.getButton() == MouseButton.PRIMARY
+                && controller.getInitialDragPositions().containsKey(shapeToDragEntirely)) {
+            if (!controller.isMultipleSelection()) {
+                controller.beginShapeInteraction(shapeToDragEntirely);
+            }
             handleShapeDrag(event, shapeToDragEntirely);
         }
     }
@@ -74,7 +91,24 @@ public class MouseDraggedHandler extends AbstractMouseHandler {
         double maxClampedY = currentScrollY + worldCanvasHeight - currentShapeHeight * AbstractMouseHandler.HIDDEN_SHAPE_PORTION;
         newWorldY = Math.max(minClampedY, Math.min(newWorldY, maxClampedY));
 
-        controller.getModel().moveShapeTo(shapeToDragEntirely, newWorldX, newWorldY);
+        Map<AbstractShape, Point2D> initialPositions = controller.getInitialDragPositions();
+        Point2D primaryStart = initialPositions.get(shapeToDragEntirely);
+        if (initialPositions.size() < 2) {
+            controller.getModel().moveShapeTo(shapeToDragEntirely, newWorldX, newWorldY);
+            return;
+        }
+        // Le altre figure selezionate seguono lo spostamento di quella trascinata; il modello avvisa una volta sola
+        double deltaX = newWorldX - primaryStart.getX();
+        double deltaY = newWorldY - primaryStart.getY();
+        DrawingModel model = controller.getModel();
+        model.beginBatch();
+        try {
+            for (Map.Entry<AbstractShape, Point2D> entry : initialPositions.entrySet()) {
+                model.moveShapeTo(entry.getKey(), entry.getValue().getX() + deltaX, entry.getValue().getY() + deltaY);
+            }
+        } finally {
+            model.endBatch();
+        }
     }
 
     private void handleShapeResize(MouseEvent event, HandleType handleType, AbstractShape shapeToUpdate) {
@@ -94,11 +128,11 @@ public class MouseDraggedHandler extends AbstractMouseHandler {
         Point2D startMouseWorld = zoomHandler.screenToWorld(controller.getResizeStartMousePos_screen().getX(), controller.getResizeStartMousePos_screen().getY());
         Point2D currentMouseWorld = zoomHandler.screenToWorld(currentScreenMousePos.getX(), currentScreenMousePos.getY());
 
-        Point2D initialMouseLocal = shapeToUpdate.inverseTransformPoint(startMouseWorld.getX(), startMouseWorld.getY());
-        Point2D currentMouseLocal = shapeToUpdate.inverseTransformPoint(currentMouseWorld.getX(), currentMouseWorld.getY());
-
-        double localMouseDeltaX = currentMouseLocal.getX() - initialMouseLocal.getX();
-        double localMouseDeltaY = currentMouseLocal.getY() - initialMouseLocal.getY();
+        // Varianti senza allocazioni della trasformazione inversa (matrice in cache nella figura)
+        double localMouseDeltaX = shapeToUpdate.inverseTransformX(currentMouseWorld.getX(), currentMouseWorld.getY())
+                - shapeToUpdate.inverseTransformX(startMouseWorld.getX(), startMouseWorld.getY());
+        double localMouseDeltaY = shapeToUpdate.inverseTransformY(currentMouseWorld.getX(), currentMouseWorld.getY())
+                - shapeToUpdate.inverseTransformY(startMouseWorld.getX(), startMouseWorld.getY());
 
         double finalX;
         double finalY;
@@ -51,8 +51,7 @@ public class MouseMovedHandler extends AbstractMouseHandler {
             // Se non c'è un handle sotto il mouse, controlla se il mouse è sopra una shape
             boolean isOverAnyShape = false;
             if (controller.getModel() != null) {
-                isOverAnyShape = controller.getModel().getShapesOrderedByZ().stream()
-                        .anyMatch(shape -> shape.containsPoint(this.worldX, this.worldY, SELECTION_THRESHOLD));
+                isOverAnyShape = controller.getModel().getTopmostShapeAt(this.worldX, this.worldY, SELECTION_THRESHOLD) != null;
             }
 
             if (isOverAnyShape) {
@@ -53,9 +53,14 @@ public class MousePressedHandler extends AbstractMouseHandler {
             return;
         }
 
-        // Prova a selezionare una shape sotto il mouse
-        AbstractShape shapeUnderMouse = controller.selectShapeAt(this.worldX, this.worldY);
-        // selectShapeAt updates controller.currentShape and UI.
+        // Con Maiusc la figura sotto il mouse viene aggiunta o tolta dalla selezione
+        if (event.isShiftDown() && event.getButton() == MouseButton.PRIMARY && controller.getModel() != null) {
+            controller.toggleShapeSelection(controller.getModel().getTopmostShapeAt(this.worldX, this.worldY, SELECTION_THRESHOLD));
+        } else {
+            // Prova a selezionare una shape sotto il mouse
+            controller.selectShapeAt(this.worldX, this.worldY);
+            // selectShapeAt updates controller.currentShape and UI.
+        }
 
         currentShape = controller.getCurrentShape(); // Aggiorna la variabile locale currentShape dopo selectShapeAt
 
@@ -70,6 +75,7 @@ public class MousePressedHandler extends AbstractMouseHandler {
                 controller.setDragOffsetX(dragOffsetX);
                 dragOffsetY = this.worldY - currentShape.getY();
                 controller.setDragOffsetY(dragOffsetY);
+                controller.storeInitialDragPositions(); // tutte le figure selezionate si spostano insieme
             }
             // Richiede il focus sul rootPane se presente
             if (controller.getRootPane() != null) controller.getRootPane().requestFocus();
@@ -77,6 +83,9 @@ public class MousePressedHandler extends AbstractMouseHandler {
             if (event.getButton() == MouseButton.SECONDARY) {
                 controller.showContextMenu(event);
             }
+        } else if (event.getButton() == MouseButton.PRIMARY && !event.isShiftDown()) {
+            // Pressione su una parte vuota: trascinando si disegna il rettangolo di selezione
+            controller.beginMarquee(this.worldX, this.worldY);
         }
         // Se shapeUnderMouse era null, currentShape nel controller ora è null (deselezionata).
     }
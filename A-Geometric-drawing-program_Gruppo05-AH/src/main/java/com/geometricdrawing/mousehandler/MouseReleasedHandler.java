@@ -7,11 +7,13 @@ import com.geometricdrawing.controller.HandleType;
 // import com.geometricdrawing.command.CompositeCommand;
 import com.geometricdrawing.model.AbstractShape;
 import com.geometricdrawing.model.Line;
+import javafx.geometry.Point2D;
 import javafx.scene.Cursor;
 import javafx.scene.canvas.Canvas;
 import javafx.scene.input.MouseEvent;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 // Handler per il rilascio del mouse: finalizza drag o resize e crea i comandi per l'undo
 public class MouseReleasedHandler extends AbstractMouseHandler {
@@ -77,6 +79,22 @@ public class MouseReleasedHandler extends AbstractMouseHandler {
 
             }
 
+        } else if (controller.isDragging() && controller.getInitialDragPositions().size() > 1) {
+            // Trascinamento di più figure: un solo passo di annullamento per tutti gli spostamenti
+            List<Command> moves = new ArrayList<>();
+            for (Map.Entry<AbstractShape, Point2D> entry : controller.getInitialDragPositions().entrySet()) {
+                AbstractShape shape = entry.getKey();
+                Point2D start = entry.getValue();
+                if (Math.abs(shape.getX() - start.getX()) > 1e-7 || Math.abs(shape.getY() - start.getY()) > 1e-7) {
+                    MoveShapeCommand moveCmd = new MoveShapeCommand(controller.getModel(), shape, shape.getX(), shape.getY());
+                    moveCmd.setOldX(start.getX());
+                    moveCmd.setOldY(start.getY());
+                    moves.add(moveCmd);
+                }
+            }
+            if (!moves.isEmpty()) {
+                controller.getCommandManager().executeBatch(controller.getModel(), moves);
+            }
         } else if (controller.isDragging() && controller.getCurrentShape() != null) {
             // Questa parte gestisce il trascinamento normale (non stretch) e usa MoveShapeCommand.
             AbstractShape currentDraggedShape = controller.getCurrentShape();
@@ -109,8 +127,11 @@ public class MouseReleasedHandler extends AbstractMouseHandler {
     protected void postProcess(MouseEvent event) {
         // Resetto lo stato di drag e resize nel controller
         controller.resetDrag();
+        controller.getInitialDragPositions().clear();
         controller.setActiveResizeHandle(null);
         controller.setShapeBeingResized(null);
+        controller.endShapeInteraction(); // scarta i livelli in cache del drag/resize
+        controller.endMarquee(); // la figura corrente diventa la principale della selezione ad area
 
         // Reimposto il cursore di default (MouseMovedHandler lo aggiornerà se serve)
         if (canvas!=null) canvas.setCursor(Cursor.DEFAULT);
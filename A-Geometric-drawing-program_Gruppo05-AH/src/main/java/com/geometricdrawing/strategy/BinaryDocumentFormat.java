@@ -0,0 +1,60 @@
+package com.geometricdrawing.strategy;
+
+/**
+ * Autore: Gruppo05
+ * Scopo: Costanti del formato binario dei disegni (*.gdraw), condivise da BinaryDocumentWriter e BinaryDocumentReader.
+ *
+ * Struttura del file (interi in big endian):
+ * <pre>
+ * intestazione   int magic "GDRW", short versione, short riservato, int numero di figure,
+ *                int numero di stringhe, long posizione del primo record,
+ *                long posizione dell'indice (dalla versione 2)
+ * stringhe       per ogni stringa: int lunghezza in byte, byte UTF-8
+ * record         uno per figura, in ordine di Z crescente:
+ *                byte tipo, byte flag, int lunghezza del contenuto che segue,
+ *                float minX, minY, maxX, maxY (ingombro ruotato, arrotondato verso l'esterno),
+ *                double x, y, larghezza, altezza, rotazione, byte scaleX, byte scaleY,
+ *                [colore di riempimento], [colore di contorno], dati del tipo
+ * indice         int versione dell'indice, int numero di record,
+ *                per ogni record: int posizione, float minX, minY, maxX, maxY (come nel record)
+ * </pre>
+ * Ogni colore presente occupa un int ARGB se tutte le componenti sono multipli esatti di 1/255
+ * (i colori della palette e quelli scelti dal selettore), altrimenti 4 float RGBA.
+ * Dati del tipo: il poligono scrive int n seguito dalle n coordinate x e dalle n coordinate y (mondo);
+ * il testo scrive l'indice della stringa nella tabella e la dimensione del font.
+ * La lunghezza nel record permette di saltare un record senza decodificarlo (ad esempio un tipo sconosciuto).
+ * L'indice in fondo al file permette di aprirlo in modo differito leggendo solo quel blocco; i file della
+ * versione 1, o con un indice di versione sconosciuta, vengono indicizzati scorrendo le intestazioni dei record.
+ */
+public final class BinaryDocumentFormat {
+    public static final int MAGIC = 0x47445257; // "GDRW"
+    public static final short VERSION = 2;
+    public static final int HEADER_SIZE = 32;
+    static final int HEADER_SIZE_V1 = 24; // intestazione senza la posizione dell'indice
+
+    static final int INDEX_VERSION = 1;
+    static final int INDEX_HEADER_SIZE = 4 + 4;
+    static final int INDEX_ENTRY_SIZE = 4 + 4 * 4;
+
+    public static final byte TAG_RECTANGLE = 1;
+    public static final byte TAG_ELLIPSE = 2;
+    public static final byte TAG_LINE = 3;
+    public static final byte TAG_POLYGON = 4;
+    public static final byte TAG_TEXT = 5;
+
+    public static final byte FLAG_FILL = 1;
+    public static final byte FLAG_BORDER = 2;
+    public static final byte FLAG_FILL_ARGB = 4;   // riempimento scritto come int ARGB
+    public static final byte FLAG_BORDER_ARGB = 8; // contorno scritto come int ARGB
+
+    // tipo, flag e lunghezza precedono il contenuto del record
+    static final int RECORD_PREFIX_SIZE = 1 + 1 + 4;
+    // ingombro (4 float), geometria (5 double) e specchiatura (2 byte)
+    static final int RECORD_FIXED_SIZE = 4 * 4 + 5 * 8 + 2;
+    static final int COLOR_SIZE = 4 * 4;
+    static final int ARGB_COLOR_SIZE = 4;
+
+    public static final String EXTENSION = "gdraw";
+
+    private BinaryDocumentFormat() {}
+}
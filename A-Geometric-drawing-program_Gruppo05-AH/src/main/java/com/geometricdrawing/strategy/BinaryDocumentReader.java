@@ -0,0 +1,308 @@
+package com.geometricdrawing.strategy;
+
+import com.geometricdrawing.model.*;
+import javafx.scene.paint.Color;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.geometricdrawing.strategy.BinaryDocumentFormat.*;
+
+/**
+ * Autore: Gruppo05
+ * Scopo: Legge un disegno nel formato binario descritto in BinaryDocumentFormat da un ByteBuffer
+ * che contiene l'intero file (in memoria o mappato con FileChannel.map). Alla creazione viene letta
+ * solo l'intestazione e la posizione delle stringhe: testi e figure vengono decodificati quando richiesti,
+ * leggendo direttamente dal buffer, e l'indice dei record viene letto solo da indexRecords(offsets, bounds).
+ */
+public class BinaryDocumentReader {
+    private static final int PROGRESS_STEP = 4096; // record decodificati tra due notifiche di avanzamento
+
+    private final ByteBuffer buffer;
+    private final short version;
+    private final int shapeCount;
+    private final int[] stringOffsets; // posizione della lunghezza di ogni stringa
+    private final int recordsOffset;
+    private final int indexOffset; // -1 se il file non ha un indice utilizzabile
+
+    public BinaryDocumentReader(ByteBuffer source) throws IOException {
+        if (source == null) {
+            throw new IllegalArgumentException("Il buffer da leggere non può essere null.");
+        }
+        this.buffer = source.duplicate(); // la posizione del chiamante non viene toccata
+        try {
+            if (buffer.remaining() < HEADER_SIZE_V1 || buffer.getInt() != MAGIC) {
+                throw new IOException("Il file non è un disegno in formato binario.");
+            }
+            version = buffer.getShort();
+            if (version < 1 || version > VERSION) {
+                throw new IOException("Versione del formato non supportata: " + version);
+            }
+            buffer.getShort(); // riservato
+            shapeCount = buffer.getInt();
+            int stringCount = buffer.getInt();
+            long offset = buffer.getLong();
+            long index = version >= 2 ? buffer.getLong() : -1;
+            if (shapeCount < 0 || stringCount < 0 || offset < buffer.position() || offset > buffer.limit()) {
+                throw new IOException("Intestazione del file non valida.");
+            }
+            recordsOffset = (int) offset;
+            indexOffset = version >= 2 ? checkIndex(index) : -1;
+            // i conteggi vengono dal file: prima di allocare gli array si controlla che il file possa contenerli,
+            // così un'intestazione danneggiata dà un errore di lettura invece di esaurire la memoria
+            if (stringCount > (recordsOffset - buffer.position()) / 4
+                    || shapeCount > (buffer.limit() - recordsOffset) / (RECORD_PREFIX_SIZE + RECORD_FIXED_SIZE)) {
+                throw new IOException("Intestazione del file non valida: il file è troppo corto per "
+                        + shapeCount + " figure e " + stringCount + " stringhe.");
+            }
+
+            stringOffsets = new int[stringCount];
+            for (int i = 0; i < stringCount; i++) {
+                stringOffsets[i] = buffer.position();
+                int length = buffer.getInt();
+                if (length < 0 || length > buffer.remaining()) {
+                    throw new IOException("Tabella delle stringhe non valida.");
+                }
+                buffer.position(buffer.position() + length);
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Il file è troncato: intestazione incompleta.", e);
+        }
+    }
+
+    // Copia che legge lo stesso buffer con una posizione propria
+    private BinaryDocumentReader(BinaryDocumentReader other) {
+        this.buffer = other.buffer.duplicate();
+        this.version = other.version;
+        this.shapeCount = other.shapeCount;
+        this.stringOffsets = other.stringOffsets;
+        this.recordsOffset = other.recordsOffset;
+        this.indexOffset = other.indexOffset;
+    }
+
+    // Controlla che l'indice indicato dall'intestazione stia dopo i record e sia contenuto nel file.
+    // Un indice di versione sconosciuta non è un errore: i record vengono indicizzati scorrendo le intestazioni
+    private int checkIndex(long index) throws IOException {
+        if (index < recordsOffset || index + INDEX_HEADER_SIZE > buffer.limit()) {
+            throw new IOException("Posizione dell'indice dei record non valida: " + index);
+        }
+        int position = (int) index;
+        if (buffer.getInt(position) != INDEX_VERSION) {
+            return -1;
+        }
+        int count = buffer.getInt(position + 4);
+        if (count != shapeCount || position + INDEX_HEADER_SIZE + (long) INDEX_ENTRY_SIZE * count > buffer.limit()) {
+            throw new IOException("Indice dei record non valido: " + count + " record su " + shapeCount + " figure.");
+        }
+        return position;
+    }
+
+    /**
+     * Un lettore non va usato da più thread insieme, perché la decodifica sposta la posizione nel buffer:
+     * questo metodo ne restituisce uno che legge gli stessi dati, da usare in un altro thread.
+     */
+    public BinaryDocumentReader copy() {
+        return new BinaryDocumentReader(this);
+    }
+
+    public static boolean hasMagic(ByteBuffer source) {
+        return source.remaining() >= 4 && source.getInt(source.position()) == MAGIC;
+    }
+
+    public short getVersion() {
+        return version;
+    }
+
+    public int getShapeCount() {
+        return shapeCount;
+    }
+
+    /**
+     * Decodifica tutti i record nell'ordine del file, che è l'ordine di Z.
+     * I record di tipo sconosciuto (scritti da versioni successive) vengono saltati.
+     */
+    public List<AbstractShape> readAll() throws IOException {
+        return readAll(ProgressListener.NONE);
+    }
+
+    /**
+     * Come readAll(), comunicando a progress il numero di record decodificati.
+     */
+    public List<AbstractShape> readAll(ProgressListener progress) throws IOException {
+        int[] offsets = new int[shapeCount];
+        indexRecords(offsets);
+        List<AbstractShape> shapes = new ArrayList<>(shapeCount);
+        for (int i = 0; i < shapeCount; i++) {
+            AbstractShape shape = readShapeAt(offsets[i]);
+            if (shape != null) {
+                shapes.add(shape);
+            }
+            if ((i + 1) % PROGRESS_STEP == 0) {
+                progress.progress(i + 1, shapeCount);
+            }
+        }
+        progress.progress(shapeCount, shapeCount);
+        return shapes;
+    }
+
+    /**
+     * Scorre le sole intestazioni dei record, senza decodificarli, e ne salva la posizione in offsets.
+     * Controlla che ogni record sia contenuto nel file, così readShapeAt non può uscire dal buffer.
+     * @param offsets array di almeno getShapeCount() elementi
+     */
+    public void indexRecords(int[] offsets) throws IOException {
+        long position = recordsOffset;
+        for (int i = 0; i < shapeCount; i++) {
+            if (position + RECORD_PREFIX_SIZE > buffer.limit()) {
+                throw new IOException("Il file è troncato: mancano " + (shapeCount - i) + " record.");
+            }
+            int length = buffer.getInt((int) position + 2);
+            if (length < RECORD_FIXED_SIZE || position + RECORD_PREFIX_SIZE + length > buffer.limit()) {
+                throw new IOException("Record " + i + " non valido.");
+            }
+            offsets[i] = (int) position;
+            position += RECORD_PREFIX_SIZE + length;
+        }
+    }
+
+    /**
+     * Come indexRecords(offsets), copiando in bounds l'ingombro di ogni record (minX, minY, maxX, maxY).
+     * Se il file ha l'indice dei record viene letto solo quel blocco, senza toccare i record:
+     * le posizioni vengono controllate rispetto all'area dei record, mentre la lunghezza di ciascuno
+     * viene controllata da readShapeAt quando il record viene decodificato.
+     * @param offsets array di almeno getShapeCount() elementi
+     * @param bounds  array di almeno 4 * getShapeCount() elementi
+     */
+    public void indexRecords(int[] offsets, float[] bounds) throws IOException {
+        if (indexOffset < 0) {
+            indexRecords(offsets);
+            for (int i = 0; i < shapeCount; i++) {
+                for (int corner = 0; corner < 4; corner++) {
+                    bounds[4 * i + corner] = buffer.getFloat(offsets[i] + RECORD_PREFIX_SIZE + 4 * corner);
+                }
+            }
+            return;
+        }
+        int entry = indexOffset + INDEX_HEADER_SIZE;
+        int previous = recordsOffset - 1;
+        for (int i = 0; i < shapeCount; i++, entry += INDEX_ENTRY_SIZE) {
+            int offset = buffer.getInt(entry);
+            if (offset <= previous || offset > indexOffset - RECORD_PREFIX_SIZE - RECORD_FIXED_SIZE) {
+                throw new IOException("Indice dei record non valido: posizione del record " + i + " fuori dal file.");
+            }
+            offsets[i] = offset;
+            previous = offset;
+            for (int corner = 0; corner < 4; corner++) {
+                bounds[4 * i + corner] = buffer.getFloat(entry + 4 + 4 * corner);
+            }
+        }
+    }
+
+    /**
+     * Decodifica il record che inizia nella posizione indicata (ottenuta da indexRecords).
+     * @return la figura, oppure null se il tipo del record non è conosciuto da questa versione
+     */
+    public AbstractShape readShapeAt(int offset) throws IOException {
+        try {
+            buffer.position(offset);
+            byte tag = buffer.get();
+            byte flags = buffer.get();
+            int length = buffer.getInt();
+            if (length < RECORD_FIXED_SIZE || length > buffer.remaining()) {
+                throw new IOException("Record non valido nella posizione " + offset + ".");
+            }
+            return decodeRecord(tag, flags);
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            // IllegalArgumentException: posizione oltre il limite o componenti di colore fuori intervallo
+            throw new IOException("Il file è troncato o danneggiato.", e);
+        }
+    }
+
+    // Il buffer è posizionato subito dopo la lunghezza del record
+    private AbstractShape decodeRecord(byte tag, byte flags) throws IOException {
+        buffer.position(buffer.position() + 16); // l'ingombro serve solo a chi filtra i record senza decodificarli
+        double x = buffer.getDouble();
+        double y = buffer.getDouble();
+        double width = buffer.getDouble();
+        double height = buffer.getDouble();
+        double rotation = buffer.getDouble();
+        int scaleX = buffer.get();
+        int scaleY = buffer.get();
+        Color fill = (flags & FLAG_FILL) != 0 ? getColor((flags & FLAG_FILL_ARGB) != 0) : null;
+        Color border = (flags & FLAG_BORDER) != 0 ? getColor((flags & FLAG_BORDER_ARGB) != 0) : null;
+
+        AbstractShape shape;
+        switch (tag) {
+            case TAG_RECTANGLE -> shape = new Rectangle(x, y, width, height);
+            case TAG_ELLIPSE -> shape = new Ellipse(x, y, width, height);
+            case TAG_LINE -> {
+                shape = new Line(x, y, x, y);
+                // larghezza e altezza impostate direttamente: (x + w) - x può differire da w
+                shape.setWidth(width);
+                shape.setHeight(height);
+            }
+            case TAG_POLYGON -> shape = decodePolygon(x, y, width, height);
+            case TAG_TEXT -> {
+                int stringIndex = buffer.getInt();
+                int fontSize = buffer.getInt();
+                shape = new TextShape(x, y, width, height, getString(stringIndex), fontSize);
+            }
+            default -> {
+                return null;
+            }
+        }
+        shape.setRotationAngle(rotation);
+        shape.setScaleX(scaleX);
+        shape.setScaleY(scaleY);
+        if (fill != null || border != null) {
+            shape.setStyle(new ShapeStyle(fill, border));
+        }
+        return shape;
+    }
+
+    private Polygon decodePolygon(double x, double y, double width, double height) throws IOException {
+        int n = buffer.getInt();
+        if (n < 0 || (long) n * 16 > buffer.remaining()) {
+            throw new IOException("Numero di vertici non valido: " + n);
+        }
+        Polygon polygon = new Polygon(x, y);
+        polygon.clearVertices();
+        if (n == 0) {
+            polygon.setX(x);
+            polygon.setY(y);
+            polygon.setWidth(width);
+            polygon.setHeight(height);
+            return polygon;
+        }
+        double[] xs = new double[n];
+        double[] ys = new double[n];
+        buffer.asDoubleBuffer().get(xs);
+        buffer.position(buffer.position() + 8 * n);
+        buffer.asDoubleBuffer().get(ys);
+        buffer.position(buffer.position() + 8 * n);
+        polygon.addVertices(xs, ys, n);
+        return polygon;
+    }
+
+    private String getString(int index) throws IOException {
+        if (index < 0 || index >= stringOffsets.length) {
+            throw new IOException("Indice di stringa non valido: " + index);
+        }
+        int offset = stringOffsets[index];
+        byte[] bytes = new byte[buffer.getInt(offset)];
+        buffer.get(offset + 4, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private Color getColor(boolean argb) {
+        if (argb) {
+            int value = buffer.getInt();
+            return Color.rgb(value >> 16 & 0xFF, value >> 8 & 0xFF, value & 0xFF, (value >>> 24) / 255.0);
+        }
+        return new Color(buffer.getFloat(), buffer.getFloat(), buffer.getFloat(), buffer.getFloat());
+    }
+}
@@ -0,0 +1,289 @@
+package com.geometricdrawing.strategy;
+
+import com.geometricdrawing.decorator.ShapeDecorator;
+import com.geometricdrawing.model.*;
+import javafx.geometry.Bounds;
+import javafx.scene.paint.Color;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.geometricdrawing.strategy.BinaryDocumentFormat.*;
+
+/**
+ * Autore: Gruppo05
+ * Scopo: Scrive un elenco di figure nel formato binario descritto in BinaryDocumentFormat.
+ * I dati passano da un buffer di dimensione fissa che viene svuotato sul canale quando è pieno,
+ * quindi anche i poligoni con moltissimi vertici non richiedono di costruire il file in memoria.
+ */
+public class BinaryDocumentWriter {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int PROGRESS_STEP = 4096; // figure scritte tra due notifiche di avanzamento
+
+    private final WritableByteChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+    public BinaryDocumentWriter(WritableByteChannel channel) {
+        if (channel == null) {
+            throw new IllegalArgumentException("Il canale di scrittura non può essere null.");
+        }
+        this.channel = channel;
+    }
+
+    /**
+     * Scrive intestazione, tabella delle stringhe, un record per figura nell'ordine della lista e l'indice dei record.
+     * Il canale non viene chiuso.
+     */
+    public void write(List<? extends AbstractShape> shapes) throws IOException {
+        write(shapes, ProgressListener.NONE);
+    }
+
+    /**
+     * Come write(shapes), comunicando a progress il numero di figure scritte.
+     */
+    public void write(List<? extends AbstractShape> shapes, ProgressListener progress) throws IOException {
+        // Prima passata: raccolta dei testi, ognuno scritto una sola volta anche se ripetuto,
+        // e lunghezza dei record, che serve a scrivere nell'intestazione la posizione dell'indice
+        Map<String, Integer> stringIndex = new HashMap<>();
+        List<byte[]> strings = new ArrayList<>();
+        long stringTableSize = 0;
+        long recordsSize = 0;
+        for (AbstractShape shape : shapes) {
+            if (baseShape(shape) instanceof TextShape text && !stringIndex.containsKey(text.getText())) {
+                byte[] bytes = text.getText().getBytes(StandardCharsets.UTF_8);
+                stringIndex.put(text.getText(), strings.size());
+                strings.add(bytes);
+                stringTableSize += 4 + bytes.length;
+            }
+            recordsSize += RECORD_PREFIX_SIZE + recordLength(shape);
+        }
+        long recordsOffset = HEADER_SIZE + stringTableSize;
+        long indexOffset = recordsOffset + recordsSize;
+        // le posizioni nell'indice sono int, come quelle usate dal lettore sul file mappato
+        if (indexOffset + INDEX_HEADER_SIZE + (long) INDEX_ENTRY_SIZE * shapes.size() > Integer.MAX_VALUE) {
+            throw new IOException("Il disegno è troppo grande per il formato binario: "
+                    + shapes.size() + " figure.");
+        }
+
+        ensure(HEADER_SIZE);
+        buffer.putInt(MAGIC);
+        buffer.putShort(VERSION);
+        buffer.putShort((short) 0);
+        buffer.putInt(shapes.size());
+        buffer.putInt(strings.size());
+        buffer.putLong(recordsOffset);
+        buffer.putLong(indexOffset);
+
+        for (byte[] bytes : strings) {
+            ensure(4);
+            buffer.putInt(bytes.length);
+            putBytes(bytes);
+        }
+
+        int total = shapes.size();
+        int[] offsets = new int[total];
+        float[] bounds = new float[4 * total];
+        int position = (int) recordsOffset;
+        int written = 0;
+        for (AbstractShape shape : shapes) {
+            offsets[written] = position;
+            position += writeRecord(shape, stringIndex, bounds, 4 * written);
+            if (++written % PROGRESS_STEP == 0) {
+                progress.progress(written, total);
+            }
+        }
+
+        ensure(INDEX_HEADER_SIZE);
+        buffer.putInt(INDEX_VERSION);
+        buffer.putInt(total);
+        for (int i = 0; i < total; i++) {
+            ensure(INDEX_ENTRY_SIZE);
+            buffer.putInt(offsets[i]);
+            for (int corner = 0; corner < 4; corner++) {
+                buffer.putFloat(bounds[4 * i + corner]);
+            }
+        }
+        flush();
+        progress.progress(total, total);
+    }
+
+    // Lunghezza del contenuto del record, esclusi tipo, flag e lunghezza
+    private static int recordLength(AbstractShape shape) {
+        AbstractShape base = baseShape(shape);
+        int length = RECORD_FIXED_SIZE + colorSize(shape.getFillColor()) + colorSize(shape.getBorderColor());
+        if (base instanceof Polygon polygon) {
+            length += 4 + 16 * polygon.getVertexCount();
+        } else if (base instanceof TextShape) {
+            length += 8;
+        }
+        return length;
+    }
+
+    private static int colorSize(Color color) {
+        if (color == null) {
+            return 0;
+        }
+        return isByteColor(color) ? ARGB_COLOR_SIZE : COLOR_SIZE;
+    }
+
+    // Scrive il record e ne copia l'ingombro in bounds da boundsIndex; restituisce i byte scritti
+    private int writeRecord(AbstractShape shape, Map<String, Integer> stringIndex,
+                            float[] bounds, int boundsIndex) throws IOException {
+        AbstractShape base = baseShape(shape);
+        byte tag = tagOf(base);
+        Color fill = shape.getFillColor();
+        Color border = shape.getBorderColor();
+
+        byte flags = 0;
+        if (fill != null) {
+            flags |= FLAG_FILL;
+            if (isByteColor(fill)) {
+                flags |= FLAG_FILL_ARGB;
+            }
+        }
+        if (border != null) {
+            flags |= FLAG_BORDER;
+            if (isByteColor(border)) {
+                flags |= FLAG_BORDER_ARGB;
+            }
+        }
+        Polygon polygon = base instanceof Polygon p ? p : null;
+        int length = recordLength(shape);
+
+        ensure(RECORD_PREFIX_SIZE + RECORD_FIXED_SIZE + 2 * COLOR_SIZE + 8);
+        buffer.put(tag);
+        buffer.put(flags);
+        buffer.putInt(length);
+
+        Bounds worldBounds = shape.getWorldBounds();
+        bounds[boundsIndex] = floorFloat(worldBounds.getMinX());
+        bounds[boundsIndex + 1] = floorFloat(worldBounds.getMinY());
+        bounds[boundsIndex + 2] = ceilFloat(worldBounds.getMaxX());
+        bounds[boundsIndex + 3] = ceilFloat(worldBounds.getMaxY());
+        for (int corner = 0; corner < 4; corner++) {
+            buffer.putFloat(bounds[boundsIndex + corner]);
+        }
+
+        buffer.putDouble(shape.getX());
+        buffer.putDouble(shape.getY());
+        buffer.putDouble(shape.getWidth());
+        buffer.putDouble(shape.getHeight());
+        buffer.putDouble(shape.getRotationAngle());
+        buffer.put((byte) shape.getScaleX());
+        buffer.put((byte) shape.getScaleY());
+        if (fill != null) {
+            putColor(fill, (flags & FLAG_FILL_ARGB) != 0);
+        }
+        if (border != null) {
+            putColor(border, (flags & FLAG_BORDER_ARGB) != 0);
+        }
+
+        if (polygon != null) {
+            int n = polygon.getVertexCount();
+            buffer.putInt(n);
+            for (int i = 0; i < n; i++) {
+                ensure(8);
+                buffer.putDouble(polygon.getVertexX(i));
+            }
+            for (int i = 0; i < n; i++) {
+                ensure(8);
+                buffer.putDouble(polygon.getVertexY(i));
+            }
+        } else if (base instanceof TextShape text) {
+            buffer.putInt(stringIndex.get(text.getText()));
+            buffer.putInt(text.getFontSize());
+        }
+        return RECORD_PREFIX_SIZE + length;
+    }
+
+    // Nei file delle versioni precedenti le figure possono essere ancora avvolte da decoratori:
+    // il tipo del record è quello della figura base, i colori sono quelli visti dall'esterno
+    private static AbstractShape baseShape(AbstractShape shape) {
+        AbstractShape current = shape;
+        while (current instanceof ShapeDecorator decorator) {
+            current = decorator.getInnerShape();
+        }
+        return current;
+    }
+
+    // L'ordine dei controlli conta: le sottoclassi vanno riconosciute prima delle classi base
+    private static byte tagOf(AbstractShape shape) throws IOException {
+        if (shape instanceof TextShape) return TAG_TEXT;
+        if (shape instanceof Polygon) return TAG_POLYGON;
+        if (shape instanceof Line) return TAG_LINE;
+        if (shape instanceof Ellipse) return TAG_ELLIPSE;
+        if (shape instanceof Rectangle) return TAG_RECTANGLE;
+        throw new IOException("Tipo di figura non supportato dal formato binario: "
+                + (shape == null ? "null" : shape.getClass().getName()));
+    }
+
+    private void putColor(Color color, boolean argb) {
+        if (argb) {
+            buffer.putInt(toByte(color.getOpacity()) << 24 | toByte(color.getRed()) << 16
+                    | toByte(color.getGreen()) << 8 | toByte(color.getBlue()));
+            return;
+        }
+        // Color conserva le componenti in float: scriverle come float non perde precisione
+        buffer.putFloat((float) color.getRed());
+        buffer.putFloat((float) color.getGreen());
+        buffer.putFloat((float) color.getBlue());
+        buffer.putFloat((float) color.getOpacity());
+    }
+
+    // Vero se ogni componente torna identica dopo la conversione a 8 bit, come avviene in Color.rgb
+    private static boolean isByteColor(Color color) {
+        return isByteComponent(color.getRed()) && isByteComponent(color.getGreen())
+                && isByteComponent(color.getBlue()) && isByteComponent(color.getOpacity());
+    }
+
+    private static boolean isByteComponent(double component) {
+        return (float) (toByte(component) / 255.0) == (float) component;
+    }
+
+    private static int toByte(double component) {
+        return (int) Math.round(component * 255.0);
+    }
+
+    // L'ingombro salvato in float deve contenere quello reale: si arrotonda verso l'esterno
+    private static float floorFloat(double value) {
+        float f = (float) value;
+        return f > value ? Math.nextDown(f) : f;
+    }
+
+    private static float ceilFloat(double value) {
+        float f = (float) value;
+        return f < value ? Math.nextUp(f) : f;
+    }
+
+    private void putBytes(byte[] bytes) throws IOException {
+        int offset = 0;
+        while (offset < bytes.length) {
+            if (!buffer.hasRemaining()) {
+                flush();
+            }
+            int chunk = Math.min(buffer.remaining(), bytes.length - offset);
+            buffer.put(bytes, offset, chunk);
+            offset += chunk;
+        }
+    }
+
+    private void ensure(int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            flush();
+        }
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
@@ -0,0 +1,57 @@
+package com.geometricdrawing.strategy;
+
+import com.geometricdrawing.model.DrawingModel;
+import javafx.stage.FileChooser;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Autore: Gruppo05
+ * Scopo: Carica un disegno salvato da BinarySaveStrategy. Il tipo del file viene riconosciuto dal contenuto:
+ * i file senza l'intestazione del formato binario vengono passati al caricamento serializzato,
+ * così dallo stesso comando si possono aprire anche i disegni *.ser delle versioni precedenti.
+ */
+public class BinaryLoadStrategy implements LoadStrategy {
+    @Override
+    public void load(File file, DrawingModel model) throws IOException, ClassNotFoundException {
+        load(file, model, ProgressListener.NONE);
+    }
+
+    @Override
+    public void load(File file, DrawingModel model, ProgressListener progress) throws IOException, ClassNotFoundException {
+        if (model == null) {
+            throw new IOException("DrawingModel é nullo, impossibile effettuare il caricamento.");
+        }
+        ByteBuffer content;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("File troppo grande: " + size + " byte.");
+            }
+            content = ByteBuffer.allocate((int) size);
+            while (content.hasRemaining() && channel.read(content) >= 0) {
+                // lettura completa del file nel buffer
+            }
+            content.flip();
+        }
+        if (!BinaryDocumentReader.hasMagic(content)) {
+            model.loadFromFile(file);
+            return;
+        }
+        model.replaceShapes(new BinaryDocumentReader(content).readAll(progress));
+    }
+
+    @Override
+    public FileChooser.ExtensionFilter getExtensionFilter() {
+        return new FileChooser.ExtensionFilter("Disegno (*.gdraw, *.ser)", "*." + BinaryDocumentFormat.EXTENSION, "*.ser");
+    }
+
+    @Override
+    public String getDialogTitle() {
+        return "Carica disegno.";
+    }
+}
@@ -0,0 +1,58 @@
+package com.geometricdrawing.strategy;
+
+import com.geometricdrawing.model.AbstractShape;
+import com.geometricdrawing.model.DrawingModel;
+import com.geometricdrawing.model.DrawingSnapshot;
+import javafx.scene.canvas.Canvas;
+import javafx.stage.FileChooser;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Autore: Gruppo05
+ * Scopo: Salva le figure del modello nel formato binario compatto (*.gdraw) tramite BinaryDocumentWriter.
+ * Rispetto alla serializzazione Java non vengono scritti descrittori di classe né oggetti decoratore,
+ * solo i campi primitivi di ogni figura.
+ */
+public class BinarySaveStrategy implements SaveStrategy {
+    @Override
+    public void save(File file, DrawingModel model, Canvas canvas) throws IOException {
+        if (model == null) {
+            throw new IOException("DrawingModel é nullo, impossibile salvare il disegno.");
+        }
+        model.materializeAllShapes(); // un disegno aperto in modo differito va salvato per intero
+        write(file, model.getShapes(), ProgressListener.NONE);
+    }
+
+    // Le copie delle figure vengono scritte direttamente, senza ricostruire un modello in background
+    @Override
+    public SaveOperation prepare(DrawingModel model, Canvas canvas) {
+        if (model == null) {
+            return (file, progress) -> save(file, null, canvas);
+        }
+        DrawingSnapshot snapshot = model.snapshot(); // le figure non ancora caricate vengono lette durante la scrittura
+        return (file, progress) -> write(file, snapshot.getShapes(), progress);
+    }
+
+    private static void write(File file, List<AbstractShape> shapes, ProgressListener progress) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            new BinaryDocumentWriter(channel).write(shapes, progress);
+            channel.force(true); // il file salvato diventa la base del diario dei comandi: deve essere sul disco
+        }
+    }
+
+    @Override
+    public FileChooser.ExtensionFilter getExtensionFilter() {
+        return new FileChooser.ExtensionFilter("Disegno (*.gdraw)", "*." + BinaryDocumentFormat.EXTENSION);
+    }
+
+    @Override
+    public String getDialogTitle() {
+        return "Salva Disegno.";
+    }
+}
@@ -1,18 +1,23 @@
 package com.geometricdrawing.strategy;
 
+import com.geometricdrawing.command.CommandManager;
 import com.geometricdrawing.controller.DrawingController;
 import com.geometricdrawing.model.DrawingModel;
+import javafx.concurrent.Task;
 import javafx.scene.control.Alert;
+import javafx.scene.control.ButtonType;
 import javafx.stage.FileChooser;
 import javafx.stage.Window;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.concurrent.CancellationException;
 
 public class LoadContext {
 
     private final DrawingController controller;
     private LoadStrategy loadStrategy;
+    private Task<DrawingModel> runningTask; // caricamento in background non ancora terminato
 
     public LoadContext(DrawingController controller) {
         if (controller == null) {
@@ -31,6 +36,10 @@ public class LoadContext {
             controller.showAlertDialog(Alert.AlertType.ERROR, "Errore Interno", "Strategia di caricamento non specificata.");
             return;
         }
+        if (runningTask != null) {
+            controller.showAlertDialog(Alert.AlertType.WARNING, "Caricamento in corso", "Attendere il termine del caricamento in corso.");
+            return;
+        }
         Window currentWindow = controller.getWindow();
         if (currentWindow == null) {
             System.err.println("Finestra non disponibile per FileChooser.");
@@ -43,30 +52,83 @@ public class LoadContext {
         fileChooser.getExtensionFilters().add(loadStrategy.getExtensionFilter());
         File file = fileChooser.showOpenDialog(currentWindow);
 
-        if (file != null) {
-            try {
-                DrawingModel newModel = new DrawingModel(); // Carica sempre in una nuova istanza del modello
-                loadStrategy.load(file, newModel);
+        if (file == null) {
+            System.out.println("Operazione di caricamento annullata dall'utente.");
+            return;
+        }
 
-                // Delega gli aggiornamenti di stato al controller
-                controller.setModel(newModel);
-                controller.setCurrentShape(null);
-                controller.updateControlState(null);
-                controller.redrawCanvas();
+        // Il file viene letto in background in un modello nuovo, invisibile all'interfaccia finché non è completo:
+        // nel frattempo si può continuare a lavorare sul disegno corrente (se viene modificato, al termine si chiede conferma)
+        LoadStrategy strategy = loadStrategy;
+        CommandManager commandManager = controller.getCommandManager();
+        long changesAtStart = commandManager != null ? commandManager.getChangeCount() : 0;
+        Task<DrawingModel> task = new Task<>() {
+            @Override
+            protected DrawingModel call() throws Exception {
+                updateMessage("Caricamento di " + file.getName() + "...");
+                DrawingModel newModel = new DrawingModel(); // Carica sempre in una nuova istanza del modello
+                strategy.load(file, newModel, (done, total) -> {
+                    if (isCancelled()) {
+                        throw new CancellationException();
+                    }
+                    updateProgress(done, total);
+                });
+                return newModel;
+            }
+        };
+        task.setOnSucceeded(event -> {
+            runningTask = null;
+            if (commandManager != null && commandManager.getChangeCount() != changesAtStart
+                    && !confirmReplace(file)) {
+                System.out.println("Caricamento di " + file.getName() + " scartato: il disegno corrente è stato modificato.");
+                return;
+            }
+            // Il nuovo modello sostituisce quello corrente in un solo passaggio, sul thread JavaFX
+            controller.setModel(task.getValue(), file);
+            controller.setCurrentShape(null);
+            controller.updateControlState(null);
+            controller.redrawCanvas();
 
-                System.out.println("File caricato con successo da " + file.getAbsolutePath());
-                controller.showAlertDialog(Alert.AlertType.INFORMATION, "Caricamento Riuscito", "Disegno caricato da:\n" + file.getName());
-            } catch (IOException | ClassNotFoundException e) {
-                System.err.println("Errore durante il caricamento del file: " + e.getMessage());
-                e.printStackTrace();
+            System.out.println("File caricato con successo da " + file.getAbsolutePath());
+            controller.showAlertDialog(Alert.AlertType.INFORMATION, "Caricamento Riuscito", "Disegno caricato da:\n" + file.getName());
+        });
+        task.setOnCancelled(event -> {
+            runningTask = null;
+            System.out.println("Caricamento di " + file.getName() + " annullato.");
+        });
+        task.setOnFailed(event -> {
+            runningTask = null;
+            Throwable e = task.getException();
+            System.err.println("Errore durante il caricamento del file: " + e.getMessage());
+            e.printStackTrace();
+            if (e instanceof IOException || e instanceof ClassNotFoundException) {
                 controller.showAlertDialog(Alert.AlertType.ERROR, "Errore di Caricamento", "Impossibile caricare il file:\n" + e.getMessage());
-            } catch (Exception e) {
-                System.err.println("Errore imprevisto durante l'operazione di caricamento: " + e.getMessage());
-                e.printStackTrace();
+            } else {
                 controller.showAlertDialog(Alert.AlertType.ERROR, "Errore Imprevisto", "Si è verificato un errore imprevisto durante il caricamento:\n" + e.getMessage());
             }
-        } else {
-            System.out.println("Operazione di caricamento annullata dall'utente.");
-        }
+        });
+
+        runningTask = task;
+        controller.showTaskProgress(task, loadStrategy.getDialogTitle());
+        Thread thread = new Thread(task, "caricamento-disegno");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    // Il disegno è stato modificato durante il caricamento: sostituirlo farebbe perdere quelle modifiche
+    private static boolean confirmReplace(File file) {
+        Alert alert = new Alert(Alert.AlertType.CONFIRMATION);
+        alert.setTitle("Caricamento Completato");
+        alert.setHeaderText(null);
+        alert.setContentText("Il disegno corrente è stato modificato durante il caricamento di " + file.getName()
+                + ".\nSostituirlo con il disegno caricato? Le modifiche non salvate andranno perse.");
+        return alert.showAndWait().filter(ButtonType.OK::equals).isPresent();
+    }
+
+    /**
+     * @return true se un caricamento avviato da questo contesto non è ancora terminato
+     */
+    public boolean isRunning() {
+        return runningTask != null;
     }
 }
@@ -10,4 +10,12 @@ public interface LoadStrategy {
     void load(File file, DrawingModel model) throws IOException, ClassNotFoundException;
     FileChooser.ExtensionFilter getExtensionFilter();
     String getDialogTitle();
+
+    /**
+     * Variante eseguita in background da LoadContext: le strategie che conoscono la dimensione del lavoro
+     * ne comunicano l'avanzamento. Il modello ricevuto è nuovo e non ancora visibile all'interfaccia.
+     */
+    default void load(File file, DrawingModel model, ProgressListener progress) throws IOException, ClassNotFoundException {
+        load(file, model);
+    }
 }
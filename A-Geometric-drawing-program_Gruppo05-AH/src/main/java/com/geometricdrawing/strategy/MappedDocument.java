@@ -0,0 +1,282 @@
+package com.geometricdrawing.strategy;
+
+import com.geometricdrawing.model.AbstractShape;
+import com.geometricdrawing.model.LazyShapeSource;
+import javafx.geometry.BoundingBox;
+import javafx.geometry.Bounds;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Autore: Gruppo05
+ * Scopo: Disegno in formato binario mappato in memoria, da cui le figure vengono decodificate su richiesta.
+ * All'apertura si legge solo l'indice in fondo al file (per i file della versione 1 le intestazioni dei record):
+ * posizione e ingombro di ogni record restano in memoria e una griglia uniforme sull'ingombro del disegno
+ * permette di trovare i record di un'area senza scorrerli tutti. Ogni record viene decodificato una sola volta.
+ */
+public class MappedDocument implements LazyShapeSource {
+    // Un record che copre più celle di così viene tenuto a parte invece di essere ripetuto in ogni cella
+    private static final int MAX_CELLS_PER_RECORD = 64;
+    private static final int MAX_GRID_SIZE = 512;
+
+    private BinaryDocumentReader reader; // null quando tutti i record sono stati consegnati
+    private final int[] recordOffsets;
+    private final float[] recordBounds; // minX, minY, maxX, maxY di ogni record
+    private final BitSet materialized;
+    private int pendingCount;
+    private final Bounds bounds;
+
+    // Griglia: i record della cella c sono cellRecords[cellStart[c] .. cellStart[c + 1])
+    private final double gridMinX, gridMinY, cellWidth, cellHeight;
+    private final int gridSize;
+    private final int[] cellStart;
+    private final int[] cellRecords;
+    private final int[] cellPending; // record non ancora consegnati per cella: le celle a zero vengono saltate
+    private final int[] largeRecords;
+
+    private MappedDocument(BinaryDocumentReader reader) throws IOException {
+        this.reader = reader;
+        int count = reader.getShapeCount(); // già confrontato dal reader con la dimensione del file
+        this.recordOffsets = new int[count];
+        this.recordBounds = new float[4 * count];
+        reader.indexRecords(recordOffsets, recordBounds);
+        this.materialized = new BitSet(count);
+        this.pendingCount = count;
+
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+        for (int r = 0; r < count; r++) {
+            minX = Math.min(minX, bound(r, 0));
+            minY = Math.min(minY, bound(r, 1));
+            maxX = Math.max(maxX, bound(r, 2));
+            maxY = Math.max(maxY, bound(r, 3));
+        }
+        boolean empty = !(minX <= maxX && minY <= maxY);
+        this.bounds = empty ? null : new BoundingBox(minX, minY, maxX - minX, maxY - minY);
+
+        // Circa 8 record per cella nel caso uniforme
+        this.gridSize = empty ? 1 : Math.max(1, Math.min(MAX_GRID_SIZE, (int) Math.sqrt(count / 8.0)));
+        this.gridMinX = empty ? 0 : minX;
+        this.gridMinY = empty ? 0 : minY;
+        this.cellWidth = empty || maxX == minX ? 1 : (maxX - minX) / gridSize;
+        this.cellHeight = empty || maxY == minY ? 1 : (maxY - minY) / gridSize;
+
+        int cells = gridSize * gridSize;
+        this.cellStart = new int[cells + 1];
+        this.cellPending = new int[cells];
+        int largeCount = 0;
+        for (int r = 0; r < count; r++) {
+            int cx0 = cellX(bound(r, 0)), cy0 = cellY(bound(r, 1));
+            int cx1 = cellX(bound(r, 2)), cy1 = cellY(bound(r, 3));
+            if ((cx1 - cx0 + 1) * (cy1 - cy0 + 1) > MAX_CELLS_PER_RECORD) {
+                largeCount++;
+                continue;
+            }
+            for (int cy = cy0; cy <= cy1; cy++) {
+                for (int cx = cx0; cx <= cx1; cx++) {
+                    cellStart[cy * gridSize + cx + 1]++;
+                }
+            }
+        }
+        for (int c = 0; c < cells; c++) {
+            cellPending[c] = cellStart[c + 1];
+            cellStart[c + 1] += cellStart[c];
+        }
+        this.cellRecords = new int[cellStart[cells]];
+        this.largeRecords = new int[largeCount];
+        int[] fill = Arrays.copyOf(cellStart, cells);
+        largeCount = 0;
+        for (int r = 0; r < count; r++) {
+            int cx0 = cellX(bound(r, 0)), cy0 = cellY(bound(r, 1));
+            int cx1 = cellX(bound(r, 2)), cy1 = cellY(bound(r, 3));
+            if ((cx1 - cx0 + 1) * (cy1 - cy0 + 1) > MAX_CELLS_PER_RECORD) {
+                largeRecords[largeCount++] = r;
+                continue;
+            }
+            for (int cy = cy0; cy <= cy1; cy++) {
+                for (int cx = cx0; cx <= cx1; cx++) {
+                    cellRecords[fill[cy * gridSize + cx]++] = r;
+                }
+            }
+        }
+    }
+
+    /**
+     * Mappa il file in sola lettura e ne indicizza i record. Il canale viene chiuso subito:
+     * la mappatura resta valida finché il documento è in uso.
+     * @throws IOException se il file non è nel formato binario, è danneggiato o supera i 2 GB
+     */
+    public static MappedDocument open(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("File troppo grande per essere mappato: " + size + " byte.");
+            }
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            return new MappedDocument(new BinaryDocumentReader(mapped));
+        }
+    }
+
+    private float bound(int record, int corner) {
+        return recordBounds[4 * record + corner];
+    }
+
+    private int cellX(double x) {
+        return Math.max(0, Math.min(gridSize - 1, (int) ((x - gridMinX) / cellWidth)));
+    }
+
+    private int cellY(double y) {
+        return Math.max(0, Math.min(gridSize - 1, (int) ((y - gridMinY) / cellHeight)));
+    }
+
+    @Override
+    public void materializeIn(double minX, double minY, double maxX, double maxY, ShapeSink sink) {
+        if (pendingCount == 0 || bounds == null || maxX < bounds.getMinX() || minX > bounds.getMaxX()
+                || maxY < bounds.getMinY() || minY > bounds.getMaxY()) {
+            return;
+        }
+        int[] hits = new int[16];
+        int hitCount = 0;
+        int cx0 = cellX(minX), cy0 = cellY(minY), cx1 = cellX(maxX), cy1 = cellY(maxY);
+        for (int cy = cy0; cy <= cy1; cy++) {
+            for (int cx = cx0; cx <= cx1; cx++) {
+                int cell = cy * gridSize + cx;
+                if (cellPending[cell] == 0) {
+                    continue;
+                }
+                for (int i = cellStart[cell]; i < cellStart[cell + 1]; i++) {
+                    int r = cellRecords[i];
+                    if (!materialized.get(r) && intersects(r, minX, minY, maxX, maxY)) {
+                        if (hitCount == hits.length) {
+                            hits = Arrays.copyOf(hits, hitCount * 2);
+                        }
+                        hits[hitCount++] = r;
+                    }
+                }
+            }
+        }
+        for (int r : largeRecords) {
+            if (!materialized.get(r) && intersects(r, minX, minY, maxX, maxY)) {
+                if (hitCount == hits.length) {
+                    hits = Arrays.copyOf(hits, hitCount * 2);
+                }
+                hits[hitCount++] = r;
+            }
+        }
+        // Un record presente in più celle compare più volte: ordinati, i doppioni sono adiacenti
+        Arrays.sort(hits, 0, hitCount);
+        for (int i = 0; i < hitCount; i++) {
+            if (i == 0 || hits[i] != hits[i - 1]) {
+                deliver(hits[i], sink);
+            }
+        }
+        releaseIfComplete();
+    }
+
+    @Override
+    public void materializeAll(ShapeSink sink) {
+        for (int r = materialized.nextClearBit(0); r < recordOffsets.length; r = materialized.nextClearBit(r + 1)) {
+            deliver(r, sink);
+        }
+        releaseIfComplete();
+    }
+
+    /**
+     * Consegna i record indicati, nell'ordine dato, saltando quelli già consegnati: serve a ripetere
+     * i caricamenti registrati dal diario dei comandi. Con sink null i record vengono solo segnati
+     * come consegnati, senza decodificarli.
+     * @throws IllegalArgumentException se un numero di record non esiste nel documento
+     */
+    public void materializeRecords(int[] records, int from, int count, ShapeSink sink) {
+        for (int i = from; i < from + count; i++) {
+            int record = records[i];
+            if (record < 0 || record >= recordOffsets.length) {
+                throw new IllegalArgumentException("Record " + record + " inesistente nel documento.");
+            }
+            if (!materialized.get(record)) {
+                deliver(record, sink);
+            }
+        }
+        releaseIfComplete();
+    }
+
+    @Override
+    public PendingShapes pendingShapes() {
+        if (pendingCount == 0) {
+            return sink -> {};
+        }
+        BinaryDocumentReader pendingReader = reader.copy();
+        BitSet delivered = (BitSet) materialized.clone();
+        return sink -> {
+            for (int r = delivered.nextClearBit(0); r < recordOffsets.length; r = delivered.nextClearBit(r + 1)) {
+                AbstractShape shape;
+                try {
+                    shape = pendingReader.readShapeAt(recordOffsets[r]);
+                } catch (IOException e) {
+                    // come in deliver: un record danneggiato viene saltato
+                    System.err.println("Record " + r + " non leggibile, figura ignorata: " + e.getMessage());
+                    continue;
+                }
+                if (shape != null) {
+                    sink.accept(r, shape);
+                }
+            }
+        };
+    }
+
+    @Override
+    public int getPendingCount() {
+        return pendingCount;
+    }
+
+    @Override
+    public Bounds getBounds() {
+        return bounds;
+    }
+
+    private boolean intersects(int record, double minX, double minY, double maxX, double maxY) {
+        return bound(record, 0) <= maxX && bound(record, 2) >= minX
+                && bound(record, 1) <= maxY && bound(record, 3) >= minY;
+    }
+
+    private void deliver(int record, ShapeSink sink) {
+        materialized.set(record);
+        pendingCount--;
+        int cx0 = cellX(bound(record, 0)), cy0 = cellY(bound(record, 1));
+        int cx1 = cellX(bound(record, 2)), cy1 = cellY(bound(record, 3));
+        if ((cx1 - cx0 + 1) * (cy1 - cy0 + 1) <= MAX_CELLS_PER_RECORD) {
+            for (int cy = cy0; cy <= cy1; cy++) {
+                for (int cx = cx0; cx <= cx1; cx++) {
+                    cellPending[cy * gridSize + cx]--;
+                }
+            }
+        }
+        if (sink == null) {
+            return;
+        }
+        AbstractShape shape;
+        try {
+            shape = reader.readShapeAt(recordOffsets[record]);
+        } catch (IOException e) {
+            // Il caricamento avviene durante il disegno: un record danneggiato viene saltato senza interrompere il resto
+            System.err.println("Record " + record + " non leggibile, figura ignorata: " + e.getMessage());
+            return;
+        }
+        if (shape != null) {
+            sink.accept(record, shape);
+        }
+    }
+
+    // Consegnati tutti i record, il riferimento alla mappatura viene rilasciato
+    private void releaseIfComplete() {
+        if (pendingCount == 0) {
+            reader = null;
+        }
+    }
+}
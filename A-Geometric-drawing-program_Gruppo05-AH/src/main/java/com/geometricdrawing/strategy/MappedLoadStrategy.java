@@ -0,0 +1,71 @@
+package com.geometricdrawing.strategy;
+
+import com.geometricdrawing.model.DrawingModel;
+import javafx.stage.FileChooser;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Autore: Gruppo05
+ * Scopo: Carica un disegno in formato binario mappando il file in memoria (FileChannel.map):
+ * i record vengono decodificati direttamente dal file mappato, senza copiarlo prima nello heap.
+ * In modalità differita il modello riceve solo l'indice dei record e le figure vengono create
+ * quando la loro area viene mostrata, così anche i disegni molto grandi si aprono subito.
+ * I file *.ser vengono riconosciuti dal contenuto e caricati con la serializzazione.
+ */
+public class MappedLoadStrategy implements LoadStrategy {
+    private final boolean lazy;
+
+    /**
+     * @param lazy true per creare le figure solo quando servono, false per crearle tutte subito
+     */
+    public MappedLoadStrategy(boolean lazy) {
+        this.lazy = lazy;
+    }
+
+    public boolean isLazy() {
+        return lazy;
+    }
+
+    @Override
+    public void load(File file, DrawingModel model) throws IOException, ClassNotFoundException {
+        if (model == null) {
+            throw new IOException("DrawingModel é nullo, impossibile effettuare il caricamento.");
+        }
+        if (!hasBinaryHeader(file)) {
+            model.loadFromFile(file);
+            return;
+        }
+        MappedDocument document = MappedDocument.open(file);
+        model.clear();
+        model.setLazySource(document);
+        if (!lazy) {
+            model.materializeAllShapes();
+        }
+    }
+
+    private static boolean hasBinaryHeader(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer magic = ByteBuffer.allocate(4);
+            while (magic.hasRemaining() && channel.read(magic) >= 0) {
+                // lettura dei primi 4 byte
+            }
+            magic.flip();
+            return BinaryDocumentReader.hasMagic(magic);
+        }
+    }
+
+    @Override
+    public FileChooser.ExtensionFilter getExtensionFilter() {
+        return new FileChooser.ExtensionFilter("Disegno (*.gdraw, *.ser)", "*." + BinaryDocumentFormat.EXTENSION, "*.ser");
+    }
+
+    @Override
+    public String getDialogTitle() {
+        return "Carica disegno.";
+    }
+}
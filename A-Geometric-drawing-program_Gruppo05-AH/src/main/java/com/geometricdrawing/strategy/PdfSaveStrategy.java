@@ -26,10 +26,28 @@ public class PdfSaveStrategy implements SaveStrategy {
             throw new IOException("Canvas nullo, impossibile salvare il Pdf.");
         }
 
+        writePdf(capture(canvas), file);
+    }
+
+    // La cattura avviene sul thread JavaFX, la costruzione del PDF (la parte lenta) in background
+    @Override
+    public SaveOperation prepare(DrawingModel model, Canvas canvas) {
+        if (canvas == null) {
+            return (file, progress) -> save(file, model, null);
+        }
+        WritableImage image = capture(canvas);
+        return (file, progress) -> writePdf(image, file);
+    }
+
+    private static WritableImage capture(Canvas canvas) {
         WritableImage writableImage = new WritableImage(
                 (int) Math.round(canvas.getWidth()),
                 (int) Math.round(canvas.getHeight()));
         canvas.snapshot(new SnapshotParameters(), writableImage);
+        return writableImage;
+    }
+
+    private static void writePdf(WritableImage writableImage, File file) throws IOException {
         BufferedImage bufferedImage = SwingFXUtils.fromFXImage(writableImage, null);
 
         if (bufferedImage == null) {
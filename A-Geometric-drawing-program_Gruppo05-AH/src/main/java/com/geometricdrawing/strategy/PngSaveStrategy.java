@@ -18,8 +18,26 @@ public class PngSaveStrategy implements SaveStrategy {
         if (canvas == null) {
             throw new IOException("Canvas é nullo, impossibile salvare il png.");
         }
+        writeImage(capture(canvas), file);
+    }
+
+    // Solo la cattura del canvas richiede il thread JavaFX: conversione e codifica avvengono in background
+    @Override
+    public SaveOperation prepare(DrawingModel model, Canvas canvas) {
+        if (canvas == null) {
+            return (file, progress) -> save(file, model, null);
+        }
+        WritableImage image = capture(canvas);
+        return (file, progress) -> writeImage(image, file);
+    }
+
+    private static WritableImage capture(Canvas canvas) {
         WritableImage writableImage = new WritableImage((int) canvas.getWidth(), (int) canvas.getHeight());
         canvas.snapshot(new SnapshotParameters(), writableImage);
+        return writableImage;
+    }
+
+    private static void writeImage(WritableImage writableImage, File file) throws IOException {
         BufferedImage bufferedImage = SwingFXUtils.fromFXImage(writableImage, null);
         ImageIO.write(bufferedImage, "png", file);
     }
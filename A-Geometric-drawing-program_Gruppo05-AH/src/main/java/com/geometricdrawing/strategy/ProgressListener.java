@@ -0,0 +1,18 @@
+package com.geometricdrawing.strategy;
+
+/**
+ * Autore: Gruppo05
+ * Scopo: Riceve l'avanzamento di un salvataggio o di un caricamento eseguito in background.
+ * Chi lo implementa può interrompere l'operazione lanciando un'eccezione non controllata
+ * (ad esempio CancellationException quando l'utente annulla).
+ */
+@FunctionalInterface
+public interface ProgressListener {
+    ProgressListener NONE = (done, total) -> {};
+
+    /**
+     * @param done  unità di lavoro completate (ad esempio figure scritte)
+     * @param total unità di lavoro complessive
+     */
+    void progress(long done, long total);
+}
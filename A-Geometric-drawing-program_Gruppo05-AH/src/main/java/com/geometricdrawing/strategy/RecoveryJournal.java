@@ -0,0 +1,1006 @@
+package com.geometricdrawing.strategy;
+
+import com.geometricdrawing.command.CommandJournal;
+import com.geometricdrawing.model.AbstractShape;
+import com.geometricdrawing.model.DrawingModel;
+import javafx.collections.ListChangeListener;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Autore: Gruppo05
+ * Scopo: Diario delle modifiche al disegno, per ricostruirlo dopo una chiusura imprevista dell'applicazione.
+ * Per ogni comando eseguito o annullato viene aggiunto in coda al file un record con l'effetto del comando
+ * sulla lista delle figure: rimozioni e inserimenti per posizione, più lo stato finale delle figure modificate.
+ * Il diario parte da una base (disegno vuoto, documento appena caricato o salvato, oppure un'istantanea scritta
+ * dal diario stesso quando il file diventa troppo grande): recover() carica la base e riapplica i record.
+ *
+ * Un documento aperto in modo differito resta la base così com'è: le posizioni del diario sono quelle della parte
+ * già caricata e le figure caricate durante il disegno vengono registrate solo con il numero del loro record.
+ * Alla ricostruzione le figure mai caricate restano in attesa nel documento, come nella sessione interrotta.
+ *
+ * Sul thread JavaFX si raccolgono solo i riferimenti alle figure toccate; il thread dedicato ne fa la copia,
+ * le codifica, le scrive e sincronizza il file una volta per gruppo di record. Una figura che sta per cambiare
+ * prima di essere stata copiata viene copiata dal thread JavaFX (vedi onShapeChanging).
+ *
+ * Struttura del file (interi in big endian):
+ * <pre>
+ * intestazione  int magic "GDJL", short versione, byte tipo di base,
+ *               [base su file: int lunghezza e byte UTF-8 del percorso, long dimensione, long ultima modifica]
+ * record        int lunghezza del contenuto, int CRC32 del contenuto, contenuto:
+ *               byte operazione, int numero di modifiche, per ogni modifica byte tipo, int posizione, int numero di figure,
+ *               int numero di record del documento di base, per ogni figura inserita, aggiornata, caricata o scartata
+ *               (nell'ordine delle modifiche) int record da cui proviene oppure -1,
+ *               int lunghezza del documento binario con le figure inserite e aggiornate (nell'ordine delle modifiche), documento
+ * </pre>
+ * Un record incompleto o con CRC errato è quello interrotto dalla chiusura: il diario termina lì.
+ */
+public class RecoveryJournal implements CommandJournal {
+    static final int MAGIC = 0x47444A4C; // "GDJL"
+    static final short VERSION = 2;
+    static final byte BASE_EMPTY = 0;
+    static final byte BASE_FILE = 1;
+    static final byte BASE_LAZY_FILE = 2; // documento aperto in modo differito: le sue figure entrano con CHANGE_LOAD
+    static final byte OP_EXECUTE = 1;
+    static final byte OP_UNDO = 2;
+    static final byte OP_LOAD = 3; // figure caricate dal documento di base fuori da un comando
+    static final byte CHANGE_REMOVE = 1; // rimosse count figure a partire da index
+    static final byte CHANGE_INSERT = 2; // inserite count figure a partire da index
+    static final byte CHANGE_UPDATE = 3; // la figura in index sostituita dal suo nuovo stato
+    static final byte CHANGE_LOAD = 4; // caricati count record del documento di base, inseriti a partire da index
+    static final byte CHANGE_DROP = 5; // count record del documento di base già caricati e poi eliminati
+
+    static final String JOURNAL_FILE = "journal.bin";
+    static final String LOCK_FILE = "journal.lock";
+    static final String FAILED_PREFIX = "journal-failed-";
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final int CHANGE_SIZE = 1 + 4 + 4;
+    private static final long SYNC_INTERVAL_MS = 50; // ritardo massimo tra la scrittura di un record e il suo fsync
+    private static final long DEFAULT_CHECKPOINT_SIZE = 8L * 1024 * 1024;
+    private static final long BARRIER_TIMEOUT_MS = 5000;
+
+    // Stato del thread JavaFX
+    private final Path directory;
+    private DrawingModel model;
+    private final ListChangeListener<AbstractShape> listListener = this::onShapesChanged;
+    private final Consumer<AbstractShape> shapeListener = this::onShapeChanged;
+    private final Consumer<AbstractShape> shapeChangingListener = this::onShapeChanging;
+    private boolean recording; // tra commandStarting e la fine del comando
+    private final List<Change> changes = new ArrayList<>();
+    // figure modificate dall'ultimo record, anche fuori da un comando (ad esempio l'adattamento di un testo al font)
+    private final Set<AbstractShape> touched = Collections.newSetFromMap(new IdentityHashMap<>());
+    private int generation; // incrementata a ogni cambio di modello
+    private int entryCount; // record accodati nella generazione corrente
+    private boolean closed;
+
+    // Figure dei record accodati ma non ancora copiati dal thread di scrittura, con i record che le contengono.
+    // Condivisa tra i due thread: vi si accede sincronizzando su di essa
+    private final Map<AbstractShape, List<Entry>> pins = new IdentityHashMap<>();
+
+    private final BlockingQueue<Object> queue = new LinkedBlockingQueue<>();
+    private final Thread writerThread;
+
+    // Stato del thread di scrittura
+    private final long checkpointSize;
+    private FileChannel channel;
+    private long journalSize;
+    private long checkpointFloor; // dimensione del diario appena riscritto: il controllo sulla dimensione parte da qui
+    private int writtenGeneration;
+    private int firstEntry; // numero, nella generazione, del primo record presente nel file
+    private List<Long> entryOffsets = new ArrayList<>();
+    private boolean unsynced;
+    private long lastSyncNanos;
+    private boolean failed;
+    private long snapshotCounter = System.currentTimeMillis();
+    private final ByteArrayOutputStream documentBytes = new ByteArrayOutputStream();
+    private final BinaryDocumentWriter documentWriter = new BinaryDocumentWriter(Channels.newChannel(documentBytes));
+    private final CRC32 crc = new CRC32();
+
+    /**
+     * Posizione nel diario al momento in cui inizia un salvataggio: vedi documentSaved.
+     */
+    public static final class Mark {
+        private final int generation;
+        private final int entry;
+
+        private Mark(int generation, int entry) {
+            this.generation = generation;
+            this.entry = entry;
+        }
+    }
+
+    private static final class Change {
+        final byte kind;
+        final int index;
+        final int count;
+        List<AbstractShape> shapes; // figure inserite o aggiornate, sostituite dalle copie dal thread di scrittura
+        int[] records; // record del documento di base delle figure (-1 se non ne provengono), null per le rimozioni
+
+        Change(byte kind, int index, int count, List<AbstractShape> shapes, int[] records) {
+            this.kind = kind;
+            this.index = index;
+            this.count = count;
+            this.shapes = shapes;
+            this.records = records;
+        }
+    }
+
+    private static final class Entry {
+        final byte op;
+        final List<Change> changes;
+        // copie fatte prima che la figura cambiasse; null quando il thread di scrittura ha copiato tutto (sincronizzato su pins)
+        Map<AbstractShape, AbstractShape> copies = new IdentityHashMap<>();
+
+        Entry(byte op, List<Change> changes) {
+            this.op = op;
+            this.changes = changes;
+        }
+    }
+
+    // Nuova base: un documento, un'istantanea da scrivere oppure (entrambi null) il disegno vuoto
+    private static final class Rebase {
+        final int generation;
+        final File document;
+        final boolean lazy; // il documento è aperto in modo differito
+        final List<AbstractShape> snapshot;
+        final int keepFrom; // primo record da conservare, se la generazione non cambia
+
+        Rebase(int generation, File document, boolean lazy, List<AbstractShape> snapshot, int keepFrom) {
+            this.generation = generation;
+            this.document = document;
+            this.lazy = lazy;
+            this.snapshot = snapshot;
+            this.keepFrom = keepFrom;
+        }
+    }
+
+    private static final class Barrier {
+        final boolean close;
+        final boolean discard;
+        final CountDownLatch done = new CountDownLatch(1);
+
+        Barrier(boolean close, boolean discard) {
+            this.close = close;
+            this.discard = discard;
+        }
+    }
+
+    private RecoveryJournal(Path directory, long checkpointSize) {
+        this.directory = directory;
+        this.checkpointSize = checkpointSize;
+        this.writerThread = new Thread(this::writeLoop, "diario-comandi");
+        this.writerThread.setDaemon(true);
+    }
+
+    /**
+     * @return la cartella predefinita del diario, nella home dell'utente
+     */
+    public static Path defaultDirectory() {
+        return Paths.get(System.getProperty("user.home"), ".geometricdrawing", "journal");
+    }
+
+    /**
+     * Prende il lock della cartella del diario, da tenere per tutta la vita del diario: un'altra istanza
+     * dell'applicazione non deve ripristinare né sostituire un diario che è ancora in scrittura.
+     * Il lock viene rilasciato chiudendone il canale (FileLock.channel().close()).
+     * @return il lock, oppure null se la cartella è già usata da un'altra istanza
+     */
+    public static FileLock tryLock(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        FileChannel channel = FileChannel.open(directory.resolve(LOCK_FILE), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        try {
+            FileLock lock = channel.tryLock();
+            if (lock != null) {
+                return lock;
+            }
+        } catch (OverlappingFileLockException e) {
+            // lock già preso da questa stessa istanza
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        channel.close();
+        return null;
+    }
+
+    /**
+     * @return una cartella del diario riservata a questa istanza, accanto a quella indicata,
+     * da usare quando quella indicata è già in uso (vedi tryLock)
+     */
+    public static Path instanceDirectory(Path directory) {
+        return directory.resolveSibling(directory.getFileName() + "-" + ProcessHandle.current().pid());
+    }
+
+    /**
+     * Sposta il diario che non è stato possibile ripristinare, con le sue istantanee, in una sottocartella
+     * journal-failed-&lt;data e ora&gt;: il diario avviato dopo non lo sostituisce e i dati restano
+     * disponibili per un recupero manuale.
+     * @return la cartella in cui è stato spostato il diario
+     */
+    public static Path archiveFailed(Path directory) throws IOException {
+        Path archive = directory.resolve(FAILED_PREFIX + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS")));
+        Files.createDirectories(archive);
+        Path journal = directory.resolve(JOURNAL_FILE);
+        if (Files.exists(journal)) {
+            Files.move(journal, archive.resolve(JOURNAL_FILE));
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, SNAPSHOT_PREFIX + "*")) {
+            for (Path file : files) {
+                Files.move(file, archive.resolve(file.getFileName()));
+            }
+        }
+        return archive;
+    }
+
+    /**
+     * Avvia un nuovo diario nella cartella indicata, con base lo stato attuale del modello.
+     * Un diario già presente nella cartella viene sostituito: se serve, va ripristinato prima con recover
+     * oppure, se non è ripristinabile, messo da parte con archiveFailed.
+     */
+    public static RecoveryJournal start(Path directory, DrawingModel model) throws IOException {
+        return start(directory, model, DEFAULT_CHECKPOINT_SIZE);
+    }
+
+    static RecoveryJournal start(Path directory, DrawingModel model, long checkpointSize) throws IOException {
+        if (directory == null || model == null) {
+            throw new IllegalArgumentException("Cartella e modello del diario non possono essere null.");
+        }
+        Files.createDirectories(directory);
+        RecoveryJournal journal = new RecoveryJournal(directory, checkpointSize);
+        journal.reset(model, null);
+        journal.writerThread.start();
+        return journal;
+    }
+
+    /**
+     * Il modello del disegno è stato sostituito o svuotato (caricamento, nuova area di lavoro): il diario
+     * riparte con base il documento indicato oppure, se è null, un'istantanea del modello.
+     * Se il modello ha ancora figure da caricare dal documento, il documento resta la base in modo differito.
+     * @param document file da cui è stato caricato il modello, oppure null
+     */
+    public void reset(DrawingModel newModel, File document) {
+        if (closed) {
+            return;
+        }
+        detach();
+        this.model = newModel;
+        recording = false;
+        changes.clear();
+        touched.clear();
+        generation++;
+        entryCount = 0;
+        List<AbstractShape> snapshot = null;
+        boolean lazy = false;
+        if (model != null) {
+            model.getShapes().addListener(listListener);
+            model.addShapeChangeListener(shapeListener);
+            model.addShapeChangingListener(shapeChangingListener);
+            lazy = document != null && model.hasPendingShapes();
+            if (document == null && !model.isEmpty()) {
+                snapshot = model.snapshotShapes();
+            }
+        }
+        queue.add(new Rebase(generation, document, lazy, snapshot, 0));
+        if (lazy && !model.getShapes().isEmpty()) {
+            // Figure già caricate prima di collegare il diario: diventano il primo record
+            List<AbstractShape> loaded = new ArrayList<>(model.getShapes());
+            enqueue(new Entry(OP_LOAD, List.of(new Change(CHANGE_INSERT, 0, loaded.size(), loaded, recordsOf(loaded)))));
+        }
+    }
+
+    /**
+     * @return la posizione attuale del diario, da prendere insieme alla copia del disegno da salvare
+     */
+    public Mark mark() {
+        return new Mark(generation, entryCount);
+    }
+
+    /**
+     * Il disegno è stato salvato in document con lo stato che aveva in mark: il documento diventa la base
+     * del diario e si conservano solo i record successivi. Ignorato se nel frattempo il modello è cambiato.
+     */
+    public void documentSaved(Mark mark, File document) {
+        if (closed || mark == null || document == null || mark.generation != generation) {
+            return;
+        }
+        queue.add(new Rebase(generation, document, false, null, mark.entry));
+    }
+
+    @Override
+    public void commandStarting() {
+        if (closed || model == null) {
+            return;
+        }
+        changes.clear();
+        recording = true;
+    }
+
+    @Override
+    public void commandExecuted() {
+        commit(OP_EXECUTE);
+    }
+
+    @Override
+    public void commandUndone() {
+        commit(OP_UNDO);
+    }
+
+    private void commit(byte op) {
+        if (!recording) {
+            return;
+        }
+        recording = false;
+        // Le figure inserite vengono registrate nello stato finale: il record le contiene già aggiornate
+        Set<AbstractShape> inserted = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Change change : changes) {
+            if (change.kind == CHANGE_INSERT) {
+                inserted.addAll(change.shapes);
+                change.records = recordsOf(change.shapes);
+            }
+        }
+        for (AbstractShape shape : touched) {
+            if (!inserted.contains(shape) && model.contains(shape)) {
+                changes.add(new Change(CHANGE_UPDATE, shape.getZ(), 1, List.of(shape), recordsOf(List.of(shape))));
+            }
+        }
+        touched.clear();
+        if (changes.isEmpty()) {
+            return; // il comando non ha toccato il disegno (ad esempio una copia negli appunti)
+        }
+        enqueue(new Entry(op, new ArrayList<>(changes)));
+        changes.clear();
+    }
+
+    // Le figure del record restano quelle del modello finché il thread di scrittura non ne fa la copia
+    private void enqueue(Entry entry) {
+        synchronized (pins) {
+            for (Change change : entry.changes) {
+                if (change.shapes != null) {
+                    for (AbstractShape shape : change.shapes) {
+                        pins.computeIfAbsent(shape, key -> new ArrayList<>(1)).add(entry);
+                    }
+                }
+            }
+        }
+        queue.add(entry);
+        entryCount++;
+    }
+
+    private int[] recordsOf(List<AbstractShape> shapes) {
+        int[] records = new int[shapes.size()];
+        for (int i = 0; i < records.length; i++) {
+            records[i] = model.getLazyRecord(shapes.get(i));
+        }
+        return records;
+    }
+
+    private void onShapesChanged(ListChangeListener.Change<? extends AbstractShape> change) {
+        if (!recording) {
+            recordLoads(change);
+            return;
+        }
+        while (change.next()) {
+            int from = change.getFrom();
+            if (change.wasPermutated()) {
+                int count = change.getTo() - from;
+                changes.add(new Change(CHANGE_REMOVE, from, count, null, null));
+                changes.add(new Change(CHANGE_INSERT, from, count, new ArrayList<>(change.getList().subList(from, change.getTo())), null));
+                continue;
+            }
+            if (change.wasRemoved()) {
+                changes.add(new Change(CHANGE_REMOVE, from, change.getRemovedSize(), null, null));
+            }
+            if (change.wasAdded()) {
+                changes.add(new Change(CHANGE_INSERT, from, change.getAddedSize(), new ArrayList<>(change.getAddedSubList()), null));
+            }
+        }
+    }
+
+    // Figure di un disegno aperto in modo differito caricate durante il disegno, fuori dai comandi:
+    // il documento di base le contiene già, basta il numero del record
+    private void recordLoads(ListChangeListener.Change<? extends AbstractShape> change) {
+        List<Change> loads = new ArrayList<>();
+        while (change.next()) {
+            if (change.wasRemoved() || change.wasPermutated() || !change.wasAdded()) {
+                return;
+            }
+            int[] records = recordsOf(new ArrayList<>(change.getAddedSubList()));
+            for (int record : records) {
+                if (record < 0) {
+                    return;
+                }
+            }
+            loads.add(new Change(CHANGE_LOAD, change.getFrom(), records.length, null, records));
+        }
+        if (!loads.isEmpty()) {
+            enqueue(new Entry(OP_LOAD, loads));
+        }
+    }
+
+    private void onShapeChanged(AbstractShape shape) {
+        touched.add(shape);
+    }
+
+    // La figura sta per cambiare: i record ancora da copiare ricevono ora la copia del suo stato attuale
+    private void onShapeChanging(AbstractShape shape) {
+        synchronized (pins) {
+            List<Entry> entries = pins.remove(shape);
+            if (entries != null) {
+                for (Entry entry : entries) {
+                    if (entry.copies != null) {
+                        entry.copies.computeIfAbsent(shape, AbstractShape::deepClone);
+                    }
+                }
+            }
+        }
+    }
+
+    // Sul thread di scrittura: sostituisce le figure del record con le loro copie, una figura alla volta
+    // per non tenere bloccato il thread JavaFX che deve modificarne una
+    private static void copyShapes(Map<AbstractShape, List<Entry>> pins, Entry entry, boolean copy) {
+        for (Change change : entry.changes) {
+            if (change.shapes == null) {
+                continue;
+            }
+            List<AbstractShape> copies = copy ? new ArrayList<>(change.shapes.size()) : null;
+            for (AbstractShape shape : change.shapes) {
+                synchronized (pins) {
+                    if (copy) {
+                        copies.add(entry.copies.computeIfAbsent(shape, AbstractShape::deepClone));
+                    }
+                    List<Entry> entries = pins.get(shape);
+                    if (entries != null && entries.remove(entry) && entries.isEmpty()) {
+                        pins.remove(shape);
+                    }
+                }
+            }
+            if (copy) {
+                change.shapes = copies;
+            }
+        }
+        synchronized (pins) {
+            entry.copies = null;
+        }
+    }
+
+    private void detach() {
+        if (model != null) {
+            model.getShapes().removeListener(listListener);
+            model.removeShapeChangeListener(shapeListener);
+            model.removeShapeChangingListener(shapeChangingListener);
+        }
+    }
+
+    /**
+     * Attende che i record accodati finora siano scritti e sincronizzati sul disco.
+     */
+    public void flush() {
+        await(new Barrier(false, false));
+    }
+
+    /**
+     * Chiude il diario. Con discard i suoi file vengono eliminati: alla chiusura regolare dell'applicazione
+     * il lavoro è stato salvato o scartato dall'utente e non c'è niente da ripristinare.
+     */
+    public void close(boolean discard) {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        detach();
+        await(new Barrier(true, discard));
+    }
+
+    private void await(Barrier barrier) {
+        queue.add(barrier);
+        try {
+            if (!barrier.done.await(BARRIER_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                System.err.println("Il diario dei comandi non ha completato la scrittura in tempo.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Ricostruisce in model il disegno registrato nel diario della cartella: carica la base e riapplica i record.
+     * Se la base è un documento aperto in modo differito, le sue figure mai caricate restano in attesa nel modello.
+     * @return false se nella cartella non c'è un diario
+     * @throws IOException se il diario non è valido oppure la sua base è stata modificata o eliminata
+     */
+    public static boolean recover(Path directory, DrawingModel model) throws IOException {
+        Replay replay = replay(directory, model);
+        if (replay == null) {
+            return false;
+        }
+        if (replay.document != null) {
+            model.setLazySource(replay.document, replay.shapesByRecord);
+        }
+        return true;
+    }
+
+    // Stato della ricostruzione: con una base differita, i record del documento già caricati e le figure che ne provengono
+    private static final class Replay {
+        final DrawingModel model;
+        Path base;
+        MappedDocument document;
+        final BitSet delivered = new BitSet();
+        final TreeMap<Integer, AbstractShape> shapesByRecord = new TreeMap<>();
+        final Map<AbstractShape, Integer> recordsByShape = new IdentityHashMap<>();
+
+        Replay(DrawingModel model) {
+            this.model = model;
+        }
+
+        void track(int[] records, int from, List<AbstractShape> shapes) {
+            for (int i = 0; i < shapes.size(); i++) {
+                int record = records[from + i];
+                if (record >= 0 && document != null) {
+                    document.materializeRecords(records, from + i, 1, null); // inserita con i suoi dati: basta segnarla
+                    track(record, shapes.get(i));
+                }
+            }
+        }
+
+        void track(int record, AbstractShape shape) {
+            delivered.set(record);
+            shapesByRecord.put(record, shape);
+            recordsByShape.put(shape, record);
+        }
+
+        void load(int index, int[] records, int from, int count) throws IOException {
+            if (document == null) {
+                throw new IOException("Caricamento di figure nel diario senza un documento di base differito.");
+            }
+            List<AbstractShape> loaded = new ArrayList<>(count);
+            document.materializeRecords(records, from, count, (record, shape) -> {
+                track(record, shape);
+                loaded.add(shape);
+            });
+            if (loaded.size() != count) {
+                throw new IOException("Record del documento di base già caricati o non leggibili.");
+            }
+            model.getShapes().addAll(index, loaded);
+        }
+
+        void drop(int[] records, int from, int count) {
+            if (document != null) {
+                document.materializeRecords(records, from, count, null);
+                for (int i = from; i < from + count; i++) {
+                    delivered.set(records[i]);
+                }
+            }
+        }
+
+        // Record iniziale equivalente a quelli riapplicati: le figure attuali e i record caricati ed eliminati
+        Entry toEntry() {
+            List<AbstractShape> shapes = new ArrayList<>(model.getShapes());
+            int[] records = new int[shapes.size()];
+            BitSet dropped = (BitSet) delivered.clone();
+            for (int i = 0; i < records.length; i++) {
+                Integer record = recordsByShape.get(shapes.get(i));
+                records[i] = record != null ? record : -1;
+                if (record != null) {
+                    dropped.clear(record);
+                }
+            }
+            List<Change> changes = new ArrayList<>(2);
+            if (!shapes.isEmpty()) {
+                changes.add(new Change(CHANGE_INSERT, 0, shapes.size(), shapes, records));
+            }
+            int[] droppedRecords = dropped.stream().toArray();
+            if (droppedRecords.length > 0) {
+                changes.add(new Change(CHANGE_DROP, 0, droppedRecords.length, null, droppedRecords));
+            }
+            Entry entry = new Entry(OP_LOAD, changes);
+            entry.copies = null; // figure già private di questo thread
+            return entry;
+        }
+    }
+
+    private static Replay replay(Path directory, DrawingModel model) throws IOException {
+        Path file = directory.resolve(JOURNAL_FILE);
+        if (!Files.exists(file)) {
+            return null;
+        }
+        Replay replay = new Replay(model);
+        ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(file));
+        try {
+            if (data.getInt() != MAGIC) {
+                throw new IOException("Il file " + file + " non è un diario dei comandi.");
+            }
+            short version = data.getShort();
+            if (version != VERSION) {
+                throw new IOException("Versione del diario non supportata: " + version);
+            }
+            byte baseKind = data.get();
+            if (baseKind == BASE_FILE || baseKind == BASE_LAZY_FILE) {
+                int pathLength = data.getInt();
+                if (pathLength < 0 || pathLength > data.remaining()) {
+                    throw new IOException("Intestazione del diario incompleta.");
+                }
+                byte[] path = new byte[pathLength];
+                data.get(path);
+                long size = data.getLong();
+                long modified = data.getLong();
+                Path base = Paths.get(new String(path, StandardCharsets.UTF_8));
+                if (!Files.exists(base) || Files.size(base) != size || Files.getLastModifiedTime(base).toMillis() != modified) {
+                    throw new IOException("Il disegno di partenza del diario " + base + " è stato modificato o eliminato.");
+                }
+                replay.base = base;
+                if (baseKind == BASE_LAZY_FILE) {
+                    model.clear();
+                    replay.document = MappedDocument.open(base.toFile());
+                } else {
+                    new MappedLoadStrategy(false).load(base.toFile(), model);
+                }
+            } else if (baseKind == BASE_EMPTY) {
+                model.clear();
+            } else {
+                throw new IOException("Tipo di base del diario sconosciuto: " + baseKind);
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Intestazione del diario incompleta.");
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Disegno di partenza del diario non leggibile: " + e.getMessage());
+        }
+
+        CRC32 checksum = new CRC32();
+        while (data.remaining() >= 8) {
+            int length = data.getInt();
+            int expected = data.getInt();
+            if (length < 0 || length > data.remaining()) {
+                break;
+            }
+            ByteBuffer payload = data.slice(data.position(), length);
+            checksum.reset();
+            checksum.update(payload.duplicate());
+            if ((int) checksum.getValue() != expected) {
+                break;
+            }
+            data.position(data.position() + length);
+            applyEntry(payload, replay);
+        }
+        return replay;
+    }
+
+    private static void applyEntry(ByteBuffer payload, Replay replay) throws IOException {
+        List<AbstractShape> shapes = replay.model.getShapes();
+        try {
+            payload.get(); // esecuzione, annullamento o caricamento: l'effetto sulla lista si riapplica allo stesso modo
+            int count = payload.getInt();
+            if (count < 0 || count > payload.remaining() / CHANGE_SIZE) {
+                throw new IOException("Numero di modifiche non valido nel diario: " + count);
+            }
+            byte[] kinds = new byte[count];
+            int[] indexes = new int[count];
+            int[] counts = new int[count];
+            for (int i = 0; i < count; i++) {
+                kinds[i] = payload.get();
+                indexes[i] = payload.getInt();
+                counts[i] = payload.getInt();
+            }
+            int recordCount = payload.getInt();
+            if (recordCount < 0 || recordCount > payload.remaining() / 4) {
+                throw new IOException("Numero di record non valido nel diario: " + recordCount);
+            }
+            int[] records = new int[recordCount];
+            payload.asIntBuffer().get(records);
+            payload.position(payload.position() + 4 * recordCount);
+            int documentLength = payload.getInt();
+            List<AbstractShape> data = documentLength == 0 ? List.of()
+                    : new BinaryDocumentReader(payload.slice(payload.position(), documentLength)).readAll();
+            int next = 0;
+            int nextRecord = 0;
+            for (int i = 0; i < count; i++) {
+                switch (kinds[i]) {
+                    case CHANGE_REMOVE -> shapes.subList(indexes[i], indexes[i] + counts[i]).clear();
+                    case CHANGE_INSERT -> {
+                        List<AbstractShape> inserted = data.subList(next, next + counts[i]);
+                        shapes.addAll(indexes[i], inserted);
+                        replay.track(records, nextRecord, inserted);
+                        next += counts[i];
+                        nextRecord += counts[i];
+                    }
+                    case CHANGE_UPDATE -> {
+                        AbstractShape updated = data.get(next++);
+                        shapes.set(indexes[i], updated);
+                        replay.track(records, nextRecord++, List.of(updated));
+                    }
+                    case CHANGE_LOAD -> {
+                        replay.load(indexes[i], records, nextRecord, counts[i]);
+                        nextRecord += counts[i];
+                    }
+                    case CHANGE_DROP -> {
+                        replay.drop(records, nextRecord, counts[i]);
+                        nextRecord += counts[i];
+                    }
+                    default -> throw new IOException("Tipo di modifica sconosciuto nel diario: " + kinds[i]);
+                }
+            }
+        } catch (IndexOutOfBoundsException | BufferUnderflowException | IllegalArgumentException e) {
+            throw new IOException("Record del diario non coerente con il disegno: " + e.getMessage());
+        }
+    }
+
+    private void writeLoop() {
+        boolean running = true;
+        while (running) {
+            Object message;
+            try {
+                // Con dati non sincronizzati si aspetta al massimo SYNC_INTERVAL_MS altri record prima dell'fsync
+                message = unsynced ? queue.poll(SYNC_INTERVAL_MS, TimeUnit.MILLISECONDS) : queue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (message instanceof Barrier barrier) {
+                try {
+                    if (barrier.close) {
+                        closeFiles(barrier.discard);
+                    } else {
+                        sync();
+                    }
+                } catch (IOException e) {
+                    fail(e);
+                } finally {
+                    barrier.done.countDown();
+                }
+                running = !barrier.close;
+                continue;
+            }
+            if (failed) {
+                if (message instanceof Entry entry) {
+                    copyShapes(pins, entry, false); // il record non verrà scritto: le figure non vanno più copiate
+                }
+                continue;
+            }
+            try {
+                if (message == null) {
+                    sync();
+                } else {
+                    if (message instanceof Entry entry) {
+                        copyShapes(pins, entry, true);
+                        writeEntry(entry);
+                    } else if (message instanceof Rebase rebase) {
+                        rebase(rebase);
+                    }
+                    if (unsynced && System.nanoTime() - lastSyncNanos >= TimeUnit.MILLISECONDS.toNanos(SYNC_INTERVAL_MS)) {
+                        sync();
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                fail(e);
+            }
+        }
+    }
+
+    private void writeEntry(Entry entry) throws IOException {
+        ByteBuffer frame = encode(entry);
+        entryOffsets.add(journalSize);
+        while (frame.hasRemaining()) {
+            journalSize += channel.write(frame);
+        }
+        unsynced = true;
+        if (journalSize - checkpointFloor >= checkpointSize) {
+            checkpoint();
+        }
+    }
+
+    private ByteBuffer encode(Entry entry) throws IOException {
+        List<AbstractShape> shapes = new ArrayList<>();
+        int recordCount = 0;
+        for (Change change : entry.changes) {
+            if (change.shapes != null) {
+                shapes.addAll(change.shapes);
+            }
+            if (change.records != null) {
+                recordCount += change.records.length;
+            }
+        }
+        documentBytes.reset();
+        if (!shapes.isEmpty()) {
+            documentWriter.write(shapes);
+        }
+        int length = 1 + 4 + CHANGE_SIZE * entry.changes.size() + 4 + 4 * recordCount + 4 + documentBytes.size();
+        ByteBuffer frame = ByteBuffer.allocate(8 + length);
+        frame.position(8);
+        frame.put(entry.op);
+        frame.putInt(entry.changes.size());
+        for (Change change : entry.changes) {
+            frame.put(change.kind);
+            frame.putInt(change.index);
+            frame.putInt(change.count);
+        }
+        frame.putInt(recordCount);
+        for (Change change : entry.changes) {
+            if (change.records != null) {
+                for (int record : change.records) {
+                    frame.putInt(record);
+                }
+            }
+        }
+        frame.putInt(documentBytes.size());
+        frame.put(documentBytes.toByteArray());
+        crc.reset();
+        crc.update(frame.array(), 8, length);
+        frame.putInt(0, length);
+        frame.putInt(4, (int) crc.getValue());
+        frame.flip();
+        return frame;
+    }
+
+    private void rebase(Rebase rebase) throws IOException {
+        boolean sameGeneration = rebase.generation == writtenGeneration;
+        if (sameGeneration && rebase.keepFrom < firstEntry) {
+            return; // il diario è già ripartito da un'istantanea più recente del salvataggio
+        }
+        Path base = null;
+        if (rebase.snapshot != null) {
+            base = writeSnapshot(rebase.snapshot);
+        } else if (rebase.document != null) {
+            base = rebase.document.toPath().toAbsolutePath();
+        }
+        int keep = sameGeneration ? rebase.keepFrom - firstEntry : entryOffsets.size();
+        installJournal(base, rebase.lazy, null, keep);
+        firstEntry = sameGeneration ? rebase.keepFrom : 0;
+        writtenGeneration = rebase.generation;
+    }
+
+    // Il diario è diventato troppo grande: lo stato attuale, ricostruito su questo thread da base e record,
+    // diventa una nuova istantanea e il diario riparte vuoto. Con una base differita il documento resta la base
+    // e lo stato attuale diventa il primo record, senza caricare le figure che il disegno non ha ancora mostrato
+    private void checkpoint() throws IOException {
+        Replay current = replay(directory, new DrawingModel());
+        int written = entryOffsets.size();
+        if (current != null && current.document != null) {
+            installJournal(current.base, true, encode(current.toEntry()), written);
+        } else {
+            List<AbstractShape> shapes = current != null ? current.model.getShapes() : List.of();
+            installJournal(writeSnapshot(shapes), false, null, written);
+        }
+        firstEntry += written;
+    }
+
+    private Path writeSnapshot(List<AbstractShape> shapes) throws IOException {
+        Path snapshot = directory.resolve(SNAPSHOT_PREFIX + (++snapshotCounter) + "." + BinaryDocumentFormat.EXTENSION);
+        Path temp = directory.resolve(snapshot.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            new BinaryDocumentWriter(out).write(shapes);
+            out.force(true);
+        }
+        SaveContext.replaceFile(temp, snapshot);
+        return snapshot;
+    }
+
+    /**
+     * Scrive il nuovo diario in un file temporaneo (intestazione con la base, il record iniziale se c'è e i record
+     * del diario attuale a partire da keep) e lo sostituisce a quello attuale: una chiusura a metà lascia valido quello vecchio.
+     */
+    private void installJournal(Path base, boolean lazy, ByteBuffer initialFrame, int keep) throws IOException {
+        Path target = directory.resolve(JOURNAL_FILE);
+        Path temp = directory.resolve(JOURNAL_FILE + ".tmp");
+        ByteBuffer header = encodeHeader(base, lazy);
+        List<Long> offsets = new ArrayList<>();
+        long size;
+        long floor;
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (header.hasRemaining()) {
+                out.write(header);
+            }
+            while (initialFrame != null && initialFrame.hasRemaining()) {
+                out.write(initialFrame);
+            }
+            size = out.position();
+            floor = size;
+            if (keep < entryOffsets.size()) {
+                long from = entryOffsets.get(keep);
+                long length = journalSize - from;
+                long copied = 0;
+                while (copied < length) {
+                    copied += channel.transferTo(from + copied, length - copied, out);
+                }
+                for (int i = keep; i < entryOffsets.size(); i++) {
+                    offsets.add(entryOffsets.get(i) - from + size);
+                }
+                size += length;
+            }
+            out.force(true);
+        }
+        if (channel != null) {
+            channel.close();
+        }
+        SaveContext.replaceFile(temp, target);
+        channel = FileChannel.open(target, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        channel.position(size);
+        journalSize = size;
+        checkpointFloor = floor;
+        entryOffsets = offsets;
+        unsynced = false;
+        lastSyncNanos = System.nanoTime();
+        deleteSnapshotsExcept(base);
+    }
+
+    private static ByteBuffer encodeHeader(Path base, boolean lazy) throws IOException {
+        byte[] path = base == null ? null : base.toString().getBytes(StandardCharsets.UTF_8);
+        ByteBuffer header = ByteBuffer.allocate(4 + 2 + 1 + (path == null ? 0 : 4 + path.length + 8 + 8));
+        header.putInt(MAGIC);
+        header.putShort(VERSION);
+        header.put(path == null ? BASE_EMPTY : lazy ? BASE_LAZY_FILE : BASE_FILE);
+        if (path != null) {
+            header.putInt(path.length);
+            header.put(path);
+            header.putLong(Files.size(base));
+            header.putLong(Files.getLastModifiedTime(base).toMillis());
+        }
+        header.flip();
+        return header;
+    }
+
+    private void deleteSnapshotsExcept(Path base) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, SNAPSHOT_PREFIX + "*")) {
+            for (Path file : files) {
+                if (base == null || !file.equals(base)) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+
+    private void sync() throws IOException {
+        if (unsynced && channel != null) {
+            channel.force(false);
+        }
+        unsynced = false;
+        lastSyncNanos = System.nanoTime();
+    }
+
+    private void closeFiles(boolean discard) throws IOException {
+        if (channel != null) {
+            if (!discard && !failed) {
+                sync();
+            }
+            channel.close();
+            channel = null;
+        }
+        if (discard) {
+            Files.deleteIfExists(directory.resolve(JOURNAL_FILE));
+            deleteSnapshotsExcept(null);
+        }
+    }
+
+    // Un errore di scrittura disattiva il diario senza interrompere il lavoro sul disegno
+    private void fail(Exception e) {
+        System.err.println("Diario dei comandi disattivato: " + e.getMessage());
+        failed = true;
+        unsynced = false;
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+                // il diario è già disattivato
+            }
+            channel = null;
+        }
+    }
+}
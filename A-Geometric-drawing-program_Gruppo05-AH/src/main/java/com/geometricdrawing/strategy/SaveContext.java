@@ -2,6 +2,7 @@ package com.geometricdrawing.strategy;
 
 import com.geometricdrawing.controller.DrawingController;
 import com.geometricdrawing.model.DrawingModel;
+import javafx.concurrent.Task;
 import javafx.scene.canvas.Canvas;
 import javafx.scene.control.Alert;
 import javafx.stage.FileChooser;
@@ -9,11 +10,19 @@ import javafx.stage.Window;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
 
 public class SaveContext {
-
     private final DrawingController controller;
     private SaveStrategy saveStrategy;
+    private Task<Void> runningTask; // salvataggio in background non ancora terminato
 
     public SaveContext(DrawingController controller) {
         if (controller == null) {
@@ -26,24 +35,47 @@ public class SaveContext {
         this.saveStrategy = saveStrategy;
     }
 
+    /**
+     * Chiede il file all'utente e avvia il salvataggio in background.
+     * @return true se il salvataggio è stato avviato
+     */
     public boolean execute() {
+        return execute(null);
+    }
+
+    /**
+     * Chiede il file all'utente e avvia il salvataggio in background: sul thread JavaFX viene solo catturato
+     * lo stato da salvare (una copia delle figure o l'immagine del canvas), la scrittura del file avviene in un
+     * Task annullabile di cui viene mostrato l'avanzamento. Il file viene scritto prima in un file temporaneo
+     * nella stessa cartella e sostituito solo a salvataggio completato: un errore o un annullamento lasciano
+     * intatto il file esistente.
+     * @param onSaved eseguito sul thread JavaFX dopo un salvataggio riuscito (ad esempio la chiusura), può essere null;
+     *                se è indicato, il disegno non si può modificare finché il salvataggio non termina
+     * @return true se il salvataggio è stato avviato, false se non è stato possibile o l'utente ha annullato la scelta del file
+     */
+    public boolean execute(Runnable onSaved) {
         if (saveStrategy == null) {
             System.err.println("Strategia di salvataggio non fornita al contesto.");
             controller.showAlertDialog(Alert.AlertType.ERROR, "Errore Interno", "Strategia di salvataggio non specificata.");
             return false;
         }
+        if (runningTask != null) {
+            controller.showAlertDialog(Alert.AlertType.WARNING, "Salvataggio in corso", "Attendere il termine del salvataggio in corso.");
+            return false;
+        }
 
         DrawingModel currentModel = controller.getModel();
         Canvas currentCanvas = controller.getDrawingCanvas();
         Window currentWindow = controller.getWindow();
 
-        // Controlli pre-condizione
-        if (saveStrategy instanceof SerializedSaveStrategy && currentModel == null) {
+        // Controlli pre-condizione: i formati di documento salvano il modello, gli altri catturano il canvas
+        boolean documentFormat = saveStrategy instanceof SerializedSaveStrategy || saveStrategy instanceof BinarySaveStrategy;
+        if (documentFormat && currentModel == null) {
             System.err.println("Modello non inizializzato. Impossibile salvare il file serializzato.");
             controller.showAlertDialog(Alert.AlertType.ERROR, "Errore Salvataggio", "Modello non inizializzato. Impossibile salvare.");
             return false;
         }
-        if (!(saveStrategy instanceof SerializedSaveStrategy) && (currentCanvas == null || currentCanvas.getWidth() == 0 || currentCanvas.getHeight() == 0)) {
+        if (!documentFormat && (currentCanvas == null || currentCanvas.getWidth() == 0 || currentCanvas.getHeight() == 0)) {
             System.err.println("Canvas non disponibile o dimensioni nulle. Impossibile salvare file basato su immagine.");
             controller.showAlertDialog(Alert.AlertType.ERROR, "Errore Salvataggio", "Il canvas non è pronto per il salvataggio.");
             return false;
@@ -59,26 +91,149 @@ public class SaveContext {
         fileChooser.getExtensionFilters().add(saveStrategy.getExtensionFilter());
         File file = fileChooser.showSaveDialog(currentWindow);
 
-        if (file != null) {
-            try {
-                saveStrategy.save(file, currentModel, currentCanvas);
-                System.out.println("File salvato con successo in " + file.getAbsolutePath());
-                controller.showAlertDialog(Alert.AlertType.INFORMATION, "Salvataggio Riuscito", "File salvato in:\n" + file.getName());
-                return true;
-            } catch (IOException e) {
-                System.err.println("Errore durante il salvataggio del file: " + e.getMessage());
-                e.printStackTrace();
+        if (file == null) {
+            System.out.println("Operazione di salvataggio annullata dall'utente.");
+            return false;
+        }
+
+        SaveStrategy.SaveOperation operation;
+        try {
+            controller.flushRedraw(); // le strategie basate su immagine catturano il canvas: deve essere aggiornato
+            operation = saveStrategy.prepare(currentModel, currentCanvas);
+        } catch (Exception e) {
+            System.err.println("Errore durante la preparazione del salvataggio: " + e.getMessage());
+            e.printStackTrace();
+            controller.showAlertDialog(Alert.AlertType.ERROR, "Errore Imprevisto", "Si è verificato un errore imprevisto durante il salvataggio:\n" + e.getMessage());
+            return false;
+        }
+
+        // Il documento salvato diventa la base del diario dei comandi, che conserva solo le modifiche
+        // successive alla copia appena presa
+        RecoveryJournal journal = documentFormat ? controller.getRecoveryJournal() : null;
+        RecoveryJournal.Mark journalMark = journal != null ? journal.mark() : null;
+
+        Task<Void> task = createSaveTask(operation, file);
+        task.setOnSucceeded(event -> {
+            runningTask = null;
+            if (journal != null) {
+                journal.documentSaved(journalMark, file);
+            }
+            System.out.println("File salvato con successo in " + file.getAbsolutePath());
+            controller.showAlertDialog(Alert.AlertType.INFORMATION, "Salvataggio Riuscito", "File salvato in:\n" + file.getName());
+            if (onSaved != null) {
+                onSaved.run();
+            }
+        });
+        task.setOnCancelled(event -> {
+            runningTask = null;
+            System.out.println("Salvataggio annullato: il file " + file.getName() + " non è stato modificato.");
+        });
+        task.setOnFailed(event -> {
+            runningTask = null;
+            Throwable e = task.getException();
+            System.err.println("Errore durante il salvataggio del file: " + e.getMessage());
+            e.printStackTrace();
+            if (e instanceof IOException) {
                 controller.showAlertDialog(Alert.AlertType.ERROR, "Errore di Salvataggio", "Impossibile salvare il file:\n" + e.getMessage());
-            } catch (Exception e) { // Cattura altri potenziali errori (es. NoClassDefFoundError per PDFBox)
-                System.err.println("Errore imprevisto durante l'operazione di salvataggio: " + e.getMessage());
-                e.printStackTrace();
+            } else { // Cattura altri potenziali errori (es. NoClassDefFoundError per PDFBox)
                 controller.showAlertDialog(Alert.AlertType.ERROR, "Errore Imprevisto", "Si è verificato un errore imprevisto durante il salvataggio:\n" + e.getMessage());
             }
-        } else {
-            System.out.println("Operazione di salvataggio annullata dall'utente.");
+        });
+
+        runningTask = task;
+        // Se dopo il salvataggio il disegno viene chiuso (uscita, nuova area di lavoro), le modifiche fatte durante
+        // il salvataggio andrebbero perse senza avviso: in quel caso l'interfaccia resta bloccata fino al termine
+        controller.showTaskProgress(task, saveStrategy.getDialogTitle(), onSaved != null);
+        Thread thread = new Thread(task, "salvataggio-disegno");
+        thread.setDaemon(true);
+        thread.start();
+        return true;
+    }
+
+    /**
+     * @return true se un salvataggio avviato da questo contesto non è ancora terminato
+     */
+    public boolean isRunning() {
+        return runningTask != null;
+    }
+
+    private static Task<Void> createSaveTask(SaveStrategy.SaveOperation operation, File file) {
+        return new Task<>() {
+            @Override
+            protected Void call() throws Exception {
+                updateMessage("Salvataggio di " + file.getName() + "...");
+                writeAndReplace(operation, file, (done, total) -> {
+                    if (isCancelled()) {
+                        throw new CancellationException();
+                    }
+                    updateProgress(done, total);
+                }, this::isCancelled);
+                return null;
+            }
+        };
+    }
+
+    /**
+     * Scrive il file con operation in un file temporaneo nella stessa cartella e poi lo sostituisce a file.
+     * Se la scrittura fallisce o viene annullata il file temporaneo viene eliminato. Se invece è la sostituzione
+     * a fallire, il file temporaneo è un salvataggio completo: viene conservato e il messaggio dell'errore
+     * indica dove si trova, così le modifiche dell'utente non vanno perse.
+     */
+    static void writeAndReplace(SaveStrategy.SaveOperation operation, File file, ProgressListener progress,
+                                BooleanSupplier cancelled) throws IOException {
+        Path target = file.toPath().toAbsolutePath();
+        Path temp = target.resolveSibling(file.getName() + ".tmp");
+        boolean keepTemp = false;
+        try {
+            operation.run(temp.toFile(), progress);
+            if (cancelled.getAsBoolean()) {
+                return;
+            }
+            try {
+                replaceFile(temp, target);
+            } catch (IOException e) {
+                keepTemp = true;
+                throw new IOException("Impossibile sostituire " + file.getName() + " (" + e.getMessage()
+                        + "). Il disegno è stato salvato in " + temp, e);
+            }
+        } finally {
+            if (!keepTemp) {
+                Files.deleteIfExists(temp); // dopo lo spostamento non esiste più: si elimina solo il file parziale
+            }
         }
-        return false;
     }
 
+    /**
+     * Sostituisce target con il file temporaneo source. Prima dello spostamento il contenuto di source viene
+     * forzato sul disco, dopo viene sincronizzata la cartella: quando il metodo termina il nuovo file è
+     * persistente, e chi vi fa affidamento (ad esempio il diario dei comandi) può scartare la copia precedente.
+     * Una chiusura a metà lascia il file precedente oppure quello nuovo completo, mai uno scritto in parte.
+     * Se la sostituzione fallisce source resta dov'è. Su Windows succede ad esempio sostituendo il disegno aperto
+     * in modo differito, la cui mappatura in memoria viene chiusa solo dal garbage collector: writeAndReplace
+     * conserva allora il file temporaneo e lo segnala.
+     */
+    static void replaceFile(Path source, Path target) throws IOException {
+        try (FileChannel channel = FileChannel.open(source, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        try {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        syncDirectory(target.toAbsolutePath().getParent());
+    }
 
+    // Rende persistente lo spostamento. Non tutti i sistemi permettono di aprire una cartella (ad esempio Windows,
+    // dove la sostituzione non ne ha bisogno): in quel caso la sincronizzazione viene saltata
+    private static void syncDirectory(Path directory) {
+        if (directory == null) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException | UnsupportedOperationException e) {
+            // sincronizzazione della cartella non supportata
+        }
+    }
 }
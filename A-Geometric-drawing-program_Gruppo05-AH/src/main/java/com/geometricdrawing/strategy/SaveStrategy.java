@@ -1,6 +1,7 @@
 package com.geometricdrawing.strategy;
 
 import com.geometricdrawing.model.DrawingModel;
+import com.geometricdrawing.model.DrawingSnapshot;
 import javafx.scene.canvas.Canvas;
 import javafx.stage.FileChooser;
 
@@ -11,4 +12,29 @@ public interface SaveStrategy {
     void save(File file, DrawingModel model, Canvas canvas) throws IOException;
     FileChooser.ExtensionFilter getExtensionFilter();
     String getDialogTitle();
+
+    /**
+     * Operazione di salvataggio pronta per essere eseguita fuori dal thread JavaFX.
+     */
+    @FunctionalInterface
+    interface SaveOperation {
+        void run(File file, ProgressListener progress) throws IOException;
+    }
+
+    /**
+     * Chiamato sul thread JavaFX: cattura lo stato da salvare e restituisce l'operazione che scrive il file
+     * in background. L'implementazione predefinita salva una copia delle figure, così il modello può
+     * continuare a essere modificato mentre il file viene scritto.
+     */
+    default SaveOperation prepare(DrawingModel model, Canvas canvas) {
+        if (model == null) {
+            return (file, progress) -> save(file, null, canvas);
+        }
+        DrawingSnapshot snapshot = model.snapshot();
+        return (file, progress) -> {
+            DrawingModel copy = new DrawingModel();
+            copy.replaceShapes(snapshot.getShapes());
+            save(file, copy, null);
+        };
+    }
 }
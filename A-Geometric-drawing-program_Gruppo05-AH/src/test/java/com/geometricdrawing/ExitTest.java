@@ -117,8 +117,11 @@ class ExitTest {
 
     @Test
     void exit_whenUserChoosesSaveAndSaveContextIsNotNull_shouldSaveAndExit() {
-        // Configura il mock per far sì che execute() ritorni true
-        when(saveContext.execute()).thenReturn(true);
+        // Il salvataggio in background termina con successo ed esegue l'azione di chiusura
+        when(saveContext.execute(any(Runnable.class))).thenAnswer(invocation -> {
+            invocation.<Runnable>getArgument(0).run();
+            return true;
+        });
         
         // Usa try-with-resources per assicurare che il mockConstruction sia chiuso correttamente
         try (MockedConstruction<Alert> ignored = setupAlertConstructionAndStubbing(UserChoice.SAVE)) {
@@ -137,7 +140,7 @@ class ExitTest {
 
             // Verifica le interazioni con il controller e il contesto di file
             verify(drawingControllerMock).getSaveContext();
-            verify(saveContext).execute();
+            verify(saveContext).execute(any(Runnable.class));
             // Verifica che Platform.exit() sia stato chiamato una volta
             platformMockedStatic.verify(Platform::exit, times(1));
         }
@@ -154,7 +157,7 @@ class ExitTest {
             // Assert
             verify(alertMockInstance).showAndWait(); // L'alert viene comunque mostrato
             verify(drawingControllerMock).getSaveContext(); // Il contesto viene richiesto
-            verify(saveContext, never()).execute(); // Ma non si salva
+            verify(saveContext, never()).execute(any(Runnable.class)); // Ma non si salva
             platformMockedStatic.verify(Platform::exit, never()); // E non si esce da questo specifico percorso logico
         }
     }
@@ -165,7 +168,7 @@ class ExitTest {
             exitUnderTest.exit();
 
             verify(alertMockInstance).showAndWait();
-            verify(saveContext, never()).execute();
+            verify(saveContext, never()).execute(any(Runnable.class));
             platformMockedStatic.verify(Platform::exit, times(1));
         }
     }
@@ -176,7 +179,7 @@ class ExitTest {
             exitUnderTest.exit();
 
             verify(alertMockInstance).showAndWait();
-            verify(saveContext, never()).execute();
+            verify(saveContext, never()).execute(any(Runnable.class));
             platformMockedStatic.verify(Platform::exit, never());
         }
     }
@@ -184,15 +187,15 @@ class ExitTest {
     // Test aggiuntivo per il caso in cui saveContext.execute() restituisce false
     @Test
     void exit_whenUserChoosesSaveButExecuteFails_shouldNotExit() {
-        // Configura il mock per far sì che execute() ritorni false
-        when(saveContext.execute()).thenReturn(false);
+        // Il salvataggio non viene avviato (o fallisce): l'azione di chiusura non viene eseguita
+        when(saveContext.execute(any(Runnable.class))).thenReturn(false);
         
         try (MockedConstruction<Alert> ignored = setupAlertConstructionAndStubbing(UserChoice.SAVE)) {
             exitUnderTest.exit();
 
             verify(alertMockInstance).showAndWait();
             verify(drawingControllerMock).getSaveContext();
-            verify(saveContext).execute();
+            verify(saveContext).execute(any(Runnable.class));
             // Platform.exit() non dovrebbe essere chiamato se il salvataggio fallisce
             platformMockedStatic.verify(Platform::exit, never());
         }
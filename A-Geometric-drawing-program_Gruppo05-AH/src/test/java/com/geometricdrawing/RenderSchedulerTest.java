@@ -0,0 +1,92 @@
+package com.geometricdrawing;
+
+import com.geometricdrawing.controller.RenderScheduler;
+import javafx.application.Platform;
+import javafx.embed.swing.JFXPanel;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import javax.swing.SwingUtilities;
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RenderSchedulerTest {
+
+    @BeforeAll
+    static void initJavaFX() {
+        try {
+            SwingUtilities.invokeAndWait(() -> {
+                new JFXPanel(); // Inizializza il toolkit JavaFX
+            });
+        } catch (InterruptedException | InvocationTargetException e) {
+            fail("Impossibile inizializzare il toolkit JavaFX: " + e.getMessage());
+        }
+    }
+
+    // Esegue il blocco sul thread JavaFX e attende la fine, propagando eventuali errori delle asserzioni
+    private void runOnFxThread(Runnable action) throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(1);
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        Platform.runLater(() -> {
+            try {
+                action.run();
+            } catch (Throwable t) {
+                error.set(t);
+            } finally {
+                latch.countDown();
+            }
+        });
+        assertTrue(latch.await(5, TimeUnit.SECONDS), "Il thread JavaFX non ha risposto in tempo.");
+        if (error.get() != null) {
+            fail(error.get());
+        }
+    }
+
+    @Test
+    void constructorShouldRejectNullAction() {
+        assertThrows(IllegalArgumentException.class, () -> new RenderScheduler(null));
+    }
+
+    @Test
+    void requestsInSameFrameShouldBeCollapsed() throws InterruptedException {
+        AtomicInteger renders = new AtomicInteger();
+        runOnFxThread(() -> {
+            RenderScheduler scheduler = new RenderScheduler(renders::incrementAndGet);
+            scheduler.requestRender();
+            scheduler.requestRender();
+            scheduler.requestRender();
+
+            assertTrue(scheduler.isRenderPending());
+            assertEquals(0, renders.get(), "Il ridisegno non dovrebbe avvenire in modo sincrono.");
+            assertEquals(3, scheduler.getRequestCount());
+            assertEquals(2, scheduler.getCollapsedRequestCount(), "Due richieste su tre dovrebbero essere accorpate.");
+
+            scheduler.flush();
+            assertEquals(1, renders.get(), "Tre richieste nello stesso frame dovrebbero produrre un solo ridisegno.");
+            assertEquals(1, scheduler.getFrameCount());
+            assertFalse(scheduler.isRenderPending());
+        });
+    }
+
+    @Test
+    void flushWithoutPendingRequestShouldNotRender() throws InterruptedException {
+        AtomicInteger renders = new AtomicInteger();
+        runOnFxThread(() -> {
+            RenderScheduler scheduler = new RenderScheduler(renders::incrementAndGet);
+            scheduler.flush();
+            assertEquals(0, renders.get());
+        });
+    }
+
+    @Test
+    void pendingRequestShouldBeRenderedOnNextPulse() throws InterruptedException {
+        CountDownLatch rendered = new CountDownLatch(1);
+        runOnFxThread(() -> new RenderScheduler(rendered::countDown).requestRender());
+        assertTrue(rendered.await(5, TimeUnit.SECONDS), "Il ridisegno dovrebbe avvenire al pulse successivo.");
+    }
+}
@@ -2,6 +2,7 @@ package com.geometricdrawing;
 
 import com.geometricdrawing.controller.DrawingController;
 import com.geometricdrawing.controller.ZoomHandler;
+import javafx.geometry.Bounds;
 import javafx.geometry.Point2D;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -70,4 +71,14 @@ class ZoomHandlerTest {
         assertEquals(100.0, worldCoords.getX(), 0.001);
         assertEquals(50.0, worldCoords.getY(), 0.001);
     }
+
+    @Test
+    void visibleWorldBoundsShouldFollowZoom() {
+        zoomHandler.setZoom200();
+        Bounds visible = zoomHandler.getVisibleWorldBounds(800.0, 600.0);
+        assertEquals(0.0, visible.getMinX(), 0.001);
+        assertEquals(0.0, visible.getMinY(), 0.001);
+        assertEquals(400.0, visible.getWidth(), 0.001, "A zoom 200% la vista dovrebbe coprire metà della larghezza del canvas.");
+        assertEquals(300.0, visible.getHeight(), 0.001, "A zoom 200% la vista dovrebbe coprire metà dell'altezza del canvas.");
+    }
 }
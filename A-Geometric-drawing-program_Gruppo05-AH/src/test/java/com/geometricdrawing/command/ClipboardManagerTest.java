@@ -3,11 +3,15 @@ package com.geometricdrawing.command;
 import com.geometricdrawing.model.AbstractShape;
 import com.geometricdrawing.model.Rectangle;
 import com.geometricdrawing.model.Ellipse;
+import com.geometricdrawing.model.Polygon;
 import com.geometricdrawing.decorator.FillColorDecorator; // Assumendo che sia serializzabile
 import javafx.scene.paint.Color;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 class ClipboardManagerTest {
@@ -85,4 +89,62 @@ class ClipboardManagerTest {
         assertNull(clipboardManager.getFromClipboard(), "getFromClipboard dovrebbe restituire null dopo clearClipboard.");
         assertFalse(clipboardManager.hasContent(), "hasContent() dovrebbe restituire false dopo clearClipboard.");
     }
-}
\ No newline at end of file
+
+    @Test
+    void copyAllToClipboardShouldKeepOrderAndSnapshotState() {
+        List<AbstractShape> selection = List.of(testRectangle, testEllipse);
+        clipboardManager.copyAllToClipboard(selection);
+        testRectangle.moveTo(500, 500); // modifica dell'originale dopo la copia
+
+        List<AbstractShape> pasted = clipboardManager.getAllFromClipboard();
+
+        assertEquals(2, clipboardManager.getClipboardSize());
+        assertEquals(2, pasted.size());
+        assertTrue(pasted.get(0) instanceof Rectangle, "L'ordine della selezione dovrebbe essere mantenuto.");
+        assertTrue(pasted.get(1) instanceof FillColorDecorator, "L'ordine della selezione dovrebbe essere mantenuto.");
+        assertEquals(10, pasted.get(0).getX(), "La clipboard non deve risentire delle modifiche successive all'originale.");
+        assertNotSame(pasted.get(0), clipboardManager.getAllFromClipboard().get(0), "Ogni incolla dovrebbe creare nuove copie.");
+    }
+
+    @Test
+    void getFromClipboardShouldNeverReturnTheSnapshotShape() {
+        clipboardManager.copyToClipboard(testRectangle);
+
+        AbstractShape first = clipboardManager.getFromClipboard();
+        assertNotSame(first, clipboardManager.getFromClipboard(), "Ogni lettura dovrebbe creare una nuova copia.");
+        first.setWidth(first.getWidth() + 50);
+        assertEquals(testRectangle.getWidth(), clipboardManager.getFromClipboard().getWidth(),
+                "Modificare una copia letta non deve cambiare il contenuto della clipboard.");
+    }
+
+    @Test
+    void copyAndPasteOfManyPolygonsShouldShareVertexArrays() {
+        List<AbstractShape> selection = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            Polygon polygon = new Polygon(i, 0);
+            polygon.addVertex(i + 10, 0);
+            polygon.addVertex(i + 5, 8);
+            selection.add(polygon);
+        }
+
+        clipboardManager.copyAllToClipboard(selection);
+        List<AbstractShape> pasted = clipboardManager.getAllFromClipboard();
+        for (AbstractShape shape : pasted) {
+            shape.moveBy(10, 10); // l'incolla sposta le copie: i vertici restano condivisi
+        }
+
+        assertEquals(5000, pasted.size());
+        for (int i = 0; i < pasted.size(); i++) {
+            Polygon original = (Polygon) selection.get(i);
+            Polygon copy = (Polygon) pasted.get(i);
+            assertTrue(copy.sharesVerticesWith(original), "Le copie dovrebbero condividere gli array dei vertici con l'originale.");
+            assertEquals(original.getVertexX(1) + 10, copy.getVertexX(1), 1e-9);
+        }
+
+        // Modificare la forma di una copia crea i suoi array privati, senza toccare l'originale
+        Polygon first = (Polygon) pasted.get(0);
+        first.addVertex(-5, -5);
+        assertFalse(first.sharesVerticesWith((Polygon) selection.get(0)));
+        assertEquals(3, ((Polygon) selection.get(0)).getVertexCount());
+    }
+}
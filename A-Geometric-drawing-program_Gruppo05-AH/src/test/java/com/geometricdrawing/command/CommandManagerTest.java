@@ -1,12 +1,12 @@
 package com.geometricdrawing.command;
 
 import com.geometricdrawing.model.AbstractShape;
+import com.geometricdrawing.model.DrawingModel;
 import com.geometricdrawing.model.Rectangle;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
-import java.lang.reflect.Field;
-import java.util.Stack;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -39,32 +39,137 @@ class CommandManagerTest {
     }
 
     @Test
-    void executeCommandShouldAddCommandToUndoStack() throws NoSuchFieldException, IllegalAccessException {
+    void executeCommandShouldAddCommandToUndoStack() {
         commandManager.executeCommand(command1);
 
-        Field undoStackField = CommandManager.class.getDeclaredField("undoStack");
-        undoStackField.setAccessible(true);
-        @SuppressWarnings("unchecked")
-        Stack<Command> undoStack = (Stack<Command>) undoStackField.get(commandManager);
+        List<Command> undoStack = commandManager.getUndoHistory();
 
         assertNotNull(undoStack);
         assertEquals(1, undoStack.size(), "Lo stack undo dovrebbe contenere un comando");
-        assertSame(command1, undoStack.peek(), "Il comando in cima allo stack undo non è quello corretto");
+        assertSame(command1, undoStack.get(0), "Il comando in cima allo stack undo non è quello corretto");
     }
 
     @Test
-    void executeMultipleCommandsShouldAddAllToUndoStackInOrder() throws NoSuchFieldException, IllegalAccessException {
+    void executeMultipleCommandsShouldAddAllToUndoStackInOrder() {
         commandManager.executeCommand(command1);
         commandManager.executeCommand(command2);
 
-        Field undoStackField = CommandManager.class.getDeclaredField("undoStack");
-        undoStackField.setAccessible(true);
-        @SuppressWarnings("unchecked")
-        Stack<Command> undoStack = (Stack<Command>) undoStackField.get(commandManager);
+        List<Command> undoStack = commandManager.getUndoHistory();
 
         assertNotNull(undoStack);
         assertEquals(2, undoStack.size(), "Lo stack undo dovrebbe contenere due comandi");
-        assertSame(command2, undoStack.pop(), "Il secondo comando non è corretto o non è in cima");
-        assertSame(command1, undoStack.pop(), "Il primo comando non è corretto o non è nella posizione corretta");
+        assertSame(command2, undoStack.get(1), "Il secondo comando non è corretto o non è in cima");
+        assertSame(command1, undoStack.get(0), "Il primo comando non è corretto o non è nella posizione corretta");
+    }
+
+    @Test
+    void changeCountShouldChangeWithEveryExecuteUndoAndRedo() {
+        DrawingModel model = new DrawingModel();
+        long start = commandManager.getChangeCount();
+        commandManager.undo(); // niente da annullare: il disegno non cambia
+        assertEquals(start, commandManager.getChangeCount());
+
+        commandManager.executeCommand(new AddShapeCommand(model, testShape));
+        long afterExecute = commandManager.getChangeCount();
+        assertNotEquals(start, afterExecute, "Un comando eseguito modifica il disegno.");
+        commandManager.undo();
+        assertNotEquals(afterExecute, commandManager.getChangeCount(), "Anche l'annullamento modifica il disegno.");
+        long afterUndo = commandManager.getChangeCount();
+        commandManager.redo();
+        assertNotEquals(afterUndo, commandManager.getChangeCount(), "Anche la ripetizione modifica il disegno.");
+    }
+
+    @Test
+    void redoShouldReapplyTheLastUndoneCommand() {
+        DrawingModel model = new DrawingModel();
+        commandManager.executeCommand(new AddShapeCommand(model, testShape));
+        commandManager.executeCommand(new MoveShapeCommand(model, testShape, 50, 60));
+
+        commandManager.undo();
+        assertEquals(0, testShape.getX(), "L'undo dovrebbe riportare la figura alla posizione iniziale");
+        assertTrue(commandManager.canRedo());
+
+        commandManager.redo();
+        assertEquals(50, testShape.getX(), "Il redo dovrebbe rieseguire lo spostamento");
+        assertFalse(commandManager.canRedo(), "Dopo il redo non ci sono altri comandi da ripetere");
+        assertEquals(2, commandManager.getUndoHistory().size());
+    }
+
+    @Test
+    void newCommandShouldDiscardTheRedoHistory() {
+        DrawingModel model = new DrawingModel();
+        commandManager.executeCommand(new AddShapeCommand(model, testShape));
+        commandManager.undo();
+
+        commandManager.executeCommand(command1);
+
+        assertFalse(commandManager.canRedo(), "Un nuovo comando deve scartare i comandi annullati");
+        assertEquals(List.of(command1), commandManager.getUndoHistory());
+    }
+
+    @Test
+    void consecutiveStepsOnTheSameShapeShouldBeMergedIntoOneEntry() {
+        DrawingModel model = new DrawingModel();
+        model.addShape(testShape);
+        commandManager.executeCommand(new ChangeWidthCommand(model, testShape, 11));
+        commandManager.executeCommand(new ChangeWidthCommand(model, testShape, 12));
+        commandManager.executeCommand(new ChangeWidthCommand(model, testShape, 13));
+        commandManager.executeCommand(new RotateShapeCommand(model, testShape, 5));
+        commandManager.executeCommand(new RotateShapeCommand(model, testShape, 5));
+
+        assertEquals(2, commandManager.getUndoHistory().size(), "Passi dello stesso tipo sulla stessa figura vanno accorpati");
+        commandManager.undo();
+        assertEquals(0, testShape.getRotationAngle(), 1e-9, "Un undo annulla tutti i passi di rotazione accorpati");
+        commandManager.undo();
+        assertEquals(10, testShape.getWidth(), 1e-9, "Un undo annulla tutti i passi di larghezza accorpati");
+        commandManager.redo();
+        assertEquals(13, testShape.getWidth(), 1e-9, "Il redo riapplica il valore finale");
+    }
+
+    @Test
+    void separateMovesOfTheSameShapeShouldStaySeparateSteps() {
+        DrawingModel model = new DrawingModel();
+        model.addShape(testShape);
+        commandManager.executeCommand(new MoveShapeCommand(model, testShape, 20, 20));
+        commandManager.executeCommand(new MoveShapeCommand(model, testShape, 30, 30));
+
+        assertEquals(2, commandManager.getUndoHistory().size(), "Ogni trascinamento deve restare un passo a sé");
+        commandManager.undo();
+        assertEquals(20, testShape.getX(), 1e-9, "Un undo deve annullare solo l'ultimo spostamento");
+    }
+
+    @Test
+    void stepsOnDifferentShapesShouldNotBeMerged() {
+        DrawingModel model = new DrawingModel();
+        Rectangle other = new Rectangle(0, 0, 10, 10);
+        model.addShape(testShape);
+        model.addShape(other);
+        commandManager.executeCommand(new ChangeWidthCommand(model, testShape, 20));
+        commandManager.executeCommand(new ChangeWidthCommand(model, other, 20));
+
+        assertEquals(2, commandManager.getUndoHistory().size());
+    }
+
+    @Test
+    void oldestCommandsShouldBeEvictedWhenOverCapacityOrBudget() {
+        CommandManager bounded = new CommandManager(3, Long.MAX_VALUE);
+        for (int i = 0; i < 5; i++) {
+            bounded.executeCommand(new CopyShapeCommand(testShape, clipboardManager));
+        }
+        assertEquals(3, bounded.getUndoHistory().size(), "La cronologia non deve superare la sua capacità");
+
+        DrawingModel model = new DrawingModel();
+        CommandManager budgeted = new CommandManager(100, 3 * (Command.BASE_SIZE + Command.estimateShapeSize(testShape)));
+        for (int i = 0; i < 5; i++) {
+            Rectangle shape = new Rectangle(i, 0, 10, 10);
+            model.addShape(shape);
+            budgeted.executeCommand(new DeleteShapeCommand(model, shape));
+        }
+        assertEquals(3, budgeted.getUndoHistory().size(), "I comandi più vecchi vanno scartati oltre il limite di memoria");
+        assertTrue(budgeted.getMemoryUsage() <= 3 * (Command.BASE_SIZE + Command.estimateShapeSize(testShape)));
+        while (budgeted.canUndo()) {
+            budgeted.undo();
+        }
+        assertEquals(3, model.getShapes().size(), "Si possono annullare solo le eliminazioni rimaste nella cronologia");
     }
 }
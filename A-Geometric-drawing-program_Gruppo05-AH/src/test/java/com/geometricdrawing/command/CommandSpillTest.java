@@ -0,0 +1,236 @@
+package com.geometricdrawing.command;
+
+import com.geometricdrawing.model.*;
+import javafx.scene.paint.Color;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CommandSpillTest {
+
+    private Path file;
+    private CommandSpill spill;
+    private DrawingModel model;
+    private CommandManager commandManager;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        file = Files.createTempFile("cronologia", ".spill");
+        spill = new CommandSpill(file);
+        model = new DrawingModel();
+        commandManager = new CommandManager(3, Long.MAX_VALUE);
+        commandManager.setSpill(spill);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        spill.close();
+        Files.deleteIfExists(file);
+    }
+
+    // Stato visibile del disegno, per confrontarlo prima e dopo gli annullamenti
+    private List<String> describe() {
+        List<String> description = new ArrayList<>();
+        for (AbstractShape shape : model.getShapes()) {
+            description.add(shape.getClass().getSimpleName() + " " + shape.getX() + "," + shape.getY()
+                    + " " + shape.getWidth() + "x" + shape.getHeight() + " r" + shape.getRotationAngle()
+                    + " s" + shape.getScaleX() + "," + shape.getScaleY()
+                    + " " + shape.getFillColor() + " " + shape.getBorderColor());
+        }
+        return description;
+    }
+
+    @Test
+    void undoingPastTheWindowShouldReadCommandsBackFromTheFile() {
+        Rectangle rectangle = new Rectangle(10, 10, 40, 20);
+        Ellipse ellipse = new Ellipse(100, 50, 30, 30);
+        Line line = new Line(0, 0, 80, 80);
+        // i comandi leggono lo stato precedente quando vengono creati: vanno creati al momento dell'esecuzione
+        List<Supplier<Command>> commands = List.of(
+                () -> new AddShapeCommand(model, rectangle),
+                () -> new AddShapeCommand(model, ellipse),
+                () -> new AddShapeCommand(model, line),
+                () -> new MoveShapeCommand(model, rectangle, 200, 150),
+                () -> new ChangeFillColorCommand(model, ellipse, Color.color(0.1, 0.2, 0.3, 0.4)),
+                () -> new ChangeBorderColorCommand(model, rectangle, Color.RED),
+                () -> new ChangeWidthCommand(model, ellipse, 75),
+                () -> new ChangeHeightCommand(model, rectangle, 5),
+                () -> new StretchShapeCommand(model, line, 0, 0, 80, 80, 5, 5, 20, 30),
+                () -> new MirrorShapeCommand(model, ellipse, true),
+                () -> new BringToBackgroundCommand(model, line),
+                () -> new BringToForegroundCommand(model, rectangle),
+                () -> new DeleteShapeCommand(model, rectangle), // in primo piano: l'annullamento la rimette in cima
+                () -> new RotateShapeCommand(model, line, 30));
+        List<List<String>> states = new ArrayList<>();
+        for (Supplier<Command> command : commands) {
+            states.add(describe());
+            commandManager.executeCommand(command.get());
+        }
+
+        assertEquals(3, commandManager.getUndoHistory().size(), "In memoria restano solo gli ultimi comandi.");
+        assertEquals(commands.size() - 3, commandManager.getSpilledCount(), "Gli altri comandi devono essere su file.");
+
+        for (int i = states.size() - 1; i >= 0; i--) {
+            assertTrue(commandManager.canUndo(), "Il comando " + i + " dovrebbe essere annullabile.");
+            commandManager.undo();
+            assertEquals(states.get(i), describe(), "Stato errato dopo l'annullamento del comando " + i + ".");
+        }
+        assertFalse(commandManager.canUndo());
+        assertEquals(0, commandManager.getSpilledCount());
+    }
+
+    @Test
+    void readCommandsShouldUseTheShapesStillInMemory() {
+        Rectangle rectangle = new Rectangle(10, 10, 40, 20);
+        commandManager.executeCommand(new AddShapeCommand(model, rectangle));
+        commandManager.executeCommand(new MoveShapeCommand(model, rectangle, 50, 50));
+        for (int i = 0; i < 5; i++) {
+            commandManager.executeCommand(new AddShapeCommand(model, new Ellipse(i, i, 10, 10)));
+        }
+        while (model.getShapes().size() > 1) {
+            commandManager.undo();
+        }
+        commandManager.undo(); // spostamento riletto dal file
+
+        assertSame(rectangle, model.getShapes().get(0), "Il comando riletto deve agire sulla figura originale.");
+        assertEquals(10, rectangle.getX(), "Lo spostamento doveva essere annullato sulla figura originale.");
+    }
+
+    @Test
+    void redoShouldWorkOnCommandsReadFromTheFile() {
+        Rectangle rectangle = new Rectangle(10, 10, 40, 20);
+        commandManager.executeCommand(new AddShapeCommand(model, rectangle));
+        List<List<String>> states = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            states.add(describe());
+            commandManager.executeCommand(new MoveShapeCommand(model, rectangle, 20 * i, 0));
+        }
+        for (int i = 0; i < 4; i++) {
+            commandManager.undo();
+        }
+        assertEquals(states.get(0), describe());
+
+        // la finestra in memoria contiene 3 comandi: quelli riletti dal file prendono il posto dei più recenti
+        for (int i = 1; i < 3; i++) {
+            assertTrue(commandManager.canRedo(), "Il passo " + i + " dovrebbe essere ripetibile.");
+            commandManager.redo();
+            assertEquals(states.get(i), describe(), "Stato errato dopo la ripetizione del passo " + i + ".");
+        }
+        commandManager.redo();
+        assertFalse(commandManager.canRedo(), "Oltre la finestra in memoria non ci sono altri passi da ripetere.");
+    }
+
+    @Test
+    void clipboardCommandsShouldRestoreTheClipboard() {
+        ClipboardManager clipboard = new ClipboardManager();
+        Rectangle rectangle = new Rectangle(10, 10, 40, 20);
+        commandManager.executeCommand(new AddShapeCommand(model, rectangle));
+        commandManager.executeCommand(new CutShapeCommand(model, rectangle, clipboard));
+        commandManager.executeCommand(new PasteShapeCommand(model, clipboard, 100, 100, true));
+        for (int i = 0; i < 3; i++) {
+            commandManager.executeCommand(new AddShapeCommand(model, new Ellipse(i, i, 10, 10)));
+        }
+        for (int i = 0; i < 4; i++) {
+            commandManager.undo();
+        }
+        assertTrue(model.getShapes().isEmpty(), "L'incolla doveva essere annullato.");
+        commandManager.undo(); // taglia
+
+        assertEquals(List.of(rectangle), model.getShapes(), "La figura tagliata deve tornare nel disegno.");
+        assertFalse(clipboard.hasContent(), "Gli appunti devono tornare vuoti come prima del taglia.");
+    }
+
+    @Test
+    void multiShapeCopyShouldBeUndoneAfterBeingReadBack() {
+        ClipboardManager clipboard = new ClipboardManager();
+        Rectangle rectangle = new Rectangle(10, 10, 40, 20);
+        Ellipse ellipse = new Ellipse(60, 10, 20, 20);
+        commandManager.executeCommand(new AddShapeCommand(model, rectangle));
+        commandManager.executeCommand(new AddShapeCommand(model, ellipse));
+        commandManager.executeCommand(new CopyShapeCommand(rectangle, clipboard));
+        commandManager.executeCommand(CopyShapeCommand.ofShapes(List.of(rectangle, ellipse), clipboard));
+        for (int i = 0; i < 3; i++) {
+            commandManager.executeCommand(new AddShapeCommand(model, new Ellipse(i, i, 10, 10)));
+        }
+        for (int i = 0; i < 3; i++) {
+            commandManager.undo();
+        }
+        assertEquals(2, clipboard.getClipboardSize());
+        commandManager.undo(); // copia di entrambe le figure, riletta dal file
+
+        assertEquals(1, clipboard.getClipboardSize(), "Gli appunti devono tornare come prima della copia.");
+        assertEquals(Rectangle.class, clipboard.getFromClipboard().getClass());
+    }
+
+    @Test
+    void fileShouldShrinkWhenCommandsAreReadBack() throws IOException {
+        for (int i = 0; i < 50; i++) {
+            commandManager.executeCommand(new AddShapeCommand(model, new Rectangle(i, i, 10, 10)));
+        }
+        long fullSize = Files.size(file);
+        for (int i = 0; i < 25; i++) {
+            commandManager.undo();
+        }
+
+        assertTrue(fullSize > 0, "I comandi fuori dalla finestra devono essere sul file.");
+        assertTrue(Files.size(file) < fullSize, "I comandi riletti devono essere tolti dal file.");
+        assertEquals(25, model.getShapes().size());
+    }
+
+    @Test
+    void commandsThatCannotBeSavedShouldBeDropped() {
+        for (int i = 0; i < 5; i++) {
+            commandManager.executeCommand(new Command() {
+                @Override
+                public void execute() {
+                }
+
+                @Override
+                public void undo() {
+                }
+            });
+        }
+
+        assertEquals(0, commandManager.getSpilledCount(), "Un comando senza formato su file non può essere salvato.");
+        assertEquals(3, commandManager.getUndoHistory().size());
+    }
+
+    @Test
+    void droppedCommandShouldDiscardTheOlderCommandsOnFile() {
+        for (int i = 0; i < 5; i++) {
+            commandManager.executeCommand(new AddShapeCommand(model, new Rectangle(i * 10, 0, 5, 5)));
+        }
+        assertEquals(2, commandManager.getSpilledCount());
+
+        // Un comando senza formato su file esce dalla finestra e viene scartato
+        commandManager.executeCommand(new Command() {
+            @Override
+            public void execute() {
+                model.addShape(new Ellipse(0, 0, 1, 1));
+            }
+
+            @Override
+            public void undo() {
+                model.removeShape(model.getShapes().get(model.getShapes().size() - 1));
+            }
+        });
+        for (int i = 0; i < 3; i++) {
+            commandManager.executeCommand(new AddShapeCommand(model, new Rectangle(100 + i * 10, 0, 5, 5)));
+        }
+
+        assertEquals(0, commandManager.getSpilledCount(), "Dopo un comando scartato la cronologia su file non è più contigua.");
+        while (commandManager.canUndo()) {
+            commandManager.undo();
+        }
+        assertEquals(6, model.getShapes().size(), "Si annullano solo i comandi successivi a quello scartato.");
+    }
+}
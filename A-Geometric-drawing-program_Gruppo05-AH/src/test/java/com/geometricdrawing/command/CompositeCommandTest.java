@@ -0,0 +1,100 @@
+package com.geometricdrawing.command;
+
+import com.geometricdrawing.model.AbstractShape;
+import com.geometricdrawing.model.DrawingModel;
+import com.geometricdrawing.model.Rectangle;
+import javafx.collections.ListChangeListener;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompositeCommandTest {
+
+    private DrawingModel model;
+    private CommandManager commandManager;
+    private List<Integer> listEvents;
+
+    @BeforeEach
+    void setUp() {
+        model = new DrawingModel();
+        commandManager = new CommandManager();
+        listEvents = new ArrayList<>();
+        model.getShapes().addListener((ListChangeListener<AbstractShape>) c -> listEvents.add(1));
+    }
+
+    private List<Command> addCommands(int count) {
+        List<Command> commands = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            commands.add(new AddShapeCommand(model, new Rectangle(i, i, 10, 10)));
+        }
+        return commands;
+    }
+
+    @Test
+    void executeBatchShouldBeASingleUndoUnitWithOneNotification() {
+        commandManager.executeBatch(model, addCommands(10_000));
+
+        assertEquals(10_000, model.getShapes().size());
+        assertEquals(1, listEvents.size(), "Tutto il gruppo deve produrre un solo evento.");
+        assertEquals(1, commandManager.getUndoHistory().size(), "Il gruppo deve essere un'unica voce della cronologia.");
+        assertInstanceOf(CompositeCommand.class, commandManager.getUndoHistory().get(0));
+
+        commandManager.undo();
+        assertTrue(model.getShapes().isEmpty(), "L'annullamento deve togliere tutte le figure del gruppo.");
+        assertEquals(2, listEvents.size(), "Anche l'annullamento deve produrre un solo evento.");
+
+        commandManager.redo();
+        assertEquals(10_000, model.getShapes().size());
+        assertEquals(3, listEvents.size());
+    }
+
+    @Test
+    void commandsExecutedBetweenBeginAndEndShouldSeeEachOthersEffects() {
+        Rectangle rectangle = new Rectangle(0, 0, 10, 10);
+        commandManager.beginBatch(model);
+        commandManager.executeCommand(new AddShapeCommand(model, rectangle));
+        // il comando legge la posizione lasciata dal precedente del gruppo
+        commandManager.executeCommand(new MoveShapeCommand(model, rectangle, 50, 50));
+        commandManager.executeCommand(new MoveShapeCommand(model, rectangle, 80, 80));
+        assertTrue(commandManager.isInBatch());
+        assertThrows(IllegalStateException.class, commandManager::undo, "Non si annulla con un gruppo aperto.");
+        commandManager.endBatch();
+
+        assertEquals(80, rectangle.getX());
+        commandManager.undo();
+        assertTrue(model.getShapes().isEmpty());
+        assertEquals(0, rectangle.getX(), "I comandi del gruppo vanno annullati in ordine inverso.");
+    }
+
+    @Test
+    void emptyBatchShouldNotEnterTheHistory() {
+        commandManager.beginBatch(model);
+        commandManager.endBatch();
+
+        assertFalse(commandManager.canUndo());
+        assertTrue(listEvents.isEmpty());
+        assertThrows(IllegalStateException.class, commandManager::endBatch);
+    }
+
+    @Test
+    void compositeCommandShouldBeSavedInTheSpillFile() throws Exception {
+        CommandSpill spill = new CommandSpill();
+        commandManager = new CommandManager(1, Long.MAX_VALUE);
+        commandManager.setSpill(spill);
+        try {
+            commandManager.executeBatch(model, addCommands(3));
+            commandManager.executeCommand(new AddShapeCommand(model, new Rectangle(0, 0, 1, 1)));
+            assertEquals(1, commandManager.getSpilledCount(), "Il gruppo deve essere passato su file.");
+
+            commandManager.undo();
+            commandManager.undo();
+            assertTrue(model.getShapes().isEmpty(), "Il gruppo riletto deve togliere le sue figure.");
+        } finally {
+            spill.close();
+        }
+    }
+}
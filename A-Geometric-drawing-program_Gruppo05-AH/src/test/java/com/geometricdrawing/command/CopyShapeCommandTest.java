@@ -4,6 +4,8 @@ import com.geometricdrawing.model.*;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.util.List;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 class CopyShapeCommandTest {
@@ -77,4 +79,31 @@ class CopyShapeCommandTest {
         assertDoesNotThrow(command::undo);
         assertFalse(clipboardManager.hasContent());
     }
+
+    @Test
+    void executeWithSeveralShapesShouldCopyThemAllInOrder() {
+        Ellipse ellipse = new Ellipse(40, 40, 20, 20);
+        Line line = new Line(5, 5, 50, 60);
+        CopyShapeCommand command = CopyShapeCommand.ofShapes(List.of(shape, ellipse, line), clipboardManager);
+        command.execute();
+
+        List<AbstractShape> copies = clipboardManager.getAllFromClipboard();
+        assertEquals(3, copies.size(), "Tutte le figure selezionate devono finire negli appunti.");
+        assertShapesAreEqualButNotSame(shape, copies.get(0));
+        assertShapesAreEqualButNotSame(ellipse, copies.get(1));
+        assertShapesAreEqualButNotSame(line, copies.get(2));
+    }
+
+    @Test
+    void undoShouldRestoreThePreviousClipboard() {
+        Ellipse ellipse = new Ellipse(40, 40, 20, 20);
+        clipboardManager.copyToClipboard(ellipse);
+        CopyShapeCommand command = CopyShapeCommand.ofShapes(List.of(shape, ellipse), clipboardManager);
+        command.execute();
+        assertEquals(2, clipboardManager.getClipboardSize());
+
+        command.undo();
+        assertEquals(1, clipboardManager.getClipboardSize(), "L'annullamento deve ripristinare gli appunti precedenti.");
+        assertShapesAreEqualButNotSame(ellipse, clipboardManager.getFromClipboard());
+    }
 }
@@ -2,10 +2,13 @@ package com.geometricdrawing.command;
 
 import com.geometricdrawing.model.AbstractShape;
 import com.geometricdrawing.model.DrawingModel;
+import com.geometricdrawing.model.Ellipse;
 import com.geometricdrawing.model.Rectangle;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.util.List;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 class PasteShapeCommandTest {
@@ -139,4 +142,24 @@ class PasteShapeCommandTest {
         assertDoesNotThrow(() -> command.undo());
         assertTrue(model.getShapes().isEmpty(), "Model should remain empty if undo is called on a command that didn't set a pastedShape.");
     }
-}
\ No newline at end of file
+
+    @Test
+    void execute_withMultipleShapesInClipboard_shouldPasteAllKeepingRelativePositions() {
+        clipboardManager.copyAllToClipboard(List.of(new Rectangle(50, 60, 10, 10), new Ellipse(80, 100, 20, 20)));
+        PasteShapeCommand command = new PasteShapeCommand(model, clipboardManager, 200, 300, true);
+
+        command.execute();
+
+        List<AbstractShape> pasted = command.getPastedShapes();
+        assertEquals(2, pasted.size());
+        assertEquals(pasted, model.getShapes(), "Tutte le figure della clipboard dovrebbero essere aggiunte, nell'ordine.");
+        assertSame(pasted.get(0), command.getPastedShape());
+        assertEquals(200, pasted.get(0).getX());
+        assertEquals(300, pasted.get(0).getY());
+        assertEquals(230, pasted.get(1).getX(), "La seconda figura dovrebbe mantenere la distanza dalla prima.");
+        assertEquals(340, pasted.get(1).getY(), "La seconda figura dovrebbe mantenere la distanza dalla prima.");
+
+        command.undo();
+        assertTrue(model.getShapes().isEmpty(), "L'annullamento dovrebbe rimuovere tutte le figure incollate.");
+    }
+}
@@ -39,14 +39,18 @@ class PolygonFactoryTest {
     }
 
     @Test
-    void constructorShouldLimitMaxPointsBetween3And12() {
+    void constructorShouldLimitMaxPointsToSupportedRange() {
         // Test limite inferiore
         PolygonFactory factoryMin = new PolygonFactory(1);
         assertEquals(3, factoryMin.getMaxPoints(), "Max points should be at least 3.");
 
+        // Oltre i 12 vertici i valori vengono mantenuti
+        PolygonFactory factoryLarge = new PolygonFactory(20);
+        assertEquals(20, factoryLarge.getMaxPoints(), "Max points above 12 should be preserved.");
+
         // Test limite superiore
-        PolygonFactory factoryMax = new PolygonFactory(20);
-        assertEquals(12, factoryMax.getMaxPoints(), "Max points should be at most 12.");
+        PolygonFactory factoryMax = new PolygonFactory(Integer.MAX_VALUE);
+        assertEquals(PolygonFactory.MAX_POINTS, factoryMax.getMaxPoints(), "Max points should be at most MAX_POINTS.");
 
         // Test valore valido
         PolygonFactory factoryValid = new PolygonFactory(8);
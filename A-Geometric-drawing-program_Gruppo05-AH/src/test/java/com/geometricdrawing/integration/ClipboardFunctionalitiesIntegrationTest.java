@@ -21,7 +21,7 @@ import javafx.scene.paint.Color;
 import org.junit.jupiter.api.*;
 
 import java.lang.reflect.Field;
-import java.util.Stack;
+import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
@@ -198,12 +198,8 @@ public class ClipboardFunctionalitiesIntegrationTest {
         return field.get(target);
     }
 
-    @SuppressWarnings("unchecked")
-    private Stack<Command> getUndoStack(CommandManager cm)
-            throws NoSuchFieldException, IllegalAccessException {
-        Field stackField = CommandManager.class.getDeclaredField("undoStack");
-        stackField.setAccessible(true);
-        return (Stack<Command>) stackField.get(cm);
+    private List<Command> getUndoStack(CommandManager cm) {
+        return cm.getUndoHistory();
     }
 
     private void runOnFxThreadAndWait(Runnable action) throws InterruptedException {
@@ -277,7 +273,7 @@ public class ClipboardFunctionalitiesIntegrationTest {
         assertEquals(initialX + DEFAULT_PASTE_OFFSET, pastedBaseShape.getX(), 0.001, "Coordinata X incollata errata.");
         assertEquals(initialY + DEFAULT_PASTE_OFFSET, pastedBaseShape.getY(), 0.001, "Coordinata Y incollata errata.");
 
-        Stack<Command> undoStack = getUndoStack(commandManager);
+        List<Command> undoStack = getUndoStack(commandManager);
         assertEquals(3, undoStack.size(), "Undo stack dovrebbe contenere Add, Copy, Paste.");
         assertTrue(undoStack.get(0) instanceof AddShapeCommand);
         assertTrue(undoStack.get(1) instanceof CopyShapeCommand);
@@ -314,13 +310,55 @@ public class ClipboardFunctionalitiesIntegrationTest {
         assertEquals(initialX + DEFAULT_PASTE_OFFSET, pastedBaseShape.getX(), 0.001, "Coordinata X incollata errata dopo taglio.");
         assertEquals(initialY + DEFAULT_PASTE_OFFSET, pastedBaseShape.getY(), 0.001, "Coordinata Y incollata errata dopo taglio.");
 
-        Stack<Command> undoStack = getUndoStack(commandManager);
+        List<Command> undoStack = getUndoStack(commandManager);
         assertEquals(3, undoStack.size(), "Undo stack dovrebbe contenere Add, Cut, Paste.");
         assertTrue(undoStack.get(0) instanceof AddShapeCommand);
         assertTrue(undoStack.get(1) instanceof CutShapeCommand);
         assertTrue(undoStack.get(2) instanceof PasteShapeCommand);
     }
 
+    @Test
+    @DisplayName("Taglia e Annulla di una selezione multipla")
+    void testCutOfMultipleSelectionIsUndoneInOneStep() throws Exception {
+        AbstractShape first = insertAndSelectShape("Rectangle", 50, 50);
+        AbstractShape second = insertAndSelectShape("Ellipse", 300, 300);
+        runOnFxThreadAndWait(() -> controller.toggleShapeSelection(first));
+        assertEquals(2, controller.getSelectedShapes().size());
+
+        runOnFxThreadAndWait(() -> controller.handleCutShape(new ActionEvent()));
+        assertEquals(0, model.getShapes().size(), "Il taglio deve togliere tutte le figure selezionate.");
+        assertEquals(2, clipboardManager.getClipboardSize(), "Gli appunti devono contenere tutte le figure tagliate.");
+
+        List<Command> undoStack = getUndoStack(commandManager);
+        assertTrue(undoStack.get(undoStack.size() - 1) instanceof CompositeCommand,
+                "Il taglio di più figure deve essere un solo comando composto.");
+
+        runOnFxThreadAndWait(() -> controller.handleUndo(new ActionEvent()));
+        assertEquals(List.of(first, second), model.getShapes(), "L'annullamento deve rimettere le figure nel loro ordine di Z.");
+        assertEquals(0, clipboardManager.getClipboardSize(), "L'annullamento deve ripristinare gli appunti precedenti.");
+    }
+
+    @Test
+    @DisplayName("Annulla dopo Elimina di una selezione multipla")
+    void testUndoOfMultipleDeleteKeepsTheZOrder() throws Exception {
+        AbstractShape first = insertAndSelectShape("Rectangle", 50, 50);
+        AbstractShape second = insertAndSelectShape("Ellipse", 200, 200);
+        AbstractShape third = insertAndSelectShape("Rectangle", 400, 400);
+        // Selezione in ordine di Z crescente: le eliminazioni non devono seguire l'ordine di selezione
+        runOnFxThreadAndWait(() -> {
+            controller.setCurrentShape(first);
+            controller.toggleShapeSelection(second);
+            controller.toggleShapeSelection(third);
+        });
+        assertEquals(3, controller.getSelectedShapes().size());
+
+        runOnFxThreadAndWait(() -> controller.handleDeleteShape(new ActionEvent()));
+        assertEquals(0, model.getShapes().size());
+
+        runOnFxThreadAndWait(() -> controller.handleUndo(new ActionEvent()));
+        assertEquals(List.of(first, second, third), model.getShapes(), "L'annullamento deve rimettere le figure nel loro ordine di Z.");
+    }
+
     @Test
     @DisplayName("Incolla forma in una posizione specifica tramite menu contestuale del canvas")
     void testPasteShapeAtSpecificLocationViaContextMenuLogic() throws Exception {
@@ -399,6 +437,18 @@ public class ClipboardFunctionalitiesIntegrationTest {
         assertEquals(1.0, contentAfterUndoCut.getWidth(), "Il contenuto degli appunti non è stato ripristinato correttamente.");
     }
 
+    @Test
+    @DisplayName("Copia di una selezione multipla")
+    void testCopyOfMultipleSelectionCopiesEveryShape() throws Exception {
+        AbstractShape first = insertAndSelectShape("Rectangle", 50, 50);
+        insertAndSelectShape("Ellipse", 300, 300);
+        runOnFxThreadAndWait(() -> controller.toggleShapeSelection(first));
+
+        runOnFxThreadAndWait(() -> controller.handleCopyShape(new ActionEvent()));
+        assertEquals(2, clipboardManager.getClipboardSize(), "Gli appunti devono contenere tutte le figure selezionate.");
+        assertEquals(2, model.getShapes().size(), "La copia non deve modificare il modello.");
+    }
+
     @Test
     @DisplayName("Annulla dopo Copia")
     void testUndoAfterCopy() throws Exception {
@@ -5,8 +5,6 @@ import com.geometricdrawing.command.AddShapeCommand;
 import com.geometricdrawing.command.Command;
 import com.geometricdrawing.command.CommandManager;
 import com.geometricdrawing.command.ChangeWidthCommand; // Keep for stream().anyMatch if needed, but not for stack size
-import com.geometricdrawing.decorator.BorderColorDecorator;
-import com.geometricdrawing.decorator.FillColorDecorator;
 import com.geometricdrawing.decorator.ShapeDecorator;
 import com.geometricdrawing.factory.PolygonFactory;
 import com.geometricdrawing.factory.ShapeFactory;
@@ -24,7 +22,7 @@ import javafx.scene.paint.Color;
 import org.junit.jupiter.api.*;
 
 import java.lang.reflect.Field;
-import java.util.Stack;
+import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
@@ -242,12 +240,8 @@ public class ShapeInsertionIntegrationTest {
         }
     }
 
-    @SuppressWarnings("unchecked")
-    private Stack<Command> getUndoStack(CommandManager cm)
-            throws NoSuchFieldException, IllegalAccessException {
-        Field stackField = CommandManager.class.getDeclaredField("undoStack");
-        stackField.setAccessible(true);
-        return (Stack<Command>) stackField.get(cm);
+    private List<Command> getUndoStack(CommandManager cm) {
+        return cm.getUndoHistory();
     }
 
     private void runOnFxThreadAndWait(Runnable action) throws InterruptedException {
@@ -326,9 +320,10 @@ public class ShapeInsertionIntegrationTest {
         assertEquals(1, model.getShapes().size(), "Il model dovrebbe contenere una forma.");
         assertSame(decoratedShape, model.getShapes().get(0), "La forma nel controller e nel model non corrispondono.");
 
-        assertTrue(decoratedShape instanceof BorderColorDecorator, "La forma dovrebbe essere decorata con BorderColorDecorator.");
-        AbstractShape shapeAfterBorder = ((ShapeDecorator) decoratedShape).getInnerShape();
-        assertTrue(shapeAfterBorder instanceof FillColorDecorator, "Dopo BorderColor, ci si aspetta FillColorDecorator.");
+        assertFalse(decoratedShape instanceof ShapeDecorator, "La forma non dovrebbe più essere avvolta da decoratori.");
+        assertNotNull(decoratedShape.getStyle(), "La forma dovrebbe avere uno stile con i colori scelti.");
+        assertEquals(fillColorPicker.getValue(), decoratedShape.getFillColor(), "Il colore di riempimento non corrisponde al picker.");
+        assertEquals(borderColorPicker.getValue(), decoratedShape.getBorderColor(), "Il colore del bordo non corrisponde al picker.");
         AbstractShape baseShape = getBaseShape(decoratedShape);
 
         assertTrue(baseShape instanceof Rectangle, "La forma base aggiunta dovrebbe essere un Rettangolo.");
@@ -338,7 +333,7 @@ public class ShapeInsertionIntegrationTest {
         assertEquals(ShapeFactory.DEFAULT_HEIGHT, baseShape.getHeight(), "L'altezza non corrisponde.");
         assertEquals(0, baseShape.getZ(), "Lo Z-order dovrebbe essere 0 per la prima forma.");
 
-        Stack<Command> undoStack = getUndoStack(commandManager);
+        List<Command> undoStack = getUndoStack(commandManager);
         assertEquals(1, undoStack.size(), "Solo AddShapeCommand dovrebbe essere nello stack undo perché le dimensioni di default della forma corrispondono a quelle iniziali degli spinner.");
         assertTrue(undoStack.get(0) instanceof AddShapeCommand, "Il comando dovrebbe essere AddShapeCommand.");
 
@@ -374,9 +369,7 @@ public class ShapeInsertionIntegrationTest {
         AbstractShape decoratedShape = insertAndGetSelectedShapeFromController("Ellipse", clickX, clickY);
 
         assertEquals(1, model.getShapes().size());
-        assertTrue(decoratedShape instanceof BorderColorDecorator);
-        AbstractShape shapeAfterBorder = ((ShapeDecorator) decoratedShape).getInnerShape();
-        assertTrue(shapeAfterBorder instanceof FillColorDecorator);
+        assertFalse(decoratedShape instanceof ShapeDecorator);
         AbstractShape baseShape = getBaseShape(decoratedShape);
 
         assertTrue(baseShape instanceof Ellipse);
@@ -386,16 +379,13 @@ public class ShapeInsertionIntegrationTest {
         assertEquals(ShapeFactory.DEFAULT_HEIGHT, baseShape.getHeight());
         assertEquals(decoratedShape, getPrivateField(controller, "currentShape"));
 
-        BorderColorDecorator bcd = (BorderColorDecorator) decoratedShape;
-        assertEquals(customBorder, bcd.getBorderColor());
-
-        FillColorDecorator fcd = (FillColorDecorator) shapeAfterBorder;
-        assertEquals(customFill, fcd.getFillColor());
+        assertEquals(customBorder, decoratedShape.getBorderColor());
+        assertEquals(customFill, decoratedShape.getFillColor());
 
         assertFalse(fillColorPicker.isDisabled(),"Fill picker dovrebbe essere ABILITATO quando un'Ellisse è selezionata.");
         assertFalse(borderColorPicker.isDisabled(),"Border picker dovrebbe essere ABILITATO quando un'Ellisse è selezionata.");
 
-        Stack<Command> undoStack = getUndoStack(commandManager);
+        List<Command> undoStack = getUndoStack(commandManager);
         assertEquals(1, undoStack.size(), "Solo AddShapeCommand dovrebbe essere nello stack undo per l'ellisse se gli spinner sono inizializzati con i default.");
         assertTrue(undoStack.get(0) instanceof AddShapeCommand, "Il comando dovrebbe essere AddShapeCommand per l'ellisse.");
     }
@@ -415,12 +405,11 @@ public class ShapeInsertionIntegrationTest {
         AbstractShape decoratedShape = insertAndGetSelectedShapeFromController("Line", clickX, clickY);
 
         assertEquals(1, model.getShapes().size());
-        assertTrue(decoratedShape instanceof BorderColorDecorator, "La Linea dovrebbe essere decorata con BorderColorDecorator.");
-        BorderColorDecorator bcd = (BorderColorDecorator) decoratedShape;
-        assertEquals(lineBorderColor, bcd.getBorderColor(), "Colore bordo linea non corretto.");
+        assertFalse(decoratedShape instanceof ShapeDecorator, "La Linea non dovrebbe più essere avvolta da decoratori.");
+        assertEquals(lineBorderColor, decoratedShape.getBorderColor(), "Colore bordo linea non corretto.");
 
         AbstractShape baseShape = getBaseShape(decoratedShape);
-        assertFalse(baseShape instanceof FillColorDecorator, "La Linea base non dovrebbe avere FillColorDecorator.");
+        assertNull(baseShape.getFillColor(), "La Linea non dovrebbe avere un colore di riempimento.");
 
         assertTrue(baseShape instanceof Line, "La forma base dovrebbe essere una Linea.");
         assertEquals(clickX, baseShape.getX(), "X iniziale linea errato.");
@@ -440,7 +429,7 @@ public class ShapeInsertionIntegrationTest {
         assertEquals(1.0, heightSpinner.getValueFactory().getValue(), 0.001, "Spinner altezza per Linea dovrebbe mostrare 1.0.");
 
 
-        Stack<Command> undoStack = getUndoStack(commandManager);
+        List<Command> undoStack = getUndoStack(commandManager);
         // CORREZIONE: Solo AddShapeCommand è atteso, poiché updateSpinners non genera un ChangeWidthCommand
         // se la larghezza della linea corrisponde già al valore che lo spinner sta per assumere.
         assertEquals(1, undoStack.size(), "Solo AddShapeCommand atteso per la Linea.");
@@ -459,9 +448,10 @@ public class ShapeInsertionIntegrationTest {
         assertEquals(1, model.getShapes().size(), "Il model dovrebbe contenere una forma.");
         assertSame(decoratedShape, model.getShapes().get(0), "La forma nel controller e nel model non corrispondono.");
 
-        assertTrue(decoratedShape instanceof BorderColorDecorator, "La forma dovrebbe essere decorata con BorderColorDecorator.");
-        AbstractShape shapeAfterBorder = ((ShapeDecorator) decoratedShape).getInnerShape();
-        assertTrue(shapeAfterBorder instanceof FillColorDecorator, "Dopo BorderColor, ci si aspetta FillColorDecorator.");
+        assertFalse(decoratedShape instanceof ShapeDecorator, "La forma non dovrebbe più essere avvolta da decoratori.");
+        assertNotNull(decoratedShape.getStyle(), "La forma dovrebbe avere uno stile con i colori scelti.");
+        assertEquals(fillColorPicker.getValue(), decoratedShape.getFillColor(), "Il colore di riempimento non corrisponde al picker.");
+        assertEquals(borderColorPicker.getValue(), decoratedShape.getBorderColor(), "Il colore del bordo non corrisponde al picker.");
         AbstractShape baseShape = getBaseShape(decoratedShape);
 
         assertTrue(baseShape instanceof Polygon, "La forma base aggiunta dovrebbe essere un Poligono.");
@@ -469,7 +459,7 @@ public class ShapeInsertionIntegrationTest {
         assertEquals(clickY, baseShape.getY(), "La coordinata Y non corrisponde.");
         assertEquals(0, baseShape.getZ(), "Lo Z-order dovrebbe essere 0 per la prima forma.");
 
-        Stack<Command> undoStack = getUndoStack(commandManager);
+        List<Command> undoStack = getUndoStack(commandManager);
         assertEquals(1, undoStack.size(), "Solo AddShapeCommand dovrebbe essere nello stack undo.");
         assertTrue(undoStack.get(0) instanceof AddShapeCommand, "Il comando dovrebbe essere AddShapeCommand.");
 
@@ -21,7 +21,7 @@ import javafx.scene.paint.Color;
 import org.junit.jupiter.api.*;
 
 import java.lang.reflect.Field;
-import java.util.Stack;
+import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
@@ -198,12 +198,8 @@ public class ShapeResizeIntegrationTest {
         }
     }
 
-    @SuppressWarnings("unchecked")
-    private Stack<Command> getUndoStack(CommandManager cm)
-            throws NoSuchFieldException, IllegalAccessException {
-        Field stackField = CommandManager.class.getDeclaredField("undoStack");
-        stackField.setAccessible(true);
-        return (Stack<Command>) stackField.get(cm);
+    private List<Command> getUndoStack(CommandManager cm) {
+        return cm.getUndoHistory();
     }
 
     private void runOnFxThreadAndWait(Runnable action) throws InterruptedException {
@@ -263,7 +259,7 @@ public class ShapeResizeIntegrationTest {
         assertEquals(initialWidthFromFactory, baseRectangle.getWidth(), "Larghezza iniziale del rettangolo errata.");
         assertEquals(initialWidthFromFactory, widthSpinner.getValueFactory().getValue(), "Valore iniziale dello spinner larghezza errato.");
 
-        Stack<Command> undoStackBeforeResize = getUndoStack(commandManager);
+        List<Command> undoStackBeforeResize = getUndoStack(commandManager);
         assertEquals(1, undoStackBeforeResize.size(), "Undo stack dovrebbe avere 1 comando (AddShape) prima del ridimensionamento.");
 
         runOnFxThreadAndWait(() -> widthSpinner.getValueFactory().setValue(newWidth));
@@ -271,9 +267,9 @@ public class ShapeResizeIntegrationTest {
         assertEquals(newWidth, baseRectangle.getWidth(), "Larghezza del rettangolo non aggiornata dopo modifica spinner.");
         assertEquals(newWidth, widthSpinner.getValueFactory().getValue(), "Valore spinner larghezza non aggiornato.");
 
-        Stack<Command> undoStackAfterResize = getUndoStack(commandManager);
+        List<Command> undoStackAfterResize = getUndoStack(commandManager);
         assertEquals(2, undoStackAfterResize.size(), "Undo stack dovrebbe avere 2 comandi dopo il ridimensionamento.");
-        assertTrue(undoStackAfterResize.peek() instanceof ChangeWidthCommand, "L'ultimo comando dovrebbe essere ChangeWidthCommand.");
+        assertTrue(undoStackAfterResize.get(undoStackAfterResize.size() - 1) instanceof ChangeWidthCommand, "L'ultimo comando dovrebbe essere ChangeWidthCommand.");
     }
 
     @Test
@@ -288,7 +284,7 @@ public class ShapeResizeIntegrationTest {
         assertEquals(initialHeightFromFactory, baseEllipse.getHeight(), "Altezza iniziale ellisse errata.");
         assertEquals(initialHeightFromFactory, heightSpinner.getValueFactory().getValue(), "Valore iniziale spinner altezza errato.");
 
-        Stack<Command> undoStackBeforeResize = getUndoStack(commandManager);
+        List<Command> undoStackBeforeResize = getUndoStack(commandManager);
         assertEquals(1, undoStackBeforeResize.size(), "Undo stack dovrebbe avere 1 comando (AddShape) prima del ridimensionamento.");
 
         runOnFxThreadAndWait(() -> heightSpinner.getValueFactory().setValue(newHeight));
@@ -296,9 +292,9 @@ public class ShapeResizeIntegrationTest {
         assertEquals(newHeight, baseEllipse.getHeight(), "Altezza ellisse non aggiornata dopo modifica spinner.");
         assertEquals(newHeight, heightSpinner.getValueFactory().getValue(), "Valore spinner altezza non aggiornato.");
 
-        Stack<Command> undoStackAfterResize = getUndoStack(commandManager);
+        List<Command> undoStackAfterResize = getUndoStack(commandManager);
         assertEquals(2, undoStackAfterResize.size(), "Undo stack dovrebbe avere 2 comandi dopo il ridimensionamento.");
-        assertTrue(undoStackAfterResize.peek() instanceof ChangeHeightCommand, "L'ultimo comando dovrebbe essere ChangeHeightCommand.");
+        assertTrue(undoStackAfterResize.get(undoStackAfterResize.size() - 1) instanceof ChangeHeightCommand, "L'ultimo comando dovrebbe essere ChangeHeightCommand.");
     }
 
     @Test
@@ -315,7 +311,7 @@ public class ShapeResizeIntegrationTest {
         assertEquals(0.0, baseLine.getHeight(), 0.0001, "Altezza iniziale di una linea orizzontale di default dovrebbe essere 0.");
         assertTrue(heightSpinner.isDisabled(), "Spinner altezza dovrebbe essere disabilitato per la linea.");
 
-        Stack<Command> undoStackBeforeResize = getUndoStack(commandManager);
+        List<Command> undoStackBeforeResize = getUndoStack(commandManager);
         assertEquals(1, undoStackBeforeResize.size(), "Undo stack dovrebbe avere 1 comando prima del ridimensionamento manuale.");
 
         runOnFxThreadAndWait(() -> widthSpinner.getValueFactory().setValue(newSpinnerSetting));
@@ -325,9 +321,9 @@ public class ShapeResizeIntegrationTest {
         assertEquals(0.0, baseLine.getHeight(), 0.0001, "Altezza linea non dovrebbe cambiare con la modifica della larghezza.");
         assertEquals(newSpinnerSetting, ((Line)baseLine).getLength(), 0.0001, "Lunghezza geometrica linea errata.");
 
-        Stack<Command> undoStackAfterResize = getUndoStack(commandManager);
+        List<Command> undoStackAfterResize = getUndoStack(commandManager);
         assertEquals(2, undoStackAfterResize.size(), "Undo stack dovrebbe avere 2 comandi dopo il ridimensionamento manuale.");
-        assertTrue(undoStackAfterResize.peek() instanceof ChangeWidthCommand, "L'ultimo comando dovrebbe essere ChangeWidthCommand.");
+        assertTrue(undoStackAfterResize.get(undoStackAfterResize.size() - 1) instanceof ChangeWidthCommand, "L'ultimo comando dovrebbe essere ChangeWidthCommand.");
     }
 
     @Test
@@ -0,0 +1,131 @@
+package com.geometricdrawing.model;
+
+import com.geometricdrawing.decorator.BorderColorDecorator;
+import com.geometricdrawing.decorator.FillColorDecorator;
+import com.geometricdrawing.decorator.ShapeDecorator;
+import javafx.geometry.Point2D;
+import javafx.scene.paint.Color;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AbstractShapeTest {
+
+    // Sottoclasse senza costruttore di copia: deepClone deve ricadere sulla serializzazione
+    static class CustomRectangle extends Rectangle {
+        CustomRectangle(double x, double y, double width, double height) {
+            super(x, y, width, height);
+        }
+    }
+
+    private static void assertSameGeometry(AbstractShape expected, AbstractShape actual) {
+        assertNotSame(expected, actual, "Il clone deve essere un oggetto distinto.");
+        assertSame(expected.getClass(), actual.getClass(), "Il clone deve avere lo stesso tipo dell'originale.");
+        assertEquals(expected.getX(), actual.getX());
+        assertEquals(expected.getY(), actual.getY());
+        assertEquals(expected.getZ(), actual.getZ());
+        assertEquals(expected.getWidth(), actual.getWidth());
+        assertEquals(expected.getHeight(), actual.getHeight());
+        assertEquals(expected.getRotationAngle(), actual.getRotationAngle());
+        assertEquals(expected.getScaleX(), actual.getScaleX());
+        assertEquals(expected.getScaleY(), actual.getScaleY());
+        assertEquals(expected.getStyle(), actual.getStyle());
+    }
+
+    @Test
+    void deepCloneShouldCopyEveryShapeType() {
+        Polygon polygon = new Polygon(0, 0);
+        polygon.addVertex(40, 0);
+        polygon.addVertex(20, 30);
+        TextShape text = new TextShape(5, 5, 80, 20, "testo di prova", 14);
+        List<AbstractShape> shapes = List.of(new Rectangle(10, 20, 30, 40), new Ellipse(1, 2, 3, 4),
+                new Line(0, 0, 50, 25), polygon, text);
+
+        for (AbstractShape shape : shapes) {
+            shape.setZ(3);
+            shape.setRotationAngle(30);
+            shape.setScaleX(-1);
+            shape.setStyle(new ShapeStyle(Color.RED, Color.BLUE));
+
+            assertSameGeometry(shape, shape.deepClone());
+        }
+        assertEquals(polygon.getVertices(), ((Polygon) polygon.deepClone()).getVertices());
+        assertEquals("testo di prova", ((TextShape) text.deepClone()).getText());
+        assertEquals(14, ((TextShape) text.deepClone()).getFontSize());
+    }
+
+    @Test
+    void deepCloneOfPolygonShouldNotShareVertices() {
+        Polygon polygon = new Polygon(0, 0);
+        polygon.addVertex(40, 0);
+        polygon.addVertex(20, 30);
+
+        Polygon clone = (Polygon) polygon.deepClone();
+        clone.moveBy(100, 0);
+        clone.addVertex(0, 50);
+
+        assertEquals(3, polygon.getVertexCount(), "Aggiungere vertici al clone non deve modificare l'originale.");
+        assertEquals(0, polygon.getVertexX(0), "Spostare il clone non deve spostare l'originale.");
+        assertEquals(100, clone.getVertexX(0));
+    }
+
+    @Test
+    void deepCloneShouldCopyDecoratorChains() {
+        Rectangle base = new Rectangle(10, 10, 20, 20);
+        AbstractShape decorated = new BorderColorDecorator(new FillColorDecorator(base, Color.YELLOW), Color.GREEN);
+
+        AbstractShape clone = decorated.deepClone();
+
+        assertInstanceOf(BorderColorDecorator.class, clone);
+        assertEquals(Color.GREEN, clone.getBorderColor());
+        assertEquals(Color.YELLOW, clone.getFillColor());
+        AbstractShape clonedBase = ((ShapeDecorator) ((ShapeDecorator) clone).getInnerShape()).getInnerShape();
+        assertNotSame(base, clonedBase, "Anche la figura avvolta deve essere copiata.");
+        clone.moveBy(5, 5);
+        assertEquals(10, base.getX(), "Spostare il clone non deve spostare la figura originale.");
+    }
+
+    @Test
+    void deepCloneShouldFallBackToSerializationForUnknownSubclasses() {
+        CustomRectangle custom = new CustomRectangle(1, 2, 3, 4);
+
+        AbstractShape clone = custom.deepClone();
+
+        assertInstanceOf(CustomRectangle.class, clone, "Il tipo della sottoclasse non deve andare perso.");
+        assertSameGeometry(custom, clone);
+    }
+
+    @Test
+    void polygonCloneShouldBeEqualAndIndependent() {
+        Polygon polygon = new Polygon(0, 0);
+        int n = 200;
+        double[] xs = new double[n];
+        double[] ys = new double[n];
+        for (int i = 0; i < n; i++) {
+            double angle = 2 * Math.PI * i / n;
+            double radius = (i % 2 == 0) ? 1000 : 400;
+            xs[i] = radius * Math.cos(angle);
+            ys[i] = radius * Math.sin(angle);
+        }
+        polygon.addVertices(xs, ys, n);
+
+        Polygon clone = (Polygon) polygon.deepClone();
+        assertNotSame(polygon, clone);
+        assertSameGeometry(polygon, clone);
+        assertEquals(polygon.getVertices(), clone.getVertices(), "Il clone deve avere gli stessi vertici.");
+        assertEquals(polygon.getVertices(), ((Polygon) polygon.serializationClone()).getVertices(),
+                "Costruttore di copia e serializzazione devono dare lo stesso poligono.");
+
+        List<Point2D> vertices = new ArrayList<>(polygon.getVertices());
+        clone.removeVertex(0);
+        clone.moveTo(500, 500);
+        assertEquals(vertices, polygon.getVertices(), "Modificare il clone non deve cambiare l'originale.");
+
+        List<Point2D> cloneVertices = new ArrayList<>(clone.getVertices());
+        polygon.removeVertex(vertices.size() - 1);
+        assertEquals(cloneVertices, clone.getVertices(), "Modificare l'originale non deve cambiare il clone.");
+    }
+}
@@ -1,7 +1,17 @@
 package com.geometricdrawing.model;
 
+import com.geometricdrawing.decorator.BorderColorDecorator;
+import com.geometricdrawing.decorator.FillColorDecorator;
+import javafx.collections.ListChangeListener;
+import javafx.scene.paint.Color;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.List;
 import static org.junit.jupiter.api.Assertions.*;
 
 class DrawingModelTest {
@@ -125,4 +135,190 @@ class DrawingModelTest {
     }
 
     // END TEST RIMOZIONE FIGURE
-}
\ No newline at end of file
+
+    // TEST ORDINAMENTO Z
+
+    @Test
+    void removeShapeShouldRenumberZOfFollowingShapes() {
+        AbstractShape ellipse = new Ellipse(20, 20, 8, 8);
+        AbstractShape line = new Line(0, 0, 1, 1);
+        model.addShape(ellipse);
+        model.addShape(line);
+
+        model.removeShape(rect);
+        assertEquals(0, ellipse.getZ(), "Lo Z delle figure successive dovrebbe scalare dopo la rimozione.");
+        assertEquals(1, line.getZ());
+
+        AbstractShape other = new Rectangle(0, 0, 5, 5);
+        model.addShape(other);
+        assertEquals(2, other.getZ(), "La nuova figura non dovrebbe avere lo stesso Z di una figura esistente.");
+    }
+
+    @Test
+    void shapesOrderedByZShouldBeLiveReverseView() {
+        AbstractShape ellipse = new Ellipse(20, 20, 8, 8);
+        model.addShape(ellipse);
+
+        List<AbstractShape> byZ = model.getShapesOrderedByZ();
+        assertSame(ellipse, byZ.get(0), "La prima figura della vista dovrebbe essere quella con Z maggiore.");
+        assertSame(rect, byZ.get(1));
+
+        model.changeZOrder(ellipse, 0);
+        assertSame(rect, byZ.get(0), "La vista dovrebbe riflettere subito il cambio di Z.");
+        assertSame(byZ, model.getShapesOrderedByZ(), "La vista non dovrebbe essere ricreata a ogni chiamata.");
+        assertThrows(UnsupportedOperationException.class, () -> byZ.remove(0));
+    }
+
+    // END TEST ORDINAMENTO Z
+
+    // TEST AREA SPORCA
+
+    @Test
+    void moveShapeShouldMarkOldAndNewBoundsDirty() {
+        model.getDirtyRegion().clear();
+        model.moveShapeTo(rect, 200, 300);
+
+        DirtyRegion dirty = model.getDirtyRegion();
+        assertFalse(dirty.isEmpty(), "Lo spostamento dovrebbe sporcare il canvas.");
+        assertEquals(10, dirty.getMinX(), 1e-9, "L'area sporca dovrebbe includere la vecchia posizione.");
+        assertEquals(10, dirty.getMinY(), 1e-9);
+        assertEquals(250, dirty.getMaxX(), 1e-9, "L'area sporca dovrebbe includere la nuova posizione.");
+        assertEquals(350, dirty.getMaxY(), 1e-9);
+    }
+
+    @Test
+    void addAndRemoveShouldMarkShapeBoundsDirty() {
+        model.getDirtyRegion().clear();
+        AbstractShape ellipse = new Ellipse(100, 100, 20, 10);
+        model.addShape(ellipse);
+        assertEquals(100, model.getDirtyRegion().getMinX(), 1e-9);
+        assertEquals(110, model.getDirtyRegion().getMaxY(), 1e-9);
+
+        model.getDirtyRegion().clear();
+        model.removeShape(rect);
+        assertEquals(10, model.getDirtyRegion().getMinX(), 1e-9);
+        assertEquals(60, model.getDirtyRegion().getMaxX(), 1e-9);
+    }
+
+    @Test
+    void collectShapesInShouldReturnIntersectingShapesInZOrder() {
+        AbstractShape ellipse = new Ellipse(40, 40, 20, 20);
+        AbstractShape far = new Rectangle(1000, 1000, 10, 10);
+        model.addShape(ellipse);
+        model.addShape(far);
+
+        List<AbstractShape> found = new java.util.ArrayList<>();
+        model.collectShapesIn(30, 30, 50, 50, found);
+        assertEquals(List.of(rect, ellipse), found, "Dovrebbero essere restituite solo le figure nell'area, per Z crescente.");
+    }
+
+    // END TEST AREA SPORCA
+
+    // TEST STILE
+
+    @Test
+    void setFillAndBorderColorShouldUpdateShapeStyle() {
+        model.setFillColor(rect, Color.RED);
+        model.setBorderColor(rect, Color.BLUE);
+
+        assertEquals(new ShapeStyle(Color.RED, Color.BLUE), rect.getStyle(), "Lo stile della figura dovrebbe contenere entrambi i colori.");
+    }
+
+    @Test
+    void saveAndLoadShouldPreserveShapeStyle() throws Exception {
+        rect.setStyle(new ShapeStyle(Color.color(0.2, 0.4, 0.6, 0.5), null));
+        File file = File.createTempFile("disegno", ".ser");
+        file.deleteOnExit();
+        model.saveToFile(file);
+
+        DrawingModel loaded = new DrawingModel();
+        loaded.loadFromFile(file);
+
+        AbstractShape shape = loaded.getShapes().get(0);
+        assertEquals(rect.getStyle(), shape.getStyle(), "Lo stile dovrebbe sopravvivere al salvataggio.");
+        assertNull(shape.getBorderColor(), "Un colore assente deve restare assente dopo il caricamento.");
+    }
+
+    @Test
+    void loadFromFileShouldFlattenLegacyDecoratorChains() throws Exception {
+        // Stesso contenuto che le versioni precedenti salvavano: figure avvolte da FillColor e BorderColor
+        Ellipse ellipse = new Ellipse(20, 30, 40, 50);
+        AbstractShape decorated = new BorderColorDecorator(new FillColorDecorator(ellipse, Color.YELLOW), Color.GREEN);
+        File file = File.createTempFile("vecchio", ".ser");
+        file.deleteOnExit();
+        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(file))) {
+            oos.writeObject(new ArrayList<>(List.of(decorated)));
+        }
+
+        DrawingModel loaded = new DrawingModel();
+        loaded.loadFromFile(file);
+
+        AbstractShape shape = loaded.getShapes().get(0);
+        assertInstanceOf(Ellipse.class, shape, "La catena di decoratori dovrebbe essere sostituita dalla figura base.");
+        assertEquals(Color.YELLOW, shape.getFillColor(), "Il riempimento del decoratore dovrebbe passare nello stile.");
+        assertEquals(Color.GREEN, shape.getBorderColor(), "Il bordo del decoratore dovrebbe passare nello stile.");
+        assertEquals(20, shape.getX(), 1e-9);
+        assertSame(shape, loaded.getTopmostShapeAt(40, 50, 0), "L'indice spaziale dovrebbe contenere la figura base.");
+    }
+
+    // TEST GRUPPI DI MODIFICHE
+
+    @Test
+    void batchShouldEmitASingleListChangeAndKeepTheIndexUpdated() {
+        List<Integer> events = new ArrayList<>();
+        model.getShapes().addListener((ListChangeListener<AbstractShape>) c -> events.add(1));
+        List<Rectangle> added = new ArrayList<>();
+
+        model.beginBatch();
+        for (int i = 0; i < 10_000; i++) {
+            Rectangle r = new Rectangle(i, 0, 1, 1);
+            added.add(r);
+            model.addShape(r);
+        }
+        model.removeShape(rect);
+        model.changeZOrder(added.get(0), 500);
+        // durante il gruppo Z e indice spaziale sono già aggiornati
+        assertEquals(500, added.get(0).getZ(), "Lo Z deve essere aggiornato anche durante il gruppo.");
+        assertSame(added.get(9_999), model.getTopmostShapeAt(9_999.5, 0.5, 0), "L'indice deve contenere le figure aggiunte.");
+        assertTrue(events.isEmpty(), "Nessun evento prima della chiusura del gruppo.");
+        model.endBatch();
+
+        assertEquals(1, events.size(), "Il gruppo deve produrre un solo evento della lista.");
+        assertEquals(10_000, model.getShapes().size());
+        for (int i = 0; i < model.getShapes().size(); i++) {
+            assertEquals(i, model.getShapes().get(i).getZ(), "Lo Z deve coincidere con la posizione.");
+        }
+    }
+
+    @Test
+    void batchShouldNotifyEachChangedShapeOnceAtTheEnd() {
+        List<AbstractShape> notified = new ArrayList<>();
+        model.addShapeChangeListener(notified::add);
+
+        model.beginBatch();
+        model.beginBatch(); // gruppo annidato: conta la chiusura del più esterno
+        model.moveShapeTo(rect, 100, 100);
+        model.setFillColor(rect, Color.RED);
+        model.endBatch();
+        assertTrue(notified.isEmpty(), "Le notifiche devono attendere la chiusura del gruppo più esterno.");
+        model.endBatch();
+
+        assertEquals(List.of(rect), notified, "Ogni figura modificata va notificata una sola volta.");
+        assertFalse(model.isInBatch());
+        assertThrows(IllegalStateException.class, model::endBatch);
+    }
+
+    @Test
+    void replaceShapesShouldEmitASingleChange() {
+        List<Integer> events = new ArrayList<>();
+        model.getShapes().addListener((ListChangeListener<AbstractShape>) c -> events.add(1));
+        List<AbstractShape> shapes = List.of(new Ellipse(0, 0, 5, 5), new Line(0, 0, 5, 5));
+
+        model.replaceShapes(shapes);
+
+        assertEquals(1, events.size());
+        assertEquals(shapes, model.getShapes());
+        assertNull(model.getTopmostShapeAt(30, 30, 0), "La figura sostituita non deve restare nell'indice.");
+        assertEquals(1, shapes.get(1).getZ());
+    }
+}
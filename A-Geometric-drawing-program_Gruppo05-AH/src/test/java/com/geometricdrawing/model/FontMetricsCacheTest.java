@@ -0,0 +1,54 @@
+package com.geometricdrawing.model;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FontMetricsCacheTest {
+    private FontMetricsCache.Metrics metrics;
+
+    @BeforeEach
+    void setUp() {
+        // Font fittizio a larghezza fissa: ogni carattere è largo 10
+        metrics = new FontMetricsCache.Metrics(null, s -> s.length() * 10.0, 16, 12);
+    }
+
+    @Test
+    void shouldExposeLineMetrics() {
+        assertEquals(16, metrics.getLineHeight());
+        assertEquals(12, metrics.getAscent());
+        assertEquals(10, metrics.getSpaceWidth(), "La larghezza dello spazio dovrebbe essere ricavata per differenza.");
+    }
+
+    @Test
+    void wordWidthShouldBeMeasuredOnce() {
+        long before = metrics.getMeasureCount();
+        assertEquals(50, metrics.wordWidth("hello"));
+        assertEquals(50, metrics.wordWidth("hello"));
+        assertEquals(before + 1, metrics.getMeasureCount(), "La seconda richiesta dovrebbe essere letta dalla cache.");
+    }
+
+    @Test
+    void textWidthShouldNotBeCached() {
+        long before = metrics.getMeasureCount();
+        metrics.textWidth("una riga intera");
+        metrics.textWidth("una riga intera");
+        assertEquals(before + 2, metrics.getMeasureCount());
+    }
+
+    @Test
+    void wordCacheShouldBeBounded() {
+        for (int i = 0; i <= FontMetricsCache.MAX_WORDS_PER_FONT; i++) {
+            metrics.wordWidth("w" + i);
+        }
+        long before = metrics.getMeasureCount();
+        metrics.wordWidth("w0"); // la parola usata meno di recente è stata scartata
+        assertEquals(before + 1, metrics.getMeasureCount(), "La cache delle parole non dovrebbe crescere oltre il limite.");
+    }
+
+    @Test
+    void nullFontShouldThrow() {
+        assertThrows(IllegalArgumentException.class, () -> FontMetricsCache.get((String) null, 12));
+    }
+}
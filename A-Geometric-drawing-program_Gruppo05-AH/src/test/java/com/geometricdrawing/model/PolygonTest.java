@@ -190,4 +190,171 @@ class PolygonTest {
         // Punto molto lontano dal bounding box
         assertFalse(polygon.containsPoint(200, 200, 1.0));
     }
-}
\ No newline at end of file
+
+    @Test
+    void primitiveAccessorsShouldMatchVertices() {
+        polygon.setVertices(testVertices);
+
+        assertEquals(3, polygon.getVertexCount());
+        assertEquals(50, polygon.getVertexX(1));
+        assertEquals(60, polygon.getVertexY(2));
+        assertThrows(IndexOutOfBoundsException.class, () -> polygon.getVertexX(3));
+    }
+
+    @Test
+    void verticesViewShouldBeReadOnly() {
+        polygon.setVertices(testVertices);
+
+        assertThrows(UnsupportedOperationException.class, () -> polygon.getVertices().add(new Point2D(0, 0)));
+        testVertices.set(0, new Point2D(0, 0));
+        assertEquals(new Point2D(10, 20), polygon.getVertices().get(0), "Il poligono dovrebbe copiare i vertici ricevuti.");
+    }
+
+    @Test
+    void boundsShouldHandleNegativeCoordinates() {
+        Polygon negative = new Polygon(-50, -60);
+        negative.addVertex(-10, -60);
+        negative.addVertex(-30, -20);
+
+        assertEquals(-50, negative.getX());
+        assertEquals(-60, negative.getY());
+        assertEquals(40, negative.getWidth());
+        assertEquals(40, negative.getHeight());
+    }
+
+    @Test
+    void deepCloneShouldPreserveVertices() {
+        polygon.setVertices(testVertices);
+        polygon.moveBy(5, 5);
+
+        Polygon clone = (Polygon) polygon.deepClone();
+
+        assertNotNull(clone);
+        assertEquals(polygon.getVertices(), clone.getVertices());
+        assertEquals(polygon.getX(), clone.getX());
+        assertTrue(clone.containsPoint(35, 35, 0), "Il clone dovrebbe rispondere all'hit-testing come l'originale.");
+    }
+
+    @Test
+    void deepCloneShouldShareVerticesUntilShapeChanges() {
+        polygon.setVertices(testVertices);
+        Polygon clone = (Polygon) polygon.deepClone();
+
+        clone.moveBy(100, 50);
+        assertTrue(clone.sharesVerticesWith(polygon), "Uno spostamento non dovrebbe copiare i vertici.");
+        assertEquals(polygon.getVertexX(0) + 100, clone.getVertexX(0), 1e-9);
+        assertEquals(polygon.getVertexY(0) + 50, clone.getVertexY(0), 1e-9);
+        assertTrue(clone.containsPoint(polygon.getX() + 100 + 1, polygon.getY() + 50 + 1, 0)
+                == polygon.containsPoint(polygon.getX() + 1, polygon.getY() + 1, 0),
+                "Il clone spostato dovrebbe rispondere all'hit-testing come l'originale traslato.");
+
+        clone.setWidth(clone.getWidth() * 2);
+        assertFalse(clone.sharesVerticesWith(polygon), "Un ridimensionamento dovrebbe creare vertici privati.");
+        assertEquals(testVertices, polygon.getVertices(), "L'originale non deve cambiare.");
+    }
+
+    @Test
+    void movedPolygonShouldSerializeWorldCoordinates() {
+        polygon.setVertices(testVertices);
+        polygon.moveBy(7, -3);
+
+        Polygon restored = (Polygon) polygon.serializationClone();
+
+        assertEquals(polygon.getVertices(), restored.getVertices());
+        assertEquals(polygon.getX(), restored.getX(), 1e-9);
+    }
+
+    @Test
+    void addVerticesShouldAppendBatchAndExtendBounds() {
+        polygon.addVertices(new double[]{50, 30, 99}, new double[]{20, 60, 99}, 2);
+
+        assertEquals(3, polygon.getVertexCount(), "Dovrebbero essere letti solo count vertici.");
+        assertEquals(new Point2D(30, 60), polygon.getVertices().get(2));
+        assertEquals(10, polygon.getX());
+        assertEquals(20, polygon.getY());
+        assertEquals(40, polygon.getWidth());
+        assertEquals(40, polygon.getHeight());
+        assertThrows(IllegalArgumentException.class, () -> polygon.addVertices(new double[1], new double[1], 2));
+    }
+
+    // Stella con molte punte: poligono concavo con tanti vertici per esercitare la griglia dei lati
+    private static Polygon star(int points, double cx, double cy, double outer, double inner) {
+        int n = points * 2;
+        double[] xs = new double[n];
+        double[] ys = new double[n];
+        for (int i = 0; i < n; i++) {
+            double r = (i % 2 == 0) ? outer : inner;
+            double angle = Math.PI * i / points;
+            xs[i] = cx + r * Math.cos(angle);
+            ys[i] = cy + r * Math.sin(angle);
+        }
+        Polygon star = new Polygon(xs[0], ys[0]);
+        star.removeVertex(0);
+        star.addVertices(xs, ys, n);
+        return star;
+    }
+
+    // Ray-casting di riferimento su tutti i lati, in coordinate del mondo
+    private static boolean referenceContains(Polygon p, double px, double py) {
+        boolean inside = false;
+        int n = p.getVertexCount();
+        for (int i = 0, j = n - 1; i < n; j = i++) {
+            double xi = p.getVertexX(i), yi = p.getVertexY(i), xj = p.getVertexX(j), yj = p.getVertexY(j);
+            if ((yi > py) != (yj > py) && px < (xj - xi) * (py - yi) / (yj - yi) + xi) {
+                inside = !inside;
+            }
+        }
+        return inside;
+    }
+
+    @Test
+    void largePolygonHitTestShouldMatchLinearRayCasting() {
+        Polygon star = star(5_000, 500, 500, 400, 300);
+        assertEquals(10_000, star.getVertexCount());
+
+        for (int k = 0; k < 2_000; k++) {
+            double px = 50 + (k * 37 % 900);
+            double py = 50 + (k * 53 % 900);
+            assertEquals(referenceContains(star, px, py), star.containsPoint(px, py, 0),
+                    "La griglia dei lati dovrebbe dare lo stesso risultato del ray-casting lineare in (" + px + ", " + py + ")");
+        }
+        assertTrue(star.containsPoint(500, 500, 0), "Il centro della stella è interno.");
+        assertFalse(star.containsPoint(950, 950, 0));
+    }
+
+    @Test
+    void largePolygonHitTestShouldFollowMoveAndResize() {
+        Polygon star = star(100, 500, 500, 400, 300);
+        assertTrue(star.containsPoint(500, 500, 0));
+
+        star.moveBy(1000, -200);
+        assertFalse(star.containsPoint(500, 500, 0), "Dopo lo spostamento il vecchio centro è esterno.");
+        assertTrue(star.containsPoint(1500, 300, 0), "Dopo lo spostamento il nuovo centro è interno.");
+
+        star.setWidth(star.getWidth() / 2);
+        assertEquals(referenceContains(star, 1300, 300), star.containsPoint(1300, 300, 0));
+        assertEquals(referenceContains(star, 1000, 300), star.containsPoint(1000, 300, 0));
+    }
+
+    @Test
+    void zigzagPolygonShouldNotBlowUpTheEdgeGrid() {
+        // Ogni lato del dente va da y=0 a y=1000: attraversa tutte le fasce della griglia
+        int n = 100_000;
+        double[] xs = new double[n];
+        double[] ys = new double[n];
+        for (int i = 0; i < n; i++) {
+            xs[i] = i * 0.01;
+            ys[i] = i % 2 == 0 ? 0 : 1000;
+        }
+        Polygon zigzag = new Polygon(xs[0], ys[0]);
+        zigzag.removeVertex(0);
+        zigzag.addVertices(xs, ys, n);
+
+        for (int k = 0; k < 200; k++) {
+            double px = (k * 37 % 1000) + 0.005;
+            double py = 1 + (k * 53 % 998);
+            assertEquals(referenceContains(zigzag, px, py), zigzag.containsPoint(px, py, 0),
+                    "La griglia dei lati dovrebbe dare lo stesso risultato del ray-casting lineare in (" + px + ", " + py + ")");
+        }
+    }
+}
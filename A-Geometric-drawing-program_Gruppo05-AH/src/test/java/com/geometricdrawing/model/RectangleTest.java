@@ -1,5 +1,7 @@
 package com.geometricdrawing.model;
 
+import javafx.geometry.Point2D;
+
 import static org.junit.jupiter.api.Assertions.*;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -33,4 +35,42 @@ class RectangleTest {
         rectangle.setHeight(newHeight);
         assertEquals(newHeight, rectangle.getHeight(), "L'altezza del rettangolo non è stata aggiornata correttamente.");
     }
+
+    @Test
+    void inverseTransformShouldUndoForwardTransform() {
+        rectangle.setRotationAngle(30);
+        rectangle.setScaleX(-1);
+
+        double worldX = rectangle.transformX(25, -10);
+        double worldY = rectangle.transformY(25, -10);
+        assertEquals(25, rectangle.inverseTransformX(worldX, worldY), 1e-9);
+        assertEquals(-10, rectangle.inverseTransformY(worldX, worldY), 1e-9);
+        assertEquals(new Point2D(rectangle.inverseTransformX(worldX, worldY), rectangle.inverseTransformY(worldX, worldY)),
+                rectangle.inverseTransformPoint(worldX, worldY));
+    }
+
+    @Test
+    void cachedTransformShouldFollowChanges() {
+        // Centro in (60, 60): il punto (100, 60) è dentro, a 40 dal centro lungo x
+        assertEquals(40, rectangle.inverseTransformX(100, 60), 1e-9);
+
+        rectangle.setX(50); // centro in (100, 60)
+        assertEquals(0, rectangle.inverseTransformX(100, 60), 1e-9, "La cache dovrebbe seguire lo spostamento.");
+
+        // Ruotando di 90 gradi l'asse x locale punta verso il basso nel mondo
+        rectangle.setRotationAngle(90);
+        assertEquals(20, rectangle.inverseTransformX(100, 80), 1e-9, "La cache dovrebbe seguire la rotazione.");
+        assertEquals(0, rectangle.inverseTransformY(100, 80), 1e-9);
+
+        rectangle.setScaleY(-1);
+        assertEquals(-20, rectangle.inverseTransformX(100, 80), 1e-9, "La cache dovrebbe seguire la specchiatura.");
+    }
+
+    @Test
+    void containsPointShouldUseCurrentTransform() {
+        Rectangle thin = new Rectangle(0, 0, 200, 10);
+        assertFalse(thin.containsPoint(100, 60, 0));
+        thin.setRotationAngle(90);
+        assertTrue(thin.containsPoint(100, 60, 0), "Dopo la rotazione il punto dovrebbe essere dentro la figura.");
+    }
 }
@@ -0,0 +1,142 @@
+package com.geometricdrawing.model;
+
+import com.geometricdrawing.command.BringToForegroundCommand;
+import com.geometricdrawing.command.CommandManager;
+import com.geometricdrawing.command.MoveShapeCommand;
+import javafx.geometry.Bounds;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ShapeSelectionTest {
+
+    private DrawingModel model;
+    private ShapeSelection selection;
+    private Rectangle first;
+    private Rectangle second;
+    private Ellipse third;
+
+    @BeforeEach
+    void setUp() {
+        model = new DrawingModel();
+        first = new Rectangle(0, 0, 10, 10);
+        second = new Rectangle(50, 20, 10, 10);
+        third = new Ellipse(100, 100, 20, 20);
+        model.addShape(first);
+        model.addShape(second);
+        model.addShape(third);
+        selection = new ShapeSelection(model);
+    }
+
+    @Test
+    void selectShouldReplaceTheSelection() {
+        selection.add(first);
+        selection.add(second);
+        selection.select(third);
+
+        assertEquals(List.of(third), selection.getShapes(), "select deve lasciare selezionata solo la figura indicata.");
+        assertSame(third, selection.getPrimary());
+    }
+
+    @Test
+    void toggleShouldAddAndRemoveShapes() {
+        selection.select(first);
+        selection.toggle(second);
+        assertEquals(2, selection.size());
+        assertSame(second, selection.getPrimary(), "L'ultima figura aggiunta diventa la principale.");
+
+        selection.toggle(second);
+        assertEquals(List.of(first), selection.getShapes());
+        assertSame(first, selection.getPrimary(), "Tolta la principale, lo diventa l'ultima rimasta.");
+    }
+
+    @Test
+    void boundsShouldEncloseAllSelectedShapes() {
+        selection.addAll(List.of(first, third));
+        Bounds bounds = selection.getBounds();
+
+        assertEquals(0, bounds.getMinX(), 1e-9);
+        assertEquals(0, bounds.getMinY(), 1e-9);
+        assertEquals(120, bounds.getMaxX(), 1e-9);
+        assertEquals(120, bounds.getMaxY(), 1e-9);
+    }
+
+    @Test
+    void boundsShouldBeCachedUntilASelectedShapeChanges() {
+        selection.addAll(List.of(first, second));
+        Bounds before = selection.getBounds();
+        assertSame(before, selection.getBounds(), "Senza modifiche i bounds devono restare quelli in cache.");
+
+        model.moveShapeTo(third, 500, 500); // figura non selezionata
+        assertSame(before, selection.getBounds(), "Lo spostamento di una figura non selezionata non cambia i bounds.");
+
+        model.moveShapeTo(second, 200, 20);
+        assertEquals(210, selection.getBounds().getMaxX(), 1e-9, "I bounds devono seguire le figure selezionate.");
+    }
+
+    @Test
+    void removedShapesShouldLeaveTheSelection() {
+        selection.addAll(List.of(first, second));
+        model.removeShape(second);
+
+        assertEquals(List.of(first), selection.getShapes(), "Una figura tolta dal modello non può restare selezionata.");
+        assertSame(first, selection.getPrimary());
+    }
+
+    @Test
+    void zOrderChangesShouldKeepTheSelection() {
+        selection.addAll(List.of(first, second));
+        new BringToForegroundCommand(model, first).execute();
+
+        assertTrue(selection.contains(first), "Cambiare lo Z non deve togliere la figura dalla selezione.");
+        assertEquals(List.of(second, first), selection.getShapesByZ());
+    }
+
+    @Test
+    void batchedMovesShouldBeUndoneInOneStep() {
+        CommandManager commandManager = new CommandManager();
+        selection.addAll(List.of(first, second, third));
+        commandManager.beginBatch(model);
+        for (AbstractShape shape : selection.getShapes()) {
+            commandManager.executeCommand(new MoveShapeCommand(model, shape, shape.getX() + 5, shape.getY()));
+        }
+        commandManager.endBatch();
+        assertEquals(55, second.getX(), 1e-9);
+
+        commandManager.undo();
+        assertEquals(0, first.getX(), 1e-9);
+        assertEquals(50, second.getX(), 1e-9);
+        assertEquals(100, third.getX(), 1e-9);
+        assertFalse(commandManager.canUndo(), "Lo spostamento di tutta la selezione è un solo passo di annullamento.");
+    }
+
+    @Test
+    void disposeShouldStopFollowingTheModel() {
+        selection.add(first);
+        selection.dispose();
+        model.removeShape(second);
+
+        assertTrue(selection.isEmpty());
+    }
+
+    @Test
+    void replaceWithShouldKeepThePrimaryAndSkipUnchangedSelections() {
+        selection.select(second);
+        assertTrue(selection.replaceWith(List.of(first, second)));
+        assertSame(second, selection.getPrimary(), "La principale ancora selezionata non deve cambiare.");
+
+        int modCount = selection.getModCount();
+        Bounds bounds = selection.getBounds();
+        assertFalse(selection.replaceWith(List.of(second, first)), "Le stesse figure non cambiano la selezione.");
+        assertEquals(modCount, selection.getModCount());
+        assertSame(bounds, selection.getBounds(), "I bounds in cache devono restare validi.");
+
+        assertTrue(selection.replaceWith(List.of(third)));
+        assertSame(third, selection.getPrimary());
+        assertTrue(selection.replaceWith(List.of()));
+        assertNull(selection.getPrimary());
+    }
+}
@@ -0,0 +1,172 @@
+package com.geometricdrawing.model;
+
+import javafx.geometry.BoundingBox;
+import javafx.geometry.Bounds;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SpatialIndexTest {
+
+    private DrawingModel model;
+    private AbstractShape rect;
+
+    @BeforeEach
+    void setUp() {
+        model = new DrawingModel();
+        rect = new Rectangle(10, 10, 50, 50);
+        model.addShape(rect);
+    }
+
+    @Test
+    void shouldFindShapeContainingPoint() {
+        assertSame(rect, model.getTopmostShapeAt(30, 30, 0), "Il punto interno dovrebbe colpire il rettangolo.");
+        assertNull(model.getTopmostShapeAt(300, 300, 0), "Un punto lontano non dovrebbe colpire nessuna figura.");
+    }
+
+    @Test
+    void shouldRespectThreshold() {
+        assertNull(model.getTopmostShapeAt(63, 30, 0));
+        assertSame(rect, model.getTopmostShapeAt(63, 30, 5), "Il punto entro la soglia dovrebbe selezionare la figura.");
+    }
+
+    @Test
+    void shouldReturnTopmostShapeWhenOverlapping() {
+        AbstractShape ellipse = new Ellipse(20, 20, 40, 40);
+        model.addShape(ellipse);
+        assertSame(ellipse, model.getTopmostShapeAt(40, 40, 0), "Dovrebbe essere restituita la figura con Z maggiore.");
+
+        model.changeZOrder(ellipse, 0);
+        assertSame(rect, model.getTopmostShapeAt(40, 40, 0), "Dopo il cambio di Z il rettangolo dovrebbe essere in cima.");
+    }
+
+    @Test
+    void shouldFollowMoveAndResize() {
+        model.moveShapeTo(rect, 500, 500);
+        assertNull(model.getTopmostShapeAt(30, 30, 0), "La vecchia posizione non dovrebbe più colpire la figura.");
+        assertSame(rect, model.getTopmostShapeAt(520, 520, 0));
+
+        model.setShapeWidth(rect, 400);
+        assertSame(rect, model.getTopmostShapeAt(880, 520, 0), "L'indice dovrebbe seguire la nuova larghezza.");
+        model.setShapeHeight(rect, 400);
+        assertSame(rect, model.getTopmostShapeAt(880, 880, 0), "L'indice dovrebbe seguire la nuova altezza.");
+    }
+
+    @Test
+    void shouldFollowRotation() {
+        AbstractShape thin = new Rectangle(0, 0, 200, 10);
+        model.addShape(thin);
+        // Centro in (100, 5): ruotato di 90 gradi occupa x in [95, 105] e y in [-95, 105]
+        assertNull(model.getTopmostShapeAt(100, 90, 0));
+        model.rotateShape(thin, 90);
+        assertSame(thin, model.getTopmostShapeAt(100, 90, 0), "L'indice dovrebbe seguire la rotazione.");
+    }
+
+    @Test
+    void shouldForgetRemovedShapes() {
+        model.removeShape(rect);
+        assertNull(model.getTopmostShapeAt(30, 30, 0));
+
+        model.addShape(rect);
+        model.clear();
+        assertNull(model.getTopmostShapeAt(30, 30, 0), "Dopo clear l'indice dovrebbe essere vuoto.");
+    }
+
+    @Test
+    void shouldTrackShapesAddedDirectlyToList() {
+        AbstractShape ellipse = new Ellipse(200, 200, 20, 20);
+        model.getShapes().add(ellipse);
+        assertSame(ellipse, model.getTopmostShapeAt(210, 210, 0));
+    }
+
+    @Test
+    void shouldHandleShapesSpanningManyCells() {
+        SpatialIndex index = new SpatialIndex(1.0);
+        AbstractShape huge = new Rectangle(-5000, -5000, 10000, 10000);
+        index.insert(huge);
+        assertSame(huge, index.findTopmostAt(1234, -4321, 0));
+        index.remove(huge);
+        assertNull(index.findTopmostAt(1234, -4321, 0));
+        assertEquals(0, index.size());
+    }
+
+    @Test
+    void shouldIgnoreUpdatesForShapesNotIndexed() {
+        SpatialIndex index = new SpatialIndex();
+        index.update(rect);
+        assertFalse(index.contains(rect));
+    }
+
+    @Test
+    void invalidCellSizeShouldThrow() {
+        assertThrows(IllegalArgumentException.class, () -> new SpatialIndex(0));
+    }
+
+    @Test
+    void contentBoundsShouldFollowMutations() {
+        AbstractShape far = new Ellipse(300, 400, 20, 10);
+        model.addShape(far);
+        assertEquals(new BoundingBox(10, 10, 310, 400), model.getContentBounds(), "Il contenuto dovrebbe racchiudere entrambe le figure.");
+
+        model.moveShapeTo(far, -50, -60);
+        assertEquals(new BoundingBox(-50, -60, 110, 120), model.getContentBounds(), "Il contenuto dovrebbe seguire lo spostamento.");
+
+        model.removeShape(far);
+        assertEquals(new BoundingBox(10, 10, 50, 50), model.getContentBounds());
+
+        model.clear();
+        assertNull(model.getContentBounds(), "Un modello vuoto non dovrebbe avere contenuto.");
+    }
+
+    @Test
+    void contentBoundsShouldKeepDuplicateEdges() {
+        AbstractShape twin = new Rectangle(10, 10, 50, 50);
+        model.addShape(twin);
+        model.removeShape(twin);
+        assertEquals(new BoundingBox(10, 10, 50, 50), model.getContentBounds(),
+                "Rimuovere una figura con gli stessi lati non dovrebbe cancellare quelli dell'altra.");
+    }
+
+    @Test
+    void areaQueryShouldDistinguishContainedAndIntersectingShapes() {
+        AbstractShape inside = new Ellipse(100, 100, 20, 20);
+        AbstractShape crossing = new Rectangle(140, 100, 40, 20);
+        model.addShape(inside);
+        model.addShape(crossing);
+
+        List<AbstractShape> contained = new ArrayList<>();
+        model.collectShapesInArea(90, 90, 150, 130, true, contained);
+        assertEquals(List.of(inside), contained, "Solo l'ellisse è interamente dentro l'area.");
+
+        List<AbstractShape> intersecting = new ArrayList<>();
+        model.collectShapesInArea(90, 90, 150, 130, false, intersecting);
+        assertEquals(Set.of(inside, crossing), new HashSet<>(intersecting));
+    }
+
+    @Test
+    void areaQueryShouldMatchALinearScanOnLargeDrawings() {
+        for (int i = 0; i < 50_000; i++) {
+            model.addShape(new Rectangle((i * 37) % 5000, (i * 91) % 5000, 5 + i % 40, 5 + i % 25));
+        }
+        double minX = 1200, minY = 800, maxX = 2300, maxY = 1700;
+
+        List<AbstractShape> found = new ArrayList<>();
+        model.collectShapesInArea(minX, minY, maxX, maxY, true, found);
+        Set<AbstractShape> expected = new HashSet<>();
+        for (AbstractShape shape : model.getShapes()) {
+            Bounds b = shape.getWorldBounds();
+            if (b.getMinX() >= minX && b.getMaxX() <= maxX && b.getMinY() >= minY && b.getMaxY() <= maxY) {
+                expected.add(shape);
+            }
+        }
+        assertFalse(expected.isEmpty());
+        assertEquals(expected.size(), found.size(), "L'interrogazione non deve restituire duplicati.");
+        assertEquals(expected, new HashSet<>(found), "L'indice deve trovare le stesse figure di una scansione lineare.");
+    }
+}
@@ -1,8 +1,12 @@
 package com.geometricdrawing.model;
 
+import javafx.geometry.Point2D;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 class TextShapeTest {
@@ -51,4 +55,81 @@ class TextShapeTest {
     void getFontFamilyShouldReturnDefault() {
         assertEquals("System", textShape.getFontFamily());
     }
-}
\ No newline at end of file
+
+    @Test
+    void layoutShouldBeReusedUntilTextOrSizeChanges() {
+        List<String> lines = textShape.getWrappedLines();
+        assertSame(lines, textShape.getWrappedLines(), "Senza modifiche il layout in cache dovrebbe essere riutilizzato.");
+
+        textShape.setText("Hello World! Hello World!");
+        List<String> afterText = textShape.getWrappedLines();
+        assertNotSame(lines, afterText, "Cambiare il testo dovrebbe invalidare il layout.");
+
+        textShape.setFontSize(20);
+        List<String> afterFont = textShape.getWrappedLines();
+        assertNotSame(afterText, afterFont, "Cambiare la dimensione del font dovrebbe invalidare il layout.");
+
+        textShape.setWidth(300);
+        assertNotSame(afterFont, textShape.getWrappedLines(), "Cambiare la larghezza dovrebbe invalidare il layout.");
+    }
+
+    @Test
+    void naturalDimensionsShouldBeStableAcrossCalls() {
+        Point2D first = textShape.getNaturalTextBlockDimensions(100);
+        assertEquals(first, textShape.getNaturalTextBlockDimensions(100));
+
+        textShape.setText("Hello World! Hello World! Hello World!");
+        Point2D longer = textShape.getNaturalTextBlockDimensions(100);
+        assertTrue(longer.getY() > first.getY(), "Un testo più lungo dovrebbe occupare più righe.");
+    }
+
+    // Font fittizio a larghezza fissa: ogni carattere (spazio compreso) è largo 10
+    private static double monospaceWidth(String s) {
+        return s.length() * 10.0;
+    }
+
+    // Wrapping di riferimento: l'algoritmo originale, che rimisura l'intera riga a ogni parola
+    private static List<String> referenceWrap(String text, double maxWidth) {
+        List<String> lines = new ArrayList<>();
+        StringBuilder currentLine = new StringBuilder();
+        for (String word : text.trim().split("\\s+")) {
+            double wordWidth = monospaceWidth(word);
+            if (currentLine.length() == 0) {
+                if (wordWidth <= maxWidth) currentLine.append(word); else lines.add(word);
+            } else if (monospaceWidth(currentLine + " " + word) <= maxWidth) {
+                currentLine.append(" ").append(word);
+            } else {
+                lines.add(currentLine.toString());
+                currentLine = new StringBuilder();
+                if (wordWidth <= maxWidth) currentLine.append(word); else lines.add(word);
+            }
+        }
+        if (currentLine.length() > 0) lines.add(currentLine.toString());
+        return lines;
+    }
+
+    @Test
+    void wrapTextShouldMatchReferenceOnLongParagraph() {
+        String[] vocabulary = {"lorem", "ipsum", "dolor", "sit", "amet", "consectetur", "adipiscing", "elit",
+                "supercalifragilistichespiralidoso"};
+        StringBuilder paragraph = new StringBuilder();
+        for (int i = 0; i < 12_000; i++) {
+            paragraph.append(vocabulary[(i * 7 + i / 3) % vocabulary.length]).append(i % 11 == 0 ? "  \n" : " ");
+        }
+        String text = paragraph.toString();
+
+        FontMetricsCache.Metrics metrics = new FontMetricsCache.Metrics(null, TextShapeTest::monospaceWidth, 12, 10);
+        TextShape.WrappedText wrapped = TextShape.wrapText(text, metrics, 250);
+
+        assertEquals(referenceWrap(text, 250), wrapped.lines, "Il wrapping lineare dovrebbe produrre le stesse righe dell'originale.");
+        assertEquals(330.0, wrapped.maxLineWidth, 1e-9, "La riga più larga è la parola che non entra nella larghezza.");
+        // Spazio (2 misure) + una misura per ogni parola distinta, indipendentemente dalla lunghezza del testo
+        assertEquals(2 + vocabulary.length, metrics.getMeasureCount(), "Ogni parola distinta dovrebbe essere misurata una sola volta.");
+    }
+
+    @Test
+    void wrapTextWithNonPositiveWidthShouldReturnNoLines() {
+        FontMetricsCache.Metrics metrics = new FontMetricsCache.Metrics(null, TextShapeTest::monospaceWidth, 12, 10);
+        assertTrue(TextShape.wrapText("Hello World!", metrics, 0).lines.isEmpty());
+    }
+}
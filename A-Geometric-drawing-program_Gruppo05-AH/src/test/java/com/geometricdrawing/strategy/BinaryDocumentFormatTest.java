@@ -0,0 +1,242 @@
+package com.geometricdrawing.strategy;
+
+import com.geometricdrawing.decorator.BorderColorDecorator;
+import com.geometricdrawing.decorator.FillColorDecorator;
+import com.geometricdrawing.model.*;
+import javafx.scene.paint.Color;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BinaryDocumentFormatTest {
+
+    private static File tempFile(String suffix) throws IOException {
+        File file = File.createTempFile("disegno", suffix);
+        file.deleteOnExit();
+        return file;
+    }
+
+    private static DrawingModel saveAndLoad(DrawingModel model) throws Exception {
+        File file = tempFile(".gdraw");
+        new BinarySaveStrategy().save(file, model, null);
+        DrawingModel loaded = new DrawingModel();
+        new BinaryLoadStrategy().load(file, loaded);
+        return loaded;
+    }
+
+    private static void assertSameShape(AbstractShape expected, AbstractShape actual) {
+        assertSame(expected.getClass(), actual.getClass(), "Il tipo della figura deve essere conservato.");
+        assertEquals(expected.getX(), actual.getX());
+        assertEquals(expected.getY(), actual.getY());
+        assertEquals(expected.getZ(), actual.getZ());
+        assertEquals(expected.getWidth(), actual.getWidth());
+        assertEquals(expected.getHeight(), actual.getHeight());
+        assertEquals(expected.getRotationAngle(), actual.getRotationAngle());
+        assertEquals(expected.getScaleX(), actual.getScaleX());
+        assertEquals(expected.getScaleY(), actual.getScaleY());
+        assertEquals(expected.getFillColor(), actual.getFillColor());
+        assertEquals(expected.getBorderColor(), actual.getBorderColor());
+    }
+
+    @Test
+    void saveAndLoadShouldPreserveEveryShapeType() throws Exception {
+        DrawingModel model = new DrawingModel();
+        Rectangle rectangle = new Rectangle(10.25, 20, 30, 40);
+        rectangle.setStyle(new ShapeStyle(Color.color(0.2, 0.4, 0.6, 0.5), Color.BLACK));
+        rectangle.setRotationAngle(33.3);
+        Ellipse ellipse = new Ellipse(-5, 7, 12, 3);
+        ellipse.setScaleX(-1);
+        Line line = new Line(0.1, 0.2, 50.3, -25.7);
+        line.setBorderColor(Color.RED);
+        Polygon polygon = new Polygon(0, 0);
+        polygon.addVertex(40, 0);
+        polygon.addVertex(20, 30);
+        polygon.moveBy(100, 50);
+        polygon.setScaleY(-1);
+        TextShape text = new TextShape(5, 5, 80, 20, "testo àèì 😀", 14);
+        TextShape sameText = new TextShape(50, 5, 80, 20, "testo àèì 😀", 18);
+        text.setFillColor(Color.BLUE);
+        for (AbstractShape shape : List.of(rectangle, ellipse, line, polygon, text, sameText)) {
+            model.addShape(shape);
+        }
+
+        DrawingModel loaded = saveAndLoad(model);
+
+        List<AbstractShape> shapes = loaded.getShapes();
+        assertEquals(6, shapes.size());
+        for (int i = 0; i < shapes.size(); i++) {
+            assertSameShape(model.getShapes().get(i), shapes.get(i));
+        }
+        assertNull(shapes.get(1).getStyle(), "Una figura senza stile deve restare senza stile.");
+        assertEquals(polygon.getVertices(), ((Polygon) shapes.get(3)).getVertices());
+        assertEquals("testo àèì 😀", ((TextShape) shapes.get(4)).getText());
+        assertEquals(14, ((TextShape) shapes.get(4)).getFontSize());
+        assertEquals(18, ((TextShape) shapes.get(5)).getFontSize());
+        assertSame(shapes.get(3), loaded.getTopmostShapeAt(120, 55, 0), "Le figure caricate devono essere nell'indice spaziale.");
+    }
+
+    @Test
+    void saveShouldWriteDecoratedShapesAsStyledShapes() throws Exception {
+        DrawingModel model = new DrawingModel();
+        model.getShapes().add(new BorderColorDecorator(new FillColorDecorator(new Ellipse(1, 2, 3, 4), Color.YELLOW), Color.GREEN));
+
+        AbstractShape loaded = saveAndLoad(model).getShapes().get(0);
+
+        assertInstanceOf(Ellipse.class, loaded, "Il decoratore non deve comparire nel file.");
+        assertEquals(Color.YELLOW, loaded.getFillColor());
+        assertEquals(Color.GREEN, loaded.getBorderColor());
+    }
+
+    @Test
+    void loadShouldAcceptSerializedFiles() throws Exception {
+        DrawingModel model = new DrawingModel();
+        model.addShape(new Rectangle(1, 2, 3, 4));
+        File file = tempFile(".ser");
+        model.saveToFile(file);
+
+        DrawingModel loaded = new DrawingModel();
+        new BinaryLoadStrategy().load(file, loaded);
+
+        assertEquals(1, loaded.getShapes().size(), "I disegni .ser devono essere caricati dallo stesso comando.");
+        assertSameShape(model.getShapes().get(0), loaded.getShapes().get(0));
+    }
+
+    @Test
+    void loadShouldRejectTruncatedFiles() throws Exception {
+        DrawingModel model = new DrawingModel();
+        Polygon polygon = new Polygon(0, 0);
+        polygon.addVertex(40, 0);
+        polygon.addVertex(20, 30);
+        model.addShape(polygon);
+        File file = tempFile(".gdraw");
+        new BinarySaveStrategy().save(file, model, null);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(raf.length() - 10);
+        }
+
+        DrawingModel loaded = new DrawingModel();
+        assertThrows(IOException.class, () -> new BinaryLoadStrategy().load(file, loaded));
+        assertTrue(loaded.getShapes().isEmpty(), "Un file danneggiato non deve caricare figure parziali.");
+    }
+
+    @Test
+    void loadShouldRejectCountsLargerThanTheFile() throws Exception {
+        DrawingModel model = new DrawingModel();
+        model.addShape(new Rectangle(1, 2, 3, 4));
+        File file = tempFile(".gdraw");
+        new BinarySaveStrategy().save(file, model, null);
+
+        for (long countOffset : new long[] {8, 12}) { // numero di figure e numero di stringhe nell'intestazione
+            File corrupted = tempFile(".gdraw");
+            Files.copy(file.toPath(), corrupted.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            try (RandomAccessFile raf = new RandomAccessFile(corrupted, "rw")) {
+                raf.seek(countOffset);
+                raf.writeInt(Integer.MAX_VALUE);
+            }
+
+            // un conteggio danneggiato deve dare un errore di lettura prima di allocare gli array
+            assertThrows(IOException.class, () -> new BinaryLoadStrategy().load(corrupted, new DrawingModel()));
+            assertThrows(IOException.class, () -> MappedDocument.open(corrupted));
+        }
+    }
+
+    @Test
+    void lazyOpenShouldReadOnlyTheRecordIndex() throws Exception {
+        DrawingModel model = new DrawingModel();
+        model.addShape(new Rectangle(10, 20, 30, 40));
+        model.addShape(new TextShape(100, 200, 50, 20, "testo", 12));
+        File file = tempFile(".gdraw");
+        new BinarySaveStrategy().save(file, model, null);
+
+        // si azzerano tutti i record: l'apertura differita deve trovare posizioni e ingombri solo nell'indice
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(16);
+            long recordsOffset = raf.readLong();
+            long indexOffset = raf.readLong();
+            raf.seek(recordsOffset);
+            raf.write(new byte[(int) (indexOffset - recordsOffset)]);
+        }
+
+        MappedDocument document = MappedDocument.open(file);
+        assertEquals(2, document.getPendingCount());
+        assertEquals(10, document.getBounds().getMinX(), 1e-3);
+        assertEquals(20, document.getBounds().getMinY(), 1e-3);
+        assertEquals(150, document.getBounds().getMaxX(), 1e-3);
+        assertEquals(220, document.getBounds().getMaxY(), 1e-3);
+    }
+
+    @Test
+    void loadShouldAcceptVersion1FilesWithoutIndex() throws Exception {
+        DrawingModel model = new DrawingModel();
+        model.addShape(new Rectangle(10, 20, 30, 40));
+        model.addShape(new TextShape(100, 200, 50, 20, "testo", 12));
+        File file = tempFile(".gdraw");
+        new BinarySaveStrategy().save(file, model, null);
+
+        // stesso disegno nel formato della versione 1: intestazione di 24 byte e nessun indice in fondo
+        ByteBuffer current = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+        long recordsOffset = current.getLong(16);
+        int indexOffset = (int) current.getLong(24);
+        ByteBuffer old = ByteBuffer.allocate(indexOffset - 8);
+        old.putInt(BinaryDocumentFormat.MAGIC).putShort((short) 1).putShort((short) 0);
+        old.putInt(current.getInt(8)).putInt(current.getInt(12)).putLong(recordsOffset - 8);
+        old.put(current.array(), BinaryDocumentFormat.HEADER_SIZE, indexOffset - BinaryDocumentFormat.HEADER_SIZE);
+        File version1 = tempFile(".gdraw");
+        Files.write(version1.toPath(), old.array());
+
+        DrawingModel loaded = new DrawingModel();
+        new BinaryLoadStrategy().load(version1, loaded);
+        assertEquals(2, loaded.getShapes().size());
+        for (int i = 0; i < 2; i++) {
+            assertSameShape(model.getShapes().get(i), loaded.getShapes().get(i));
+        }
+        MappedDocument document = MappedDocument.open(version1);
+        assertEquals(2, document.getPendingCount());
+        assertEquals(220, document.getBounds().getMaxY(), 1e-3);
+    }
+
+    @Test
+    void binaryFormatShouldRoundTripAndBeSmallerThanSerialization() throws Exception {
+        DrawingModel model = new DrawingModel();
+        int n = 3_000;
+        for (int i = 0; i < n; i++) {
+            AbstractShape shape = switch (i % 3) {
+                case 0 -> new Rectangle(i % 1000, i / 1000.0, 20, 10);
+                case 1 -> new Ellipse(i % 1000, i / 1000.0, 15, 15);
+                default -> new Line(i % 1000, i / 1000.0, i % 1000 + 30, i / 1000.0 + 5);
+            };
+            shape.setStyle(new ShapeStyle(Color.LIGHTBLUE, Color.BLACK));
+            model.getShapes().add(shape);
+        }
+        File binary = tempFile(".gdraw");
+        File serialized = tempFile(".ser");
+
+        new BinarySaveStrategy().save(binary, model, null);
+        DrawingModel fromBinary = new DrawingModel();
+        new BinaryLoadStrategy().load(binary, fromBinary);
+        model.saveToFile(serialized);
+        DrawingModel fromSerialized = new DrawingModel();
+        fromSerialized.loadFromFile(serialized);
+
+        assertEquals(n, fromBinary.getShapes().size());
+        assertEquals(n, fromSerialized.getShapes().size());
+        for (int i = 0; i < n; i++) {
+            AbstractShape expected = model.getShapes().get(i);
+            AbstractShape actual = fromBinary.getShapes().get(i);
+            assertEquals(expected.getClass(), actual.getClass(), "Tipo della figura " + i + " errato.");
+            assertEquals(expected.getX(), actual.getX(), 1e-9, "X della figura " + i + " errata.");
+            assertEquals(expected.getY(), actual.getY(), 1e-9, "Y della figura " + i + " errata.");
+            assertEquals(expected.getWidth(), actual.getWidth(), 1e-9, "Larghezza della figura " + i + " errata.");
+            assertEquals(Color.LIGHTBLUE, actual.getFillColor(), "Riempimento della figura " + i + " errato.");
+        }
+        assertTrue(binary.length() < serialized.length(), "Il file binario dovrebbe essere più piccolo del .ser.");
+    }
+}
@@ -0,0 +1,169 @@
+package com.geometricdrawing.strategy;
+
+import com.geometricdrawing.command.BringToBackgroundCommand;
+import com.geometricdrawing.model.*;
+import javafx.scene.paint.Color;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MappedLoadStrategyTest {
+
+    private static File tempFile() throws IOException {
+        File file = File.createTempFile("disegno", ".gdraw");
+        file.deleteOnExit();
+        return file;
+    }
+
+    // Una riga di rettangoli 10x10 distanziati di 100 unità lungo l'asse x
+    private static File saveRow(int count) throws IOException {
+        DrawingModel model = new DrawingModel();
+        for (int i = 0; i < count; i++) {
+            Rectangle rectangle = new Rectangle(i * 100, 0, 10, 10);
+            rectangle.setFillColor(Color.ORANGE);
+            model.getShapes().add(rectangle);
+        }
+        File file = tempFile();
+        new BinarySaveStrategy().save(file, model, null);
+        return file;
+    }
+
+    @Test
+    void eagerLoadShouldCreateEveryShape() throws Exception {
+        File file = saveRow(50);
+        DrawingModel mapped = new DrawingModel();
+        DrawingModel heap = new DrawingModel();
+
+        new MappedLoadStrategy(false).load(file, mapped);
+        new BinaryLoadStrategy().load(file, heap);
+
+        assertFalse(mapped.hasPendingShapes());
+        assertEquals(50, mapped.getShapes().size());
+        for (int i = 0; i < 50; i++) {
+            assertEquals(heap.getShapes().get(i).getX(), mapped.getShapes().get(i).getX());
+            assertEquals(Color.ORANGE, mapped.getShapes().get(i).getFillColor());
+        }
+    }
+
+    @Test
+    void lazyLoadShouldCreateOnlyTheShapesInTheQueriedArea() throws Exception {
+        File file = saveRow(1000);
+        DrawingModel model = new DrawingModel();
+
+        new MappedLoadStrategy(true).load(file, model);
+
+        assertTrue(model.getShapes().isEmpty(), "Nessuna figura deve essere creata prima di essere richiesta.");
+        assertFalse(model.isEmpty());
+        assertEquals(99_910, model.getContentBounds().getMaxX(), 0.01, "L'ingombro deve comprendere le figure non caricate.");
+
+        List<AbstractShape> visible = new ArrayList<>();
+        model.collectShapesIn(0, 0, 450, 50, visible);
+        assertEquals(5, visible.size());
+        assertEquals(5, model.getShapes().size(), "Solo le figure dell'area devono entrare nel modello.");
+
+        visible.clear();
+        model.collectShapesIn(0, 0, 450, 50, visible);
+        assertEquals(5, model.getShapes().size(), "Una figura già caricata non deve essere duplicata.");
+    }
+
+    @Test
+    void lazyShapesShouldKeepTheFileOrderBelowNewShapes() throws Exception {
+        File file = saveRow(100);
+        DrawingModel model = new DrawingModel();
+        new MappedLoadStrategy(true).load(file, model);
+        List<AbstractShape> out = new ArrayList<>();
+        model.collectShapesIn(1000, 0, 1050, 50, out); // record 10
+        Ellipse userShape = new Ellipse(0, 0, 5000, 5000);
+        model.addShape(userShape);
+
+        out.clear();
+        model.collectShapesIn(0, 0, 2050, 50, out); // record da 0 a 20
+
+        List<AbstractShape> shapes = model.getShapes();
+        assertEquals(22, shapes.size());
+        assertSame(userShape, shapes.get(shapes.size() - 1), "La figura creata dall'utente deve restare in cima.");
+        for (int i = 0; i < 21; i++) {
+            assertEquals(i * 100, shapes.get(i).getX(), "Le figure caricate devono seguire l'ordine del file.");
+            assertEquals(i, shapes.get(i).getZ());
+        }
+    }
+
+    @Test
+    void saveAfterLazyLoadShouldWriteTheWholeDrawing() throws Exception {
+        File file = saveRow(300);
+        DrawingModel model = new DrawingModel();
+        new MappedLoadStrategy(true).load(file, model);
+        model.collectShapesIn(0, 0, 50, 50, new ArrayList<>());
+        model.removeShape(model.getShapes().get(0));
+
+        File copy = tempFile();
+        new BinarySaveStrategy().save(copy, model, null);
+        DrawingModel reloaded = new DrawingModel();
+        new MappedLoadStrategy(false).load(copy, reloaded);
+
+        assertFalse(model.hasPendingShapes());
+        assertEquals(299, reloaded.getShapes().size(), "Devono essere salvate anche le figure mai mostrate.");
+        assertEquals(100, reloaded.getShapes().get(0).getX());
+    }
+
+    @Test
+    void snapshotShouldReadPendingShapesWithoutLoadingThemInTheModel() throws Exception {
+        File file = saveRow(100);
+        DrawingModel model = new DrawingModel();
+        new MappedLoadStrategy(true).load(file, model);
+        model.collectShapesIn(1000, 0, 1050, 50, new ArrayList<>()); // record 10
+        model.collectShapesIn(5000, 0, 5050, 50, new ArrayList<>()); // record 50
+        model.addShape(new Ellipse(0, 0, 5, 5));
+        new BringToBackgroundCommand(model, model.getShapes().get(1)).execute(); // il record 50 sotto il 10
+
+        DrawingSnapshot snapshot = model.snapshot();
+        List<AbstractShape> saved = snapshot.getShapes();
+
+        assertTrue(model.hasPendingShapes(), "La copia non deve caricare le figure in attesa nel modello.");
+        assertEquals(3, model.getShapes().size());
+        // Le figure lette dalla copia devono avere l'ordine che il modello dà loro caricandole
+        model.materializeAllShapes();
+        List<AbstractShape> expected = model.getShapes();
+        assertEquals(expected.size(), saved.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertSame(expected.get(i).getClass(), saved.get(i).getClass(), "Tipo della figura " + i + " errato.");
+            assertEquals(expected.get(i).getX(), saved.get(i).getX(), "Figura " + i + " fuori posto.");
+        }
+    }
+
+    @Test
+    void lazyOpenShouldDeliverOnlyTheVisibleRecordsUntilMaterialized() throws Exception {
+        // Griglia di 40 x 40 rettangoli 15x15 con passo 20
+        DrawingModel source = new DrawingModel();
+        for (int i = 0; i < 1600; i++) {
+            source.getShapes().add(new Rectangle((i % 40) * 20, (i / 40) * 20, 15, 15));
+        }
+        File file = tempFile();
+        new BinarySaveStrategy().save(file, source, null);
+
+        DrawingModel model = new DrawingModel();
+        new MappedLoadStrategy(true).load(file, model);
+        List<AbstractShape> visible = new ArrayList<>();
+        model.collectShapesIn(0, 0, 390, 190, visible); // 20 colonne e 10 righe
+
+        assertEquals(200, visible.size());
+        assertEquals(200, model.getShapes().size(), "Prima della vista completa devono esserci solo i record visibili.");
+        for (AbstractShape shape : model.getShapes()) {
+            assertTrue(shape.getX() < 400 && shape.getY() < 200, "Consegnata una figura fuori dall'area richiesta.");
+        }
+        assertTrue(model.hasPendingShapes());
+
+        model.materializeAllShapes();
+        assertFalse(model.hasPendingShapes());
+        assertEquals(1600, model.getShapes().size());
+        for (int i = 0; i < 1600; i++) {
+            assertEquals((i % 40) * 20, model.getShapes().get(i).getX(), "Le figure devono seguire l'ordine del file.");
+            assertEquals((i / 40) * 20, model.getShapes().get(i).getY());
+        }
+    }
+}
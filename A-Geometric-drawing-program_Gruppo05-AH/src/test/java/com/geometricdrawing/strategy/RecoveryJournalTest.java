@@ -0,0 +1,263 @@
+package com.geometricdrawing.strategy;
+
+import com.geometricdrawing.command.*;
+import com.geometricdrawing.model.*;
+import javafx.scene.paint.Color;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RecoveryJournalTest {
+
+    private Path directory;
+    private DrawingModel model;
+    private CommandManager commandManager;
+    private RecoveryJournal journal;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        directory = Files.createTempDirectory("diario");
+        model = new DrawingModel();
+        commandManager = new CommandManager();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        if (journal != null) {
+            journal.close(true);
+        }
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(file); // prima il contenuto delle sottocartelle, poi la cartella
+            }
+        }
+    }
+
+    private void startJournal(long checkpointSize) throws IOException {
+        journal = RecoveryJournal.start(directory, model, checkpointSize);
+        commandManager.setJournal(journal);
+    }
+
+    private DrawingModel recovered() throws IOException {
+        journal.flush();
+        DrawingModel recovered = new DrawingModel();
+        assertTrue(RecoveryJournal.recover(directory, recovered), "Il diario dovrebbe essere presente.");
+        return recovered;
+    }
+
+    private static void assertSameDrawing(DrawingModel expected, DrawingModel actual) {
+        List<AbstractShape> e = expected.getShapes();
+        List<AbstractShape> a = actual.getShapes();
+        assertEquals(e.size(), a.size(), "Numero di figure ripristinate errato.");
+        for (int i = 0; i < e.size(); i++) {
+            assertEquals(e.get(i).getClass(), a.get(i).getClass(), "Tipo della figura " + i + " errato.");
+            assertEquals(e.get(i).getX(), a.get(i).getX(), 1e-9, "X della figura " + i + " errata.");
+            assertEquals(e.get(i).getY(), a.get(i).getY(), 1e-9, "Y della figura " + i + " errata.");
+            assertEquals(e.get(i).getWidth(), a.get(i).getWidth(), 1e-9, "Larghezza della figura " + i + " errata.");
+            assertEquals(e.get(i).getRotationAngle(), a.get(i).getRotationAngle(), 1e-9, "Rotazione della figura " + i + " errata.");
+            assertEquals(e.get(i).getFillColor(), a.get(i).getFillColor(), "Riempimento della figura " + i + " errato.");
+            assertEquals(i, a.get(i).getZ(), "Lo Z deve coincidere con la posizione.");
+        }
+    }
+
+    @Test
+    void executedAndUndoneCommandsShouldBeReplayed() throws IOException {
+        startJournal(Long.MAX_VALUE);
+        Rectangle rectangle = new Rectangle(10, 10, 40, 20);
+        Ellipse ellipse = new Ellipse(100, 50, 30, 30);
+        Line line = new Line(0, 0, 80, 80);
+        commandManager.executeCommand(new AddShapeCommand(model, rectangle));
+        commandManager.executeCommand(new AddShapeCommand(model, ellipse));
+        commandManager.executeCommand(new AddShapeCommand(model, line));
+        commandManager.executeCommand(new MoveShapeCommand(model, rectangle, 200, 150));
+        commandManager.executeCommand(new ChangeFillColorCommand(model, ellipse, Color.RED));
+        commandManager.executeCommand(new RotateShapeCommand(model, line, 30));
+        commandManager.executeCommand(new BringToBackgroundCommand(model, line));
+        commandManager.executeCommand(new DeleteShapeCommand(model, rectangle));
+        commandManager.undo(); // la figura eliminata torna nel disegno
+        commandManager.executeCommand(new ChangeWidthCommand(model, ellipse, 75));
+        commandManager.undo();
+
+        assertSameDrawing(model, recovered());
+    }
+
+    @Test
+    void recoveryShouldStopAtATornRecord() throws IOException {
+        startJournal(Long.MAX_VALUE);
+        Rectangle rectangle = new Rectangle(10, 10, 40, 20);
+        commandManager.executeCommand(new AddShapeCommand(model, rectangle));
+        journal.flush();
+        long sizeAfterFirstCommand = Files.size(directory.resolve(RecoveryJournal.JOURNAL_FILE));
+        commandManager.executeCommand(new MoveShapeCommand(model, rectangle, 300, 300));
+        journal.flush();
+
+        // Simula una chiusura durante la scrittura dell'ultimo record
+        try (FileChannel channel = FileChannel.open(directory.resolve(RecoveryJournal.JOURNAL_FILE), StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 3);
+        }
+        DrawingModel recovered = new DrawingModel();
+        assertTrue(RecoveryJournal.recover(directory, recovered));
+
+        assertTrue(sizeAfterFirstCommand < Files.size(directory.resolve(RecoveryJournal.JOURNAL_FILE)));
+        assertEquals(1, recovered.getShapes().size());
+        assertEquals(10, recovered.getShapes().get(0).getX(), "Il record incompleto non deve essere applicato.");
+    }
+
+    @Test
+    void savedDocumentShouldBecomeTheBaseKeepingLaterCommands() throws Exception {
+        startJournal(Long.MAX_VALUE);
+        Rectangle rectangle = new Rectangle(10, 10, 40, 20);
+        commandManager.executeCommand(new AddShapeCommand(model, rectangle));
+        RecoveryJournal.Mark mark = journal.mark();
+        SaveStrategy.SaveOperation operation = new BinarySaveStrategy().prepare(model, null);
+        // Modifica fatta mentre il salvataggio è in corso: non è nel file, deve restare nel diario
+        commandManager.executeCommand(new AddShapeCommand(model, new Ellipse(0, 0, 5, 5)));
+        File file = File.createTempFile("disegno", ".gdraw");
+        file.deleteOnExit();
+        operation.run(file, ProgressListener.NONE);
+        journal.documentSaved(mark, file);
+        commandManager.executeCommand(new MoveShapeCommand(model, rectangle, 60, 70));
+
+        assertSameDrawing(model, recovered());
+    }
+
+    @Test
+    void journalShouldRestartFromASnapshotWhenItGrowsTooLarge() throws IOException {
+        startJournal(2048);
+        for (int i = 0; i < 100; i++) {
+            commandManager.executeCommand(new AddShapeCommand(model, new Rectangle(i, i, 10, 10)));
+        }
+        commandManager.executeCommand(new BringToBackgroundCommand(model, model.getShapes().get(99)));
+
+        DrawingModel recovered = recovered();
+        assertTrue(Files.size(directory.resolve(RecoveryJournal.JOURNAL_FILE)) < 2048 + 1024,
+                "Il diario dovrebbe essere ripartito da un'istantanea.");
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(1, files.filter(f -> f.getFileName().toString().endsWith(".gdraw")).count(),
+                    "Deve restare solo l'istantanea usata come base.");
+        }
+        assertSameDrawing(model, recovered);
+    }
+
+    // Apre in modo differito una riga di count rettangoli 10x10 distanziati di 100 unità lungo l'asse x
+    private File openLazyRow(int count) throws Exception {
+        DrawingModel source = new DrawingModel();
+        for (int i = 0; i < count; i++) {
+            source.getShapes().add(new Rectangle(i * 100, 0, 10, 10));
+        }
+        File file = File.createTempFile("disegno", ".gdraw");
+        file.deleteOnExit();
+        new BinarySaveStrategy().save(file, source, null);
+        new MappedLoadStrategy(true).load(file, model);
+        journal.reset(model, file);
+        return file;
+    }
+
+    private void editLazyRow() {
+        List<AbstractShape> visible = new ArrayList<>();
+        model.collectShapesIn(0, 0, 450, 50, visible); // caricate le prime 5 figure
+        commandManager.executeCommand(new MoveShapeCommand(model, visible.get(1), 120, 300));
+        commandManager.executeCommand(new DeleteShapeCommand(model, visible.get(3)));
+        commandManager.executeCommand(new AddShapeCommand(model, new Ellipse(50, 50, 20, 20)));
+        model.collectShapesIn(2000, 0, 2250, 50, visible); // caricate dopo la modifica
+        commandManager.executeCommand(new BringToForegroundCommand(model, visible.get(0)));
+    }
+
+    @Test
+    void lazyDocumentShouldStayTheBaseWithoutLoadingTheWholeDrawing() throws Exception {
+        startJournal(Long.MAX_VALUE);
+        openLazyRow(1000);
+        editLazyRow();
+
+        assertTrue(model.hasPendingShapes(), "I comandi non devono caricare le figure non ancora mostrate.");
+        DrawingModel recovered = recovered();
+        assertTrue(recovered.hasPendingShapes(), "Le figure mai caricate devono restare in attesa anche dopo il ripristino.");
+        assertEquals(model.getShapes().size(), recovered.getShapes().size());
+
+        model.materializeAllShapes();
+        recovered.materializeAllShapes();
+        assertEquals(1000, recovered.getShapes().size(), "Le figure eliminate non devono tornare, le altre non vanno perse.");
+        assertSameDrawing(model, recovered);
+    }
+
+    @Test
+    void snapshotOfALazyDocumentShouldKeepTheDocumentAsBase() throws Exception {
+        startJournal(512);
+        openLazyRow(1000);
+        editLazyRow();
+        for (int i = 0; i < 20; i++) {
+            commandManager.executeCommand(new MoveShapeCommand(model, model.getShapes().get(0), i, i));
+        }
+
+        DrawingModel recovered = recovered();
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(0, files.filter(f -> f.getFileName().toString().endsWith(".gdraw")).count(),
+                    "Con una base differita non serve un'istantanea del disegno.");
+        }
+        assertTrue(recovered.hasPendingShapes());
+        model.materializeAllShapes();
+        recovered.materializeAllShapes();
+        assertSameDrawing(model, recovered);
+    }
+
+    @Test
+    void closingWithDiscardShouldLeaveNothingToRecover() throws IOException {
+        startJournal(Long.MAX_VALUE);
+        commandManager.executeCommand(new AddShapeCommand(model, new Rectangle(0, 0, 10, 10)));
+        journal.close(true);
+        journal = null;
+
+        assertFalse(RecoveryJournal.recover(directory, new DrawingModel()), "Dopo una chiusura regolare non c'è niente da ripristinare.");
+    }
+
+    @Test
+    void unrecoverableJournalShouldBeSetAsideBeforeANewOneStarts() throws IOException {
+        byte[] damaged = {1, 2, 3, 4, 5, 6, 7, 8};
+        Files.write(directory.resolve(RecoveryJournal.JOURNAL_FILE), damaged);
+        Files.write(directory.resolve("snapshot-1.gdraw"), damaged);
+        assertThrows(IOException.class, () -> RecoveryJournal.recover(directory, new DrawingModel()));
+
+        Path archive = RecoveryJournal.archiveFailed(directory);
+        startJournal(Long.MAX_VALUE);
+        commandManager.executeCommand(new AddShapeCommand(model, new Rectangle(0, 0, 10, 10)));
+        journal.close(true);
+        journal = null;
+
+        assertTrue(archive.getFileName().toString().startsWith(RecoveryJournal.FAILED_PREFIX));
+        assertTrue(Arrays.equals(damaged, Files.readAllBytes(archive.resolve(RecoveryJournal.JOURNAL_FILE))),
+                "Il diario non ripristinato non deve essere sostituito dal nuovo.");
+        assertTrue(Arrays.equals(damaged, Files.readAllBytes(archive.resolve("snapshot-1.gdraw"))),
+                "Le istantanee del diario non ripristinato devono essere conservate.");
+    }
+
+    @Test
+    void journalDirectoryShouldBeLockedByOneInstanceAtATime() throws IOException {
+        FileLock lock = RecoveryJournal.tryLock(directory);
+        assertNotNull(lock);
+        try {
+            assertNull(RecoveryJournal.tryLock(directory), "Una cartella in uso non deve essere presa da un'altra istanza.");
+            assertNotEquals(directory, RecoveryJournal.instanceDirectory(directory));
+        } finally {
+            lock.channel().close();
+        }
+
+        FileLock again = RecoveryJournal.tryLock(directory);
+        assertNotNull(again, "Rilasciato il lock, la cartella deve tornare disponibile.");
+        again.channel().close();
+    }
+}
@@ -0,0 +1,137 @@
+package com.geometricdrawing.strategy;
+
+import com.geometricdrawing.model.*;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SaveStrategyTest {
+
+    private static File tempFile(String suffix) throws IOException {
+        File file = File.createTempFile("disegno", suffix);
+        file.deleteOnExit();
+        return file;
+    }
+
+    private static DrawingModel modelWith(int count) {
+        DrawingModel model = new DrawingModel();
+        for (int i = 0; i < count; i++) {
+            model.addShape(new Rectangle(i * 10, 0, 5, 5));
+        }
+        return model;
+    }
+
+    @Test
+    void preparedSaveShouldWriteTheModelAsItWasWhenPrepared() throws Exception {
+        for (SaveStrategy strategy : List.of(new BinarySaveStrategy(), new SerializedSaveStrategy())) {
+            DrawingModel model = modelWith(3);
+            SaveStrategy.SaveOperation operation = strategy.prepare(model, null);
+
+            // Modifiche fatte dall'utente mentre il file viene scritto in background
+            model.getShapes().get(0).moveBy(500, 500);
+            model.addShape(new Ellipse(0, 0, 1, 1));
+
+            File file = tempFile(".salvataggio");
+            operation.run(file, ProgressListener.NONE);
+            DrawingModel loaded = new DrawingModel();
+            new BinaryLoadStrategy().load(file, loaded);
+
+            assertEquals(3, loaded.getShapes().size(), "La figura aggiunta dopo la preparazione non deve essere salvata.");
+            assertEquals(0, loaded.getShapes().get(0).getX(), "Lo spostamento successivo alla preparazione non deve essere salvato.");
+        }
+    }
+
+    @Test
+    void binarySaveShouldReportProgressAndStopWhenTheListenerCancels() throws Exception {
+        DrawingModel model = modelWith(10_000);
+        SaveStrategy.SaveOperation operation = new BinarySaveStrategy().prepare(model, null);
+        List<Long> reported = new ArrayList<>();
+
+        operation.run(tempFile(".gdraw"), (done, total) -> {
+            assertEquals(10_000, total);
+            reported.add(done);
+        });
+
+        assertFalse(reported.isEmpty());
+        assertEquals(10_000L, (long) reported.get(reported.size() - 1), "L'ultimo avanzamento deve indicare il lavoro completato.");
+        assertThrows(CancellationException.class, () -> operation.run(tempFile(".gdraw"), (done, total) -> {
+            throw new CancellationException();
+        }));
+    }
+
+    @Test
+    void binaryLoadShouldReportProgress() throws Exception {
+        File file = tempFile(".gdraw");
+        new BinarySaveStrategy().save(file, modelWith(5_000), null);
+        long[] last = new long[2];
+
+        DrawingModel loaded = new DrawingModel();
+        new BinaryLoadStrategy().load(file, loaded, (done, total) -> {
+            last[0] = done;
+            last[1] = total;
+        });
+
+        assertEquals(5_000, loaded.getShapes().size());
+        assertEquals(5_000, last[0]);
+        assertEquals(5_000, last[1]);
+    }
+
+    @Test
+    void snapshotShouldIncludeShapesNotYetLoaded() throws Exception {
+        File file = tempFile(".gdraw");
+        new BinarySaveStrategy().save(file, modelWith(200), null);
+        DrawingModel model = new DrawingModel();
+        new MappedLoadStrategy(true).load(file, model);
+
+        List<AbstractShape> snapshot = model.snapshotShapes();
+
+        assertEquals(200, snapshot.size());
+        assertNotSame(model.getShapes().get(0), snapshot.get(0), "L'istantanea deve contenere copie delle figure.");
+    }
+
+    @Test
+    void saveShouldReplaceTheLazilyOpenedFile() throws Exception {
+        File file = tempFile(".gdraw");
+        new BinarySaveStrategy().save(file, modelWith(200), null);
+        DrawingModel model = new DrawingModel();
+        new MappedLoadStrategy(true).load(file, model);
+        model.addShape(new Ellipse(0, 0, 1, 1));
+
+        // Il salvataggio sul file aperto in modo differito, che è ancora mappato in memoria
+        SaveContext.writeAndReplace(new BinarySaveStrategy().prepare(model, null), file, ProgressListener.NONE, () -> false);
+
+        DrawingModel reloaded = new DrawingModel();
+        new BinaryLoadStrategy().load(file, reloaded);
+        assertEquals(201, reloaded.getShapes().size());
+        assertFalse(new File(file.getPath() + ".tmp").exists(), "Dopo la sostituzione non deve restare il file temporaneo.");
+    }
+
+    @Test
+    void failedReplaceShouldKeepTheSavedTemporaryFile() throws Exception {
+        // Una cartella non vuota non può essere sostituita da un file
+        File target = Files.createTempDirectory("disegno").toFile();
+        File content = new File(target, "contenuto");
+        assertTrue(content.createNewFile());
+        File temp = new File(target.getPath() + ".tmp");
+        try {
+            IOException e = assertThrows(IOException.class, () -> SaveContext.writeAndReplace(
+                    new BinarySaveStrategy().prepare(modelWith(3), null), target, ProgressListener.NONE, () -> false));
+
+            assertTrue(e.getMessage().contains(temp.getName()), "Il messaggio deve indicare dove è stato salvato il disegno.");
+            DrawingModel saved = new DrawingModel();
+            new BinaryLoadStrategy().load(temp, saved);
+            assertEquals(3, saved.getShapes().size(), "Il file temporaneo deve contenere il salvataggio completo.");
+        } finally {
+            Files.deleteIfExists(temp.toPath());
+            Files.deleteIfExists(content.toPath());
+            Files.deleteIfExists(target.toPath());
+        }
+    }
+}